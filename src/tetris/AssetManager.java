@@ -0,0 +1,207 @@
+package tetris;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * AssetManager
+ *
+ * Loads and decodes every sound and image of the game in parallel on a
+ * background executor, so the window can show the title screen right away
+ * instead of waiting for each asset in turn. Every asset is exposed as a
+ * {@code Future}; only the critical ones (the images the board needs) have
+ * to be ready before a game starts, sounds simply start playing once they
+ * are decoded.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class AssetManager {
+
+	/**
+	 * The sound effects to load.
+	 */
+	public static final String[] sSOUNDS = {"zap1.wav", "zap2.wav", "over.wav"};
+
+	/**
+	 * The images to load, which {@code awaitCritical} waits for before a
+	 * game starts.
+	 */
+	public static final String[] sIMAGES = {"background.jpg"};
+
+	/**
+	 * The executor that loads the assets.
+	 */
+	private final ExecutorService exeLoader;
+
+	/**
+	 * The sound clips, which are handed out before they finish decoding.
+	 */
+	private final Map<String, SoundClip> mapSounds;
+
+	/**
+	 * The pending or finished decoding of each sound clip.
+	 */
+	private final Map<String, Future<SoundClip>> mapSoundFutures;
+
+	/**
+	 * The pending or finished decoding of each image.
+	 */
+	private final Map<String, Future<BufferedImage>> mapImageFutures;
+
+	/**
+	 * Creates a new AssetManager with one loader thread per processor.
+	 */
+	public AssetManager() {
+		this.exeLoader = Executors.newFixedThreadPool(
+				Math.max(2, Runtime.getRuntime().availableProcessors()), runTask -> {
+					Thread thrLoader = new Thread(runTask, "Asset Loader");
+					thrLoader.setDaemon(true);
+					return thrLoader;
+				});
+		this.mapSounds = new ConcurrentHashMap<>();
+		this.mapSoundFutures = new ConcurrentHashMap<>();
+		this.mapImageFutures = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Starts loading every sound and image of the game. Returns immediately.
+	 */
+	public void loadAll() {
+		for(String sImage : sIMAGES) {
+			loadImage(sImage);
+		}
+		for(String sSound : sSOUNDS) {
+			loadSound(sSound);
+		}
+	}
+
+	/**
+	 * Starts decoding a sound clip, unless it's already being decoded.
+	 * @param sFilename The name of the file.
+	 * @return The pending clip.
+	 */
+	public Future<SoundClip> loadSound(String sFilename) {
+		return mapSoundFutures.computeIfAbsent(sFilename, sName -> {
+			SoundClip sClip = new SoundClip();
+			mapSounds.put(sName, sClip);
+			return exeLoader.submit(() -> {
+				sClip.load(sName);
+				return sClip;
+			});
+		});
+	}
+
+	/**
+	 * Starts decoding an image, unless it's already being decoded. An image
+	 * that can't be loaded is reported once and resolves to null.
+	 * @param sFilename The name of the file.
+	 * @return The pending image.
+	 */
+	public Future<BufferedImage> loadImage(String sFilename) {
+		return mapImageFutures.computeIfAbsent(sFilename, sName ->
+				exeLoader.submit(() -> {
+					try {
+						URL urlImage = getClass().getResource(sName);
+						if(urlImage == null) {
+							throw new IOException("Could not find " + sName);
+						}
+						return ImageIO.read(urlImage);
+					} catch(IOException e) {
+						System.out.println("Could not load " + sName + ": " + e);
+						return null;
+					}
+				}));
+	}
+
+	/**
+	 * Gets a sound clip. The clip can be used right away, but it stays silent
+	 * until it has been decoded.
+	 * @param sFilename The name of the file.
+	 * @return The clip.
+	 */
+	public SoundClip getSound(String sFilename) {
+		loadSound(sFilename);
+		return mapSounds.get(sFilename);
+	}
+
+	/**
+	 * Gets the pending decoding of a sound clip.
+	 * @param sFilename The name of the file.
+	 * @return The pending clip.
+	 */
+	public Future<SoundClip> getSoundFuture(String sFilename) {
+		return loadSound(sFilename);
+	}
+
+	/**
+	 * Gets the pending decoding of an image.
+	 * @param sFilename The name of the file.
+	 * @return The pending image.
+	 */
+	public Future<BufferedImage> getImageFuture(String sFilename) {
+		return loadImage(sFilename);
+	}
+
+	/**
+	 * Gets an image without waiting for it. Meant for painting, where a
+	 * missing image is simply not drawn.
+	 * @param sFilename The name of the file.
+	 * @return The image, or null if it hasn't been decoded (or failed to).
+	 */
+	public BufferedImage getImage(String sFilename) {
+		Future<BufferedImage> futImage = loadImage(sFilename);
+		if(!futImage.isDone()) {
+			return null;
+		}
+		return await(futImage);
+	}
+
+	/**
+	 * Checks whether or not every asset needed to play a game is ready.
+	 * @return Whether or not a game can start without waiting.
+	 */
+	public boolean isCriticalReady() {
+		for(String sImage : sIMAGES) {
+			if(!loadImage(sImage).isDone()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Waits until every asset needed to play a game has been loaded.
+	 */
+	public void awaitCritical() {
+		for(String sImage : sIMAGES) {
+			await(loadImage(sImage));
+		}
+	}
+
+	/**
+	 * Waits for an asset.
+	 * @param futAsset The pending asset.
+	 * @param <T> The type of asset.
+	 * @return The asset, or null if it could not be loaded.
+	 */
+	private static <T> T await(Future<T> futAsset) {
+		try {
+			return futAsset.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch(ExecutionException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+}
@@ -0,0 +1,490 @@
+package tetris;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * AudioMixer
+ *
+ * Software mixer that sums every active sound effect and the music track
+ * into a single {@code SourceDataLine}. The line is fed from a dedicated
+ * high priority audio thread, and the game only talks to that thread through
+ * a lock-free command queue, so triggering a sound never blocks the game loop
+ * and only one native line is ever opened.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class AudioMixer implements Runnable {
+
+	/**
+	 * The sample rate every voice is mixed at.
+	 */
+	public static final float fSAMPLE_RATE = 44100.0f;
+
+	/**
+	 * The number of output channels. Mono sources are duplicated to both.
+	 */
+	public static final int iCHANNELS = 2;
+
+	/**
+	 * The number of bytes in a single output frame (16 bit samples).
+	 */
+	public static final int iFRAME_SIZE = iCHANNELS * 2;
+
+	/**
+	 * The format the output line is opened with.
+	 */
+	public static final AudioFormat audFORMAT =
+			new AudioFormat(fSAMPLE_RATE, 16, iCHANNELS, true, false);
+
+	/**
+	 * The value used to request that a voice loops until stopped, the same
+	 * value used by {@code Clip.LOOP_CONTINUOUSLY}.
+	 */
+	public static final int iLOOP_CONTINUOUSLY = -1;
+
+	/**
+	 * The maximum number of voices that can sound at the same time.
+	 */
+	public static final int iMAX_VOICES = 16;
+
+	/**
+	 * The number of frames mixed on each pass of the audio thread
+	 * (~11.6 ms at 44.1 kHz).
+	 */
+	private static final int iCHUNK_FRAMES = 512;
+
+	/**
+	 * The number of chunks the line buffers. Together with the chunk size
+	 * this fixes the output latency at ~46 ms.
+	 */
+	private static final int iLINE_CHUNKS = 4;
+
+	/**
+	 * Command that starts (or restarts) a voice.
+	 */
+	private static final int iCMD_PLAY = 0;
+
+	/**
+	 * Command that stops a voice.
+	 */
+	private static final int iCMD_STOP = 1;
+
+	/**
+	 * Command that changes the gain of a voice.
+	 */
+	private static final int iCMD_GAIN = 2;
+
+	/**
+	 * The single mixer instance, created on first use.
+	 */
+	private static AudioMixer mixInstance;
+
+	/**
+	 * The line every voice is mixed into, or null if no line could be opened.
+	 */
+	private SourceDataLine sdlLine;
+
+	/**
+	 * Commands sent from the game to the audio thread.
+	 */
+	private final ConcurrentLinkedQueue<Command> queCommands;
+
+	/**
+	 * The voice slots. Only ever touched by the audio thread.
+	 */
+	private final Voice[] vVoices;
+
+	/**
+	 * Creates the mixer and opens the output line.
+	 */
+	private AudioMixer() {
+		this.queCommands = new ConcurrentLinkedQueue<>();
+		this.vVoices = new Voice[iMAX_VOICES];
+		for(int i = 0; i < iMAX_VOICES; i++) {
+			vVoices[i] = new Voice();
+		}
+		try {
+			sdlLine = AudioSystem.getSourceDataLine(audFORMAT);
+			sdlLine.open(audFORMAT, iCHUNK_FRAMES * iFRAME_SIZE * iLINE_CHUNKS);
+			sdlLine.start();
+		} catch(LineUnavailableException | IllegalArgumentException e) {
+			System.out.println("Could not open the audio line: " + e);
+			sdlLine = null;
+		}
+	}
+
+	/**
+	 * Gets the mixer, opening the output line and starting the audio thread
+	 * the first time it is called.
+	 * @return The mixer instance.
+	 */
+	public static synchronized AudioMixer getInstance() {
+		if(mixInstance == null) {
+			mixInstance = new AudioMixer();
+			if(mixInstance.sdlLine != null) {
+				Thread thrAudio = new Thread(mixInstance, "Audio Mixer");
+				thrAudio.setDaemon(true);
+				thrAudio.setPriority(Thread.MAX_PRIORITY);
+				thrAudio.start();
+			}
+		}
+		return mixInstance;
+	}
+
+	/**
+	 * Starts playing a sample. If the owner already has a voice sounding it
+	 * is restarted from the beginning.
+	 * @param oOwner The object the voice belongs to.
+	 * @param sSamples The interleaved stereo samples to play.
+	 * @param fGain The gain to play the samples with.
+	 * @param iLoops How many extra times to play the samples, or
+	 *               {@code iLOOP_CONTINUOUSLY}.
+	 */
+	public void play(Object oOwner, short[] sSamples, float fGain, int iLoops) {
+		send(new Command(iCMD_PLAY, oOwner, sSamples, null, fGain, iLoops));
+	}
+
+	/**
+	 * Starts playing a stream. If the owner already has a voice sounding it
+	 * is replaced by the stream.
+	 * @param oOwner The object the voice belongs to.
+	 * @param bufStream The buffer the stream is read into.
+	 * @param fGain The gain to play the stream with.
+	 */
+	public void playStream(Object oOwner, MusicStream.StreamBuffer bufStream, float fGain) {
+		send(new Command(iCMD_PLAY, oOwner, null, bufStream, fGain, 0));
+	}
+
+	/**
+	 * Stops the voice that belongs to the owner, if any.
+	 * @param oOwner The object the voice belongs to.
+	 */
+	public void stop(Object oOwner) {
+		send(new Command(iCMD_STOP, oOwner, null, null, 0.0f, 0));
+	}
+
+	/**
+	 * Changes the gain of the voice that belongs to the owner, if any.
+	 * @param oOwner The object the voice belongs to.
+	 * @param fGain The new gain.
+	 */
+	public void setGain(Object oOwner, float fGain) {
+		send(new Command(iCMD_GAIN, oOwner, null, null, fGain, 0));
+	}
+
+	/**
+	 * Queues a command for the audio thread. Commands are dropped when there
+	 * is no line to play them on.
+	 * @param comCommand The command.
+	 */
+	private void send(Command comCommand) {
+		if(sdlLine != null) {
+			queCommands.offer(comCommand);
+		}
+	}
+
+	/**
+	 * The audio thread. Applies the pending commands, mixes one chunk of
+	 * every active voice and hands it to the line. The blocking write is
+	 * what paces the loop.
+	 */
+	@Override
+	public void run() {
+		int[] iAccumulator = new int[iCHUNK_FRAMES * iCHANNELS];
+		byte[] bytOutput = new byte[iCHUNK_FRAMES * iFRAME_SIZE];
+		while(true) {
+			applyCommands();
+			Arrays.fill(iAccumulator, 0);
+			for(Voice vVoice : vVoices) {
+				if(vVoice.oOwner != null) {
+					mixVoice(vVoice, iAccumulator);
+				}
+			}
+
+			/*
+			 * Clamp the sum back into 16 bits and write it little endian.
+			 */
+			for(int i = 0; i < iAccumulator.length; i++) {
+				int iSample = iAccumulator[i];
+				if(iSample > Short.MAX_VALUE) {
+					iSample = Short.MAX_VALUE;
+				} else if(iSample < Short.MIN_VALUE) {
+					iSample = Short.MIN_VALUE;
+				}
+				bytOutput[i << 1] = (byte) iSample;
+				bytOutput[(i << 1) + 1] = (byte) (iSample >> 8);
+			}
+			sdlLine.write(bytOutput, 0, bytOutput.length);
+		}
+	}
+
+	/**
+	 * Applies every command sent since the last chunk.
+	 */
+	private void applyCommands() {
+		Command comCommand;
+		while((comCommand = queCommands.poll()) != null) {
+			Voice vVoice = findVoice(comCommand.oOwner);
+			switch(comCommand.iType) {
+				case iCMD_PLAY:
+					if(vVoice == null) {
+						vVoice = findVoice(null);
+					}
+					// Every slot is busy, so this sound is skipped
+					if(vVoice == null) {
+						break;
+					}
+					vVoice.oOwner = comCommand.oOwner;
+					vVoice.sSamples = comCommand.sSamples;
+					vVoice.bufStream = comCommand.bufStream;
+					vVoice.fGain = comCommand.fGain;
+					vVoice.iLoops = comCommand.iLoops;
+					vVoice.iPosition = 0;
+					break;
+				case iCMD_STOP:
+					if(vVoice != null) {
+						vVoice.release();
+					}
+					break;
+				case iCMD_GAIN:
+					if(vVoice != null) {
+						vVoice.fGain = comCommand.fGain;
+					}
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Finds the voice that belongs to an owner.
+	 * @param oOwner The owner, or null to find a free voice.
+	 * @return The voice, or null if there is none.
+	 */
+	private Voice findVoice(Object oOwner) {
+		for(Voice vVoice : vVoices) {
+			if(vVoice.oOwner == oOwner) {
+				return vVoice;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds one chunk of a voice to the accumulator, wrapping around while the
+	 * voice still has loops left and releasing it once it is done.
+	 * @param vVoice The voice to mix.
+	 * @param iAccumulator The chunk being mixed.
+	 */
+	private void mixVoice(Voice vVoice, int[] iAccumulator) {
+		if(vVoice.bufStream != null) {
+			vVoice.bufStream.mixInto(iAccumulator, 0, iAccumulator.length, vVoice.fGain);
+			if(vVoice.bufStream.isDrained()) {
+				vVoice.release();
+			}
+			return;
+		}
+		short[] sSamples = vVoice.sSamples;
+		if(sSamples == null || sSamples.length == 0) {
+			vVoice.release();
+			return;
+		}
+		int iOut = 0;
+		while(iOut < iAccumulator.length) {
+			int iCount = Math.min(iAccumulator.length - iOut,
+								  sSamples.length - vVoice.iPosition);
+			float fGain = vVoice.fGain;
+			for(int i = 0; i < iCount; i++) {
+				iAccumulator[iOut + i] += (int) (sSamples[vVoice.iPosition + i] * fGain);
+			}
+			iOut += iCount;
+			vVoice.iPosition += iCount;
+
+			if(vVoice.iPosition >= sSamples.length) {
+				if(vVoice.iLoops == 0) {
+					vVoice.release();
+					return;
+				}
+				if(vVoice.iLoops > 0) {
+					vVoice.iLoops--;
+				}
+				vVoice.iPosition = 0;
+			}
+		}
+	}
+
+	/**
+	 * Decodes a whole stream into interleaved stereo samples at the mixer's
+	 * rate.
+	 * @param auiSource The stream to decode.
+	 * @return The samples.
+	 * @throws IOException If the stream can't be read or converted.
+	 */
+	public static short[] decode(AudioInputStream auiSource) throws IOException {
+		AudioInputStream auiPcm = toMixerRate(auiSource);
+		int iChannels = auiPcm.getFormat().getChannels();
+		ByteArrayOutputStream bayBytes = new ByteArrayOutputStream();
+		byte[] bytBuffer = new byte[8192];
+		int iRead;
+		while((iRead = auiPcm.read(bytBuffer)) > 0) {
+			bayBytes.write(bytBuffer, 0, iRead);
+		}
+		auiPcm.close();
+		byte[] bytPcm = bayBytes.toByteArray();
+		short[] sSamples = new short[bytPcm.length / (2 * iChannels) * iCHANNELS];
+		toStereo(bytPcm, bytPcm.length, iChannels, sSamples, 0);
+		return sSamples;
+	}
+
+	/**
+	 * Converts a stream to signed little endian 16 bit samples at the mixer's
+	 * rate, keeping its channel count.
+	 * @param auiSource The stream to convert.
+	 * @return The converted stream.
+	 * @throws IOException If the conversion is not supported.
+	 */
+	public static AudioInputStream toMixerRate(AudioInputStream auiSource) throws IOException {
+		AudioFormat audSource = auiSource.getFormat();
+		AudioFormat audTarget = new AudioFormat(fSAMPLE_RATE, 16,
+												audSource.getChannels(), true, false);
+		if(audSource.matches(audTarget)) {
+			return auiSource;
+		}
+		try {
+			return AudioSystem.getAudioInputStream(audTarget, auiSource);
+		} catch(IllegalArgumentException e) {
+			throw new IOException("Unsupported audio format " + audSource, e);
+		}
+	}
+
+	/**
+	 * Converts little endian 16 bit PCM bytes into interleaved stereo samples.
+	 * Mono is duplicated to both channels and any channel past the second is
+	 * dropped.
+	 * @param bytPcm The PCM bytes.
+	 * @param iLength The number of valid bytes.
+	 * @param iChannels The number of channels in the bytes.
+	 * @param sOut The samples to write to.
+	 * @param iOffset The index of the first sample to write.
+	 * @return The number of samples written.
+	 */
+	public static int toStereo(byte[] bytPcm, int iLength, int iChannels,
+							   short[] sOut, int iOffset) {
+		int iFrameBytes = 2 * iChannels;
+		int iOut = iOffset;
+		for(int i = 0; i + iFrameBytes <= iLength; i += iFrameBytes) {
+			short sLeft = (short) ((bytPcm[i] & 0xFF) | (bytPcm[i + 1] << 8));
+			short sRight = sLeft;
+			if(iChannels > 1) {
+				sRight = (short) ((bytPcm[i + 2] & 0xFF) | (bytPcm[i + 3] << 8));
+			}
+			sOut[iOut++] = sLeft;
+			sOut[iOut++] = sRight;
+		}
+		return iOut - iOffset;
+	}
+
+	/**
+	 * Command
+	 *
+	 * A request from the game to the audio thread.
+	 */
+	private static final class Command {
+		/**
+		 * The kind of command.
+		 */
+		private final int iType;
+
+		/**
+		 * The owner of the voice the command applies to.
+		 */
+		private final Object oOwner;
+
+		/**
+		 * The samples to play.
+		 */
+		private final short[] sSamples;
+
+		/**
+		 * The stream to play.
+		 */
+		private final MusicStream.StreamBuffer bufStream;
+
+		/**
+		 * The gain to use.
+		 */
+		private final float fGain;
+
+		/**
+		 * The number of loops to play.
+		 */
+		private final int iLoops;
+
+		private Command(int iType, Object oOwner, short[] sSamples,
+						MusicStream.StreamBuffer bufStream, float fGain, int iLoops) {
+			this.iType = iType;
+			this.oOwner = oOwner;
+			this.sSamples = sSamples;
+			this.bufStream = bufStream;
+			this.fGain = fGain;
+			this.iLoops = iLoops;
+		}
+	}
+
+	/**
+	 * Voice
+	 *
+	 * A slot of the mixer that plays a single sound.
+	 */
+	private static final class Voice {
+		/**
+		 * The owner of the voice, null while the slot is free.
+		 */
+		private Object oOwner;
+
+		/**
+		 * The interleaved stereo samples being played.
+		 */
+		private short[] sSamples;
+
+		/**
+		 * The stream being played, used instead of the samples.
+		 */
+		private MusicStream.StreamBuffer bufStream;
+
+		/**
+		 * The index of the next sample to play.
+		 */
+		private int iPosition;
+
+		/**
+		 * The remaining loops.
+		 */
+		private int iLoops;
+
+		/**
+		 * The gain the samples are scaled by.
+		 */
+		private float fGain;
+
+		/**
+		 * Frees the slot.
+		 */
+		private void release() {
+			this.oOwner = null;
+			this.sSamples = null;
+			this.bufStream = null;
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package tetris;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+
+/**
+ * BattlePanel
+ *
+ * Draws the board of every player of a battle side by side in a single
+ * paint, with the score, the next piece and the garbage waiting to come in
+ * next to each board. All the boards share one BoardRenderer.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class BattlePanel extends JPanel {
+
+	/**
+	 * Serial Version UID.
+	 */
+	private static final long serialVersionUID = -3165927170468385719L;
+
+	/**
+	 * The width of the border around each board.
+	 */
+	private static final int iBORDER_WIDTH = 10;
+
+	/**
+	 * The height of the stats above each board.
+	 */
+	private static final int iHEADER_HEIGHT = 40;
+
+	/**
+	 * The width of the next piece preview to the right of each board.
+	 */
+	private static final int iPREVIEW_WIDTH = 60;
+
+	/**
+	 * The width of the board itself.
+	 */
+	private static final int iBOARD_WIDTH = Board.iCOL_COUNT * BoardPanel.iTILE_SIZE;
+
+	/**
+	 * The height of the board itself.
+	 */
+	private static final int iBOARD_HEIGHT = Board.iVISIBLE_ROW_COUNT * BoardPanel.iTILE_SIZE;
+
+	/**
+	 * The width taken by each player.
+	 */
+	private static final int iSLOT_WIDTH = iBORDER_WIDTH * 2 + iBOARD_WIDTH + iPREVIEW_WIDTH;
+
+	/**
+	 * The width of the bar that shows the pending garbage.
+	 */
+	private static final int iGARBAGE_BAR_WIDTH = 4;
+
+	/**
+	 * The scale the next piece is drawn at.
+	 */
+	private static final double dPREVIEW_SCALE = 0.5;
+
+	/**
+	 * The large font.
+	 */
+	private static final Font fonLARGE_FONT = new Font("Tahoma", Font.BOLD, 28);
+
+	/**
+	 * The small font.
+	 */
+	private static final Font fonSMALL_FONT = new Font("Dialog", Font.BOLD, 11);
+
+	/**
+	 * The color to draw the stats in.
+	 */
+	private static final Color colDRAW_COLOR = new Color(173, 255, 255);
+
+	/**
+	 * The color of the pending garbage bar.
+	 */
+	private static final Color colGARBAGE_COLOR = new Color(220, 40, 40);
+
+	/**
+	 * The Tetris instance.
+	 */
+	private Tetris tetTetris;
+
+	/**
+	 * Draws every board.
+	 */
+	private BoardRenderer renRenderer;
+
+	/**
+	 * Creates a new BattlePanel sized for every player of the game.
+	 * @param tetTetris The Tetris instance to use.
+	 */
+	public BattlePanel(Tetris tetTetris) {
+		this.tetTetris = tetTetris;
+		this.renRenderer = new BoardRenderer();
+		int iPlayers = tetTetris.getEngines().length;
+		setPreferredSize(new Dimension(iSLOT_WIDTH * iPlayers,
+				iHEADER_HEIGHT + iBOARD_HEIGHT + iBORDER_WIDTH * 2));
+		setBackground(Color.BLACK);
+	}
+
+	@Override
+	public void paintComponent(Graphics graGraphics) {
+		GameEvents.FramePaint evtPaint = new GameEvents.FramePaint();
+		evtPaint.begin();
+		long lPaintStart = System.nanoTime();
+		super.paintComponent(graGraphics);
+		//Move everything by the current screen shake offset.
+		ShakeFrame shaShaker = tetTetris.getShaker();
+		graGraphics.translate(shaShaker.getXOffset(), shaShaker.getYOffset());
+
+		GameEngine[] engEngines = tetTetris.getEngines();
+		for(int iPlayer = 0; iPlayer < engEngines.length; iPlayer++) {
+			int iX = iPlayer * iSLOT_WIDTH + iBORDER_WIDTH;
+			graGraphics.translate(iX, iHEADER_HEIGHT);
+			drawPlayer(graGraphics, engEngines[iPlayer], iPlayer);
+			graGraphics.translate(-iX, -iHEADER_HEIGHT);
+		}
+
+		/*
+		 * Draw the messages that apply to the whole battle across the middle.
+		 */
+		if(tetTetris.isPaused()) {
+			drawCentered(graGraphics, "PAUSED", null);
+		} else if(tetTetris.isNewGame()) {
+			drawCentered(graGraphics, "BATTLE", "Press Enter to Play");
+		} else if(tetTetris.isGameOver()) {
+			drawCentered(graGraphics, getWinner(engEngines), "Press Enter to Play Again");
+		}
+		Metrics.latPAINT.recordSince(lPaintStart);
+		evtPaint.commit();
+	}
+
+	/**
+	 * Draws the board and stats of one player, with the top left corner of
+	 * the board at the origin.
+	 * @param graGraphics The graphics object.
+	 * @param engGame The game of the player.
+	 * @param iPlayer The index of the player.
+	 */
+	private void drawPlayer(Graphics graGraphics, GameEngine engGame, int iPlayer) {
+		graGraphics.setFont(fonSMALL_FONT);
+		graGraphics.setColor(colDRAW_COLOR);
+		graGraphics.drawString("P" + (iPlayer + 1) + "  Score: " + engGame.getScore(),
+							   0, -iHEADER_HEIGHT / 2);
+		graGraphics.drawString("Lines: " + engGame.getLines(), 0, -4);
+
+		if(!tetTetris.isNewGame()) {
+			renRenderer.paintBoard(graGraphics, engGame);
+			drawNextPiece(graGraphics, engGame.getNextPieceType());
+		}
+
+		/*
+		 * The garbage waiting to come in is shown as a bar along the left
+		 * edge of the board, one tile high per row.
+		 */
+		int iPending = engGame.getPendingGarbage() * BoardPanel.iTILE_SIZE;
+		if(iPending > 0) {
+			graGraphics.setColor(colGARBAGE_COLOR);
+			graGraphics.fillRect(-iGARBAGE_BAR_WIDTH - 2, iBOARD_HEIGHT - iPending,
+								 iGARBAGE_BAR_WIDTH, iPending);
+		}
+		renRenderer.paintOutline(graGraphics, engGame.getBoard());
+
+		if(engGame.isGameOver() && !tetTetris.isGameOver()) {
+			graGraphics.setFont(fonLARGE_FONT);
+			graGraphics.setColor(Color.WHITE);
+			String msg = "K.O.";
+			graGraphics.drawString(msg,
+					(iBOARD_WIDTH - graGraphics.getFontMetrics().stringWidth(msg)) / 2,
+					iBOARD_HEIGHT / 2);
+		}
+	}
+
+	/**
+	 * Draws the next piece of a player to the right of its board, at half
+	 * the size of the board tiles.
+	 * @param graGraphics The graphics object.
+	 * @param tilType The next piece, or null.
+	 */
+	private void drawNextPiece(Graphics graGraphics, TileType tilType) {
+		if(tilType == null) {
+			return;
+		}
+		Graphics2D g2d = (Graphics2D) graGraphics;
+		AffineTransform atrSaved = g2d.getTransform();
+		g2d.translate(iBOARD_WIDTH + iBORDER_WIDTH, 0);
+		g2d.scale(dPREVIEW_SCALE, dPREVIEW_SCALE);
+		int iTop = tilType.getTopInset(0);
+		int iLeft = tilType.getLeftInset(0);
+		for(int iRow = 0; iRow < tilType.getDimension(); iRow++) {
+			for(int iCol = 0; iCol < tilType.getDimension(); iCol++) {
+				if(tilType.isTile(iCol, iRow, 0)) {
+					renRenderer.drawTile(tilType,
+										 (iCol - iLeft) * BoardPanel.iTILE_SIZE,
+										 (iRow - iTop) * BoardPanel.iTILE_SIZE,
+										 g2d);
+				}
+			}
+		}
+		g2d.setTransform(atrSaved);
+	}
+
+	/**
+	 * Works out the message shown when the battle is over.
+	 * @param engEngines The games of every player.
+	 * @return The message.
+	 */
+	private static String getWinner(GameEngine[] engEngines) {
+		for(int iPlayer = 0; iPlayer < engEngines.length; iPlayer++) {
+			if(!engEngines[iPlayer].isGameOver()) {
+				return "P" + (iPlayer + 1) + " WINS";
+			}
+		}
+		return "DRAW";
+	}
+
+	/**
+	 * Draws a message in the middle of the panel, with a light gray shadow.
+	 * @param graGraphics The graphics object.
+	 * @param sTitle The main message.
+	 * @param sSubtitle The smaller message below it, or null.
+	 */
+	private void drawCentered(Graphics graGraphics, String sTitle, String sSubtitle) {
+		int iCenterX = getWidth() / 2;
+		int iCenterY = iHEADER_HEIGHT + iBOARD_HEIGHT / 2;
+		graGraphics.setFont(fonLARGE_FONT);
+		int iWidth = graGraphics.getFontMetrics().stringWidth(sTitle);
+		graGraphics.setColor(Color.LIGHT_GRAY);
+		graGraphics.drawString(sTitle, iCenterX - iWidth / 2, iCenterY + 2);
+		graGraphics.setColor(Color.WHITE);
+		graGraphics.drawString(sTitle, iCenterX - iWidth / 2, iCenterY);
+		if(sSubtitle != null) {
+			graGraphics.setFont(fonSMALL_FONT);
+			iWidth = graGraphics.getFontMetrics().stringWidth(sSubtitle);
+			graGraphics.drawString(sSubtitle, iCenterX - iWidth / 2, iCenterY + 40);
+		}
+	}
+}
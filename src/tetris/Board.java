@@ -0,0 +1,500 @@
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ * Board
+ *
+ * The grid of locked tiles of one game, without anything to do with how it
+ * is drawn, so that it can be used by engines that have no window. Boards
+ * can be of any size up to 64 columns and a thousand rows. Besides the
+ * tiles, the occupancy of each row is kept in a single {@code long}, so
+ * that collisions and full lines are tested a whole row at a time however
+ * wide the board is, and the tiles of a row are only looked at when the row
+ * has any. Rows are moved around by moving the row arrays themselves, so
+ * clearing lines and adding garbage never copy a board cell by cell.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class Board {
+
+	/**
+	 * The number of columns on a standard board.
+	 */
+	public static final int iCOL_COUNT = 10;
+
+	/**
+	 * The number of visible rows on a standard board.
+	 */
+	public static final int iVISIBLE_ROW_COUNT = 20;
+
+	/**
+	 * The number of rows that are hidden from view.
+	 */
+	public static final int iHIDDEN_ROW_COUNT = 2;
+
+	/**
+	 * The total number of rows that a standard board contains.
+	 */
+	public static final int iROW_COUNT = iVISIBLE_ROW_COUNT + iHIDDEN_ROW_COUNT;
+
+	/**
+	 * The fewest columns or visible rows a board can have, enough for any
+	 * piece to spawn and turn.
+	 */
+	public static final int iMIN_SIZE = 4;
+
+	/**
+	 * The most columns a board can have, one per bit of a row mask.
+	 */
+	public static final int iMAX_COL_COUNT = Long.SIZE;
+
+	/**
+	 * The most visible rows a board can have.
+	 */
+	public static final int iMAX_VISIBLE_ROW_COUNT = 1000;
+
+	/**
+	 * The number of columns on the board.
+	 */
+	private final int iColCount;
+
+	/**
+	 * The number of visible rows on the board.
+	 */
+	private final int iVisibleRowCount;
+
+	/**
+	 * The total number of rows that the board contains.
+	 */
+	private final int iRowCount;
+
+	/**
+	 * The row mask of a row in which every column is occupied.
+	 */
+	private final long lFullRow;
+
+	/**
+	 * The tiles that make up the board.
+	 */
+	private TileType[][] tilTile;
+
+	/**
+	 * The occupancy of each row of the board, with bit {@code n} set when
+	 * column {@code n} is occupied. Kept in step with the tiles so that
+	 * collisions can be tested a whole row at a time.
+	 */
+	private final long[] lRowBits;
+
+	/**
+	 * Holds the rows pushed out of the top by garbage while they are moved
+	 * to the bottom.
+	 */
+	private final TileType[][] tilScratch;
+
+	/**
+	 * The rows removed by the last {@code checkLines}, from the top down,
+	 * numbered as they were before anything moved.
+	 */
+	private final int[] iClearedRows;
+
+	/**
+	 * The number of rows removed by the last {@code checkLines}.
+	 */
+	private int iClearedCount;
+
+	/**
+	 * The tiles of the rows removed by the last {@code checkLines}, in the
+	 * same order, so that they can still be drawn while they disappear.
+	 * Each row is made the first time it is needed and reused after that.
+	 */
+	private final TileType[][] tilClearedTiles;
+
+	/**
+	 * Creates a new, empty board of the standard size.
+	 */
+	public Board() {
+		this(iCOL_COUNT, iVISIBLE_ROW_COUNT);
+	}
+
+	/**
+	 * Creates a new, empty board.
+	 * @param iColCount The number of columns, from {@code iMIN_SIZE} to
+	 *                  {@code iMAX_COL_COUNT}.
+	 * @param iVisibleRowCount The number of visible rows, from
+	 *                         {@code iMIN_SIZE} to
+	 *                         {@code iMAX_VISIBLE_ROW_COUNT}.
+	 * @throws IllegalArgumentException If the board would be too small or
+	 *                                  too big.
+	 */
+	public Board(int iColCount, int iVisibleRowCount) {
+		if(iColCount < iMIN_SIZE || iColCount > iMAX_COL_COUNT
+				|| iVisibleRowCount < iMIN_SIZE || iVisibleRowCount > iMAX_VISIBLE_ROW_COUNT) {
+			throw new IllegalArgumentException("A board can't be " + iColCount + " by "
+					+ iVisibleRowCount);
+		}
+		this.iColCount = iColCount;
+		this.iVisibleRowCount = iVisibleRowCount;
+		this.iRowCount = iVisibleRowCount + iHIDDEN_ROW_COUNT;
+		this.lFullRow = -1L >>> (Long.SIZE - iColCount);
+		this.tilTile = new TileType[iRowCount][iColCount];
+		this.lRowBits = new long[iRowCount];
+		this.tilScratch = new TileType[iRowCount][];
+		this.iClearedRows = new int[iRowCount];
+		this.tilClearedTiles = new TileType[iRowCount][];
+	}
+
+	/**
+	 * Creates a new board sized by the {@code tetris.cols} and
+	 * {@code tetris.rows} (visible rows) system properties, using the
+	 * standard size for the ones that aren't set. Sizes out of range are
+	 * brought within it.
+	 * @return The board.
+	 */
+	public static Board fromSystemProperties() {
+		int iCols = Integer.getInteger("tetris.cols", iCOL_COUNT);
+		int iRows = Integer.getInteger("tetris.rows", iVISIBLE_ROW_COUNT);
+		return new Board(Math.max(iMIN_SIZE, Math.min(iMAX_COL_COUNT, iCols)),
+						 Math.max(iMIN_SIZE, Math.min(iMAX_VISIBLE_ROW_COUNT, iRows)));
+	}
+
+	/**
+	 * Gets the number of columns on the board.
+	 * @return The number of columns.
+	 */
+	public int getColCount() {
+		return iColCount;
+	}
+
+	/**
+	 * Gets the number of visible rows on the board.
+	 * @return The number of visible rows.
+	 */
+	public int getVisibleRowCount() {
+		return iVisibleRowCount;
+	}
+
+	/**
+	 * Gets the total number of rows that the board contains, hidden ones
+	 * included.
+	 * @return The number of rows.
+	 */
+	public int getRowCount() {
+		return iRowCount;
+	}
+
+	/**
+	 * Checks whether or not the board is of the standard size.
+	 * @return Whether or not the board is 10 by 20.
+	 */
+	public boolean isStandard() {
+		return iColCount == iCOL_COUNT && iVisibleRowCount == iVISIBLE_ROW_COUNT;
+	}
+
+	/**
+	 * Resets the board and clears away any tiles. Only the rows that have
+	 * tiles are touched.
+	 */
+	public void clear() {
+		for(int iRow = 0; iRow < iRowCount; iRow++) {
+			if(lRowBits[iRow] != 0) {
+				Arrays.fill(tilTile[iRow], null);
+				lRowBits[iRow] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Determines whether or not a piece can be placed at the coordinates.
+	 * @param tileType THe type of piece to use.
+	 * @param iX The x coordinate of the piece.
+	 * @param iY The y coordinate of the piece.
+	 * @param iRotation The rotation of the piece.
+	 * @return Whether or not the position is valid.
+	 */
+	public boolean isValidAndEmpty(TileType tileType, int iX, int iY, int iRotation) {
+
+		//Ensure the piece is in a valid column.
+		if(iX < -tileType.getLeftInset(iRotation) || iX + tileType.getDimension() - tileType.getRightInset(iRotation) >= iColCount) {
+			return false;
+		}
+
+		//Ensure the piece is in a valid row.
+		if(iY < -tileType.getTopInset(iRotation) || iY + tileType.getDimension() - tileType.getBottomInset(iRotation) >= iRowCount) {
+			return false;
+		}
+
+		/*
+		 * Test every row of the piece against the same row of the board by
+		 * shifting the collision mask of the piece into place, and stop at the
+		 * first row that overlaps.
+		 *
+		 * Note: Shifting right for negative columns can't lose any tiles because
+		 * we've already checked to make sure the piece is in a valid location.
+		 */
+		int[] iMasks = tileType.getRowMasks(iRotation);
+		int iLastRow = tileType.getDimension() - tileType.getBottomInset(iRotation);
+		for(int iRow = tileType.getTopInset(iRotation); iRow <= iLastRow; iRow++) {
+			long lMask = iX >= 0 ? (long) iMasks[iRow] << iX : (long) iMasks[iRow] >>> -iX;
+			if((lRowBits[iY + iRow] & lMask) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a piece to the game board. Note: Doesn't check for existing pieces,
+	 * and will overwrite them if they exist.
+	 * @param tilType The type of piece to place.
+	 * @param iX The x coordinate of the piece.
+	 * @param iY The y coordinate of the piece.
+	 * @param iRotation The rotation of the piece.
+	 */
+	public void addPiece(TileType tilType, int iX, int iY, int iRotation) {
+		/*
+		 * Loop through every tile within the piece and add it
+		 * to the board only if the boolean that represents that
+		 * tile is set to true.
+		 */
+		for(int iCol = 0; iCol < tilType.getDimension(); iCol++) {
+			for(int iRow = 0; iRow < tilType.getDimension(); iRow++) {
+				if(tilType.isTile(iCol, iRow, iRotation)) {
+					setTile(iCol + iX, iRow + iY, tilType);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks the board to see if any lines have been cleared, and
+	 * removes them from the game.
+	 * @return The number of lines that were cleared.
+	 */
+	public int checkLines() {
+		iClearedCount = 0;
+
+		/*
+		 * Here we loop through every line and check it to see if
+		 * it's been cleared or not. If it has, we remember it and check
+		 * the next row.
+		 *
+		 * The checkLine function handles clearing the line and
+		 * shifting the rest of the board down for us.
+		 */
+		for(int iRow = 0; iRow < iRowCount; iRow++) {
+			if(checkLine(iRow)) {
+				iClearedRows[iClearedCount++] = iRow;
+			}
+		}
+		return iClearedCount;
+	}
+
+	/**
+	 * Checks whether or not {@code row} is full.
+	 * @param iLine The row to check.
+	 * @return Whether or not this row is full.
+	 */
+	private boolean checkLine(int iLine) {
+		/*
+		 * The row is only full if every column of its mask is set.
+		 */
+		if(lRowBits[iLine] != lFullRow) {
+			return false;
+		}
+
+		/*
+		 * Keep the tiles of the row before they are gone.
+		 */
+		if(tilClearedTiles[iClearedCount] == null) {
+			tilClearedTiles[iClearedCount] = new TileType[iColCount];
+		}
+		System.arraycopy(tilTile[iLine], 0, tilClearedTiles[iClearedCount], 0, iColCount);
+		removeLine(iLine);
+		return true;
+	}
+
+	/**
+	 * Removes a row as {@code checkLines} would have, so that a copy of the
+	 * board can follow the clears of the original. The rows of one clear
+	 * must be removed from the top down, as numbered before anything moved;
+	 * removing a row never moves the rows below it.
+	 * @param iRow The row to remove.
+	 */
+	public void clearRow(int iRow) {
+		if(iRow >= 0 && iRow < iRowCount) {
+			removeLine(iRow);
+		}
+	}
+
+	/**
+	 * Removes a row from the board.
+	 * @param iLine The row to remove.
+	 */
+	private void removeLine(int iLine) {
+		/*
+		 * Since the line is filled, we need to 'remove' it from the game.
+		 * To do this, every row above it moves down by one, and the emptied
+		 * row array is reused as the new top row.
+		 */
+		TileType[] tilCleared = tilTile[iLine];
+		System.arraycopy(tilTile, 0, tilTile, 1, iLine);
+		System.arraycopy(lRowBits, 0, lRowBits, 1, iLine);
+		Arrays.fill(tilCleared, null);
+		tilTile[0] = tilCleared;
+		lRowBits[0] = 0;
+	}
+
+	/**
+	 * Gets the number of rows removed by the last {@code checkLines}.
+	 * @return The number of rows.
+	 */
+	public int getClearedCount() {
+		return iClearedCount;
+	}
+
+	/**
+	 * Gets one of the rows removed by the last {@code checkLines}.
+	 * @param iIndex The index of the row, below {@code getClearedCount}.
+	 * @return The row, numbered as it was before anything moved. Rows
+	 *         come from the top down.
+	 */
+	public int getClearedRow(int iIndex) {
+		return iClearedRows[iIndex];
+	}
+
+	/**
+	 * Gets a tile of one of the rows removed by the last {@code checkLines},
+	 * as it was before the row was removed.
+	 * @param iIndex The index of the row, below {@code getClearedCount}.
+	 * @param iCol The column.
+	 * @return The tile.
+	 */
+	public TileType getClearedTile(int iIndex, int iCol) {
+		return tilClearedTiles[iIndex][iCol];
+	}
+
+	/**
+	 * Pushes garbage rows in from the bottom, moving the rest of the board
+	 * up. Every garbage row is full except for the hole.
+	 * @param iRows The number of rows to add.
+	 * @param iHoleCol The column left empty in every garbage row.
+	 * @return Whether or not any occupied row was pushed out of the top.
+	 */
+	public boolean addGarbage(int iRows, int iHoleCol) {
+		iRows = Math.min(iRows, iRowCount);
+		boolean bOverflow = false;
+		for(int iRow = 0; iRow < iRows; iRow++) {
+			bOverflow |= lRowBits[iRow] != 0;
+			tilScratch[iRow] = tilTile[iRow];
+		}
+
+		/*
+		 * Move every remaining row up and put the row arrays that fell off
+		 * the top back in at the bottom as the garbage.
+		 */
+		System.arraycopy(tilTile, iRows, tilTile, 0, iRowCount - iRows);
+		System.arraycopy(lRowBits, iRows, lRowBits, 0, iRowCount - iRows);
+		for(int i = 0; i < iRows; i++) {
+			int iRow = iRowCount - iRows + i;
+			TileType[] tilGarbage = tilScratch[i];
+			tilScratch[i] = null;
+			Arrays.fill(tilGarbage, TileType.TypeGarbage);
+			tilGarbage[iHoleCol] = null;
+			tilTile[iRow] = tilGarbage;
+			lRowBits[iRow] = lFullRow & ~(1L << iHoleCol);
+		}
+		return bOverflow;
+	}
+
+	/**
+	 * Checks to see if the tile is already occupied.
+	 * @param iX The x coordinate to check.
+	 * @param iY The y coordinate to check.
+	 * @return Whether or not the tile is occupied.
+	 */
+	public boolean isOccupied(int iX, int iY) {
+		return (lRowBits[iY] & (1L << iX)) != 0;
+	}
+
+	/**
+	 * Gets the occupancy of a row.
+	 * @param iY The row.
+	 * @return The row mask, with bit {@code n} set when column {@code n} is
+	 *         occupied.
+	 */
+	public long getRowBits(int iY) {
+		return lRowBits[iY];
+	}
+
+	/**
+	 * Sets a tile located at the desired column and row.
+	 * @param iX The column.
+	 * @param iY The row.
+	 * @param tilType The value to set to the tile to.
+	 */
+	private void setTile(int iX, int iY, TileType tilType) {
+		tilTile[iY][iX] = tilType;
+		if(tilType != null) {
+			lRowBits[iY] |= 1L << iX;
+		} else {
+			lRowBits[iY] &= ~(1L << iX);
+		}
+	}
+
+	/**
+	 * Gets a tile by it's column and row.
+	 * @param iX The column.
+	 * @param iY The row.
+	 * @return The tile.
+	 */
+	public TileType getTile(int iX, int iY) {
+		return this.tilTile[iY][iX];
+	}
+
+	/**
+	 * Gets how full the board is.
+	 * @return The fraction of cells that are occupied.
+	 */
+	public float getFillRatio() {
+		int iOccupied = 0;
+		for(int iRow = 0; iRow < iRowCount; iRow++) {
+			iOccupied += Long.bitCount(lRowBits[iRow]);
+		}
+		return (float) iOccupied / (iRowCount * iColCount);
+	}
+
+	/**
+	 * Gets the entire tile matrix tile.
+	 * @return The tile matrix.
+	 */
+	public TileType[][] getTiles() {
+		return this.tilTile;
+	}
+
+	/**
+	 * Sets the tile matrix
+	 * @param tilMat The tile matrix, of the size of the board.
+	 * @throws IllegalArgumentException If the matrix is of another size.
+	 */
+	public void setTiles(TileType[][] tilMat) {
+		if(tilMat.length != iRowCount || tilMat[0].length != iColCount) {
+			throw new IllegalArgumentException("The tiles don't fit a board of "
+					+ iColCount + " by " + iVisibleRowCount);
+		}
+		this.tilTile = tilMat;
+		/*
+		 * Rebuild the row masks from the new tiles.
+		 */
+		for(int iRow = 0; iRow < iRowCount; iRow++) {
+			lRowBits[iRow] = 0;
+			for(int iCol = 0; iCol < iColCount; iCol++) {
+				if(tilMat[iRow][iCol] != null) {
+					lRowBits[iRow] |= 1L << iCol;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,355 @@
+package tetris;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * BoardEvaluator
+ *
+ * Works out the features bots score boards by, for whole batches of boards
+ * held in a {@code BoardStore}. Rather than going cell by cell, the holes
+ * and transitions are counted on four rows at a time: each eight bytes of
+ * a stored board hold four sixteen-bit rows, so a shift by sixteen bits
+ * lines every row up with the one below it and a shift by one lines every
+ * cell up with the one to its right, and a single bit count covers all
+ * four rows. The rows past the bottom of a board are treated as full, so
+ * they act as the floor and add nothing to the counts.
+ *
+ * {@code evaluateScalar} works out the same features cell by cell, to check
+ * and measure the fast path against; {@code main} compares the two. An
+ * evaluator reuses its scratch space, so it must only be used by one thread.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class BoardEvaluator {
+
+	/**
+	 * Feature: the sum of the heights of the columns.
+	 */
+	public static final int iFEATURE_AGGREGATE_HEIGHT = 0;
+
+	/**
+	 * Feature: the height of the tallest column.
+	 */
+	public static final int iFEATURE_MAX_HEIGHT = 1;
+
+	/**
+	 * Feature: the sum of the differences in height of neighbouring columns.
+	 */
+	public static final int iFEATURE_BUMPINESS = 2;
+
+	/**
+	 * Feature: the number of empty cells with an occupied cell above them.
+	 */
+	public static final int iFEATURE_HOLES = 3;
+
+	/**
+	 * Feature: the number of times a row goes from occupied to empty or
+	 * back, the walls counting as occupied.
+	 */
+	public static final int iFEATURE_ROW_TRANSITIONS = 4;
+
+	/**
+	 * Feature: the number of times a column goes from occupied to empty or
+	 * back, the floor counting as occupied.
+	 */
+	public static final int iFEATURE_COLUMN_TRANSITIONS = 5;
+
+	/**
+	 * The number of features of a board.
+	 */
+	public static final int iFEATURE_COUNT = 6;
+
+	/**
+	 * One in the lowest bit of each of the four rows of a word.
+	 */
+	private static final long lLANES = 0x0001000100010001L;
+
+	/**
+	 * The store the boards are in.
+	 */
+	private final BoardStore stoBoards;
+
+	/**
+	 * The number of rows of the boards.
+	 */
+	private final int iRowCount;
+
+	/**
+	 * The number of columns of the boards.
+	 */
+	private final int iColCount;
+
+	/**
+	 * The number of words of each board.
+	 */
+	private final int iWordCount;
+
+	/**
+	 * Every column of the four rows of a word.
+	 */
+	private final long lFullLanes;
+
+	/**
+	 * The columns that have a column to their right, in each of the rows.
+	 */
+	private final long lInnerLanes;
+
+	/**
+	 * The first and last columns of each of the rows.
+	 */
+	private final long lEdgeLanes;
+
+	/**
+	 * The rows of each word that are past the bottom of the board, full.
+	 */
+	private final long[] lPadding;
+
+	/**
+	 * The height of each column of the board being evaluated.
+	 */
+	private final int[] iHeights;
+
+	/**
+	 * Creates a new evaluator.
+	 * @param stoBoards The store the boards are in.
+	 */
+	public BoardEvaluator(BoardStore stoBoards) {
+		this.stoBoards = stoBoards;
+		this.iRowCount = stoBoards.getRowCount();
+		this.iColCount = stoBoards.getColCount();
+		this.iWordCount = stoBoards.getWordCount();
+		int iFullRow = (1 << iColCount) - 1;
+		this.lFullLanes = iFullRow * lLANES;
+		this.lInnerLanes = (iFullRow >>> 1) * lLANES;
+		this.lEdgeLanes = (1 | 1 << (iColCount - 1)) * lLANES;
+		this.lPadding = new long[iWordCount];
+		for(int iRow = iRowCount; iRow < iWordCount * 4; iRow++) {
+			lPadding[iRow / 4] |= (long) iFullRow << (iRow % 4 * 16);
+		}
+		this.iHeights = new int[iColCount];
+	}
+
+	/**
+	 * Works out the features of a batch of boards.
+	 * @param iBoards The handles of the boards.
+	 * @param iFrom The index of the first handle to evaluate.
+	 * @param iCount The number of boards to evaluate.
+	 * @param iFeatures Where the features are stored, {@code iFEATURE_COUNT}
+	 *                  of them for each board, from the start of the array.
+	 */
+	public void evaluate(int[] iBoards, int iFrom, int iCount, int[] iFeatures) {
+		for(int iBoard = 0; iBoard < iCount; iBoard++) {
+			evaluate(iBoards[iFrom + iBoard], iFeatures, iBoard * iFEATURE_COUNT);
+		}
+	}
+
+	/**
+	 * Works out the features of a board four rows at a time.
+	 * @param iBoard The handle of the board.
+	 * @param iFeatures Where the features are stored.
+	 * @param iAt The index of the first feature.
+	 */
+	private void evaluate(int iBoard, int[] iFeatures, int iAt) {
+		Arrays.fill(iHeights, 0);
+		int iHoles = 0;
+		int iRowTransitions = 0;
+		int iColumnTransitions = 0;
+		long lCarry = 0;
+		long lWord = stoBoards.getWord(iBoard, 0) | lPadding[0];
+		for(int iWord = 0; iWord < iWordCount; iWord++) {
+			long lNext = iWord + 1 < iWordCount
+					? stoBoards.getWord(iBoard, iWord + 1) | lPadding[iWord + 1] : lFullLanes;
+
+			/*
+			 * Every row gets the columns occupied in it or in any row above
+			 * it, first within the word and then from the words before.
+			 */
+			long lCovered = lWord | lWord << 16;
+			lCovered |= lCovered << 32 | lCarry * lLANES;
+			long lAbove = lCovered << 16 | lCarry;
+
+			iHoles += Long.bitCount(~lWord & lAbove & lFullLanes);
+			iRowTransitions += Long.bitCount((lWord ^ lWord >>> 1) & lInnerLanes)
+					+ Long.bitCount(~lWord & lEdgeLanes);
+			iColumnTransitions += Long.bitCount((lWord ^ (lWord >>> 16 | lNext << 48)) & lFullLanes);
+
+			/*
+			 * The columns that are covered for the first time in this word
+			 * have their tops in it.
+			 */
+			long lTops = lCovered & ~lAbove & ~lPadding[iWord];
+			while(lTops != 0) {
+				int iBit = Long.numberOfTrailingZeros(lTops);
+				iHeights[iBit & 15] = iRowCount - (iWord * 4 + (iBit >>> 4));
+				lTops &= lTops - 1;
+			}
+			lCarry = lCovered >>> 48;
+			lWord = lNext;
+		}
+		iFeatures[iAt + iFEATURE_HOLES] = iHoles;
+		iFeatures[iAt + iFEATURE_ROW_TRANSITIONS] = iRowTransitions;
+		iFeatures[iAt + iFEATURE_COLUMN_TRANSITIONS] = iColumnTransitions;
+		heightFeatures(iFeatures, iAt);
+	}
+
+	/**
+	 * Works out the features of a batch of boards cell by cell.
+	 * @param iBoards The handles of the boards.
+	 * @param iFrom The index of the first handle to evaluate.
+	 * @param iCount The number of boards to evaluate.
+	 * @param iFeatures Where the features are stored, {@code iFEATURE_COUNT}
+	 *                  of them for each board, from the start of the array.
+	 */
+	public void evaluateScalar(int[] iBoards, int iFrom, int iCount, int[] iFeatures) {
+		for(int iBoard = 0; iBoard < iCount; iBoard++) {
+			evaluateScalar(iBoards[iFrom + iBoard], iFeatures, iBoard * iFEATURE_COUNT);
+		}
+	}
+
+	/**
+	 * Works out the features of a board cell by cell.
+	 * @param iBoard The handle of the board.
+	 * @param iFeatures Where the features are stored.
+	 * @param iAt The index of the first feature.
+	 */
+	private void evaluateScalar(int iBoard, int[] iFeatures, int iAt) {
+		Arrays.fill(iHeights, 0);
+		int iHoles = 0;
+		int iRowTransitions = 0;
+		int iColumnTransitions = 0;
+		for(int iRow = 0; iRow < iRowCount; iRow++) {
+			int iBits = stoBoards.getRow(iBoard, iRow);
+			int iBelow = iRow + 1 < iRowCount ? stoBoards.getRow(iBoard, iRow + 1) : -1;
+			boolean bLeftOccupied = true;
+			for(int iCol = 0; iCol < iColCount; iCol++) {
+				boolean bOccupied = (iBits >>> iCol & 1) != 0;
+				if(bOccupied != bLeftOccupied) {
+					iRowTransitions++;
+				}
+				bLeftOccupied = bOccupied;
+				if(bOccupied != ((iBelow >>> iCol & 1) != 0)) {
+					iColumnTransitions++;
+				}
+				if(bOccupied && iHeights[iCol] == 0) {
+					iHeights[iCol] = iRowCount - iRow;
+				} else if(!bOccupied && iHeights[iCol] != 0) {
+					iHoles++;
+				}
+			}
+			if(!bLeftOccupied) {
+				iRowTransitions++;
+			}
+		}
+		iFeatures[iAt + iFEATURE_HOLES] = iHoles;
+		iFeatures[iAt + iFEATURE_ROW_TRANSITIONS] = iRowTransitions;
+		iFeatures[iAt + iFEATURE_COLUMN_TRANSITIONS] = iColumnTransitions;
+		heightFeatures(iFeatures, iAt);
+	}
+
+	/**
+	 * Works out the features that come from the heights of the columns.
+	 * @param iFeatures Where the features are stored.
+	 * @param iAt The index of the first feature.
+	 */
+	private void heightFeatures(int[] iFeatures, int iAt) {
+		int iAggregate = iHeights[0];
+		int iMax = iHeights[0];
+		int iBumpiness = 0;
+		for(int iCol = 1; iCol < iColCount; iCol++) {
+			iAggregate += iHeights[iCol];
+			iMax = Math.max(iMax, iHeights[iCol]);
+			iBumpiness += Math.abs(iHeights[iCol] - iHeights[iCol - 1]);
+		}
+		iFeatures[iAt + iFEATURE_AGGREGATE_HEIGHT] = iAggregate;
+		iFeatures[iAt + iFEATURE_MAX_HEIGHT] = iMax;
+		iFeatures[iAt + iFEATURE_BUMPINESS] = iBumpiness;
+	}
+
+	/**
+	 * Scores a batch of boards by weighing their features.
+	 * @param iFeatures The features of the boards, as stored by
+	 *                  {@code evaluate}.
+	 * @param iCount The number of boards.
+	 * @param dWeights The weight of each feature.
+	 * @param dScores Where the score of each board is stored.
+	 */
+	public static void score(int[] iFeatures, int iCount, double[] dWeights, double[] dScores) {
+		for(int iBoard = 0; iBoard < iCount; iBoard++) {
+			double dScore = 0;
+			for(int iFeature = 0; iFeature < iFEATURE_COUNT; iFeature++) {
+				dScore += iFeatures[iBoard * iFEATURE_COUNT + iFeature] * dWeights[iFeature];
+			}
+			dScores[iBoard] = dScore;
+		}
+	}
+
+	/**
+	 * Fills a store with boards from random games and times both ways of
+	 * evaluating them, checking that they agree.
+	 * @param args The number of boards and the number of times they are
+	 * evaluated.
+	 */
+	public static void main(String[] args) {
+		int iCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int iRounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		BoardStore stoBoards = new BoardStore();
+		int[] iBoards = new int[iCount];
+		Random ranRandom = new Random(1);
+		int iBoard = stoBoards.allocate();
+		for(int iIndex = 0; iIndex < iCount; iIndex++) {
+			if(!drop(stoBoards, iBoard, ranRandom)) {
+				stoBoards.clear(iBoard);
+			}
+			iBoards[iIndex] = stoBoards.allocateCopy(iBoard);
+		}
+
+		BoardEvaluator evaEvaluator = new BoardEvaluator(stoBoards);
+		int[] iFast = new int[iCount * iFEATURE_COUNT];
+		int[] iScalar = new int[iCount * iFEATURE_COUNT];
+		evaEvaluator.evaluate(iBoards, 0, iCount, iFast);
+		evaEvaluator.evaluateScalar(iBoards, 0, iCount, iScalar);
+		if(!Arrays.equals(iFast, iScalar)) {
+			throw new AssertionError("The evaluations disagree");
+		}
+		long lFastNanos = Long.MAX_VALUE;
+		long lScalarNanos = Long.MAX_VALUE;
+		for(int iRound = 0; iRound < iRounds; iRound++) {
+			long lStart = System.nanoTime();
+			evaEvaluator.evaluate(iBoards, 0, iCount, iFast);
+			long lMiddle = System.nanoTime();
+			evaEvaluator.evaluateScalar(iBoards, 0, iCount, iScalar);
+			long lEnd = System.nanoTime();
+			lFastNanos = Math.min(lFastNanos, lMiddle - lStart);
+			lScalarNanos = Math.min(lScalarNanos, lEnd - lMiddle);
+		}
+		System.out.printf("%d boards: %.1f ns per board four rows at a time, %.1f ns cell by cell%n",
+						  iCount, (double) lFastNanos / iCount, (double) lScalarNanos / iCount);
+	}
+
+	/**
+	 * Drops a random piece in a random place on a board and clears the
+	 * lines it completes.
+	 * @param stoBoards The store the board is in.
+	 * @param iBoard The handle of the board.
+	 * @param ranRandom Picks the piece and the place.
+	 * @return Whether or not the piece fit.
+	 */
+	private static boolean drop(BoardStore stoBoards, int iBoard, Random ranRandom) {
+		TileType tilType = TileType.getPiece(ranRandom.nextInt(TileType.iPIECE_COUNT));
+		int iRotation = ranRandom.nextInt(4);
+		int iX = ranRandom.nextInt(stoBoards.getColCount()) - 1;
+		int iY = 0;
+		if(!stoBoards.canPlace(iBoard, tilType, iX, iY, iRotation)) {
+			return false;
+		}
+		while(stoBoards.canPlace(iBoard, tilType, iX, iY + 1, iRotation)) {
+			iY++;
+		}
+		stoBoards.place(iBoard, tilType, iX, iY, iRotation);
+		stoBoards.clearLines(iBoard);
+		return true;
+	}
+}
@@ -0,0 +1,609 @@
+package tetris;
+
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import static tetris.Board.iHIDDEN_ROW_COUNT;
+import static tetris.BoardPanel.iGLOW_OFFSET;
+import static tetris.BoardPanel.iSHADE_WIDTH;
+import static tetris.BoardPanel.iTILE_SIZE;
+
+/**
+ * BoardRenderer
+ *
+ * Draws the tiles, the falling piece, its ghost and the grid of a game onto
+ * any graphics object, with the top left corner of the board at the origin.
+ * It holds no reference to a window, so the same renderer can draw the
+ * single board of BoardPanel or every board of a battle one after another.
+ * Tiles can be drawn at any size. Each type of tile is drawn once into a
+ * sprite of the current size, and every tile after that is a single copy
+ * of its sprite, so a big board costs no more to draw than a small one.
+ *
+ * While the game waits after clearing lines, the board is drawn as it was
+ * before the rows fell, and the cleared rows flash and then crumble from
+ * the middle outwards. This only reads the game, so the game goes on at
+ * its own pace, and it is drawn from the same sprites without allocating
+ * anything.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class BoardRenderer {
+
+	/**
+	 * The default number of logical frames the cleared rows take to
+	 * disappear.
+	 */
+	public static final int iCLEAR_ANIMATION_FRAMES = 20;
+
+	/**
+	 * The number of logical frames each flash of the cleared rows lasts.
+	 */
+	private static final int iFLASH_FRAMES = 2;
+
+	/**
+	 * The current amount of alpha a tile is being drawn with in order to
+	 * animate a "shining" effect.
+	 */
+	private float fAlphaAmount;
+
+	/**
+	 * How much is the current alpha being modified with the drawing of each
+	 * tile.
+	 */
+	private float fAlphaFactor;
+
+	/**
+	 * The level of displacement from the gradient center to animate motion.
+	 */
+	private float iGradientModifier;
+
+	/**
+	 * The number of pixels that a tile takes up.
+	 */
+	private int iTileSize;
+
+	/**
+	 * The width of the shading on the tiles, in proportion to their size.
+	 */
+	private int iShadeWidth;
+
+	/**
+	 * The sprite of each type of tile at the current size, drawn the first
+	 * time it is needed.
+	 */
+	private final BufferedImage[] bufTiles;
+
+	/**
+	 * The sprite of the ghost of each type of piece at the current size.
+	 */
+	private final BufferedImage[] bufGhosts;
+
+	/**
+	 * The sprite of a flashing tile at the current size.
+	 */
+	private BufferedImage bufFlash;
+
+	/**
+	 * The number of logical frames the cleared rows take to disappear,
+	 * unless the line clear delay is shorter.
+	 */
+	private int iClearAnimationFrames;
+
+	/**
+	 * Creates a new renderer that draws tiles at their default size.
+	 */
+	public BoardRenderer() {
+		this.fAlphaAmount = 0.4f;
+		this.fAlphaFactor = 0.01f;
+		this.iGradientModifier = 0;
+		this.bufTiles = new BufferedImage[TileType.getTypeCount()];
+		this.bufGhosts = new BufferedImage[TileType.getTypeCount()];
+		this.iClearAnimationFrames = iCLEAR_ANIMATION_FRAMES;
+		setTileSize(iTILE_SIZE);
+	}
+
+	/**
+	 * Sets the size tiles are drawn at. The sprites are only drawn again
+	 * when the size changes.
+	 * @param iTileSize The number of pixels that a tile takes up.
+	 */
+	public void setTileSize(int iTileSize) {
+		if(iTileSize == this.iTileSize) {
+			return;
+		}
+		this.iTileSize = iTileSize;
+		this.iShadeWidth = Math.max(1, Math.round((float) iSHADE_WIDTH * iTileSize / iTILE_SIZE));
+		Arrays.fill(bufTiles, null);
+		Arrays.fill(bufGhosts, null);
+		this.bufFlash = null;
+	}
+
+	/**
+	 * Gets the size tiles are drawn at.
+	 * @return The number of pixels that a tile takes up.
+	 */
+	public int getTileSize() {
+		return iTileSize;
+	}
+
+	/**
+	 * Sets the number of logical frames the cleared rows take to disappear.
+	 * The animation is shortened to fit when the line clear delay is shorter.
+	 * @param iFrames The number of frames, at least 1.
+	 */
+	public void setClearAnimationFrames(int iFrames) {
+		this.iClearAnimationFrames = Math.max(1, iFrames);
+	}
+
+	/**
+	 * Gets the number of logical frames the cleared rows take to disappear.
+	 * @return The number of frames.
+	 */
+	public int getClearAnimationFrames() {
+		return iClearAnimationFrames;
+	}
+
+	/**
+	 * Draws the board of a running game: the locked tiles, the falling
+	 * piece, its ghost and the grid.
+	 * @param graGraphics The graphics object.
+	 * @param engGame The game to draw.
+	 */
+	public void paintBoard(Graphics graGraphics, GameEngine engGame) {
+		Board boaBoard = engGame.getBoard();
+
+		/*
+		 * Draw the tiles onto the board, or the rows being cleared and the
+		 * rest where they were before the clear.
+		 */
+		if(engGame.isClearing() && boaBoard.getClearedCount() > 0) {
+			drawClearingTiles(graGraphics, boaBoard, engGame.getClearFrame(),
+							  Math.min(iClearAnimationFrames, engGame.getClearDelay()));
+		}
+		else {
+			drawStaticTiles(graGraphics, boaBoard);
+		}
+
+		/*
+		 * Draw the current piece. This cannot be drawn like the rest of the
+		 * pieces because it's still not part of the game board. If it were
+		 * part of the board, it would need to be removed every frame which
+		 * would just be slow and confusing.
+		 */
+		TileType tilType = engGame.getPieceType();
+		if(tilType != null && !engGame.isGameOver()) {
+			int iPieceCol = engGame.getPieceCol();
+			int iPieceRow = engGame.getPieceRow();
+			int iRotation = engGame.getPieceRotation();
+
+			/*
+			 * When the alpha has reached the maximum value, start decreasing
+			 * it and viceversa.
+			 */
+			if(fAlphaAmount >= 0.80f){
+				fAlphaAmount = 0.75f;
+				fAlphaFactor *= -1;
+			}
+			else if(fAlphaAmount <= 0.200f){
+				fAlphaAmount = 0.3f;
+				fAlphaFactor *= -1;
+			}
+
+			/*
+			 * Draw the falling piece onto the board
+			 */
+			drawFallingPiece(graGraphics, tilType, iPieceCol, iPieceRow, iRotation);
+
+			/*
+			 * Draw the ghost (semi-transparent piece that shows where the
+			 * current piece will land).
+			 */
+			drawGhostPiece(graGraphics, boaBoard, tilType, iPieceCol, iPieceRow, iRotation);
+		}
+
+		/*
+		 * Draw the background tile grid
+		 */
+		drawBackgroundGrid(graGraphics, boaBoard);
+	}
+
+	/**
+	 * Draws the outline around the board.
+	 * @param graGraphics The graphics object.
+	 * @param boaBoard The board to draw around.
+	 */
+	public void paintOutline(Graphics graGraphics, Board boaBoard) {
+		graGraphics.setColor(Color.WHITE);
+		graGraphics.drawRect(0, 0, iTileSize * boaBoard.getColCount(),
+							 iTileSize * boaBoard.getVisibleRowCount());
+	}
+
+	/**
+	 * Draws the static tiles at the bottom of the game
+	 * @param graGraphics The graphics object.
+	 * @param boaBoard The board to draw.
+	 */
+	private void drawStaticTiles(Graphics graGraphics, Board boaBoard) {
+		/*
+		 * Draw the tiles onto the board, visiting only the occupied columns
+		 * of each row so that empty parts of big boards cost nothing. The
+		 * game loop moves the bits and the tiles of a row one after the
+		 * other while this draws, so a bit may still be set for a tile that
+		 * is already gone.
+	   	 */
+		for(int iRow = iHIDDEN_ROW_COUNT; iRow < boaBoard.getRowCount(); iRow++) {
+            for(long lBits = boaBoard.getRowBits(iRow); lBits != 0; lBits &= lBits - 1) {
+                int iCol = Long.numberOfTrailingZeros(lBits);
+                TileType tileType = boaBoard.getTile(iCol, iRow);
+                if(tileType != null) {
+                    drawTile(tileType,
+                             iCol * iTileSize,
+                             (iRow - iHIDDEN_ROW_COUNT) * iTileSize,
+                             graGraphics);
+                }
+            }
+        }
+	}
+
+	/**
+	 * Draws the board while lines are being cleared. The board has already
+	 * lost the cleared rows, so every row is drawn where it was before the
+	 * rows above them fell, and the cleared rows are drawn in their gaps.
+	 * @param graGraphics The graphics object.
+	 * @param boaBoard The board to draw.
+	 * @param iFrame The number of frames since the lines were cleared.
+	 * @param iSpan The number of frames the cleared rows take to disappear.
+	 */
+	private void drawClearingTiles(Graphics graGraphics, Board boaBoard, int iFrame, int iSpan) {
+		/*
+		 * Walk up the board next to where each row was before the clear,
+		 * skipping the gap of each cleared row on the way.
+		 */
+		int iNext = boaBoard.getClearedCount() - 1;
+		int iBefore = boaBoard.getRowCount() - 1;
+		for(int iRow = boaBoard.getRowCount() - 1; iRow >= 0; iRow--, iBefore--) {
+			while(iNext >= 0 && boaBoard.getClearedRow(iNext) == iBefore) {
+				iNext--;
+				iBefore--;
+			}
+			if(iBefore < iHIDDEN_ROW_COUNT) {
+				break;
+			}
+			for(long lBits = boaBoard.getRowBits(iRow); lBits != 0; lBits &= lBits - 1) {
+				int iCol = Long.numberOfTrailingZeros(lBits);
+				TileType tileType = boaBoard.getTile(iCol, iRow);
+				if(tileType != null) {
+					drawTile(tileType,
+							 iCol * iTileSize,
+							 (iBefore - iHIDDEN_ROW_COUNT) * iTileSize,
+							 graGraphics);
+				}
+			}
+		}
+
+		/*
+		 * The cleared rows flash for the first third of the animation, then
+		 * their tiles crumble from the edges in, starting in the middle of
+		 * the row. Only the middle of each sprite is copied, so nothing is
+		 * scaled.
+		 */
+		int iFlashSpan = iSpan / 3;
+		int iCols = boaBoard.getColCount();
+		for(int iIndex = 0; iIndex < boaBoard.getClearedCount(); iIndex++) {
+			int iRow = boaBoard.getClearedRow(iIndex);
+			if(iRow < iHIDDEN_ROW_COUNT) {
+				continue;
+			}
+			int iY = (iRow - iHIDDEN_ROW_COUNT) * iTileSize;
+			for(int iCol = 0; iCol < iCols; iCol++) {
+				int iX = iCol * iTileSize;
+				if(iFrame < iFlashSpan) {
+					graGraphics.drawImage((iFrame / iFLASH_FRAMES) % 2 == 0
+										  ? getFlashSprite()
+										  : getSprite(boaBoard.getClearedTile(iIndex, iCol)),
+										  iX, iY, null);
+					continue;
+				}
+
+				/*
+				 * Each tile starts shrinking later the further it is from
+				 * the middle, and the last ones are gone on the last frame.
+				 */
+				float fProgress = (float) (iFrame + 1 - iFlashSpan) / (iSpan - iFlashSpan);
+				float fDistance = Math.abs(iCol * 2 + 1 - iCols) / (float) iCols;
+				float fShrink = Math.min(1f, Math.max(0f, (fProgress - fDistance / 2) * 2));
+				int iInset = Math.round(fShrink * iTileSize / 2);
+				int iFar = iTileSize - iInset;
+				if(iInset < iFar) {
+					graGraphics.drawImage(getSprite(boaBoard.getClearedTile(iIndex, iCol)),
+										  iX + iInset, iY + iInset, iX + iFar, iY + iFar,
+										  iInset, iInset, iFar, iFar, null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draws the current falling piece
+	 * @param graGraphics The graphics object.
+	 * @param tilType The type of tile to draw.
+	 * @param iPieceCol The current column of the piece to draw
+	 * @param iPieceRow The current row of the piece to draw
+	 * @param iRotation The current rotation of the piece to draw
+	 */
+	private void drawFallingPiece(Graphics graGraphics, TileType tilType, int iPieceCol, int iPieceRow, int iRotation) {
+		//Draw the piece onto the board.
+		for(int iCol = 0; iCol < tilType.getDimension(); iCol++) {
+            for(int iRow = 0; iRow < tilType.getDimension(); iRow++) {
+                if(iPieceRow + iRow >= 2 && tilType.isTile(iCol, iRow, iRotation)) {
+                    int iX = (iPieceCol + iCol) * iTileSize;
+                    int iY = (iPieceRow + iRow - iHIDDEN_ROW_COUNT) * iTileSize;
+                    // Draw base block
+                    drawTile(tilType, iX, iY, graGraphics);
+
+                    // Draw glow
+                    drawTileAlpha(tilType.getLightColor().brighter().brighter(),
+                                  tilType.getBaseColor(),
+                                  iX,
+                                  iY,
+                                  graGraphics,
+                                  fAlphaAmount);
+
+                    // Increase the amount of alpha to be drawn
+                    fAlphaAmount += fAlphaFactor;
+                }
+            }
+        }
+	}
+
+	/**
+	 * Draw the background grid above the pieces (serves as a useful visual
+	 * for players, and makes the pieces look nicer by breaking them up.
+	 * @param graGraphics The graphics object.
+	 * @param boaBoard The board to draw the grid of.
+	 */
+	private void drawBackgroundGrid(Graphics graGraphics, Board boaBoard) {
+		int iWidth = boaBoard.getColCount() * iTileSize;
+		int iHeight = boaBoard.getVisibleRowCount() * iTileSize;
+		graGraphics.setColor(Color.DARK_GRAY);
+		for(int iRow = 0; iRow < boaBoard.getVisibleRowCount(); iRow++) {
+			graGraphics.drawLine(0, iRow * iTileSize, iWidth, iRow * iTileSize);
+		}
+		for(int iCol = 0; iCol < boaBoard.getColCount(); iCol++) {
+			graGraphics.drawLine(iCol * iTileSize, 0, iCol * iTileSize, iHeight);
+		}
+	}
+
+	/**
+	 * Draw the ghost (semi-transparent piece that shows where the current piece will land). I couldn't think of
+	 * a better way to implement this so it'll have to do for now. We simply take the current position and move
+	 * down until we hit a row that would cause a collision.
+	 * @param graGraphics The graphics object.
+	 * @param boaBoard The board the piece falls on.
+	 * @param tilType The type of tile to draw.
+	 * @param iPieceCol The current column of the piece to draw
+	 * @param iPieceRow The current row of the piece to draw
+	 * @param iRotation The current rotation of the piece to draw
+	 */
+	private void drawGhostPiece(Graphics graGraphics, Board boaBoard, TileType tilType, int iPieceCol, int iPieceRow, int iRotation) {
+		for(int iLowest = iPieceRow; iLowest < boaBoard.getRowCount(); iLowest++) {
+            // If no collision is detected, try the next row.
+            if(boaBoard.isValidAndEmpty(tilType, iPieceCol, iLowest, iRotation)) {
+                continue;
+            }
+
+            // Draw the ghost one row higher than the one the collision took
+			// place at.
+            iLowest--;
+
+            // Draw the ghost piece.
+            for(int col = 0; col < tilType.getDimension(); col++) {
+                for(int row = 0; row < tilType.getDimension(); row++) {
+                    if(iLowest + row >= 2 && tilType.isTile(col, row, iRotation)) {
+                        graGraphics.drawImage(getGhostSprite(tilType), (iPieceCol + col) * iTileSize, (iLowest + row - iHIDDEN_ROW_COUNT) * iTileSize, null);
+                    }
+                }
+            }
+            break;
+        }
+	}
+
+	/**
+	 * Draws a tile onto the board.
+	 * @param tilType The type of tile to draw.
+	 * @param iX The column.
+	 * @param iY The row.
+	 * @param graGraphics The graphics object.
+	 */
+	public void drawTile(TileType tilType, int iX, int iY, Graphics graGraphics) {
+		graGraphics.drawImage(getSprite(tilType), iX, iY, null);
+	}
+
+	/**
+	 * Gets the sprite of a type of tile at the current size, drawing it if
+	 * it isn't cached yet.
+	 * @param tilType The type of tile.
+	 * @return The sprite.
+	 */
+	private BufferedImage getSprite(TileType tilType) {
+		BufferedImage bufSprite = bufTiles[tilType.ordinal()];
+		if(bufSprite == null) {
+			bufSprite = createSprite(tilType.getBaseColor(),
+									 tilType.getLightColor(),
+									 tilType.getDarkColor());
+			bufTiles[tilType.ordinal()] = bufSprite;
+		}
+		return bufSprite;
+	}
+
+	/**
+	 * Gets the sprite of a flashing tile at the current size, drawing it if
+	 * it isn't cached yet.
+	 * @return The sprite.
+	 */
+	private BufferedImage getFlashSprite() {
+		if(bufFlash == null) {
+			bufFlash = createSprite(Color.WHITE, Color.WHITE, Color.LIGHT_GRAY);
+		}
+		return bufFlash;
+	}
+
+	/**
+	 * Gets the sprite of the ghost of a type of piece at the current size,
+	 * drawing it if it isn't cached yet.
+	 * @param tilType The type of piece.
+	 * @return The sprite.
+	 */
+	private BufferedImage getGhostSprite(TileType tilType) {
+		BufferedImage bufSprite = bufGhosts[tilType.ordinal()];
+		if(bufSprite == null) {
+			Color colBase = tilType.getBaseColor();
+			// Create a semi-transparent color
+			colBase = new Color(colBase.getRed(), colBase.getGreen(), colBase.getBlue(), 20);
+			bufSprite = createSprite(colBase, colBase.brighter(), colBase.darker());
+			bufGhosts[tilType.ordinal()] = bufSprite;
+		}
+		return bufSprite;
+	}
+
+	/**
+	 * Draws a tile into a new sprite of the current size. The sprite is
+	 * never changed afterwards, so Java2D can keep a copy of it in video
+	 * memory.
+	 * @param colBase The base color of tile.
+	 * @param colLight The light color of the tile.
+	 * @param colDark The dark color of the tile.
+	 * @return The sprite.
+	 */
+	private BufferedImage createSprite(Color colBase, Color colLight, Color colDark) {
+		BufferedImage bufSprite = new BufferedImage(iTileSize, iTileSize,
+													BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics graSprite = bufSprite.createGraphics();
+		drawTile(colBase, colLight, colDark, 0, 0, graSprite);
+		graSprite.dispose();
+		return bufSprite;
+	}
+	
+	/**
+	 * Draws a tile onto the board.
+	 * @param colBase The base color of tile.
+	 * @param colLight The light color of the tile.
+	 * @param colDark The dark color of the tile.
+	 * @param iX The column.
+	 * @param iY The row.
+	 * @param graGraphics The graphics object.
+	 */
+	public void drawTile(Color colBase, Color colLight, Color colDark, int iX, int iY,
+						  Graphics graGraphics) {
+		/*
+		 * Fill the entire tile with the base color.
+		 */
+		graGraphics.setColor(colBase);
+		graGraphics.fillRect(iX, iY, iTileSize, iTileSize);
+		
+		/*
+		 * Fill the bottom and right edges of the tile with the dark shading color.
+		 */
+		graGraphics.setColor(colDark);
+		graGraphics.fillRect(iX, iY + iTileSize - iShadeWidth, iTileSize,
+				   iShadeWidth);
+		graGraphics.fillRect(iX + iTileSize - iShadeWidth, iY, iShadeWidth,
+				   iTileSize);
+		
+		/*
+		 * Fill the top and left edges with the light shading. We draw a
+		 * single line
+		 * for each row or column rather than a rectangle so that we can draw a nice
+		 * looking diagonal where the light and dark shading meet.
+		 */
+		graGraphics.setColor(colLight);
+		for(int i = 0; i < iShadeWidth; i++) {
+			graGraphics.drawLine(iX, iY + i, iX + iTileSize - i - 1, iY + i);
+			graGraphics.drawLine(iX + i, iY, iX + i, iY + iTileSize - i - 1);
+		}
+	}
+
+	/**
+	 * Draws a tile onto the board.
+	 * @param colBase The base color of tile.
+	 * @param colDark The dark color of the tile.
+	 * @param iX The column.
+	 * @param iY The row.
+	 * @param graGraphics The graphics object.
+	 */
+	private void drawTileAlpha(Color colBase, Color colDark, int iX,
+							   int iY, Graphics graGraphics, float fAlphaValue) {
+		/*
+		 * Create a new Graphics2D instance to allow alpha to be drawn into
+		 * the object. Then save the current composite to restore normal
+		 * non-alpha painting.
+		 */
+		Graphics2D g2d = (Graphics2D) graGraphics;
+		Composite cCurrentComposite = g2d.getComposite();
+
+		/*
+		 * Create a radial gradient with the light and dark colors to give the
+		 * tile a more dynamic look. The increasing iGradientModifier gives the
+		 * effect of the tile shining
+		 */
+		Point2D center = new Point2D.Float(iX/2 + iGradientModifier, iY/2);
+		iGradientModifier+= .1;
+		float radius = 10f * iTileSize / iTILE_SIZE;
+		float[] dist = {0.05f, .95f};
+		Color[] colors = {colBase.brighter(), colDark};
+		RadialGradientPaint paint =
+				new RadialGradientPaint(center,
+										radius,
+										dist,
+										colors,
+										MultipleGradientPaint.CycleMethod.REFLECT);
+
+		/*
+		 * Fill the entire tile with the light and dark colors gradient.
+		 */
+		g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, fAlphaValue));
+		g2d.setPaint(paint);
+		g2d.fillRect(iX - iGLOW_OFFSET,
+					 iY - iGLOW_OFFSET,
+					 iTileSize + iGLOW_OFFSET * 2,
+					 iTileSize + iGLOW_OFFSET * 2);
+
+		g2d.setComposite(cCurrentComposite);
+	}
+
+	/**
+	 * Gets the current alpha amount
+	 * @return The alpha amount
+	 */
+	public float getAlphaAmount() {
+		return this.fAlphaAmount;
+	}
+
+	/**
+	 * Gets the current alpha modifying factor
+	 * @return The alpha factor
+	 */
+	public float getAlphaFactor() {
+		return this.fAlphaFactor;
+	}
+
+	/**
+	 * Sets the current alpha amount
+	 * @param fAlphaAmount The alpha amount
+	 */
+	public void setAlphaAmount(float fAlphaAmount) {
+		this.fAlphaAmount = fAlphaAmount;
+	}
+
+	/**
+	 * Sets the current alpha factor
+	 * @param fAlphaFactor The alpha factor
+	 */
+	public void setAlphaFactor(float fAlphaFactor) {
+		this.fAlphaFactor = fAlphaFactor;
+	}
+}
@@ -0,0 +1,469 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * BoardStore
+ *
+ * Holds any number of board states outside of the Java heap, for bots that
+ * search through millions of them at once. A stored board is only its
+ * occupancy: sixteen bits per row, one row after another, padded to a
+ * multiple of eight bytes, so a standard board takes 48 bytes where a
+ * {@code Board} takes about a kilobyte. Boards are referred to by an
+ * {@code int} handle, and the handles of freed boards are linked through
+ * the freed boards themselves, so the heap stays the same size however
+ * many boards are live. The memory is allocated a chunk at a time and is
+ * kept until the store is no longer referenced.
+ *
+ * Whole boards are copied and compared eight bytes at a time. The rows are
+ * little endian, so every eight bytes hold four rows with the top one in
+ * the lowest bits on any machine. A store is not thread safe; searches that
+ * run on several threads should use a store per thread.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class BoardStore {
+
+	/**
+	 * The most columns a stored board can have.
+	 */
+	public static final int iMAX_COL_COUNT = 16;
+
+	/**
+	 * The handle that refers to no board.
+	 */
+	public static final int iNO_BOARD = -1;
+
+	/**
+	 * The number of bits of a handle that select the board within a chunk.
+	 */
+	private static final int iCHUNK_BITS = 20;
+
+	/**
+	 * The number of boards in each chunk.
+	 */
+	private static final int iBOARDS_PER_CHUNK = 1 << iCHUNK_BITS;
+
+	/**
+	 * Mask that turns a handle into the index of its board within its chunk.
+	 */
+	private static final int iCHUNK_MASK = iBOARDS_PER_CHUNK - 1;
+
+	/**
+	 * The number of columns of the boards.
+	 */
+	private final int iColCount;
+
+	/**
+	 * The number of rows of the boards.
+	 */
+	private final int iRowCount;
+
+	/**
+	 * The number of bytes taken by each board.
+	 */
+	private final int iStride;
+
+	/**
+	 * The row mask of a row in which every column is occupied.
+	 */
+	private final int iFullRow;
+
+	/**
+	 * The memory of the boards. Chunk {@code n} holds the boards whose
+	 * handles start with {@code n}.
+	 */
+	private ByteBuffer[] bufChunks;
+
+	/**
+	 * The number of chunks allocated.
+	 */
+	private int iChunkCount;
+
+	/**
+	 * The handle of the latest freed board, which holds the handle of the
+	 * one freed before it, or {@code iNO_BOARD}.
+	 */
+	private int iFreeHead;
+
+	/**
+	 * The lowest handle that was never given out.
+	 */
+	private int iNextUnused;
+
+	/**
+	 * The number of boards that were allocated and not freed.
+	 */
+	private int iLiveCount;
+
+	/**
+	 * Creates a new, empty store of boards of the standard size.
+	 */
+	public BoardStore() {
+		this(Board.iCOL_COUNT, Board.iROW_COUNT);
+	}
+
+	/**
+	 * Creates a new, empty store. No memory is allocated until the first
+	 * board is.
+	 * @param iColCount The number of columns of the boards, up to
+	 *                  {@code iMAX_COL_COUNT}.
+	 * @param iRowCount The number of rows of the boards, hidden ones
+	 *                  included.
+	 * @throws IllegalArgumentException If the boards would be too big.
+	 */
+	public BoardStore(int iColCount, int iRowCount) {
+		// A chunk of rows rounded up to whole longs has to fit in one buffer
+		long lStride = ((long) iRowCount * 2 + 7) & ~7L;
+		if(iColCount < 1 || iColCount > iMAX_COL_COUNT || iRowCount < 1
+				|| lStride * iBOARDS_PER_CHUNK > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Can't store boards of " + iColCount + " by "
+					+ iRowCount);
+		}
+		this.iColCount = iColCount;
+		this.iRowCount = iRowCount;
+		this.iStride = (int) lStride;
+		this.iFullRow = (1 << iColCount) - 1;
+		this.bufChunks = new ByteBuffer[4];
+		this.iFreeHead = iNO_BOARD;
+	}
+
+	/**
+	 * Allocates an empty board.
+	 * @return The handle of the board.
+	 * @throws IllegalStateException If every handle is in use.
+	 */
+	public int allocate() {
+		int iBoard;
+		if(iFreeHead != iNO_BOARD) {
+			iBoard = iFreeHead;
+			iFreeHead = chunkOf(iBoard).getInt(offsetOf(iBoard));
+			clear(iBoard);
+		} else {
+			if(iNextUnused == Integer.MAX_VALUE) {
+				throw new IllegalStateException("The store is full");
+			}
+			iBoard = iNextUnused++;
+			if((iBoard >>> iCHUNK_BITS) == iChunkCount) {
+				addChunk();
+			}
+			// New chunks are already zeroed
+		}
+		iLiveCount++;
+		return iBoard;
+	}
+
+	/**
+	 * Allocates a copy of a board.
+	 * @param iBoard The handle of the board to copy.
+	 * @return The handle of the copy.
+	 */
+	public int allocateCopy(int iBoard) {
+		int iCopy = allocate();
+		copy(iBoard, iCopy);
+		return iCopy;
+	}
+
+	/**
+	 * Frees a board so that its memory can hold another one. The handle
+	 * must not be used again until {@code allocate} returns it.
+	 * @param iBoard The handle of the board.
+	 */
+	public void free(int iBoard) {
+		chunkOf(iBoard).putInt(offsetOf(iBoard), iFreeHead);
+		iFreeHead = iBoard;
+		iLiveCount--;
+	}
+
+	/**
+	 * Frees every board at once. The memory is kept for the boards
+	 * allocated next.
+	 */
+	public void freeAll() {
+		iFreeHead = iNO_BOARD;
+		iLiveCount = 0;
+		for(int iChunk = 0; iChunk < iChunkCount; iChunk++) {
+			ByteBuffer bufChunk = bufChunks[iChunk];
+			for(int iOffset = 0; iOffset < bufChunk.capacity(); iOffset += 8) {
+				bufChunk.putLong(iOffset, 0L);
+			}
+		}
+		iNextUnused = 0;
+	}
+
+	/**
+	 * Adds a chunk of boards.
+	 */
+	private void addChunk() {
+		if(iChunkCount == bufChunks.length) {
+			bufChunks = Arrays.copyOf(bufChunks, iChunkCount * 2);
+		}
+		bufChunks[iChunkCount++] = ByteBuffer.allocateDirect(iBOARDS_PER_CHUNK * iStride)
+				.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Gets the chunk a board is in.
+	 * @param iBoard The handle of the board.
+	 * @return The chunk.
+	 */
+	private ByteBuffer chunkOf(int iBoard) {
+		return bufChunks[iBoard >>> iCHUNK_BITS];
+	}
+
+	/**
+	 * Gets where a board starts within its chunk.
+	 * @param iBoard The handle of the board.
+	 * @return The offset of its first row, in bytes.
+	 */
+	private int offsetOf(int iBoard) {
+		return (iBoard & iCHUNK_MASK) * iStride;
+	}
+
+	/**
+	 * Empties a board.
+	 * @param iBoard The handle of the board.
+	 */
+	public void clear(int iBoard) {
+		ByteBuffer bufChunk = chunkOf(iBoard);
+		int iOffset = offsetOf(iBoard);
+		for(int iByte = 0; iByte < iStride; iByte += 8) {
+			bufChunk.putLong(iOffset + iByte, 0L);
+		}
+	}
+
+	/**
+	 * Copies one board over another, eight bytes at a time.
+	 * @param iFrom The handle of the board to copy.
+	 * @param iTo The handle of the board to overwrite.
+	 */
+	public void copy(int iFrom, int iTo) {
+		ByteBuffer bufFrom = chunkOf(iFrom);
+		ByteBuffer bufTo = chunkOf(iTo);
+		int iFromOffset = offsetOf(iFrom);
+		int iToOffset = offsetOf(iTo);
+		for(int iByte = 0; iByte < iStride; iByte += 8) {
+			bufTo.putLong(iToOffset + iByte, bufFrom.getLong(iFromOffset + iByte));
+		}
+	}
+
+	/**
+	 * Checks whether or not two boards have the same tiles.
+	 * @param iFirst The handle of one board.
+	 * @param iSecond The handle of the other board.
+	 * @return Whether or not the boards are the same.
+	 */
+	public boolean equals(int iFirst, int iSecond) {
+		ByteBuffer bufFirst = chunkOf(iFirst);
+		ByteBuffer bufSecond = chunkOf(iSecond);
+		int iFirstOffset = offsetOf(iFirst);
+		int iSecondOffset = offsetOf(iSecond);
+		for(int iByte = 0; iByte < iStride; iByte += 8) {
+			if(bufFirst.getLong(iFirstOffset + iByte) != bufSecond.getLong(iSecondOffset + iByte)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Orders two boards, for sorting or for finding duplicates. The order
+	 * is the same for the same boards, but has no meaning otherwise.
+	 * @param iFirst The handle of one board.
+	 * @param iSecond The handle of the other board.
+	 * @return Less than zero, zero or more than zero as the first board
+	 *         comes before, is the same as or comes after the second.
+	 */
+	public int compare(int iFirst, int iSecond) {
+		ByteBuffer bufFirst = chunkOf(iFirst);
+		ByteBuffer bufSecond = chunkOf(iSecond);
+		int iFirstOffset = offsetOf(iFirst);
+		int iSecondOffset = offsetOf(iSecond);
+		for(int iByte = 0; iByte < iStride; iByte += 8) {
+			int iOrder = Long.compareUnsigned(bufFirst.getLong(iFirstOffset + iByte),
+											  bufSecond.getLong(iSecondOffset + iByte));
+			if(iOrder != 0) {
+				return iOrder;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Works out a hash of the tiles of a board, the same for boards that
+	 * are {@code equals}.
+	 * @param iBoard The handle of the board.
+	 * @return The hash.
+	 */
+	public int hash(int iBoard) {
+		ByteBuffer bufChunk = chunkOf(iBoard);
+		int iOffset = offsetOf(iBoard);
+		long lHash = 0;
+		for(int iByte = 0; iByte < iStride; iByte += 8) {
+			lHash = (lHash + bufChunk.getLong(iOffset + iByte)) * 0x9E3779B97F4A7C15L;
+		}
+		return (int) (lHash ^ (lHash >>> 32));
+	}
+
+	/**
+	 * Gets four rows of a board at once.
+	 * @param iBoard The handle of the board.
+	 * @param iWord Which four rows, from the top. Rows past the last row of
+	 *              the board are always empty.
+	 * @return The row masks, sixteen bits each, the top row in the lowest
+	 *         bits.
+	 */
+	long getWord(int iBoard, int iWord) {
+		return chunkOf(iBoard).getLong(offsetOf(iBoard) + iWord * 8);
+	}
+
+	/**
+	 * Gets the number of words {@code getWord} can read from a board.
+	 * @return The number of words.
+	 */
+	int getWordCount() {
+		return iStride / 8;
+	}
+
+	/**
+	 * Gets the occupancy of a row of a board.
+	 * @param iBoard The handle of the board.
+	 * @param iRow The row.
+	 * @return The row mask, with bit {@code n} set when column {@code n} is
+	 *         occupied.
+	 */
+	public int getRow(int iBoard, int iRow) {
+		return chunkOf(iBoard).getShort(offsetOf(iBoard) + iRow * 2) & 0xFFFF;
+	}
+
+	/**
+	 * Sets the occupancy of a row of a board.
+	 * @param iBoard The handle of the board.
+	 * @param iRow The row.
+	 * @param iBits The row mask. Bits past the last column are ignored.
+	 */
+	public void setRow(int iBoard, int iRow, int iBits) {
+		chunkOf(iBoard).putShort(offsetOf(iBoard) + iRow * 2, (short) (iBits & iFullRow));
+	}
+
+	/**
+	 * Stores the occupancy of a game board.
+	 * @param iBoard The handle of the board to overwrite.
+	 * @param boaBoard The game board, of the size of the stored boards.
+	 * @throws IllegalArgumentException If the game board is of another size.
+	 */
+	public void write(int iBoard, Board boaBoard) {
+		if(boaBoard.getColCount() != iColCount || boaBoard.getRowCount() != iRowCount) {
+			throw new IllegalArgumentException("The board doesn't fit the store");
+		}
+		for(int iRow = 0; iRow < iRowCount; iRow++) {
+			setRow(iBoard, iRow, (int) boaBoard.getRowBits(iRow));
+		}
+	}
+
+	/**
+	 * Determines whether or not a piece can be placed on a board, like
+	 * {@code Board.isValidAndEmpty}.
+	 * @param iBoard The handle of the board.
+	 * @param tilType The type of piece.
+	 * @param iX The column of the piece.
+	 * @param iY The row of the piece.
+	 * @param iRotation The rotation of the piece.
+	 * @return Whether or not the position is valid.
+	 */
+	public boolean canPlace(int iBoard, TileType tilType, int iX, int iY, int iRotation) {
+		if(iX < -tilType.getLeftInset(iRotation)
+				|| iX + tilType.getDimension() - tilType.getRightInset(iRotation) >= iColCount
+				|| iY < -tilType.getTopInset(iRotation)
+				|| iY + tilType.getDimension() - tilType.getBottomInset(iRotation) >= iRowCount) {
+			return false;
+		}
+		ByteBuffer bufChunk = chunkOf(iBoard);
+		int iOffset = offsetOf(iBoard);
+		int[] iMasks = tilType.getRowMasks(iRotation);
+		int iLastRow = tilType.getDimension() - tilType.getBottomInset(iRotation);
+		for(int iRow = tilType.getTopInset(iRotation); iRow <= iLastRow; iRow++) {
+			int iMask = iX >= 0 ? iMasks[iRow] << iX : iMasks[iRow] >>> -iX;
+			if((bufChunk.getShort(iOffset + (iY + iRow) * 2) & iMask) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a piece to a board, without checking that it fits.
+	 * @param iBoard The handle of the board.
+	 * @param tilType The type of piece.
+	 * @param iX The column of the piece.
+	 * @param iY The row of the piece.
+	 * @param iRotation The rotation of the piece.
+	 */
+	public void place(int iBoard, TileType tilType, int iX, int iY, int iRotation) {
+		int[] iMasks = tilType.getRowMasks(iRotation);
+		int iLastRow = tilType.getDimension() - tilType.getBottomInset(iRotation);
+		for(int iRow = tilType.getTopInset(iRotation); iRow <= iLastRow; iRow++) {
+			int iMask = iX >= 0 ? iMasks[iRow] << iX : iMasks[iRow] >>> -iX;
+			setRow(iBoard, iY + iRow, getRow(iBoard, iY + iRow) | iMask);
+		}
+	}
+
+	/**
+	 * Removes the full rows of a board, moving the rows above them down.
+	 * @param iBoard The handle of the board.
+	 * @return The number of rows removed.
+	 */
+	public int clearLines(int iBoard) {
+		ByteBuffer bufChunk = chunkOf(iBoard);
+		int iOffset = offsetOf(iBoard);
+		int iTo = iRowCount - 1;
+		for(int iFrom = iRowCount - 1; iFrom >= 0; iFrom--) {
+			short sBits = bufChunk.getShort(iOffset + iFrom * 2);
+			if((sBits & 0xFFFF) != iFullRow) {
+				bufChunk.putShort(iOffset + iTo * 2, sBits);
+				iTo--;
+			}
+		}
+		int iCleared = iTo + 1;
+		for(; iTo >= 0; iTo--) {
+			bufChunk.putShort(iOffset + iTo * 2, (short) 0);
+		}
+		return iCleared;
+	}
+
+	/**
+	 * Gets the number of columns of the boards.
+	 * @return The number of columns.
+	 */
+	public int getColCount() {
+		return iColCount;
+	}
+
+	/**
+	 * Gets the number of rows of the boards.
+	 * @return The number of rows, hidden ones included.
+	 */
+	public int getRowCount() {
+		return iRowCount;
+	}
+
+	/**
+	 * Gets the number of boards that were allocated and not freed.
+	 * @return The number of live boards.
+	 */
+	public int getLiveCount() {
+		return iLiveCount;
+	}
+
+	/**
+	 * Gets the memory taken by the boards, outside of the heap.
+	 * @return The number of bytes allocated.
+	 */
+	public long getAllocatedBytes() {
+		return (long) iChunkCount * iBOARDS_PER_CHUNK * iStride;
+	}
+}
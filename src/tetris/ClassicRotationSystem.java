@@ -0,0 +1,56 @@
+package tetris;
+
+/**
+ * ClassicRotationSystem
+ *
+ * The rotation the game has always had: the rotated piece is only nudged
+ * back inside the walls, floor and ceiling if it sticks out of them, and
+ * the rotation fails if it then overlaps the stack.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class ClassicRotationSystem implements RotationSystem {
+
+	@Override
+	public int rotate(Board boaBoard, TileType tilType, int iCol, int iRow,
+					  int iFrom, int iTo) {
+		int iX = 0;
+		int iY = 0;
+
+		/*
+		 * Get the insets for each of the sides. These are used to determine how
+		 * many empty rows or columns there are on a given side.
+		 */
+		int iLeft = tilType.getLeftInset(iTo);
+		int iRight = tilType.getRightInset(iTo);
+		int iTop = tilType.getTopInset(iTo);
+		int iBottom = tilType.getBottomInset(iTo);
+
+		/*
+		 * If the current piece is too far to the left or right, move the piece away from the edges
+		 * so that the piece doesn't clip out of the map and automatically become invalid.
+		 */
+		if(iCol < -iLeft) {
+			iX = iLeft - iCol;
+		} else if(iCol + tilType.getDimension() - iRight >= boaBoard.getColCount()) {
+			iX = -((iCol + tilType.getDimension() - iRight) - boaBoard.getColCount() + 1);
+		}
+
+		/*
+		 * If the current piece is too far to the top or bottom, move the piece away from the edges
+		 * so that the piece doesn't clip out of the map and automatically become invalid.
+		 */
+		if(iRow < -iTop) {
+			iY = iTop - iRow;
+		} else if(iRow + tilType.getDimension() - iBottom >= boaBoard.getRowCount()) {
+			iY = -((iRow + tilType.getDimension() - iBottom) - boaBoard.getRowCount() + 1);
+		}
+
+		if(boaBoard.isValidAndEmpty(tilType, iCol + iX, iRow + iY, iTo)) {
+			return RotationSystem.pack(iX, iY);
+		}
+		return RotationSystem.iNO_KICK;
+	}
+}
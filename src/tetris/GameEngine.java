@@ -0,0 +1,1114 @@
+package tetris;
+
+import java.util.Random;
+
+/**
+ * GameEngine
+ *
+ * The rules of one game of Tetris: the board, the falling piece, gravity,
+ * scoring and garbage. It has no window and doesn't play any sound, it only
+ * tells its listener when something happens, so several engines can be run
+ * side by side by the same game loop and drawn by the same renderer. Every
+ * method must be called from the game loop thread.
+ *
+ * Gravity, lock delay and the delays between pieces are counted in logical
+ * frames, {@code LevelTable.iFRAMES_PER_SECOND} of them a second. Each
+ * {@code update} runs however many logical frames have passed since the
+ * game started, so the game plays the same however fast it is drawn.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class GameEngine {
+
+	/**
+	 * The number of garbage rows sent for clearing 0, 1, 2, 3 and 4 lines at
+	 * once.
+	 */
+	private static final int[] iGARBAGE_SENT = {0, 0, 1, 2, 4};
+
+	/**
+	 * The actions a player can take, as used by {@code pressAction} and
+	 * {@code releaseAction}.
+	 */
+	public static final int iACTION_LEFT = 0;
+	public static final int iACTION_RIGHT = 1;
+	public static final int iACTION_SOFT_DROP = 2;
+	public static final int iACTION_HARD_DROP = 3;
+	public static final int iACTION_ROTATE_ANTICLOCKWISE = 4;
+	public static final int iACTION_ROTATE_CLOCKWISE = 5;
+
+	/**
+	 * The number of actions.
+	 */
+	public static final int iACTION_COUNT = 6;
+
+	/**
+	 * The most logical frames a single update runs. A game that falls further
+	 * behind, like after the machine stalled, skips the rest instead of
+	 * running them all at once.
+	 */
+	private static final int iMAX_FRAMES_PER_UPDATE = 8;
+
+	/**
+	 * Seed mixed into the seed of the game to pick the holes of the garbage,
+	 * so that they don't disturb the order of the pieces.
+	 */
+	private static final long lGARBAGE_SEED = 0x5DEECE66DL;
+
+	/**
+	 * Listener
+	 *
+	 * Told about the events of a game that have to be seen or heard, or that
+	 * affect other games.
+	 */
+	public interface Listener {
+
+		/**
+		 * A piece was added to the board.
+		 * @param engEngine The game.
+		 */
+		void pieceLocked(GameEngine engEngine);
+
+		/**
+		 * The piece was hard dropped. It is told before the piece locks, so
+		 * the piece is still where it landed.
+		 * @param engEngine The game.
+		 * @param iRows The number of rows the piece fell.
+		 */
+		default void hardDropped(GameEngine engEngine, int iRows) {
+		}
+
+		/**
+		 * One or more lines were cleared.
+		 * @param engEngine The game.
+		 * @param iLines The number of lines cleared.
+		 * @param iGarbage The number of garbage rows to send to an opponent,
+		 *                 after cancelling the ones that were pending.
+		 */
+		void linesCleared(GameEngine engEngine, int iLines, int iGarbage);
+
+		/**
+		 * Garbage rows were pushed in from the bottom of the board.
+		 * @param engEngine The game.
+		 * @param iRows The number of rows.
+		 * @param iHoleCol The column left empty in every row.
+		 */
+		default void garbageAdded(GameEngine engEngine, int iRows, int iHoleCol) {
+		}
+
+		/**
+		 * The stack reached the top of the board.
+		 * @param engEngine The game.
+		 */
+		void gameOver(GameEngine engEngine);
+	}
+
+	/**
+	 * The board of the game.
+	 */
+	private final Board board;
+
+	/**
+	 * Decides where a piece ends up when it is rotated.
+	 */
+	private final RotationSystem rotRotation;
+
+	/**
+	 * The movement keys of the player that are held down.
+	 */
+	private final InputState insKeys;
+
+	/**
+	 * Told about the events of the game, or null.
+	 */
+	private Listener lisListener;
+
+	/**
+	 * Picks the pieces.
+	 */
+	private Random rRandom;
+
+	/**
+	 * Picks the holes of the garbage rows.
+	 */
+	private Random rGarbage;
+
+	/**
+	 * The seed the game was last reset with.
+	 */
+	private long lSeed;
+
+	/**
+	 * The time of the current frame, from {@code System.nanoTime()} or from
+	 * the replay being simulated. The logical frames are only ever counted
+	 * from this time, so a game given the same frames plays out the same way.
+	 */
+	private long lNow;
+
+	/**
+	 * The time the logical frames are counted from.
+	 */
+	private long lClockStart;
+
+	/**
+	 * The logical frame that was due at {@code lClockStart}.
+	 */
+	private long lClockFrame;
+
+	/**
+	 * The number of logical frames run.
+	 */
+	private long lFrame;
+
+	/**
+	 * Records the frames and keys of the game, or null.
+	 */
+	private ReplayRecorder recRecorder;
+
+	/**
+	 * Whether or not the game reports its timings to {@code Metrics}.
+	 */
+	private boolean bInstrumented;
+
+	/**
+	 * The current type of tile.
+	 */
+	private TileType tilCurrentType;
+
+	/**
+	 * The next type of tile.
+	 */
+	private TileType tilNextType;
+
+	/**
+	 * The current column of our tile.
+	 */
+	private int iCurrentCol;
+
+	/**
+	 * The current row of our tile.
+	 */
+	private int iCurrentRow;
+
+	/**
+	 * The current rotation of our tile.
+	 */
+	private int iCurrentRotation;
+
+	/**
+	 * The gravity of the current level, in {@code LevelTable.iG}ths of a row
+	 * per frame.
+	 */
+	private int iGravity;
+
+	/**
+	 * The part of a row the piece has fallen without moving down yet.
+	 */
+	private int iFallCounter;
+
+	/**
+	 * The number of rows the piece can fall from where it is, or -1 when it
+	 * has to be worked out again after the piece or the board changed.
+	 */
+	private int iDropDistance;
+
+	/**
+	 * The number of frames the piece has been on the ground.
+	 */
+	private int iLockFrames;
+
+	/**
+	 * The number of times the lock delay of the piece was restarted by
+	 * moving it.
+	 */
+	private int iLockResets;
+
+	/**
+	 * The lowest row the piece has reached, where its lock resets are given
+	 * back.
+	 */
+	private int iLowestRow;
+
+	/**
+	 * The frames left before the game goes on after clearing lines.
+	 */
+	private int iClearFrames;
+
+	/**
+	 * The length of the last line clear delay, in frames.
+	 */
+	private int iClearDelay;
+
+	/**
+	 * The frames left before the next piece spawns. There is no piece while
+	 * this or {@code iClearFrames} isn't zero.
+	 */
+	private int iSpawnFrames;
+
+	/**
+	 * The current level.
+	 */
+	private int iLevel;
+
+	/**
+	 * The current score.
+	 */
+	private int iScore;
+
+	/**
+	 * The number of lines cleared.
+	 */
+	private int iLines;
+
+	/**
+	 * The garbage rows received that haven't been added to the board yet.
+	 */
+	private int iPendingGarbage;
+
+	/**
+	 * Whether or not the game is paused.
+	 */
+	private boolean bPaused;
+
+	/**
+	 * Whether or not the game is over.
+	 */
+	private boolean bGameOver;
+
+	/**
+	 * Creates a new engine on a standard board. No piece falls until
+	 * {@code reset} is called.
+	 * @param rotRotation The rotation system to use.
+	 * @param insKeys The held keys of the player.
+	 */
+	public GameEngine(RotationSystem rotRotation, InputState insKeys) {
+		this(rotRotation, insKeys, new Board());
+	}
+
+	/**
+	 * Creates a new engine. No piece falls until {@code reset} is called.
+	 * @param rotRotation The rotation system to use.
+	 * @param insKeys The held keys of the player.
+	 * @param boaBoard The empty board to play on, of any size.
+	 */
+	public GameEngine(RotationSystem rotRotation, InputState insKeys, Board boaBoard) {
+		this.board = boaBoard;
+		this.rotRotation = rotRotation;
+		this.insKeys = insKeys;
+		this.rRandom = new Random();
+		this.rGarbage = new Random();
+		this.iDropDistance = -1;
+		this.bInstrumented = true;
+		setLevel(1);
+	}
+
+	/**
+	 * Sets the listener told about the events of the game.
+	 * @param lisListener The listener, or null.
+	 */
+	public void setListener(Listener lisListener) {
+		this.lisListener = lisListener;
+	}
+
+	/**
+	 * Gets the seed the game was last reset with.
+	 * @return The seed of the random pieces.
+	 */
+	public long getSeed() {
+		return lSeed;
+	}
+
+	/**
+	 * Sets the recorder of the frames and keys of the game. It starts
+	 * recording on the next {@code reset}.
+	 * @param recRecorder The recorder, or null.
+	 */
+	public void setRecorder(ReplayRecorder recRecorder) {
+		this.recRecorder = recRecorder;
+	}
+
+	/**
+	 * Sets whether or not the game reports its timings to {@code Metrics}.
+	 * Games simulated in bulk turn it off so that they don't fight over the
+	 * shared counters.
+	 * @param bInstrumented Whether or not to report the timings.
+	 */
+	public void setInstrumented(boolean bInstrumented) {
+		this.bInstrumented = bInstrumented;
+	}
+
+	/**
+	 * Gets the rotation system of the game.
+	 * @return The rotation system.
+	 */
+	public RotationSystem getRotationSystem() {
+		return rotRotation;
+	}
+
+	/**
+	 * Gets the listener told about the events of the game.
+	 * @return The listener, or null.
+	 */
+	public Listener getListener() {
+		return lisListener;
+	}
+
+	/**
+	 * Resets the game variables to their default values and spawns the first
+	 * piece. Games reset with the same seed get the same pieces.
+	 * @param lSeed The seed of the random pieces.
+	 */
+	public void reset(long lSeed) {
+		reset(lSeed, System.nanoTime());
+	}
+
+	/**
+	 * Resets the game as {@code reset} does, counting the logical frames from
+	 * a given time.
+	 * @param lSeed The seed of the random pieces.
+	 * @param lNow The current time, in the same nanoseconds the frames
+	 *             will be given in.
+	 */
+	public void reset(long lSeed, long lNow) {
+		this.lNow = lNow;
+		this.lSeed = lSeed;
+		this.rRandom = new Random(lSeed);
+		this.rGarbage = new Random(lSeed ^ lGARBAGE_SEED);
+		this.iScore = 0;
+		this.iLines = 0;
+		this.iPendingGarbage = 0;
+		this.iClearFrames = 0;
+		this.iClearDelay = 0;
+		this.iSpawnFrames = 0;
+		this.lFrame = 0;
+		this.tilNextType = nextType();
+		this.bPaused = false;
+		this.bGameOver = false;
+		setLevel(1);
+		insKeys.clear();
+		board.clear();
+		resetClock();
+		if(recRecorder != null) {
+			recRecorder.start(this, lNow);
+		}
+		spawnPiece();
+	}
+
+	/**
+	 * Runs a frame of the game: applies the held keys and then every logical
+	 * frame that has become due.
+	 * @param lNow When the frame started, from {@code System.nanoTime()}.
+	 */
+	public void update(long lNow) {
+		this.lNow = lNow;
+		if(recRecorder != null) {
+			recRecorder.frame(lNow);
+		}
+		applyHeldKeys(lNow);
+		if(bPaused || bGameOver) {
+			return;
+		}
+
+		long lDue = lClockFrame + (lNow - lClockStart) * LevelTable.iFRAMES_PER_SECOND / 1000000000L;
+		if(lDue - lFrame > iMAX_FRAMES_PER_UPDATE) {
+			lFrame = lDue - iMAX_FRAMES_PER_UPDATE;
+		}
+		if(lFrame < lDue) {
+			long lTickStart = System.nanoTime();
+			while(lFrame < lDue && !bGameOver) {
+				lFrame++;
+				tick();
+			}
+			if(bInstrumented) {
+				Metrics.latTICK.recordSince(lTickStart);
+			}
+		}
+	}
+
+	/**
+	 * Applies the press of the key bound to an action. Held keys take effect
+	 * on the next {@code update}, the rest right away.
+	 * @param iAction The action.
+	 * @param lTime When the key was pressed, from {@code System.nanoTime()}.
+	 */
+	public void pressAction(int iAction, long lTime) {
+		if(recRecorder != null) {
+			recRecorder.press(iAction, lTime);
+		}
+		switch(iAction) {
+			case iACTION_SOFT_DROP:
+				insKeys.setSoftDrop(true);
+				break;
+			/*
+			 * Hard Drop - Only the press that starts holding the key drops
+			 * a piece.
+			 */
+			case iACTION_HARD_DROP:
+				if(insKeys.pressHardDrop()) {
+					hardDrop();
+				}
+				break;
+			case iACTION_LEFT:
+				insKeys.pressLeft(lTime);
+				break;
+			case iACTION_RIGHT:
+				insKeys.pressRight(lTime);
+				break;
+			case iACTION_ROTATE_ANTICLOCKWISE:
+				rotateAntiClockwise();
+				break;
+			case iACTION_ROTATE_CLOCKWISE:
+				rotateClockwise();
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Applies the release of the key bound to an action.
+	 * @param iAction The action.
+	 * @param lTime When the key was released, from {@code System.nanoTime()}.
+	 */
+	public void releaseAction(int iAction, long lTime) {
+		if(recRecorder != null) {
+			recRecorder.release(iAction, lTime);
+		}
+		switch(iAction) {
+			/*
+			 * Drop - When released, the piece falls at the gravity of the
+			 * level again from the next logical frame.
+			 */
+			case iACTION_SOFT_DROP:
+				insKeys.setSoftDrop(false);
+				break;
+			case iACTION_HARD_DROP:
+				insKeys.releaseHardDrop();
+				break;
+			case iACTION_LEFT:
+				insKeys.releaseLeft(lTime);
+				break;
+			case iACTION_RIGHT:
+				insKeys.releaseRight(lTime);
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Checks whether or not the piece can be controlled.
+	 * @return Whether or not a game is running and not paused.
+	 */
+	private boolean isPlaying() {
+		return !bPaused && !bGameOver && tilCurrentType != null;
+	}
+
+	/**
+	 * Applies the keys that are held down: moves the piece sideways as DAS
+	 * and ARR dictate. A held soft drop is applied by {@code tick}. While
+	 * there is no piece to move, the repeats are dropped so that they don't
+	 * all land on the next piece.
+	 * @param lNow The current time, from {@code System.nanoTime()}.
+	 */
+	private void applyHeldKeys(long lNow) {
+		if(!isPlaying()) {
+			insKeys.skipShift(lNow);
+			return;
+		}
+		int iShift = insKeys.pollShift(lNow);
+		for(; iShift < 0; iShift++) {
+			moveLeft();
+		}
+		for(; iShift > 0; iShift--) {
+			moveRight();
+		}
+	}
+
+	/**
+	 * Runs one logical frame: counts down the delays between pieces, or lets
+	 * gravity move the piece down and locks it once it has been on the
+	 * ground for the lock delay.
+	 */
+	private void tick() {
+		if(iClearFrames > 0) {
+			iClearFrames--;
+			return;
+		}
+		if(iSpawnFrames > 0) {
+			if(--iSpawnFrames == 0) {
+				spawnPiece();
+			}
+			return;
+		}
+
+		/*
+		 * Gravity above 1G moves the piece several rows in a frame, but never
+		 * further than it can fall, so it costs the same at any speed.
+		 */
+		iFallCounter += insKeys.isSoftDropping()
+				? (int) Math.min(LevelTable.iMAX_GRAVITY, iGravity * insKeys.getSoftDropFactor())
+				: iGravity;
+		int iRows = iFallCounter / LevelTable.iG;
+		iFallCounter %= LevelTable.iG;
+		if(iRows > 0) {
+			int iFall = Math.min(iRows, getDropDistance());
+			if(iFall > 0) {
+				fall(iFall);
+			}
+		}
+
+		if(getDropDistance() == 0) {
+			iFallCounter = 0;
+			if(++iLockFrames >= LevelTable.getLockDelay(iLevel)) {
+				lockPiece();
+			}
+		} else {
+			iLockFrames = 0;
+		}
+	}
+
+	/**
+	 * Moves the piece down, giving back its lock resets when it reaches a
+	 * new lowest row.
+	 * @param iRows The number of rows, no more than it can fall.
+	 */
+	private void fall(int iRows) {
+		iCurrentRow += iRows;
+		iDropDistance -= iRows;
+		if(iCurrentRow > iLowestRow) {
+			iLowestRow = iCurrentRow;
+			iLockResets = 0;
+		}
+	}
+
+	/**
+	 * Gets the number of rows the piece can fall from where it is.
+	 * @return The number of rows.
+	 */
+	private int getDropDistance() {
+		if(iDropDistance < 0) {
+			iDropDistance = 0;
+			while(board.isValidAndEmpty(tilCurrentType, iCurrentCol,
+										iCurrentRow + iDropDistance + 1, iCurrentRotation)) {
+				iDropDistance++;
+			}
+		}
+		return iDropDistance;
+	}
+
+	/**
+	 * Notes that the piece moved or rotated: the drop distance has to be
+	 * worked out again, and a piece on the ground restarts its lock delay
+	 * if it has resets left.
+	 */
+	private void moved() {
+		iDropDistance = -1;
+		if(iLockFrames > 0 && iLockResets < LevelTable.iMAX_LOCK_RESETS) {
+			iLockFrames = 0;
+			iLockResets++;
+		}
+	}
+
+	/**
+	 * Moves the piece one column to the left if it fits.
+	 */
+	public void moveLeft() {
+		if(isPlaying() && board.isValidAndEmpty(tilCurrentType, iCurrentCol - 1,
+												iCurrentRow, iCurrentRotation)) {
+			iCurrentCol--;
+			moved();
+		}
+	}
+
+	/**
+	 * Moves the piece one column to the right if it fits.
+	 */
+	public void moveRight() {
+		if(isPlaying() && board.isValidAndEmpty(tilCurrentType, iCurrentCol + 1,
+												iCurrentRow, iCurrentRotation)) {
+			iCurrentCol++;
+			moved();
+		}
+	}
+
+	/**
+	 * Rotates the piece anticlockwise if the rotation system finds room.
+	 */
+	public void rotateAntiClockwise() {
+		if(isPlaying()) {
+			rotatePiece((iCurrentRotation == 0) ? 3 : iCurrentRotation - 1);
+		}
+	}
+
+	/**
+	 * Rotates the piece clockwise if the rotation system finds room.
+	 */
+	public void rotateClockwise() {
+		if(isPlaying()) {
+			rotatePiece((iCurrentRotation == 3) ? 0 : iCurrentRotation + 1);
+		}
+	}
+
+	/**
+	 * Moves the piece straight down as far as it can go and locks it right
+	 * away.
+	 */
+	public void hardDrop() {
+		if(isPlaying()) {
+			int iRows = getDropDistance();
+			iCurrentRow += iRows;
+			if(lisListener != null) {
+				lisListener.hardDropped(this, iRows);
+			}
+			lockPiece();
+		}
+	}
+
+	/**
+	 * Attempts to set the rotation of the current piece to newRotation.
+	 * @param newRotation The rotation of the new peice.
+	 */
+	private void rotatePiece(int newRotation) {
+		/*
+		 * The rotation system decides where the rotated piece ends up, trying
+		 * its kicks in order until one fits.
+		 */
+		int iKick = rotRotation.rotate(board, tilCurrentType, iCurrentCol,
+				iCurrentRow, iCurrentRotation, newRotation);
+		if(iKick != RotationSystem.iNO_KICK) {
+			iCurrentRotation = newRotation;
+			iCurrentCol += RotationSystem.unpackX(iKick);
+			iCurrentRow += RotationSystem.unpackY(iKick);
+			moved();
+		}
+	}
+
+	/**
+	 * Queues garbage rows sent by an opponent. They are added to the board
+	 * when the next piece locks without clearing a line.
+	 * @param iRows The number of rows.
+	 */
+	public void receiveGarbage(int iRows) {
+		if(!bGameOver) {
+			iPendingGarbage = Math.min(iPendingGarbage + iRows, board.getRowCount());
+		}
+	}
+
+	/**
+	 * Adds the current piece to the board where it is, clears any completed
+	 * lines, adds any pending garbage and starts the delays before the next
+	 * piece.
+	 */
+	private void lockPiece() {
+		GameEvents.PieceLock evtLock = new GameEvents.PieceLock();
+		evtLock.begin();
+		long lLockStart = System.nanoTime();
+		board.addPiece(tilCurrentType, iCurrentCol, iCurrentRow, iCurrentRotation);
+		long lAddedAt = System.nanoTime();
+		if(lisListener != null) {
+			lisListener.pieceLocked(this);
+		}
+
+		/*
+		 * Check to see if adding the new piece resulted in any cleared lines. If so,
+		 * increase the player's score. (Up to 4 lines can be cleared in a single go;
+		 * [1 = 100pts, 2 = 200pts, 3 = 400pts, 4 = 800pts]).
+		 */
+		int cleared = board.checkLines();
+		long lCheckedAt = System.nanoTime();
+		if(bInstrumented) {
+			Metrics.latLINE_CLEAR.record(lCheckedAt - lLockStart);
+		}
+		evtLock.end();
+		if(evtLock.shouldCommit()) {
+			evtLock.piece = tilCurrentType.name();
+			evtLock.addPieceNanos = lAddedAt - lLockStart;
+			evtLock.checkLinesNanos = lCheckedAt - lAddedAt;
+			evtLock.setState(this);
+			evtLock.commit();
+		}
+		if(cleared > 0) {
+			GameEvents.LineClear evtClear = new GameEvents.LineClear();
+			if(evtClear.shouldCommit()) {
+				evtClear.rows = cleared;
+				evtClear.setState(this);
+				evtClear.commit();
+			}
+			iScore += 50 << cleared;
+			iLines += cleared;
+
+			/*
+			 * The garbage earned first cancels the garbage that is waiting to
+			 * come in, and only the rest is sent on.
+			 */
+			int iSent = iGARBAGE_SENT[Math.min(cleared, iGARBAGE_SENT.length - 1)];
+			int iCancelled = Math.min(iSent, iPendingGarbage);
+			iPendingGarbage -= iCancelled;
+			if(lisListener != null) {
+				lisListener.linesCleared(this, cleared, iSent - iCancelled);
+			}
+		} else if(iPendingGarbage > 0) {
+			int iRows = iPendingGarbage;
+			int iHoleCol = rGarbage.nextInt(board.getColCount());
+			boolean bOverflow = board.addGarbage(iRows, iHoleCol);
+			iPendingGarbage = 0;
+			if(lisListener != null) {
+				lisListener.garbageAdded(this, iRows, iHoleCol);
+			}
+			if(bOverflow) {
+				endGame();
+				return;
+			}
+		}
+
+		/*
+		 * Every few lines the game goes up a level, which sets the gravity
+		 * and the delays.
+		 */
+		if(LevelTable.getLevel(iLines) != iLevel) {
+			setLevel(LevelTable.getLevel(iLines));
+		}
+
+		/*
+		 * The piece is gone until the next one spawns, after the line clear
+		 * delay if lines were cleared and then the spawn delay.
+		 */
+		iClearDelay = cleared > 0 ? LevelTable.getLineClearDelay(iLevel) : 0;
+		iClearFrames = iClearDelay;
+		iSpawnFrames = LevelTable.getSpawnDelay(iLevel);
+		tilCurrentType = null;
+	}
+
+	/**
+	 * Picks the type of a new piece.
+	 * @return The type.
+	 */
+	private TileType nextType() {
+		return TileType.getPiece(rRandom.nextInt(TileType.iPIECE_COUNT));
+	}
+
+	/**
+	 * Spawns a new piece and resets our piece's variables to their default
+	 * values.
+	 */
+	private void spawnPiece() {
+		/*
+		 * Poll the last piece and reset our position and rotation to
+		 * their default variables, then pick the next piece to use.
+		 */
+		this.tilCurrentType = tilNextType;
+		this.iCurrentCol = tilCurrentType.getSpawnColumn(board.getColCount());
+		this.iCurrentRow = tilCurrentType.getSpawnRow();
+		this.iCurrentRotation = 0;
+		this.tilNextType = nextType();
+		this.iFallCounter = 0;
+		this.iDropDistance = -1;
+		this.iLockFrames = 0;
+		this.iLockResets = 0;
+		this.iLowestRow = iCurrentRow;
+
+		GameEvents.PieceSpawn evtSpawn = new GameEvents.PieceSpawn();
+		if(evtSpawn.shouldCommit()) {
+			evtSpawn.piece = tilCurrentType.name();
+			evtSpawn.setState(this);
+			evtSpawn.commit();
+		}
+
+		/*
+		 * If the spawn point is invalid, we need to pause the game and flag that we've lost
+		 * because it means that the pieces on the board have gotten too high.
+		 */
+		if(!board.isValidAndEmpty(tilCurrentType, iCurrentCol, iCurrentRow, iCurrentRotation)) {
+			endGame();
+		}
+	}
+
+	/**
+	 * Flags the game as lost.
+	 */
+	private void endGame() {
+		this.bGameOver = true;
+		if(recRecorder != null) {
+			recRecorder.end(lNow);
+		}
+		if(lisListener != null) {
+			lisListener.gameOver(this);
+		}
+	}
+
+	/**
+	 * Restarts the logical frame clock, used after loading a game.
+	 */
+	public void resetTimer() {
+		iDropDistance = -1;
+		resetClock();
+	}
+
+	/**
+	 * Counts the logical frames from the time of the current frame, so the
+	 * time before it doesn't make any more of them due.
+	 */
+	private void resetClock() {
+		lClockStart = lNow;
+		lClockFrame = lFrame;
+	}
+
+	/**
+	 * Checks to see whether or not the game is paused.
+	 * @return Whether or not the game is paused.
+	 */
+	public boolean isPaused() {
+		return bPaused;
+	}
+
+	/**
+	 * Pauses or resumes the game.
+	 * @param bPaused Whether or not the game is paused.
+	 */
+	public void setPaused(boolean bPaused) {
+		if(recRecorder != null && bPaused != this.bPaused) {
+			recRecorder.pause(bPaused, lNow);
+		}
+		if(this.bPaused && !bPaused) {
+			resetClock();
+		}
+		this.bPaused = bPaused;
+	}
+
+	/**
+	 * Checks to see whether or not the game is over.
+	 * @return Whether or not the game is over.
+	 */
+	public boolean isGameOver() {
+		return bGameOver;
+	}
+
+	/**
+	 * Sets whether or not the game is over.
+	 * @param bGameOver Whether or not the game is over.
+	 */
+	public void setGameOver(boolean bGameOver) {
+		this.bGameOver = bGameOver;
+	}
+
+	/**
+	 * Gets the board of the game.
+	 * @return The board.
+	 */
+	public Board getBoard() {
+		return board;
+	}
+
+	/**
+	 * Gets the held keys of the player.
+	 * @return The input state.
+	 */
+	public InputState getKeys() {
+		return insKeys;
+	}
+
+	/**
+	 * Gets the current score.
+	 * @return The score.
+	 */
+	public int getScore() {
+		return iScore;
+	}
+
+	/**
+	 * Sets the current score.
+	 * @param iScore The score.
+	 */
+	public void setScore(int iScore) {
+		this.iScore = iScore;
+	}
+
+	/**
+	 * Gets the current level.
+	 * @return The level.
+	 */
+	public int getLevel() {
+		return iLevel;
+	}
+
+	/**
+	 * Sets the current level.
+	 * @param iLevel The level.
+	 */
+	public void setLevel(int iLevel) {
+		this.iLevel = iLevel;
+		this.iGravity = LevelTable.getGravity(iLevel);
+	}
+
+	/**
+	 * Gets the number of lines cleared.
+	 * @return The number of lines.
+	 */
+	public int getLines() {
+		return iLines;
+	}
+
+	/**
+	 * Sets the number of lines cleared.
+	 * @param iLines The number of lines.
+	 */
+	public void setLines(int iLines) {
+		this.iLines = iLines;
+	}
+
+	/**
+	 * Gets the number of garbage rows waiting to be added to the board.
+	 * @return The number of rows.
+	 */
+	public int getPendingGarbage() {
+		return iPendingGarbage;
+	}
+
+	/**
+	 * Sets the number of garbage rows waiting to be added to the board.
+	 * @param iPendingGarbage The number of rows.
+	 */
+	public void setPendingGarbage(int iPendingGarbage) {
+		this.iPendingGarbage = iPendingGarbage;
+	}
+
+	/**
+	 * Gets the gravity of the current level.
+	 * @return The gravity, in {@code LevelTable.iG}ths of a row per frame.
+	 */
+	public int getGravity() {
+		return iGravity;
+	}
+
+	/**
+	 * Gets the current type of piece we're using.
+	 * @return The piece type.
+	 */
+	public TileType getPieceType() {
+		return tilCurrentType;
+	}
+
+	/**
+	 * Sets the current type of piece we're using.
+	 * @param tilCurrentType  piece type.
+	 */
+	public void setPieceType(TileType tilCurrentType) {
+		this.tilCurrentType = tilCurrentType;
+		this.iDropDistance = -1;
+	}
+
+	/**
+	 * Gets the next type of piece we're using.
+	 * @return The next piece type.
+	 */
+	public TileType getNextPieceType() {
+		return tilNextType;
+	}
+
+	/**
+	 * Sets the next type of piece we're using.
+	 * @param tilNextType The next piece.
+	 */
+	public void setNextPieceType(TileType tilNextType) {
+		this.tilNextType = tilNextType;
+	}
+
+	/**
+	 * Gets the column of the current piece.
+	 * @return The column.
+	 */
+	public int getPieceCol() {
+		return iCurrentCol;
+	}
+
+	/**
+	 * Sets the column of the current piece.
+	 * @param iCurrentCol The column.
+	 */
+	public void setPieceCol(int iCurrentCol) {
+		this.iCurrentCol = iCurrentCol;
+		this.iDropDistance = -1;
+	}
+
+	/**
+	 * Gets the row of the current piece.
+	 * @return The row.
+	 */
+	public int getPieceRow() {
+		return iCurrentRow;
+	}
+
+	/**
+	 * Sets the row of the current piece.
+	 * @param iCurrentRow The row.
+	 */
+	public void setPieceRow(int iCurrentRow) {
+		this.iCurrentRow = iCurrentRow;
+		this.iDropDistance = -1;
+	}
+
+	/**
+	 * Gets the rotation of the current piece.
+	 * @return The rotation.
+	 */
+	public int getPieceRotation() {
+		return iCurrentRotation;
+	}
+
+	/**
+	 * Sets the rotation of the current piece.
+	 * @param iCurrentRotation The rotation.
+	 */
+	public void setPieceRotation(int iCurrentRotation) {
+		this.iCurrentRotation = iCurrentRotation;
+		this.iDropDistance = -1;
+	}
+
+	/**
+	 * Gets the logical frames left before the next piece spawns.
+	 * @return The number of frames, 0 while a piece is falling.
+	 */
+	public int getSpawnDelay() {
+		return iClearFrames + iSpawnFrames;
+	}
+
+	/**
+	 * Gets whether or not the game is waiting after clearing lines. The rows
+	 * that were cleared are still those of {@code Board.getClearedRow}
+	 * meanwhile, and nothing else changes the board.
+	 * @return Whether or not the line clear delay is running.
+	 */
+	public boolean isClearing() {
+		return iClearFrames > 0;
+	}
+
+	/**
+	 * Gets how far the line clear delay has run.
+	 * @return The number of frames since the lines were cleared, below
+	 *         {@code getClearDelay} while the game is clearing.
+	 */
+	public int getClearFrame() {
+		return iClearDelay - iClearFrames;
+	}
+
+	/**
+	 * Gets the length of the last line clear delay.
+	 * @return The number of frames.
+	 */
+	public int getClearDelay() {
+		return iClearDelay;
+	}
+
+	/**
+	 * Sets the logical frames left before the next piece spawns, for a game
+	 * that was loaded between pieces.
+	 * @param iSpawnDelay The number of frames, 0 while a piece is falling.
+	 */
+	public void setSpawnDelay(int iSpawnDelay) {
+		this.iClearFrames = 0;
+		this.iSpawnFrames = iSpawnDelay;
+	}
+}
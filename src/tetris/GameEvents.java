@@ -0,0 +1,142 @@
+package tetris;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * GameEvents
+ *
+ * Java Flight Recorder events emitted by the engine and the renderer. They
+ * cost next to nothing while no recording is running, and when one is they
+ * can be lined up with the GC and safepoint events of the JVM. Every gameplay
+ * event carries the level, game speed and how full the board was.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public final class GameEvents {
+
+	/**
+	 * Not meant to be instantiated.
+	 */
+	private GameEvents() {
+	}
+
+	/**
+	 * Base of every event that describes the state of a game.
+	 */
+	@Category("Tetris")
+	public abstract static class GameplayEvent extends Event {
+		@Label("Level")
+		protected int level;
+
+		@Label("Gravity")
+		@Description("Rows fallen per logical frame, in 65536ths")
+		protected int gravity;
+
+		@Label("Board Fill")
+		@Description("Fraction of the cells of the board that are occupied")
+		protected float boardFill;
+
+		/**
+		 * Copies the state of a game into the event.
+		 * @param engGame The game.
+		 */
+		public void setState(GameEngine engGame) {
+			this.level = engGame.getLevel();
+			this.gravity = engGame.getGravity();
+			this.boardFill = engGame.getBoard().getFillRatio();
+		}
+	}
+
+	/**
+	 * A new piece was spawned.
+	 */
+	@Name("tetris.PieceSpawn")
+	@Label("Piece Spawn")
+	public static final class PieceSpawn extends GameplayEvent {
+		@Label("Piece")
+		public String piece;
+	}
+
+	/**
+	 * A piece was added to the board. The event spans the whole lock.
+	 */
+	@Name("tetris.PieceLock")
+	@Label("Piece Lock")
+	public static final class PieceLock extends GameplayEvent {
+		@Label("Piece")
+		public String piece;
+
+		@Label("Add Piece Time")
+		@Timespan(Timespan.NANOSECONDS)
+		public long addPieceNanos;
+
+		@Label("Check Lines Time")
+		@Timespan(Timespan.NANOSECONDS)
+		public long checkLinesNanos;
+	}
+
+	/**
+	 * One or more rows were cleared.
+	 */
+	@Name("tetris.LineClear")
+	@Label("Line Clear")
+	public static final class LineClear extends GameplayEvent {
+		@Label("Rows")
+		public int rows;
+	}
+
+	/**
+	 * The board was painted. The event spans the paint.
+	 */
+	@Name("tetris.FramePaint")
+	@Label("Frame Paint")
+	@Category("Tetris")
+	public static final class FramePaint extends Event {
+	}
+
+	/**
+	 * A sound started playing.
+	 */
+	@Name("tetris.SoundTrigger")
+	@Label("Sound Trigger")
+	@Category("Tetris")
+	public static final class SoundTrigger extends Event {
+		@Label("Sound")
+		public String sound;
+	}
+
+	/**
+	 * The game was saved. The event spans the save.
+	 */
+	@Name("tetris.SaveGame")
+	@Label("Save Game")
+	public static final class SaveGame extends GameplayEvent {
+	}
+
+	/**
+	 * The game was loaded. The event spans the load.
+	 */
+	@Name("tetris.LoadGame")
+	@Label("Load Game")
+	public static final class LoadGame extends GameplayEvent {
+	}
+
+	/**
+	 * Emits a sound trigger event.
+	 * @param sSound The name of the sound.
+	 */
+	public static void soundTriggered(String sSound) {
+		SoundTrigger evtSound = new SoundTrigger();
+		if(evtSound.shouldCommit()) {
+			evtSound.sound = sSound;
+			evtSound.commit();
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package tetris;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * InputQueue
+ *
+ * Bounded lock-free queue that carries input commands from any number of
+ * producer threads (the AWT event thread) to the single game loop thread.
+ * Producers claim a slot with a compare-and-set on the tail and publish it
+ * through a per-slot sequence number, so nothing is allocated per command
+ * and the consumer never blocks. Each command is stamped with the time it
+ * was queued so the delay until it is applied can be measured.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class InputQueue {
+
+	/**
+	 * The value returned by {@code poll} when there are no commands.
+	 */
+	public static final int iEMPTY = -1;
+
+	/**
+	 * Flag added to a key code to tell a release from a press.
+	 */
+	public static final int iRELEASED = 1 << 30;
+
+	/**
+	 * The number of slots. Must be a power of two.
+	 */
+	private static final int iCAPACITY = 256;
+
+	/**
+	 * Mask that turns a position into a slot index.
+	 */
+	private static final int iMASK = iCAPACITY - 1;
+
+	/**
+	 * The commands in each slot.
+	 */
+	private final int[] iCommands;
+
+	/**
+	 * The time each command was queued at, from {@code System.nanoTime()}.
+	 */
+	private final long[] lTimestamps;
+
+	/**
+	 * The sequence number of each slot. A slot can be written when its
+	 * sequence equals the tail position, and read when it equals the head
+	 * position plus one.
+	 */
+	private final AtomicLongArray alaSequences;
+
+	/**
+	 * The next position to write to, shared by the producers.
+	 */
+	private final AtomicLong atoTail;
+
+	/**
+	 * The next position to read from. Only the consumer touches it.
+	 */
+	private long lHead;
+
+	/**
+	 * The time the last polled command was queued at.
+	 */
+	private long lLastTimestamp;
+
+	/**
+	 * Creates a new, empty queue.
+	 */
+	public InputQueue() {
+		this.iCommands = new int[iCAPACITY];
+		this.lTimestamps = new long[iCAPACITY];
+		this.alaSequences = new AtomicLongArray(iCAPACITY);
+		for(int i = 0; i < iCAPACITY; i++) {
+			alaSequences.set(i, i);
+		}
+		this.atoTail = new AtomicLong();
+	}
+
+	/**
+	 * Queues a command. Can be called from any thread.
+	 * @param iCommand The command, never negative.
+	 * @return False if the queue was full and the command was dropped.
+	 */
+	public boolean offer(int iCommand) {
+		long lTimestamp = System.nanoTime();
+		while(true) {
+			long lPosition = atoTail.get();
+			int iSlot = (int) (lPosition & iMASK);
+			long lDifference = alaSequences.get(iSlot) - lPosition;
+			if(lDifference == 0) {
+				if(atoTail.compareAndSet(lPosition, lPosition + 1)) {
+					iCommands[iSlot] = iCommand;
+					lTimestamps[iSlot] = lTimestamp;
+					// Publishing the sequence makes the slot visible to the consumer
+					alaSequences.set(iSlot, lPosition + 1);
+					return true;
+				}
+			} else if(lDifference < 0) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Takes the oldest command. Must only be called from the game loop
+	 * thread.
+	 * @return The command, or {@code iEMPTY} if there is none.
+	 */
+	public int poll() {
+		int iSlot = (int) (lHead & iMASK);
+		if(alaSequences.get(iSlot) != lHead + 1) {
+			return iEMPTY;
+		}
+		int iCommand = iCommands[iSlot];
+		lLastTimestamp = lTimestamps[iSlot];
+		alaSequences.set(iSlot, lHead + iCAPACITY);
+		lHead++;
+		return iCommand;
+	}
+
+	/**
+	 * Gets the time the last polled command was queued at.
+	 * @return The time, from {@code System.nanoTime()}.
+	 */
+	public long getLastTimestamp() {
+		return lLastTimestamp;
+	}
+}
@@ -0,0 +1,360 @@
+package tetris;
+
+/**
+ * InputState
+ *
+ * Tracks which movement keys are held down and turns them into moves with
+ * Delayed Auto Shift (DAS) and Auto Repeat Rate (ARR), instead of relying on
+ * the key repeat of the operating system. The moves that are due are worked
+ * out from the time each key was actually pressed, so the result does not
+ * depend on where the press fell inside a frame, and several moves can be
+ * applied in a single tick when the repeat rate is faster than the frame
+ * rate.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class InputState {
+
+	/**
+	 * The default delay before a held key starts repeating.
+	 */
+	public static final long lDEFAULT_DAS_MILLIS = 167L;
+
+	/**
+	 * The default delay between repeats of a held key.
+	 */
+	public static final long lDEFAULT_ARR_MILLIS = 33L;
+
+	/**
+	 * The default multiplier applied to the gravity while soft dropping.
+	 */
+	public static final float fDEFAULT_SOFT_DROP_FACTOR = 20.0f;
+
+	/**
+	 * The most moves a held key can produce in one tick. An ARR of 0 moves
+	 * the piece all the way to the wall, which never takes more than this,
+	 * on every tick the key is held past DAS.
+	 */
+	private static final int iMAX_SHIFT = 64;
+
+	/**
+	 * The delay before a held key starts repeating, in nanoseconds.
+	 */
+	private long lDasNanos;
+
+	/**
+	 * The delay between repeats of a held key, in nanoseconds.
+	 */
+	private long lArrNanos;
+
+	/**
+	 * The multiplier applied to the gravity while soft dropping.
+	 */
+	private float fSoftDropFactor;
+
+	/**
+	 * Whether or not the left key is held.
+	 */
+	private boolean bLeftHeld;
+
+	/**
+	 * Whether or not the right key is held.
+	 */
+	private boolean bRightHeld;
+
+	/**
+	 * Whether or not the soft drop key is held.
+	 */
+	private boolean bSoftDropHeld;
+
+	/**
+	 * Whether or not the hard drop key is held.
+	 */
+	private boolean bHardDropHeld;
+
+	/**
+	 * The direction of the most recently pressed horizontal key, -1 for left
+	 * and 1 for right. It wins while both keys are held.
+	 */
+	private int iDirection;
+
+	/**
+	 * When the active horizontal key was pressed.
+	 */
+	private long lShiftPressedAt;
+
+	/**
+	 * The number of moves already produced by the active horizontal key.
+	 */
+	private long lShiftsApplied;
+
+	/**
+	 * Creates a new InputState with the default settings.
+	 */
+	public InputState() {
+		this(lDEFAULT_DAS_MILLIS, lDEFAULT_ARR_MILLIS, fDEFAULT_SOFT_DROP_FACTOR);
+	}
+
+	/**
+	 * Creates a new InputState.
+	 * @param lDasMillis The delay before a held key starts repeating.
+	 * @param lArrMillis The delay between repeats, 0 to move to the wall.
+	 * @param fSoftDropFactor The multiplier applied to the gravity while
+	 *                        soft dropping.
+	 */
+	public InputState(long lDasMillis, long lArrMillis, float fSoftDropFactor) {
+		setDas(lDasMillis);
+		setArr(lArrMillis);
+		setSoftDropFactor(fSoftDropFactor);
+	}
+
+	/**
+	 * Creates a new InputState from the {@code tetris.das},
+	 * {@code tetris.arr} (milliseconds) and {@code tetris.softDrop} system
+	 * properties, using the defaults for the ones that aren't set.
+	 * @return The input state.
+	 */
+	public static InputState fromSystemProperties() {
+		float fSoftDropFactor = fDEFAULT_SOFT_DROP_FACTOR;
+		String sSoftDrop = System.getProperty("tetris.softDrop");
+		if(sSoftDrop != null) {
+			try {
+				float fParsed = Float.parseFloat(sSoftDrop);
+				if(!Float.isNaN(fParsed)) {
+					fSoftDropFactor = fParsed;
+				}
+			} catch(NumberFormatException nfeException) {
+				// Like the other two, a malformed value keeps the default
+			}
+		}
+		return new InputState(
+				Long.getLong("tetris.das", lDEFAULT_DAS_MILLIS),
+				Long.getLong("tetris.arr", lDEFAULT_ARR_MILLIS),
+				fSoftDropFactor);
+	}
+
+	/**
+	 * Marks the left key as pressed. Repeated presses of a key that is
+	 * already held are ignored.
+	 * @param lTime When the key was pressed, from {@code System.nanoTime()}.
+	 */
+	public void pressLeft(long lTime) {
+		if(!bLeftHeld) {
+			bLeftHeld = true;
+			startShift(-1, lTime);
+		}
+	}
+
+	/**
+	 * Marks the left key as released.
+	 * @param lTime When the key was released, from {@code System.nanoTime()}.
+	 */
+	public void releaseLeft(long lTime) {
+		bLeftHeld = false;
+		if(iDirection == -1) {
+			handOver(bRightHeld, 1, lTime);
+		}
+	}
+
+	/**
+	 * Marks the right key as pressed. Repeated presses of a key that is
+	 * already held are ignored.
+	 * @param lTime When the key was pressed, from {@code System.nanoTime()}.
+	 */
+	public void pressRight(long lTime) {
+		if(!bRightHeld) {
+			bRightHeld = true;
+			startShift(1, lTime);
+		}
+	}
+
+	/**
+	 * Marks the right key as released.
+	 * @param lTime When the key was released, from {@code System.nanoTime()}.
+	 */
+	public void releaseRight(long lTime) {
+		bRightHeld = false;
+		if(iDirection == 1) {
+			handOver(bLeftHeld, -1, lTime);
+		}
+	}
+
+	/**
+	 * Sets whether or not the soft drop key is held.
+	 * @param bHeld Whether or not the key is held.
+	 */
+	public void setSoftDrop(boolean bHeld) {
+		this.bSoftDropHeld = bHeld;
+	}
+
+	/**
+	 * Checks whether or not the soft drop key is held.
+	 * @return Whether or not the piece should soft drop.
+	 */
+	public boolean isSoftDropping() {
+		return bSoftDropHeld;
+	}
+
+	/**
+	 * Marks the hard drop key as pressed.
+	 * @return True only for the press that started holding the key, so a
+	 *         held key drops a single piece.
+	 */
+	public boolean pressHardDrop() {
+		boolean bFresh = !bHardDropHeld;
+		bHardDropHeld = true;
+		return bFresh;
+	}
+
+	/**
+	 * Marks the hard drop key as released.
+	 */
+	public void releaseHardDrop() {
+		bHardDropHeld = false;
+	}
+
+	/**
+	 * Releases every key, used when a game starts.
+	 */
+	public void clear() {
+		bLeftHeld = false;
+		bRightHeld = false;
+		bSoftDropHeld = false;
+		bHardDropHeld = false;
+		iDirection = 0;
+	}
+
+	/**
+	 * Works out the horizontal moves that are due since the last call. Must
+	 * be called once per tick.
+	 * @param lNow The current time, from {@code System.nanoTime()}.
+	 * @return The number of columns to move, negative for left.
+	 */
+	public int pollShift(long lNow) {
+		if(iDirection == 0) {
+			return 0;
+		}
+
+		/*
+		 * Only the moves of this tick are capped, so a key keeps repeating
+		 * for as long as it is held; moves past the cap would only push the
+		 * piece against the wall.
+		 */
+		long lDue = getDueShifts(lNow);
+		int iMoves = (int) Math.min(iMAX_SHIFT, lDue - lShiftsApplied);
+		lShiftsApplied = lDue;
+		return iMoves * iDirection;
+	}
+
+	/**
+	 * Drops the repeated moves that are due since the last call, for the
+	 * ticks in which there is no piece to move. A key held through them stays
+	 * charged and goes on repeating from the next tick, instead of moving
+	 * the next piece by every repeat it missed. The move of the press itself
+	 * is kept until there is a piece.
+	 * @param lNow The current time, from {@code System.nanoTime()}.
+	 */
+	public void skipShift(long lNow) {
+		if(iDirection != 0 && lNow - lShiftPressedAt >= lDasNanos) {
+			lShiftsApplied = getDueShifts(lNow);
+		}
+	}
+
+	/**
+	 * Works out the number of moves the active horizontal key has produced
+	 * since it was pressed.
+	 * @param lNow The current time, from {@code System.nanoTime()}.
+	 * @return The number of moves.
+	 */
+	private long getDueShifts(long lNow) {
+		/*
+		 * The first move happens on the press itself, the second once DAS has
+		 * elapsed and the rest every ARR after that.
+		 */
+		long lHeld = lNow - lShiftPressedAt;
+		if(lHeld < lDasNanos) {
+			return 1;
+		} else if(lArrNanos == 0) {
+			return lShiftsApplied + iMAX_SHIFT;
+		}
+		return 2 + (lHeld - lDasNanos) / lArrNanos;
+	}
+
+	/**
+	 * Starts tracking a horizontal key as the active one.
+	 * @param iNewDirection The direction of the key.
+	 * @param lTime When the key was pressed.
+	 */
+	private void startShift(int iNewDirection, long lTime) {
+		iDirection = iNewDirection;
+		lShiftPressedAt = lTime;
+		lShiftsApplied = 0;
+	}
+
+	/**
+	 * When the active horizontal key is released, hands over to the other
+	 * one if it is still held. The other key has to charge DAS again.
+	 * @param bOtherHeld Whether or not the other key is held.
+	 * @param iOtherDirection The direction of the other key.
+	 * @param lTime When the active key was released.
+	 */
+	private void handOver(boolean bOtherHeld, int iOtherDirection, long lTime) {
+		if(bOtherHeld) {
+			startShift(iOtherDirection, lTime);
+			// The other key already moved the piece when it was pressed
+			lShiftsApplied = 1;
+		} else {
+			iDirection = 0;
+		}
+	}
+
+	/**
+	 * Sets the delay before a held key starts repeating.
+	 * @param lDasMillis The delay in milliseconds.
+	 */
+	public void setDas(long lDasMillis) {
+		this.lDasNanos = Math.max(0L, lDasMillis) * 1000000L;
+	}
+
+	/**
+	 * Gets the delay before a held key starts repeating.
+	 * @return The delay in milliseconds.
+	 */
+	public long getDas() {
+		return lDasNanos / 1000000L;
+	}
+
+	/**
+	 * Gets the delay between repeats of a held key.
+	 * @return The delay in milliseconds.
+	 */
+	public long getArr() {
+		return lArrNanos / 1000000L;
+	}
+
+	/**
+	 * Sets the delay between repeats of a held key.
+	 * @param lArrMillis The delay in milliseconds, 0 to move to the wall.
+	 */
+	public void setArr(long lArrMillis) {
+		this.lArrNanos = Math.max(0L, lArrMillis) * 1000000L;
+	}
+
+	/**
+	 * Sets the multiplier applied to the gravity while soft dropping.
+	 * @param fSoftDropFactor The multiplier.
+	 */
+	public void setSoftDropFactor(float fSoftDropFactor) {
+		this.fSoftDropFactor = Math.max(1.0f, fSoftDropFactor);
+	}
+
+	/**
+	 * Gets the multiplier applied to the gravity while soft dropping.
+	 * @return The multiplier.
+	 */
+	public float getSoftDropFactor() {
+		return fSoftDropFactor;
+	}
+}
@@ -0,0 +1,201 @@
+package tetris;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyRecorder
+ *
+ * Records durations into a fixed set of log-linear buckets, the same layout
+ * HdrHistogram uses: every power of two is split into 32 linear steps, so any
+ * recorded value is kept with ~3% precision while the whole range from a
+ * nanosecond to hours fits in under two thousand counters. Recording is a
+ * couple of shifts and an atomic increment, and never allocates.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class LatencyRecorder implements LatencyRecorderMBean {
+
+	/**
+	 * The number of bits of precision kept for each value.
+	 */
+	private static final int iSUB_BUCKET_BITS = 6;
+
+	/**
+	 * The number of values below which every value has its own bucket.
+	 */
+	private static final int iSUB_BUCKET_COUNT = 1 << iSUB_BUCKET_BITS;
+
+	/**
+	 * The number of buckets each power of two above the linear range uses.
+	 */
+	private static final int iSUB_BUCKET_HALF = iSUB_BUCKET_COUNT >> 1;
+
+	/**
+	 * The total number of buckets, enough for any positive long.
+	 */
+	private static final int iBUCKET_COUNT =
+			iSUB_BUCKET_COUNT + (64 - iSUB_BUCKET_BITS) * iSUB_BUCKET_HALF;
+
+	/**
+	 * The name of what's being recorded.
+	 */
+	private final String sName;
+
+	/**
+	 * The number of values recorded in each bucket.
+	 */
+	private final AtomicLongArray alaBuckets;
+
+	/**
+	 * The number of values recorded.
+	 */
+	private final AtomicLong atoCount;
+
+	/**
+	 * The sum of every value recorded.
+	 */
+	private final AtomicLong atoTotal;
+
+	/**
+	 * The largest value recorded.
+	 */
+	private final AtomicLong atoMax;
+
+	/**
+	 * Creates a new, empty recorder.
+	 * @param sName The name of what's being recorded.
+	 */
+	public LatencyRecorder(String sName) {
+		this.sName = sName;
+		this.alaBuckets = new AtomicLongArray(iBUCKET_COUNT);
+		this.atoCount = new AtomicLong();
+		this.atoTotal = new AtomicLong();
+		this.atoMax = new AtomicLong();
+	}
+
+	/**
+	 * Records a duration.
+	 * @param lNanos The duration in nanoseconds. Negative values count as 0.
+	 */
+	public void record(long lNanos) {
+		long lValue = Math.max(0L, lNanos);
+		alaBuckets.incrementAndGet(bucketOf(lValue));
+		atoCount.incrementAndGet();
+		atoTotal.addAndGet(lValue);
+		long lMax;
+		while(lValue > (lMax = atoMax.get())) {
+			if(atoMax.compareAndSet(lMax, lValue)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Records the time that has passed since a start time.
+	 * @param lStartNanos The start time, from {@code System.nanoTime()}.
+	 */
+	public void recordSince(long lStartNanos) {
+		record(System.nanoTime() - lStartNanos);
+	}
+
+	/**
+	 * Gets the value below which the given fraction of values fall.
+	 * @param dFraction The fraction, between 0 and 1.
+	 * @return The value in nanoseconds, or 0 if nothing was recorded.
+	 */
+	public long getValueAt(double dFraction) {
+		long lCount = atoCount.get();
+		if(lCount == 0) {
+			return 0L;
+		}
+		long lTarget = Math.max(1L, (long) Math.ceil(dFraction * lCount));
+		long lSeen = 0;
+		for(int iBucket = 0; iBucket < iBUCKET_COUNT; iBucket++) {
+			lSeen += alaBuckets.get(iBucket);
+			if(lSeen >= lTarget) {
+				return Math.min(highestOf(iBucket), atoMax.get());
+			}
+		}
+		return atoMax.get();
+	}
+
+	/**
+	 * Gets the name of what's being recorded.
+	 * @return The name.
+	 */
+	public String getName() {
+		return sName;
+	}
+
+	@Override
+	public long getCount() {
+		return atoCount.get();
+	}
+
+	@Override
+	public double getMeanMicros() {
+		long lCount = atoCount.get();
+		return lCount == 0 ? 0.0 : atoTotal.get() / (lCount * 1000.0);
+	}
+
+	@Override
+	public double getP50Micros() {
+		return getValueAt(0.50) / 1000.0;
+	}
+
+	@Override
+	public double getP99Micros() {
+		return getValueAt(0.99) / 1000.0;
+	}
+
+	@Override
+	public double getP999Micros() {
+		return getValueAt(0.999) / 1000.0;
+	}
+
+	@Override
+	public double getMaxMicros() {
+		return atoMax.get() / 1000.0;
+	}
+
+	@Override
+	public void reset() {
+		for(int iBucket = 0; iBucket < iBUCKET_COUNT; iBucket++) {
+			alaBuckets.set(iBucket, 0L);
+		}
+		atoCount.set(0L);
+		atoTotal.set(0L);
+		atoMax.set(0L);
+	}
+
+	/**
+	 * Finds the bucket a value belongs to.
+	 * @param lValue The value.
+	 * @return The bucket index.
+	 */
+	private static int bucketOf(long lValue) {
+		if(lValue < iSUB_BUCKET_COUNT) {
+			return (int) lValue;
+		}
+		int iShift = 63 - Long.numberOfLeadingZeros(lValue) - (iSUB_BUCKET_BITS - 1);
+		return iSUB_BUCKET_COUNT + (iShift - 1) * iSUB_BUCKET_HALF
+			   + (int) (lValue >>> iShift) - iSUB_BUCKET_HALF;
+	}
+
+	/**
+	 * Finds the largest value that falls in a bucket.
+	 * @param iBucket The bucket index.
+	 * @return The value.
+	 */
+	private static long highestOf(int iBucket) {
+		if(iBucket < iSUB_BUCKET_COUNT) {
+			return iBucket;
+		}
+		int iShift = (iBucket - iSUB_BUCKET_COUNT) / iSUB_BUCKET_HALF + 1;
+		long lSub = (iBucket - iSUB_BUCKET_COUNT) % iSUB_BUCKET_HALF + iSUB_BUCKET_HALF;
+		return ((lSub + 1) << iShift) - 1;
+	}
+}
@@ -0,0 +1,54 @@
+package tetris;
+
+/**
+ * LatencyRecorderMBean
+ *
+ * Management interface that exposes a {@code LatencyRecorder} through JMX.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public interface LatencyRecorderMBean {
+
+	/**
+	 * Gets the number of values recorded.
+	 * @return The count.
+	 */
+	long getCount();
+
+	/**
+	 * Gets the mean of every value recorded.
+	 * @return The mean in microseconds.
+	 */
+	double getMeanMicros();
+
+	/**
+	 * Gets the median of the values recorded.
+	 * @return The median in microseconds.
+	 */
+	double getP50Micros();
+
+	/**
+	 * Gets the 99th percentile of the values recorded.
+	 * @return The percentile in microseconds.
+	 */
+	double getP99Micros();
+
+	/**
+	 * Gets the 99.9th percentile of the values recorded.
+	 * @return The percentile in microseconds.
+	 */
+	double getP999Micros();
+
+	/**
+	 * Gets the largest value recorded.
+	 * @return The maximum in microseconds.
+	 */
+	double getMaxMicros();
+
+	/**
+	 * Clears every value recorded.
+	 */
+	void reset();
+}
@@ -0,0 +1,525 @@
+package tetris;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Leaderboard
+ *
+ * Keeps the finished games of a machine in an append-only log of fixed
+ * size records, each with a checksum, and forces every one to disk before
+ * the game is counted, so a crash can at worst lose the game being written.
+ * Only the best games of all time and of each day are kept in memory, in
+ * sorted sets, so adding a game and reading the top of a ranking take
+ * O(log n) no matter how many games were played. When the log has grown well past
+ * what the rankings need, it is rewritten with just those games.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class Leaderboard {
+
+	/**
+	 * The first bytes of the log.
+	 */
+	private static final int iMAGIC = 0x544C4231;
+
+	/**
+	 * The size of the header of the log.
+	 */
+	private static final int iHEADER_BYTES = 4;
+
+	/**
+	 * The size of a record: time, seed, duration, score, level, lines and
+	 * the checksum of the rest.
+	 */
+	private static final int iRECORD_BYTES = 40;
+
+	/**
+	 * The smallest log worth compacting, in records.
+	 */
+	private static final int iCOMPACT_MIN_RECORDS = 4096;
+
+	/**
+	 * How many times larger than the rankings the log can grow before it is
+	 * compacted.
+	 */
+	private static final int iCOMPACT_FACTOR = 4;
+
+	/**
+	 * The order of the rankings: highest score first, then earliest.
+	 */
+	private static final Comparator<Entry> comRANKING = (entA, entB) -> {
+		if(entA.iScore != entB.iScore) {
+			return Integer.compare(entB.iScore, entA.iScore);
+		}
+		if(entA.lTime != entB.lTime) {
+			return Long.compare(entA.lTime, entB.lTime);
+		}
+		return Long.compare(entA.lSeed, entB.lSeed);
+	};
+
+	/**
+	 * A finished game.
+	 */
+	public static final class Entry {
+
+		/**
+		 * When the game ended, in milliseconds since the epoch.
+		 */
+		private final long lTime;
+
+		/**
+		 * The seed of the pieces.
+		 */
+		private final long lSeed;
+
+		/**
+		 * How long the game lasted, in milliseconds.
+		 */
+		private final long lDurationMillis;
+
+		/**
+		 * The final score.
+		 */
+		private final int iScore;
+
+		/**
+		 * The final level.
+		 */
+		private final int iLevel;
+
+		/**
+		 * The number of lines cleared.
+		 */
+		private final int iLines;
+
+		/**
+		 * Creates a new entry.
+		 * @param lTime When the game ended, in milliseconds since the epoch.
+		 * @param lSeed The seed of the pieces.
+		 * @param lDurationMillis How long the game lasted, in milliseconds.
+		 * @param iScore The final score.
+		 * @param iLevel The final level.
+		 * @param iLines The number of lines cleared.
+		 */
+		public Entry(long lTime, long lSeed, long lDurationMillis, int iScore, int iLevel, int iLines) {
+			this.lTime = lTime;
+			this.lSeed = lSeed;
+			this.lDurationMillis = lDurationMillis;
+			this.iScore = iScore;
+			this.iLevel = iLevel;
+			this.iLines = iLines;
+		}
+
+		/**
+		 * Gets when the game ended.
+		 * @return The time, in milliseconds since the epoch.
+		 */
+		public long getTime() {
+			return lTime;
+		}
+
+		/**
+		 * Gets the seed of the pieces.
+		 * @return The seed.
+		 */
+		public long getSeed() {
+			return lSeed;
+		}
+
+		/**
+		 * Gets how long the game lasted.
+		 * @return The duration, in milliseconds.
+		 */
+		public long getDurationMillis() {
+			return lDurationMillis;
+		}
+
+		/**
+		 * Gets the final score.
+		 * @return The score.
+		 */
+		public int getScore() {
+			return iScore;
+		}
+
+		/**
+		 * Gets the final level.
+		 * @return The level.
+		 */
+		public int getLevel() {
+			return iLevel;
+		}
+
+		/**
+		 * Gets the number of lines cleared.
+		 * @return The number of lines.
+		 */
+		public int getLines() {
+			return iLines;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%8d  level %2d  %4d lines  %4ds  %s  seed %d",
+					iScore, iLevel, iLines, lDurationMillis / 1000,
+					Instant.ofEpochMilli(lTime), lSeed);
+		}
+	}
+
+	/**
+	 * The log.
+	 */
+	private final File filLog;
+
+	/**
+	 * The number of games each ranking holds.
+	 */
+	private final int iTopCount;
+
+	/**
+	 * The time zone the days are counted in.
+	 */
+	private final ZoneId zonZone;
+
+	/**
+	 * The best games of all time.
+	 */
+	private final TreeSet<Entry> setAllTime;
+
+	/**
+	 * The best games of each day, by the number of the day since the epoch.
+	 */
+	private final TreeMap<Long, TreeSet<Entry>> mapDays;
+
+	/**
+	 * The buffer records are encoded in.
+	 */
+	private final ByteBuffer bufRecord;
+
+	/**
+	 * Computes the checksums of the records.
+	 */
+	private final CRC32 crcChecksum;
+
+	/**
+	 * The open log, positioned at its end.
+	 */
+	private FileChannel fchLog;
+
+	/**
+	 * The number of records in the log.
+	 */
+	private long lRecords;
+
+	/**
+	 * Opens a leaderboard, creating its log if needed. A record that was
+	 * only partly written when the game last stopped is cut off.
+	 * @param filLog The log.
+	 * @param iTopCount The number of games each ranking holds.
+	 * @throws IOException If the log couldn't be read or created.
+	 */
+	public Leaderboard(File filLog, int iTopCount) throws IOException {
+		this.filLog = filLog;
+		this.iTopCount = iTopCount;
+		this.zonZone = ZoneId.systemDefault();
+		this.setAllTime = new TreeSet<>(comRANKING);
+		this.mapDays = new TreeMap<>();
+		this.bufRecord = ByteBuffer.allocate(iRECORD_BYTES);
+		this.crcChecksum = new CRC32();
+		open();
+	}
+
+	/**
+	 * Opens the log and rebuilds the rankings from it.
+	 * @throws IOException If the log couldn't be read or created.
+	 */
+	private void open() throws IOException {
+		this.fchLog = FileChannel.open(filLog.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if(fchLog.size() < iHEADER_BYTES) {
+			ByteBuffer bufHeader = ByteBuffer.allocate(iHEADER_BYTES).putInt(iMAGIC);
+			bufHeader.flip();
+			fchLog.truncate(0L);
+			fchLog.write(bufHeader, 0L);
+			fchLog.force(true);
+		}
+		ByteBuffer bufIn = ByteBuffer.allocate(iRECORD_BYTES * 1024);
+		fchLog.read(bufIn, 0L);
+		bufIn.flip();
+		if(bufIn.getInt() != iMAGIC) {
+			fchLog.close();
+			throw new IOException(filLog + " is not a leaderboard");
+		}
+
+		/*
+		 * Read every whole record, and stop at the first one that is cut off
+		 * or doesn't match its checksum: only the last append can be torn.
+		 */
+		long lPosition = iHEADER_BYTES;
+		lRecords = 0;
+		while(true) {
+			if(bufIn.remaining() < iRECORD_BYTES) {
+				bufIn.compact();
+				int iRead = fchLog.read(bufIn, lPosition + bufIn.position());
+				bufIn.flip();
+				if(iRead <= 0 || bufIn.remaining() < iRECORD_BYTES) {
+					break;
+				}
+			}
+			Entry entGame = decode(bufIn);
+			if(entGame == null) {
+				break;
+			}
+			index(entGame);
+			lPosition += iRECORD_BYTES;
+			lRecords++;
+		}
+		if(fchLog.size() != lPosition) {
+			System.err.println("Dropping " + (fchLog.size() - lPosition)
+					+ " bytes of torn records from " + filLog);
+			fchLog.truncate(lPosition);
+			fchLog.force(true);
+		}
+		fchLog.position(lPosition);
+	}
+
+	/**
+	 * Adds a finished game, and returns once it is safely on disk.
+	 * @param entGame The game.
+	 * @throws IOException If the game couldn't be written.
+	 */
+	public synchronized void record(Entry entGame) throws IOException {
+		encode(entGame);
+		while(bufRecord.hasRemaining()) {
+			fchLog.write(bufRecord);
+		}
+		fchLog.force(false);
+		lRecords++;
+		index(entGame);
+		if(lRecords >= Math.max(iCOMPACT_MIN_RECORDS, (long) iCOMPACT_FACTOR * countKept())) {
+			compact();
+		}
+	}
+
+	/**
+	 * Adds a game to the rankings, dropping whatever falls off the bottom.
+	 * @param entGame The game.
+	 */
+	private void index(Entry entGame) {
+		addCapped(setAllTime, entGame);
+		Long lDay = dayOf(entGame.lTime);
+		TreeSet<Entry> setDay = mapDays.get(lDay);
+		if(setDay == null) {
+			setDay = new TreeSet<>(comRANKING);
+			mapDays.put(lDay, setDay);
+		}
+		addCapped(setDay, entGame);
+	}
+
+	/**
+	 * Adds a game to a ranking and keeps it at the number of games it holds.
+	 * @param setRanking The ranking.
+	 * @param entGame The game.
+	 */
+	private void addCapped(TreeSet<Entry> setRanking, Entry entGame) {
+		if(setRanking.size() >= iTopCount && comRANKING.compare(entGame, setRanking.last()) >= 0) {
+			return;
+		}
+		setRanking.add(entGame);
+		if(setRanking.size() > iTopCount) {
+			setRanking.pollLast();
+		}
+	}
+
+	/**
+	 * Rewrites the log with only the games that are in a ranking, and
+	 * swaps it in once it is safely on disk.
+	 * @throws IOException If the new log couldn't be written.
+	 */
+	public synchronized void compact() throws IOException {
+		/*
+		 * Every game of the all time ranking is also in the ranking of its
+		 * day, so the days hold every game worth keeping.
+		 */
+		List<Entry> lisKept = new ArrayList<>();
+		for(TreeSet<Entry> setDay : mapDays.values()) {
+			lisKept.addAll(setDay);
+		}
+		Collections.sort(lisKept, Comparator.comparingLong(Entry::getTime));
+		File filTemp = new File(filLog.getPath() + ".tmp");
+		try(FileChannel fchTemp = FileChannel.open(filTemp.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer bufOut = ByteBuffer.allocate(iRECORD_BYTES * 1024);
+			bufOut.putInt(iMAGIC);
+			for(Entry entGame : lisKept) {
+				if(bufOut.remaining() < iRECORD_BYTES) {
+					bufOut.flip();
+					while(bufOut.hasRemaining()) {
+						fchTemp.write(bufOut);
+					}
+					bufOut.clear();
+				}
+				encode(entGame);
+				bufOut.put(bufRecord);
+			}
+			bufOut.flip();
+			while(bufOut.hasRemaining()) {
+				fchTemp.write(bufOut);
+			}
+			fchTemp.force(true);
+		}
+		fchLog.close();
+		Files.move(filTemp.toPath(), filLog.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		setAllTime.clear();
+		mapDays.clear();
+		open();
+	}
+
+	/**
+	 * Counts the games that are in at least one ranking.
+	 * @return The number of games.
+	 */
+	private long countKept() {
+		long lKept = 0;
+		for(TreeSet<Entry> setDay : mapDays.values()) {
+			lKept += setDay.size();
+		}
+		return lKept;
+	}
+
+	/**
+	 * Gets the best games of all time.
+	 * @param iCount The number of games.
+	 * @return The games, best first.
+	 */
+	public synchronized List<Entry> getTopAllTime(int iCount) {
+		return first(setAllTime, iCount);
+	}
+
+	/**
+	 * Gets the best games of a day.
+	 * @param datDay The day, in the time zone of the machine.
+	 * @param iCount The number of games.
+	 * @return The games, best first.
+	 */
+	public synchronized List<Entry> getTopOfDay(LocalDate datDay, int iCount) {
+		TreeSet<Entry> setDay = mapDays.get(datDay.toEpochDay());
+		return setDay == null ? Collections.<Entry>emptyList() : first(setDay, iCount);
+	}
+
+	/**
+	 * Gets the best score of all time.
+	 * @return The score, or 0 if no game was played.
+	 */
+	public synchronized int getBestScore() {
+		return setAllTime.isEmpty() ? 0 : setAllTime.first().iScore;
+	}
+
+	/**
+	 * Gets the number of games in the log.
+	 * @return The number of games.
+	 */
+	public synchronized long getRecordCount() {
+		return lRecords;
+	}
+
+	/**
+	 * Closes the log.
+	 * @throws IOException If the log couldn't be closed.
+	 */
+	public synchronized void close() throws IOException {
+		fchLog.close();
+	}
+
+	/**
+	 * Copies the first games of a ranking.
+	 * @param setRanking The ranking.
+	 * @param iCount The number of games.
+	 * @return The games, best first.
+	 */
+	private static List<Entry> first(TreeSet<Entry> setRanking, int iCount) {
+		List<Entry> lisTop = new ArrayList<>(Math.min(iCount, setRanking.size()));
+		Iterator<Entry> iteGames = setRanking.iterator();
+		while(lisTop.size() < iCount && iteGames.hasNext()) {
+			lisTop.add(iteGames.next());
+		}
+		return lisTop;
+	}
+
+	/**
+	 * Gets the day a time falls on.
+	 * @param lTime The time, in milliseconds since the epoch.
+	 * @return The number of the day since the epoch.
+	 */
+	private Long dayOf(long lTime) {
+		return Instant.ofEpochMilli(lTime).atZone(zonZone).toLocalDate().toEpochDay();
+	}
+
+	/**
+	 * Encodes a game into {@code bufRecord}, ready to be written.
+	 * @param entGame The game.
+	 */
+	private void encode(Entry entGame) {
+		bufRecord.clear();
+		bufRecord.putLong(entGame.lTime).putLong(entGame.lSeed)
+				 .putLong(entGame.lDurationMillis).putInt(entGame.iScore)
+				 .putInt(entGame.iLevel).putInt(entGame.iLines);
+		crcChecksum.reset();
+		crcChecksum.update(bufRecord.array(), 0, bufRecord.position());
+		bufRecord.putInt((int) crcChecksum.getValue());
+		bufRecord.flip();
+	}
+
+	/**
+	 * Decodes a game.
+	 * @param bufIn The buffer, with a whole record left.
+	 * @return The game, or null if the record doesn't match its checksum.
+	 */
+	private Entry decode(ByteBuffer bufIn) {
+		crcChecksum.reset();
+		crcChecksum.update(bufIn.array(), bufIn.arrayOffset() + bufIn.position(), iRECORD_BYTES - 4);
+		Entry entGame = new Entry(bufIn.getLong(), bufIn.getLong(), bufIn.getLong(),
+				bufIn.getInt(), bufIn.getInt(), bufIn.getInt());
+		return bufIn.getInt() == (int) crcChecksum.getValue() ? entGame : null;
+	}
+
+	/**
+	 * Prints the best games of all time and of today.
+	 * @param args The log, {@code leaderboard.log} by default.
+	 * @throws IOException If the log couldn't be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		Leaderboard ldbScores = new Leaderboard(
+				new File(args.length > 0 ? args[0] : "leaderboard.log"), 10);
+		System.out.println(ldbScores.getRecordCount() + " games");
+		System.out.println("All time:");
+		for(Entry entGame : ldbScores.getTopAllTime(10)) {
+			System.out.println(entGame);
+		}
+		System.out.println("Today:");
+		for(Entry entGame : ldbScores.getTopOfDay(LocalDate.now(), 10)) {
+			System.out.println(entGame);
+		}
+		ldbScores.close();
+	}
+}
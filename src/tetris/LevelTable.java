@@ -0,0 +1,161 @@
+package tetris;
+
+/**
+ * LevelTable
+ *
+ * The speed of the game at every level, in logical frames. The game logic
+ * runs {@code iFRAMES_PER_SECOND} frames a second however fast the window
+ * is drawn, and every timing of a level is a whole number of those frames.
+ * Gravity is kept in {@code iG}ths of a row per frame, so a piece falls the
+ * same rows on the same frames on every machine.
+ *
+ * The gravity follows the usual curve, {@code (0.8 - (level - 1) * 0.007)}
+ * to the power of {@code level - 1} seconds per row, until it reaches 20G
+ * (twenty rows a frame). The delays only get shorter after that, down to
+ * the last level of the table; later levels play like the last one. The
+ * table is worked out once with {@code StrictMath}, so it comes out the
+ * same everywhere.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public final class LevelTable {
+
+	/**
+	 * The number of logical frames the game runs per second.
+	 */
+	public static final int iFRAMES_PER_SECOND = 60;
+
+	/**
+	 * The gravity that moves a piece one row every frame.
+	 */
+	public static final int iG = 1 << 16;
+
+	/**
+	 * The highest gravity, twenty rows a frame, which drops a piece to the
+	 * bottom of a standard board in one frame.
+	 */
+	public static final int iMAX_GRAVITY = 20 * iG;
+
+	/**
+	 * The last level of the table.
+	 */
+	public static final int iMAX_LEVEL = 30;
+
+	/**
+	 * The number of lines to clear to go up a level.
+	 */
+	public static final int iLINES_PER_LEVEL = 10;
+
+	/**
+	 * The number of times moving or rotating a piece on the ground restarts
+	 * its lock delay, before it locks no matter what.
+	 */
+	public static final int iMAX_LOCK_RESETS = 15;
+
+	/**
+	 * The first level with the highest gravity, after which the delays get
+	 * shorter.
+	 */
+	private static final int iMAX_GRAVITY_LEVEL = 20;
+
+	/**
+	 * The gravity of each level, from index 1.
+	 */
+	private static final int[] iGRAVITY = new int[iMAX_LEVEL + 1];
+
+	/**
+	 * The frames a piece waits on the ground before it locks, for each level.
+	 */
+	private static final int[] iLOCK_DELAY = new int[iMAX_LEVEL + 1];
+
+	/**
+	 * The frames the game waits after clearing lines, for each level.
+	 */
+	private static final int[] iLINE_CLEAR_DELAY = new int[iMAX_LEVEL + 1];
+
+	/**
+	 * The frames between a piece locking and the next spawning, for each
+	 * level.
+	 */
+	private static final int[] iSPAWN_DELAY = new int[iMAX_LEVEL + 1];
+
+	static {
+		for(int iLevel = 1; iLevel <= iMAX_LEVEL; iLevel++) {
+			double dSecondsPerRow = StrictMath.pow(0.8 - (iLevel - 1) * 0.007, iLevel - 1);
+			iGRAVITY[iLevel] = (int) Math.min(iMAX_GRAVITY,
+											  Math.round(iG / (dSecondsPerRow * iFRAMES_PER_SECOND)));
+
+			/*
+			 * Past the highest gravity, the delays shrink to half by the last
+			 * level.
+			 */
+			int iPast = Math.max(0, iLevel - iMAX_GRAVITY_LEVEL);
+			int iSpan = iMAX_LEVEL - iMAX_GRAVITY_LEVEL;
+			iLOCK_DELAY[iLevel] = 30 - 15 * iPast / iSpan;
+			iLINE_CLEAR_DELAY[iLevel] = 24 - 12 * iPast / iSpan;
+			iSPAWN_DELAY[iLevel] = 12 - 6 * iPast / iSpan;
+		}
+	}
+
+	/**
+	 * Not meant to be instantiated.
+	 */
+	private LevelTable() {
+	}
+
+	/**
+	 * Gets the index of a level in the table.
+	 * @param iLevel The level, from 1.
+	 * @return The index.
+	 */
+	private static int index(int iLevel) {
+		return Math.max(1, Math.min(iMAX_LEVEL, iLevel));
+	}
+
+	/**
+	 * Gets the level reached after clearing a number of lines.
+	 * @param iLines The number of lines cleared.
+	 * @return The level, from 1.
+	 */
+	public static int getLevel(int iLines) {
+		return 1 + iLines / iLINES_PER_LEVEL;
+	}
+
+	/**
+	 * Gets the gravity of a level.
+	 * @param iLevel The level.
+	 * @return The gravity, in {@code iG}ths of a row per frame.
+	 */
+	public static int getGravity(int iLevel) {
+		return iGRAVITY[index(iLevel)];
+	}
+
+	/**
+	 * Gets the lock delay of a level.
+	 * @param iLevel The level.
+	 * @return The frames a piece waits on the ground before it locks.
+	 */
+	public static int getLockDelay(int iLevel) {
+		return iLOCK_DELAY[index(iLevel)];
+	}
+
+	/**
+	 * Gets the line clear delay of a level.
+	 * @param iLevel The level.
+	 * @return The frames the game waits after clearing lines.
+	 */
+	public static int getLineClearDelay(int iLevel) {
+		return iLINE_CLEAR_DELAY[index(iLevel)];
+	}
+
+	/**
+	 * Gets the spawn delay (ARE) of a level.
+	 * @param iLevel The level.
+	 * @return The frames between a piece locking and the next spawning.
+	 */
+	public static int getSpawnDelay(int iLevel) {
+		return iSPAWN_DELAY[index(iLevel)];
+	}
+}
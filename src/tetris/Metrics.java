@@ -0,0 +1,254 @@
+package tetris;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics
+ *
+ * Built-in instrumentation of the game. Holds the latency recorders for the
+ * input delay, logic tick, painting, line clears, saving and loading, and
+ * counts frames, dropped frames and frames that were hit by a garbage
+ * collection. Every recorder and the counters are registered as MBeans
+ * under the {@code tetris} domain, and the side panel can draw them as an
+ * overlay.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class Metrics implements MetricsMBean {
+
+	/**
+	 * The time between a key event and the frame that applied it.
+	 */
+	public static final LatencyRecorder latINPUT = new LatencyRecorder("input");
+
+	/**
+	 * The time taken by each logic tick ({@code GameEngine.update}).
+	 */
+	public static final LatencyRecorder latTICK = new LatencyRecorder("tick");
+
+	/**
+	 * The time taken to paint the board.
+	 */
+	public static final LatencyRecorder latPAINT = new LatencyRecorder("paint");
+
+	/**
+	 * The time taken to lock a piece and clear the completed lines.
+	 */
+	public static final LatencyRecorder latLINE_CLEAR = new LatencyRecorder("lineClear");
+
+	/**
+	 * The time taken to save the game.
+	 */
+	public static final LatencyRecorder latSAVE = new LatencyRecorder("save");
+
+	/**
+	 * The time taken to load the game.
+	 */
+	public static final LatencyRecorder latLOAD = new LatencyRecorder("load");
+
+	/**
+	 * How much longer than requested the frame cap sleep lasted.
+	 */
+	public static final LatencyRecorder latSLEEP_OVERSHOOT = new LatencyRecorder("sleepOvershoot");
+
+	/**
+	 * Every recorder, in the order they are shown.
+	 */
+	private static final LatencyRecorder[] latRECORDERS = {
+		latINPUT, latTICK, latPAINT, latLINE_CLEAR, latSAVE, latLOAD, latSLEEP_OVERSHOOT
+	};
+
+	/**
+	 * An overshoot of the sleep smaller than this is not counted.
+	 */
+	private static final long lOVERSHOOT_TOLERANCE = 1000000L;
+
+	/**
+	 * The single instance, created on first use.
+	 */
+	private static Metrics metInstance;
+
+	/**
+	 * The number of frames run.
+	 */
+	private final AtomicLong atoFrames = new AtomicLong();
+
+	/**
+	 * The number of frames that ran late.
+	 */
+	private final AtomicLong atoDroppedFrames = new AtomicLong();
+
+	/**
+	 * The number of frames during which a collection happened.
+	 */
+	private final AtomicLong atoGcFrames = new AtomicLong();
+
+	/**
+	 * The number of sleeps that overshot.
+	 */
+	private final AtomicLong atoSleepOvershoots = new AtomicLong();
+
+	/**
+	 * The garbage collectors of the JVM.
+	 */
+	private final List<GarbageCollectorMXBean> lisCollectors;
+
+	/**
+	 * The total number of collections at the end of the last frame.
+	 */
+	private long lLastCollections;
+
+	/**
+	 * Whether or not the stats are drawn on the side panel.
+	 */
+	private volatile boolean bOverlayVisible;
+
+	/**
+	 * Creates the metrics.
+	 */
+	private Metrics() {
+		this.lisCollectors = ManagementFactory.getGarbageCollectorMXBeans();
+		this.lLastCollections = countCollections();
+	}
+
+	/**
+	 * Gets the metrics, registering the MBeans the first time it is called.
+	 * @return The metrics instance.
+	 */
+	public static synchronized Metrics getInstance() {
+		if(metInstance == null) {
+			metInstance = new Metrics();
+			metInstance.register();
+		}
+		return metInstance;
+	}
+
+	/**
+	 * Registers the counters and every recorder with the platform MBean
+	 * server.
+	 */
+	private void register() {
+		try {
+			MBeanServer mbsServer = ManagementFactory.getPlatformMBeanServer();
+			mbsServer.registerMBean(this, new ObjectName("tetris:type=Metrics"));
+			for(LatencyRecorder latRecorder : latRECORDERS) {
+				mbsServer.registerMBean(latRecorder, new ObjectName(
+						"tetris:type=Latency,name=" + latRecorder.getName()));
+			}
+		} catch(JMException e) {
+			System.out.println("Could not register the metrics: " + e);
+		}
+	}
+
+	/**
+	 * Accounts for the sleep that caps the frame rate.
+	 * @param lRequestedNanos How long the sleep was meant to last.
+	 * @param lActualNanos How long it actually lasted.
+	 */
+	public void recordSleep(long lRequestedNanos, long lActualNanos) {
+		long lOvershoot = lActualNanos - lRequestedNanos;
+		latSLEEP_OVERSHOOT.record(lOvershoot);
+		if(lOvershoot > lOVERSHOOT_TOLERANCE) {
+			atoSleepOvershoots.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Accounts for a finished frame of the game loop. Must be called from the
+	 * game loop thread only.
+	 * @param lStartNanos When the frame started.
+	 * @param lBudgetNanos How long a frame is meant to last.
+	 */
+	public void endFrame(long lStartNanos, long lBudgetNanos) {
+		atoFrames.incrementAndGet();
+
+		/*
+		 * A frame that lasted half a frame longer than it should have pushed
+		 * the next one out of its slot.
+		 */
+		if(System.nanoTime() - lStartNanos > lBudgetNanos + (lBudgetNanos >> 1)) {
+			atoDroppedFrames.incrementAndGet();
+		}
+		long lCollections = countCollections();
+		if(lCollections != lLastCollections) {
+			atoGcFrames.incrementAndGet();
+			lLastCollections = lCollections;
+		}
+	}
+
+	/**
+	 * Adds up the collections done by every collector.
+	 * @return The total number of collections.
+	 */
+	private long countCollections() {
+		long lTotal = 0;
+		for(GarbageCollectorMXBean gcbCollector : lisCollectors) {
+			lTotal += Math.max(0L, gcbCollector.getCollectionCount());
+		}
+		return lTotal;
+	}
+
+	/**
+	 * Gets every recorder, in the order they are shown.
+	 * @return The recorders.
+	 */
+	public LatencyRecorder[] getRecorders() {
+		return latRECORDERS.clone();
+	}
+
+	/**
+	 * Shows or hides the stats overlay.
+	 */
+	public void toggleOverlay() {
+		bOverlayVisible = !bOverlayVisible;
+	}
+
+	@Override
+	public long getFrames() {
+		return atoFrames.get();
+	}
+
+	@Override
+	public long getDroppedFrames() {
+		return atoDroppedFrames.get();
+	}
+
+	@Override
+	public long getGcFrames() {
+		return atoGcFrames.get();
+	}
+
+	@Override
+	public long getSleepOvershoots() {
+		return atoSleepOvershoots.get();
+	}
+
+	@Override
+	public boolean isOverlayVisible() {
+		return bOverlayVisible;
+	}
+
+	@Override
+	public void setOverlayVisible(boolean bVisible) {
+		this.bOverlayVisible = bVisible;
+	}
+
+	@Override
+	public void reset() {
+		atoFrames.set(0L);
+		atoDroppedFrames.set(0L);
+		atoGcFrames.set(0L);
+		atoSleepOvershoots.set(0L);
+		for(LatencyRecorder latRecorder : latRECORDERS) {
+			latRecorder.reset();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package tetris;
+
+/**
+ * MetricsMBean
+ *
+ * Management interface that exposes the frame counters of {@code Metrics}
+ * through JMX.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public interface MetricsMBean {
+
+	/**
+	 * Gets the number of frames run by the game loop.
+	 * @return The frame count.
+	 */
+	long getFrames();
+
+	/**
+	 * Gets the number of frames that took so long that the next one was
+	 * late.
+	 * @return The dropped frame count.
+	 */
+	long getDroppedFrames();
+
+	/**
+	 * Gets the number of frames during which the garbage collector ran.
+	 * @return The GC frame count.
+	 */
+	long getGcFrames();
+
+	/**
+	 * Gets the number of frames whose sleep lasted longer than requested.
+	 * @return The overshoot count.
+	 */
+	long getSleepOvershoots();
+
+	/**
+	 * Checks whether or not the stats are drawn on the side panel.
+	 * @return Whether or not the overlay is shown.
+	 */
+	boolean isOverlayVisible();
+
+	/**
+	 * Shows or hides the stats on the side panel.
+	 * @param bVisible Whether or not to show the overlay.
+	 */
+	void setOverlayVisible(boolean bVisible);
+
+	/**
+	 * Clears every counter and recorder.
+	 */
+	void reset();
+}
@@ -0,0 +1,280 @@
+package tetris;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * MusicStream
+ *
+ * Plays a long track by streaming it from its {@code AudioInputStream} in
+ * small pieces instead of decoding the whole file up front. A background
+ * thread keeps a fixed size ring buffer full and the AudioMixer drains it,
+ * so the memory used by the music never grows with the length of the track.
+ * When looping, the stream is reopened as soon as it ends and the new data
+ * goes right after the old one in the ring, so there is no gap between loops.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class MusicStream {
+
+	/**
+	 * The number of stereo frames the ring buffer holds (~370 ms).
+	 */
+	private static final int iBUFFER_FRAMES = 16384;
+
+	/**
+	 * The number of bytes read from the stream at a time.
+	 */
+	private static final int iREAD_BYTES = 4096;
+
+	/**
+	 * How long the reader waits when the ring buffer is full.
+	 */
+	private static final long lREFILL_WAIT_MILLIS = 20L;
+
+	/**
+	 * The name of the file that is streamed.
+	 */
+	private String sFilename;
+
+	/**
+	 * The location of the file, or null if it could not be found.
+	 */
+	private URL urlTrack;
+
+	/**
+	 * Whether or not the track starts over when it ends.
+	 */
+	private boolean bLooping;
+
+	/**
+	 * The gain the track is played with.
+	 */
+	private float fGain;
+
+	/**
+	 * The buffer of the current playback, or null when stopped.
+	 */
+	private volatile StreamBuffer bufCurrent;
+
+	/**
+	 * Creates a new stream for a track next to this class.
+	 * @param sFilename The name of the file.
+	 */
+	public MusicStream(String sFilename) {
+		this.sFilename = sFilename;
+		this.fGain = 1.0f;
+		this.urlTrack = getClass().getResource(sFilename);
+		if(urlTrack == null) {
+			System.out.println("Could not find the track " + sFilename);
+		}
+	}
+
+	/**
+	 * Sets whether or not the track starts over when it ends.
+	 * @param bLooping Whether or not to loop.
+	 */
+	public void setLooping(boolean bLooping) {
+		this.bLooping = bLooping;
+	}
+
+	/**
+	 * Checks whether or not the track starts over when it ends.
+	 * @return Whether or not the track loops.
+	 */
+	public boolean isLooping() {
+		return bLooping;
+	}
+
+	/**
+	 * Sets the gain the track is played with, even while it's playing.
+	 * @param fGain The gain.
+	 */
+	public void setGain(float fGain) {
+		this.fGain = fGain;
+		AudioMixer.getInstance().setGain(this, fGain);
+	}
+
+	/**
+	 * Gets the name of the file that is streamed.
+	 * @return The file name.
+	 */
+	public String getFilename() {
+		return sFilename;
+	}
+
+	/**
+	 * Checks whether or not the track was found.
+	 * @return Whether or not the track can be played.
+	 */
+	public boolean isLoaded() {
+		return urlTrack != null;
+	}
+
+	/**
+	 * Starts playing the track from the beginning, stopping the previous
+	 * playback if there is one.
+	 */
+	public void play() {
+		if(!isLoaded()) {
+			return;
+		}
+		stop();
+		GameEvents.soundTriggered(sFilename);
+		StreamBuffer bufBuffer = new StreamBuffer();
+		this.bufCurrent = bufBuffer;
+		Thread thrReader = new Thread(() -> fill(bufBuffer),
+									  "Music Stream " + sFilename);
+		thrReader.setDaemon(true);
+		thrReader.start();
+		AudioMixer.getInstance().playStream(this, bufBuffer, fGain);
+	}
+
+	/**
+	 * Stops playing the track.
+	 */
+	public void stop() {
+		StreamBuffer bufBuffer = bufCurrent;
+		if(bufBuffer != null) {
+			bufBuffer.bStopped = true;
+			bufCurrent = null;
+			AudioMixer.getInstance().stop(this);
+		}
+	}
+
+	/**
+	 * Body of the reader thread. Decodes the track into the buffer until the
+	 * playback is stopped, reopening it each time it ends while looping.
+	 * @param bufBuffer The buffer of the playback.
+	 */
+	private void fill(StreamBuffer bufBuffer) {
+		byte[] bytRead = new byte[iREAD_BYTES];
+		short[] sDecoded = new short[iREAD_BYTES];
+		try {
+			do {
+				AudioInputStream auiTrack = AudioMixer.toMixerRate(
+						AudioSystem.getAudioInputStream(urlTrack));
+				int iChannels = auiTrack.getFormat().getChannels();
+				int iFrameBytes = 2 * iChannels;
+				int iPending = 0;
+				int iRead;
+				while(!bufBuffer.bStopped &&
+					  (iRead = auiTrack.read(bytRead, iPending, bytRead.length - iPending)) > 0) {
+					/*
+					 * Only whole frames are converted, the bytes of a partial
+					 * frame are kept for the next read.
+					 */
+					int iAvailable = iPending + iRead;
+					int iWhole = iAvailable - iAvailable % iFrameBytes;
+					int iSamples = AudioMixer.toStereo(bytRead, iWhole, iChannels, sDecoded, 0);
+					System.arraycopy(bytRead, iWhole, bytRead, 0, iAvailable - iWhole);
+					iPending = iAvailable - iWhole;
+					if(!write(bufBuffer, sDecoded, iSamples)) {
+						break;
+					}
+				}
+				auiTrack.close();
+			} while(bLooping && !bufBuffer.bStopped);
+		} catch(IOException | UnsupportedAudioFileException e) {
+			System.out.println("Could not stream " + sFilename + ": " + e);
+		}
+		bufBuffer.bEnded = true;
+	}
+
+	/**
+	 * Copies samples into the ring buffer, waiting while it is full.
+	 * @param bufBuffer The buffer.
+	 * @param sSamples The samples to copy.
+	 * @param iCount The number of samples to copy.
+	 * @return False if the playback was stopped while waiting.
+	 */
+	private static boolean write(StreamBuffer bufBuffer, short[] sSamples, int iCount) {
+		int iCopied = 0;
+		while(iCopied < iCount) {
+			if(bufBuffer.bStopped) {
+				return false;
+			}
+			long lWrite = bufBuffer.lWrite;
+			int iFree = bufBuffer.sRing.length - (int) (lWrite - bufBuffer.lRead);
+			if(iFree == 0) {
+				try {
+					Thread.sleep(lREFILL_WAIT_MILLIS);
+				} catch(InterruptedException e) {
+					return false;
+				}
+				continue;
+			}
+			int iCopy = Math.min(iFree, iCount - iCopied);
+			for(int i = 0; i < iCopy; i++) {
+				bufBuffer.sRing[(int) ((lWrite + i) % bufBuffer.sRing.length)] = sSamples[iCopied + i];
+			}
+			iCopied += iCopy;
+			// Publish the samples only after they have been written
+			bufBuffer.lWrite = lWrite + iCopy;
+		}
+		return true;
+	}
+
+	/**
+	 * StreamBuffer
+	 *
+	 * Single producer, single consumer ring of interleaved stereo samples
+	 * shared by the reader thread and the audio thread.
+	 */
+	public static final class StreamBuffer {
+		/**
+		 * The samples.
+		 */
+		private final short[] sRing = new short[iBUFFER_FRAMES * AudioMixer.iCHANNELS];
+
+		/**
+		 * The total number of samples written. Only the reader changes it.
+		 */
+		private volatile long lWrite;
+
+		/**
+		 * The total number of samples read. Only the audio thread changes it.
+		 */
+		private volatile long lRead;
+
+		/**
+		 * Whether or not the playback was stopped.
+		 */
+		private volatile boolean bStopped;
+
+		/**
+		 * Whether or not the reader has written its last sample.
+		 */
+		private volatile boolean bEnded;
+
+		/**
+		 * Adds buffered samples into a chunk being mixed. If the reader fell
+		 * behind the missing part is left silent.
+		 * @param iAccumulator The chunk being mixed.
+		 * @param iOffset The first sample of the chunk to fill.
+		 * @param iCount The number of samples to fill.
+		 * @param fGain The gain to scale the samples by.
+		 */
+		void mixInto(int[] iAccumulator, int iOffset, int iCount, float fGain) {
+			long lReadAt = lRead;
+			int iAvailable = (int) Math.min(iCount, lWrite - lReadAt);
+			for(int i = 0; i < iAvailable; i++) {
+				iAccumulator[iOffset + i] += (int) (sRing[(int) ((lReadAt + i) % sRing.length)] * fGain);
+			}
+			lRead = lReadAt + iAvailable;
+		}
+
+		/**
+		 * Checks whether or not every sample of the playback has been mixed.
+		 * @return Whether or not the playback is over.
+		 */
+		boolean isDrained() {
+			return bEnded && lRead == lWrite;
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package tetris;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * NetClient
+ *
+ * The connection of the window to a battle server. The packets of the
+ * server are read on a thread of their own and queued, and the game loop
+ * applies them to copies of the games of the match at the start of each
+ * frame, the same way it drains the keys. The copies are never updated
+ * locally; everything they show comes from the server.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class NetClient {
+
+	/**
+	 * Returned by {@code apply} when a match started.
+	 */
+	public static final int iEVENT_START = 1;
+
+	/**
+	 * Returned by {@code apply} when the match is over.
+	 */
+	public static final int iEVENT_OVER = 2;
+
+	/**
+	 * Returned by {@code apply} when garbage was sent.
+	 */
+	public static final int iEVENT_GARBAGE = 4;
+
+	/**
+	 * Returned by {@code apply} when a piece was locked.
+	 */
+	public static final int iEVENT_LOCK = 8;
+
+	/**
+	 * The socket of the server.
+	 */
+	private final SocketChannel socChannel;
+
+	/**
+	 * The packets read from the server and not yet applied.
+	 */
+	private final ConcurrentLinkedQueue<ByteBuffer> quePackets;
+
+	/**
+	 * The buffer the packets sent to the server are written to. Only the
+	 * game loop thread touches it.
+	 */
+	private final ByteBuffer bufOut;
+
+	/**
+	 * The index of this player within the current match.
+	 */
+	private int iPlayer;
+
+	/**
+	 * Whether or not the connection was lost.
+	 */
+	private volatile boolean bClosed;
+
+	/**
+	 * Connects to a server and starts reading its packets.
+	 * @param sAddress The server, as {@code host} or {@code host:port}.
+	 * @throws IOException If the server couldn't be reached.
+	 */
+	public NetClient(String sAddress) throws IOException {
+		int iColon = sAddress.lastIndexOf(':');
+		String sHost = iColon < 0 ? sAddress : sAddress.substring(0, iColon);
+		int iPort = iColon < 0 ? NetProtocol.iDEFAULT_PORT
+				: Integer.parseInt(sAddress.substring(iColon + 1));
+		this.socChannel = SocketChannel.open(new InetSocketAddress(sHost, iPort));
+		socChannel.socket().setTcpNoDelay(true);
+		this.quePackets = new ConcurrentLinkedQueue<>();
+		this.bufOut = ByteBuffer.allocate(NetProtocol.iMAX_PACKET_BYTES);
+		Thread thrReader = new Thread(this::readPackets, "tetris-net-client");
+		thrReader.setDaemon(true);
+		thrReader.start();
+	}
+
+	/**
+	 * Reads packets from the server until the connection is lost.
+	 */
+	private void readPackets() {
+		ByteBuffer bufIn = ByteBuffer.allocate(8 * 1024);
+		try {
+			while(socChannel.read(bufIn) >= 0) {
+				bufIn.flip();
+				while(NetProtocol.hasPacket(bufIn)) {
+					int iLength = NetProtocol.iHEADER_BYTES + (bufIn.get(bufIn.position() + 1) & 0xFF);
+					ByteBuffer bufPacket = ByteBuffer.allocate(iLength);
+					int iLimit = bufIn.limit();
+					bufIn.limit(bufIn.position() + iLength);
+					bufPacket.put(bufIn);
+					bufIn.limit(iLimit);
+					bufPacket.flip();
+					quePackets.offer(bufPacket);
+				}
+				bufIn.compact();
+			}
+		} catch(IOException ioeException) {
+			System.err.println("Lost the server: " + ioeException);
+		}
+		bClosed = true;
+	}
+
+	/**
+	 * Asks the server for a match.
+	 */
+	public void join() {
+		bufOut.clear();
+		NetProtocol.writeJoin(bufOut);
+		send();
+	}
+
+	/**
+	 * Sends the press or release of the key bound to an action.
+	 * @param iAction The action.
+	 * @param bPressed Whether the key was pressed rather than released.
+	 */
+	public void sendAction(int iAction, boolean bPressed) {
+		bufOut.clear();
+		NetProtocol.writeInput(bufOut, iAction, !bPressed);
+		send();
+	}
+
+	/**
+	 * Writes the packet in the outbound buffer.
+	 */
+	private void send() {
+		if(bClosed) {
+			return;
+		}
+		bufOut.flip();
+		try {
+			while(bufOut.hasRemaining()) {
+				socChannel.write(bufOut);
+			}
+		} catch(IOException ioeException) {
+			bClosed = true;
+		}
+	}
+
+	/**
+	 * Applies every packet received since the last call to the copies of
+	 * the games of the match. Must only be called from the game loop thread.
+	 * @param engMirrors The copies of the games, one per player.
+	 * @return The {@code iEVENT_} flags of what happened.
+	 */
+	public int apply(GameEngine[] engMirrors) {
+		int iEvents = 0;
+		ByteBuffer bufPacket;
+		while((bufPacket = quePackets.poll()) != null) {
+			int iType = bufPacket.get() & 0xFF;
+			bufPacket.get();
+			switch(iType) {
+				case NetProtocol.iSTART:
+					iPlayer = bufPacket.get() & 0xFF;
+					for(GameEngine engMirror : engMirrors) {
+						engMirror.getBoard().clear();
+						engMirror.setGameOver(false);
+					}
+					iEvents |= iEVENT_START;
+					break;
+				case NetProtocol.iPIECE: {
+					int iOwner = bufPacket.get() & 0xFF;
+					if(iOwner < engMirrors.length) {
+						NetProtocol.readPiece(bufPacket, engMirrors[iOwner]);
+					}
+					break;
+				}
+				case NetProtocol.iBOARD: {
+					int iOwner = bufPacket.get() & 0xFF;
+					if(iOwner < engMirrors.length) {
+						NetProtocol.readBoard(bufPacket, engMirrors[iOwner].getBoard());
+						iEvents |= iEVENT_LOCK;
+					}
+					break;
+				}
+				case NetProtocol.iGARBAGE:
+					iEvents |= iEVENT_GARBAGE;
+					break;
+				case NetProtocol.iOVER:
+					iEvents |= iEVENT_OVER;
+					break;
+				default:
+					break;
+			}
+		}
+		return iEvents;
+	}
+
+	/**
+	 * Gets the index of this player within the current match.
+	 * @return The index of the player.
+	 */
+	public int getPlayer() {
+		return iPlayer;
+	}
+
+	/**
+	 * Checks whether or not the connection was lost.
+	 * @return Whether or not the connection was lost.
+	 */
+	public boolean isClosed() {
+		return bClosed;
+	}
+}
@@ -0,0 +1,199 @@
+package tetris;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * NetLoadTest
+ *
+ * Fills a battle server with simulated players to see how many matches it
+ * holds. The players all share one selector thread; each joins a match,
+ * mashes random keys a few times a second, and joins again as soon as its
+ * match is over, so the server stays full for the whole run. The report of
+ * the server is printed at the end.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class NetLoadTest {
+
+	/**
+	 * The time between the key presses of every simulated player.
+	 */
+	private static final long lKEY_INTERVAL_NANOS = 100000000L;
+
+	/**
+	 * A simulated player.
+	 */
+	private static final class Player {
+
+		/**
+		 * The socket of the player.
+		 */
+		private final SocketChannel socChannel;
+
+		/**
+		 * The packets read but not yet handled.
+		 */
+		private final ByteBuffer bufIn = ByteBuffer.allocate(16 * 1024);
+
+		/**
+		 * When the player presses its next key.
+		 */
+		private long lNextKey;
+
+		/**
+		 * Whether or not the player is in a match.
+		 */
+		private boolean bPlaying;
+
+		/**
+		 * Creates a new player.
+		 * @param socChannel The socket of the player.
+		 */
+		private Player(SocketChannel socChannel) {
+			this.socChannel = socChannel;
+		}
+	}
+
+	/**
+	 * Not meant to be instantiated.
+	 */
+	private NetLoadTest() {
+	}
+
+	/**
+	 * Runs the load test against a server started in the same process.
+	 * @param args The number of matches, the number of seconds and the
+	 * number of server workers.
+	 * @throws Exception If the sockets couldn't be opened.
+	 */
+	public static void main(String[] args) throws Exception {
+		int iMatches = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int iSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		int iWorkers = args.length > 2 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+		NetServer serServer = new NetServer(0, iWorkers);
+		serServer.start();
+		InetSocketAddress insAddress = new InetSocketAddress("127.0.0.1", serServer.getPort());
+
+		Selector selSelector = Selector.open();
+		Random rRandom = new Random();
+		long lNow = System.nanoTime();
+		for(int iPlayer = 0; iPlayer < iMatches * 2; iPlayer++) {
+			SocketChannel socChannel = SocketChannel.open(insAddress);
+			socChannel.configureBlocking(false);
+			socChannel.socket().setTcpNoDelay(true);
+			Player plaPlayer = new Player(socChannel);
+			plaPlayer.lNextKey = lNow + (long) (rRandom.nextDouble() * lKEY_INTERVAL_NANOS);
+			socChannel.register(selSelector, SelectionKey.OP_READ, plaPlayer);
+			send(plaPlayer, ByteBuffer.allocate(NetProtocol.iHEADER_BYTES), -1, false);
+		}
+
+		/*
+		 * Let the matches get going before measuring.
+		 */
+		long lWarmup = System.nanoTime() + 2000000000L;
+		long lEnd = lWarmup + iSeconds * 1000000000L;
+		boolean bMeasuring = false;
+		long lBytes = 0;
+		ByteBuffer bufOut = ByteBuffer.allocate(NetProtocol.iMAX_PACKET_BYTES);
+		while((lNow = System.nanoTime()) < lEnd) {
+			if(!bMeasuring && lNow >= lWarmup) {
+				serServer.resetStats();
+				lBytes = 0;
+				bMeasuring = true;
+			}
+			selSelector.select(5L);
+			Iterator<SelectionKey> iteKeys = selSelector.selectedKeys().iterator();
+			while(iteKeys.hasNext()) {
+				SelectionKey selKey = iteKeys.next();
+				iteKeys.remove();
+				Player plaPlayer = (Player) selKey.attachment();
+				int iRead = plaPlayer.socChannel.read(plaPlayer.bufIn);
+				if(iRead < 0) {
+					selKey.cancel();
+					continue;
+				}
+				lBytes += iRead;
+				handlePackets(plaPlayer, bufOut);
+			}
+
+			/*
+			 * Press a random key for every player whose turn it is, and
+			 * release it right away.
+			 */
+			for(SelectionKey selKey : selSelector.keys()) {
+				Player plaPlayer = (Player) selKey.attachment();
+				if(plaPlayer.bPlaying && lNow >= plaPlayer.lNextKey) {
+					plaPlayer.lNextKey = lNow + lKEY_INTERVAL_NANOS;
+					int iAction = rRandom.nextInt(GameEngine.iACTION_COUNT);
+					send(plaPlayer, bufOut, iAction, false);
+					send(plaPlayer, bufOut, iAction, true);
+				}
+			}
+		}
+
+		System.out.println(serServer.report());
+		System.out.printf("bytes/s per player=%.0f%n",
+				lBytes / (double) iSeconds / (iMatches * 2));
+		serServer.stop();
+		for(SelectionKey selKey : selSelector.keys()) {
+			selKey.channel().close();
+		}
+		selSelector.close();
+	}
+
+	/**
+	 * Handles the packets a simulated player received. It only cares about
+	 * when its matches start and end.
+	 * @param plaPlayer The player.
+	 * @param bufOut A buffer to write its packets to.
+	 * @throws IOException If the socket failed.
+	 */
+	private static void handlePackets(Player plaPlayer, ByteBuffer bufOut) throws IOException {
+		ByteBuffer bufIn = plaPlayer.bufIn;
+		bufIn.flip();
+		while(NetProtocol.hasPacket(bufIn)) {
+			int iType = bufIn.get() & 0xFF;
+			int iLength = bufIn.get() & 0xFF;
+			if(iType == NetProtocol.iSTART) {
+				plaPlayer.bPlaying = true;
+			} else if(iType == NetProtocol.iOVER) {
+				plaPlayer.bPlaying = false;
+				send(plaPlayer, bufOut, -1, false);
+			}
+			bufIn.position(bufIn.position() + iLength);
+		}
+		bufIn.compact();
+	}
+
+	/**
+	 * Sends a packet of a simulated player.
+	 * @param plaPlayer The player.
+	 * @param bufOut A buffer to write the packet to.
+	 * @param iAction The action to press or release, or -1 to join a match.
+	 * @param bReleased Whether the key is released rather than pressed.
+	 * @throws IOException If the socket failed.
+	 */
+	private static void send(Player plaPlayer, ByteBuffer bufOut, int iAction, boolean bReleased)
+			throws IOException {
+		bufOut.clear();
+		if(iAction < 0) {
+			NetProtocol.writeJoin(bufOut);
+		} else {
+			NetProtocol.writeInput(bufOut, iAction, bReleased);
+		}
+		bufOut.flip();
+		while(bufOut.hasRemaining()) {
+			plaPlayer.socChannel.write(bufOut);
+		}
+	}
+}
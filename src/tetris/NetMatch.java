@@ -0,0 +1,255 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * NetMatch
+ *
+ * One battle running on the server. The games have no window; the inputs
+ * of the players are queued by the selector thread and applied by the
+ * worker that owns the match at the start of each of its ticks, and only
+ * what changed is sent back to the players afterwards. A match is only
+ * ever touched by one worker thread, so nothing in it is locked.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class NetMatch implements GameEngine.Listener {
+
+	/**
+	 * The size of the buffer the packets of a tick are written to.
+	 */
+	private static final int iSCRATCH_BYTES = 4096;
+
+	/**
+	 * The connections of the players.
+	 */
+	private final NetServer.Connection[] conPlayers;
+
+	/**
+	 * The games of the players.
+	 */
+	private final GameEngine[] engEngines;
+
+	/**
+	 * The inputs of every player, as the player index shifted left by 8
+	 * bits plus the action sent by the client.
+	 */
+	private final InputQueue queInput;
+
+	/**
+	 * The packets of the current tick, written once and sent to everyone.
+	 */
+	private final ByteBuffer bufScratch;
+
+	/**
+	 * Whether or not the board of each player changed since it was sent.
+	 */
+	private final boolean[] bBoardDirty;
+
+	/**
+	 * The piece state of each player that was last sent.
+	 */
+	private final long[] lSentPiece;
+
+	/**
+	 * The seed of the pieces.
+	 */
+	private final long lSeed;
+
+	/**
+	 * Whether or not the match is over.
+	 */
+	private boolean bFinished;
+
+	/**
+	 * Creates a new match. Nothing happens until {@code start} is called.
+	 * @param conPlayers The connections of the players.
+	 * @param rotRotation The rotation system to use.
+	 * @param lSeed The seed of the pieces of every player.
+	 */
+	public NetMatch(NetServer.Connection[] conPlayers, RotationSystem rotRotation, long lSeed) {
+		this.conPlayers = conPlayers;
+		this.engEngines = new GameEngine[conPlayers.length];
+		for(int iPlayer = 0; iPlayer < conPlayers.length; iPlayer++) {
+			engEngines[iPlayer] = new GameEngine(rotRotation, new InputState());
+			// Matches run side by side and aren't the game being played here
+			engEngines[iPlayer].setInstrumented(false);
+			engEngines[iPlayer].setListener(this);
+		}
+		this.queInput = new InputQueue();
+		this.bufScratch = ByteBuffer.allocate(iSCRATCH_BYTES);
+		this.bBoardDirty = new boolean[conPlayers.length];
+		this.lSentPiece = new long[conPlayers.length];
+		this.lSeed = lSeed;
+	}
+
+	/**
+	 * Starts every game and tells each player which one is theirs. Called
+	 * by the worker that owns the match.
+	 */
+	public void start() {
+		for(int iPlayer = 0; iPlayer < engEngines.length; iPlayer++) {
+			engEngines[iPlayer].reset(lSeed);
+			bBoardDirty[iPlayer] = true;
+			lSentPiece[iPlayer] = -1L;
+		}
+		for(int iPlayer = 0; iPlayer < conPlayers.length; iPlayer++) {
+			bufScratch.clear();
+			NetProtocol.writeStart(bufScratch, iPlayer, conPlayers.length);
+			bufScratch.flip();
+			conPlayers[iPlayer].send(bufScratch);
+		}
+	}
+
+	/**
+	 * Queues an input of a player. Called by the selector thread.
+	 * @param iPlayer The index of the player.
+	 * @param iInput The action, plus {@code NetProtocol.iRELEASED} on release.
+	 */
+	public void offerInput(int iPlayer, int iInput) {
+		queInput.offer(iPlayer << 8 | iInput);
+	}
+
+	/**
+	 * Runs one frame of every game and sends what changed to the players.
+	 * @param lNow When the frame started, from {@code System.nanoTime()}.
+	 */
+	public void tick(long lNow) {
+		bufScratch.clear();
+
+		/*
+		 * A player that left tops out, which ends the match for two players.
+		 */
+		for(int iPlayer = 0; iPlayer < conPlayers.length && !bFinished; iPlayer++) {
+			if(conPlayers[iPlayer].isClosed() && !engEngines[iPlayer].isGameOver()) {
+				engEngines[iPlayer].setGameOver(true);
+				gameOver(engEngines[iPlayer]);
+			}
+		}
+
+		int iInput;
+		while(!bFinished && (iInput = queInput.poll()) != InputQueue.iEMPTY) {
+			int iPlayer = iInput >>> 8;
+			int iAction = iInput & ~NetProtocol.iRELEASED & 0xFF;
+			if(iPlayer >= engEngines.length || iAction >= GameEngine.iACTION_COUNT) {
+				continue;
+			}
+			if((iInput & NetProtocol.iRELEASED) != 0) {
+				engEngines[iPlayer].releaseAction(iAction, queInput.getLastTimestamp());
+			} else {
+				engEngines[iPlayer].pressAction(iAction, queInput.getLastTimestamp());
+			}
+		}
+		for(int iPlayer = 0; iPlayer < engEngines.length && !bFinished; iPlayer++) {
+			engEngines[iPlayer].update(lNow);
+		}
+
+		/*
+		 * Only send a board after it changed, and a piece after it moved,
+		 * so most ticks send nothing at all.
+		 */
+		for(int iPlayer = 0; iPlayer < engEngines.length; iPlayer++) {
+			GameEngine engGame = engEngines[iPlayer];
+			if(bBoardDirty[iPlayer]) {
+				bBoardDirty[iPlayer] = false;
+				NetProtocol.writeBoard(bufScratch, iPlayer, engGame.getBoard());
+			}
+			long lPiece = NetProtocol.pieceState(engGame);
+			if(lPiece != lSentPiece[iPlayer]) {
+				lSentPiece[iPlayer] = lPiece;
+				NetProtocol.writePiece(bufScratch, iPlayer, engGame);
+			}
+		}
+		if(bFinished) {
+			NetProtocol.writeOver(bufScratch, getWinner());
+		}
+		bufScratch.flip();
+		if(bufScratch.hasRemaining()) {
+			for(NetServer.Connection conPlayer : conPlayers) {
+				conPlayer.send(bufScratch);
+				bufScratch.rewind();
+			}
+		}
+		if(bFinished) {
+			for(NetServer.Connection conPlayer : conPlayers) {
+				conPlayer.setMatch(null, 0);
+			}
+		}
+	}
+
+	/**
+	 * Gets the player that is still standing.
+	 * @return The index of the winner, or {@code NetProtocol.iNO_WINNER}.
+	 */
+	private int getWinner() {
+		for(int iPlayer = 0; iPlayer < engEngines.length; iPlayer++) {
+			if(!engEngines[iPlayer].isGameOver()) {
+				return iPlayer;
+			}
+		}
+		return NetProtocol.iNO_WINNER;
+	}
+
+	/**
+	 * Gets the index of the player of a game.
+	 * @param engGame The game.
+	 * @return The index of the player.
+	 */
+	private int indexOf(GameEngine engGame) {
+		for(int iPlayer = 0; iPlayer < engEngines.length; iPlayer++) {
+			if(engEngines[iPlayer] == engGame) {
+				return iPlayer;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks whether or not the match is over.
+	 * @return Whether or not the match is over.
+	 */
+	public boolean isFinished() {
+		return bFinished;
+	}
+
+	@Override
+	public void pieceLocked(GameEngine engGame) {
+		bBoardDirty[indexOf(engGame)] = true;
+	}
+
+	@Override
+	public void linesCleared(GameEngine engGame, int iLines, int iGarbage) {
+		int iFrom = indexOf(engGame);
+		if(iGarbage <= 0) {
+			return;
+		}
+
+		/*
+		 * Send the garbage to the next player that is still standing.
+		 */
+		for(int iOffset = 1; iOffset < engEngines.length; iOffset++) {
+			int iTo = (iFrom + iOffset) % engEngines.length;
+			if(!engEngines[iTo].isGameOver()) {
+				engEngines[iTo].receiveGarbage(iGarbage);
+				NetProtocol.writeGarbage(bufScratch, iFrom, iTo, iGarbage);
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void gameOver(GameEngine engGame) {
+		bBoardDirty[indexOf(engGame)] = true;
+		int iAlive = 0;
+		for(GameEngine engOther : engEngines) {
+			if(!engOther.isGameOver()) {
+				iAlive++;
+			}
+		}
+		if(iAlive <= 1) {
+			bFinished = true;
+		}
+	}
+}
@@ -0,0 +1,380 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * NetProtocol
+ *
+ * The binary packets exchanged between the battle server and its clients.
+ * Every packet is a one byte type, a one byte payload length and the
+ * payload, so a reader can always skip a packet it doesn't understand.
+ * Clients only send their key presses, and the server sends back the state
+ * of every game of the match: a small piece packet when the falling piece
+ * moves and the whole board, four bits per cell, only when it changes.
+ * The spectator feed is made of the same records, plus a few that describe
+ * what happened to a board so that it doesn't have to be sent again.
+ * Matches and feeds are always played on boards of the standard size.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public final class NetProtocol {
+
+	/**
+	 * The port the server listens on by default.
+	 */
+	public static final int iDEFAULT_PORT = 7777;
+
+	/**
+	 * Client to server: join the next match. No payload.
+	 */
+	public static final int iJOIN = 1;
+
+	/**
+	 * Client to server: a key was pressed or released. The payload is the
+	 * {@code GameEngine} action, with {@code iRELEASED} added on release.
+	 */
+	public static final int iINPUT = 2;
+
+	/**
+	 * Server to client: a match started. The payload is the index of the
+	 * player and the number of players.
+	 */
+	public static final int iSTART = 16;
+
+	/**
+	 * Server to client: the falling piece and stats of a player changed.
+	 */
+	public static final int iPIECE = 17;
+
+	/**
+	 * Server to client: the board of a player changed.
+	 */
+	public static final int iBOARD = 18;
+
+	/**
+	 * Server to client: a player sent garbage rows to another.
+	 */
+	public static final int iGARBAGE = 19;
+
+	/**
+	 * Server to client: the match is over. The payload is the winner, or
+	 * {@code iNO_WINNER}.
+	 */
+	public static final int iOVER = 20;
+
+	/**
+	 * Spectator feed: the records that follow rebuild every game from
+	 * scratch. The payload is the number of players.
+	 */
+	public static final int iKEYFRAME = 32;
+
+	/**
+	 * Spectator feed: a piece was added to the board of a player.
+	 */
+	public static final int iLOCK = 33;
+
+	/**
+	 * Spectator feed: rows were removed from the board of a player.
+	 */
+	public static final int iCLEAR = 34;
+
+	/**
+	 * Spectator feed: garbage was pushed into the board of a player.
+	 */
+	public static final int iRISE = 35;
+
+	/**
+	 * Flag added to the action of an input packet on release.
+	 */
+	public static final int iRELEASED = 0x80;
+
+	/**
+	 * The winner sent when every player topped out at once.
+	 */
+	public static final int iNO_WINNER = 0xFF;
+
+	/**
+	 * The size of the type and length of every packet.
+	 */
+	public static final int iHEADER_BYTES = 2;
+
+	/**
+	 * The size of the payload of a piece packet.
+	 */
+	private static final int iPIECE_BYTES = 14;
+
+	/**
+	 * The size of a board with two cells per byte.
+	 */
+	private static final int iCELL_BYTES = (Board.iROW_COUNT * Board.iCOL_COUNT + 1) / 2;
+
+	/**
+	 * The size of the largest packet.
+	 */
+	public static final int iMAX_PACKET_BYTES = iHEADER_BYTES + 1 + iCELL_BYTES;
+
+	/**
+	 * Not meant to be instantiated.
+	 */
+	private NetProtocol() {
+	}
+
+	/**
+	 * Checks whether or not a whole packet can be read from a buffer.
+	 * @param bufIn The buffer, ready to be read from.
+	 * @return Whether or not the next packet is complete.
+	 */
+	public static boolean hasPacket(ByteBuffer bufIn) {
+		return bufIn.remaining() >= iHEADER_BYTES &&
+			   bufIn.remaining() >= iHEADER_BYTES + (bufIn.get(bufIn.position() + 1) & 0xFF);
+	}
+
+	/**
+	 * Writes a join packet.
+	 * @param bufOut The buffer to write to.
+	 */
+	public static void writeJoin(ByteBuffer bufOut) {
+		bufOut.put((byte) iJOIN).put((byte) 0);
+	}
+
+	/**
+	 * Writes an input packet.
+	 * @param bufOut The buffer to write to.
+	 * @param iAction The action of the key.
+	 * @param bReleased Whether the key was released rather than pressed.
+	 */
+	public static void writeInput(ByteBuffer bufOut, int iAction, boolean bReleased) {
+		bufOut.put((byte) iINPUT).put((byte) 1)
+			  .put((byte) (bReleased ? iAction | iRELEASED : iAction));
+	}
+
+	/**
+	 * Writes a match start packet.
+	 * @param bufOut The buffer to write to.
+	 * @param iPlayer The index of the player the packet is sent to.
+	 * @param iPlayers The number of players.
+	 */
+	public static void writeStart(ByteBuffer bufOut, int iPlayer, int iPlayers) {
+		bufOut.put((byte) iSTART).put((byte) 2).put((byte) iPlayer).put((byte) iPlayers);
+	}
+
+	/**
+	 * Writes a garbage packet.
+	 * @param bufOut The buffer to write to.
+	 * @param iFrom The player that sent the garbage.
+	 * @param iTo The player that receives it.
+	 * @param iRows The number of rows.
+	 */
+	public static void writeGarbage(ByteBuffer bufOut, int iFrom, int iTo, int iRows) {
+		bufOut.put((byte) iGARBAGE).put((byte) 3)
+			  .put((byte) iFrom).put((byte) iTo).put((byte) iRows);
+	}
+
+	/**
+	 * Writes a match over packet.
+	 * @param bufOut The buffer to write to.
+	 * @param iWinner The winner, or {@code iNO_WINNER}.
+	 */
+	public static void writeOver(ByteBuffer bufOut, int iWinner) {
+		bufOut.put((byte) iOVER).put((byte) 1).put((byte) iWinner);
+	}
+
+	/**
+	 * Writes the start of a keyframe.
+	 * @param bufOut The buffer to write to.
+	 * @param iPlayers The number of players.
+	 */
+	public static void writeKeyframe(ByteBuffer bufOut, int iPlayers) {
+		bufOut.put((byte) iKEYFRAME).put((byte) 1).put((byte) iPlayers);
+	}
+
+	/**
+	 * Writes a piece being added to the board of a player.
+	 * @param bufOut The buffer to write to.
+	 * @param iPlayer The index of the player.
+	 * @param engGame The game of the player, with the piece still in place.
+	 */
+	public static void writeLock(ByteBuffer bufOut, int iPlayer, GameEngine engGame) {
+		bufOut.put((byte) iLOCK).put((byte) 5)
+			  .put((byte) iPlayer)
+			  .put((byte) typeCode(engGame.getPieceType()))
+			  .put((byte) engGame.getPieceCol())
+			  .put((byte) engGame.getPieceRow())
+			  .put((byte) engGame.getPieceRotation());
+	}
+
+	/**
+	 * Reads the payload of a lock record into a copy of the board.
+	 * @param bufIn The buffer, positioned after the player index.
+	 * @param boaMirror The copy of the board.
+	 */
+	public static void readLock(ByteBuffer bufIn, Board boaMirror) {
+		TileType tilType = typeOf(bufIn.get());
+		int iCol = bufIn.get();
+		int iRow = bufIn.get();
+		int iRotation = bufIn.get();
+		if(tilType != null) {
+			boaMirror.addPiece(tilType, iCol, iRow, iRotation);
+		}
+	}
+
+	/**
+	 * Writes the rows just removed from the board of a player by
+	 * {@code Board.checkLines}.
+	 * @param bufOut The buffer to write to.
+	 * @param iPlayer The index of the player.
+	 * @param boaBoard The board.
+	 */
+	public static void writeClear(ByteBuffer bufOut, int iPlayer, Board boaBoard) {
+		int iCount = boaBoard.getClearedCount();
+		bufOut.put((byte) iCLEAR).put((byte) (1 + iCount * 2)).put((byte) iPlayer);
+		for(int iIndex = 0; iIndex < iCount; iIndex++) {
+			bufOut.putShort((short) boaBoard.getClearedRow(iIndex));
+		}
+	}
+
+	/**
+	 * Reads the payload of a clear packet into a copy of the board.
+	 * @param bufIn The buffer, positioned after the player index and
+	 *              limited to the end of the packet.
+	 * @param boaMirror The copy of the board.
+	 */
+	public static void readClear(ByteBuffer bufIn, Board boaMirror) {
+		while(bufIn.remaining() >= 2) {
+			boaMirror.clearRow(bufIn.getShort() & 0xFFFF);
+		}
+	}
+
+	/**
+	 * Writes garbage being pushed into the board of a player.
+	 * @param bufOut The buffer to write to.
+	 * @param iPlayer The index of the player.
+	 * @param iRows The number of rows.
+	 * @param iHoleCol The column left empty in every row.
+	 */
+	public static void writeRise(ByteBuffer bufOut, int iPlayer, int iRows, int iHoleCol) {
+		bufOut.put((byte) iRISE).put((byte) 3)
+			  .put((byte) iPlayer).put((byte) iRows).put((byte) iHoleCol);
+	}
+
+	/**
+	 * Packs everything a piece packet holds into one number, to tell when
+	 * it has to be sent again. The lines are left out because they never
+	 * change without the score changing too.
+	 * @param engGame The game.
+	 * @return The packed state.
+	 */
+	public static long pieceState(GameEngine engGame) {
+		long lState = typeCode(engGame.getPieceType());
+		lState = lState << 4 | typeCode(engGame.getNextPieceType());
+		lState = lState << 8 | (engGame.getPieceCol() & 0xFF);
+		lState = lState << 8 | (engGame.getPieceRow() & 0xFF);
+		lState = lState << 2 | engGame.getPieceRotation();
+		lState = lState << 5 | engGame.getPendingGarbage();
+		lState = lState << 1 | (engGame.isGameOver() ? 1 : 0);
+		return lState << 32 | (engGame.getScore() & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Writes the falling piece and stats of a player.
+	 * @param bufOut The buffer to write to.
+	 * @param iPlayer The index of the player.
+	 * @param engGame The game of the player.
+	 */
+	public static void writePiece(ByteBuffer bufOut, int iPlayer, GameEngine engGame) {
+		bufOut.put((byte) iPIECE).put((byte) iPIECE_BYTES)
+			  .put((byte) iPlayer)
+			  .put((byte) typeCode(engGame.getPieceType()))
+			  .put((byte) engGame.getPieceCol())
+			  .put((byte) engGame.getPieceRow())
+			  .put((byte) engGame.getPieceRotation())
+			  .put((byte) typeCode(engGame.getNextPieceType()))
+			  .put((byte) engGame.getPendingGarbage())
+			  .put((byte) (engGame.isGameOver() ? 1 : 0))
+			  .putInt(engGame.getScore())
+			  .putShort((short) engGame.getLines());
+	}
+
+	/**
+	 * Reads the payload of a piece packet into a copy of the game.
+	 * @param bufIn The buffer, positioned after the player index.
+	 * @param engMirror The copy of the game.
+	 */
+	public static void readPiece(ByteBuffer bufIn, GameEngine engMirror) {
+		engMirror.setPieceType(typeOf(bufIn.get()));
+		engMirror.setPieceCol(bufIn.get());
+		engMirror.setPieceRow(bufIn.get());
+		engMirror.setPieceRotation(bufIn.get());
+		engMirror.setNextPieceType(typeOf(bufIn.get()));
+		engMirror.setPendingGarbage(bufIn.get() & 0xFF);
+		engMirror.setGameOver(bufIn.get() != 0);
+		engMirror.setScore(bufIn.getInt());
+		engMirror.setLines(bufIn.getShort() & 0xFFFF);
+	}
+
+	/**
+	 * Writes the board of a player, two cells per byte.
+	 * @param bufOut The buffer to write to.
+	 * @param iPlayer The index of the player.
+	 * @param boaBoard The board.
+	 */
+	public static void writeBoard(ByteBuffer bufOut, int iPlayer, Board boaBoard) {
+		bufOut.put((byte) iBOARD).put((byte) (1 + iCELL_BYTES)).put((byte) iPlayer);
+		int iPacked = 0;
+		int iCell = 0;
+		for(int iRow = 0; iRow < Board.iROW_COUNT; iRow++) {
+			for(int iCol = 0; iCol < Board.iCOL_COUNT; iCol++, iCell++) {
+				iPacked = (iPacked << 4) | typeCode(boaBoard.getTile(iCol, iRow));
+				if((iCell & 1) == 1) {
+					bufOut.put((byte) iPacked);
+					iPacked = 0;
+				}
+			}
+		}
+		if((iCell & 1) == 1) {
+			bufOut.put((byte) (iPacked << 4));
+		}
+	}
+
+	/**
+	 * Reads the payload of a board packet into a copy of the board.
+	 * @param bufIn The buffer, positioned after the player index.
+	 * @param boaMirror The copy of the board.
+	 */
+	public static void readBoard(ByteBuffer bufIn, Board boaMirror) {
+		TileType[][] tilTiles = boaMirror.getTiles();
+		int iPacked = 0;
+		int iCell = 0;
+		for(int iRow = 0; iRow < Board.iROW_COUNT; iRow++) {
+			for(int iCol = 0; iCol < Board.iCOL_COUNT; iCol++, iCell++) {
+				if((iCell & 1) == 0) {
+					iPacked = bufIn.get() & 0xFF;
+					tilTiles[iRow][iCol] = typeOf(iPacked >>> 4);
+				} else {
+					tilTiles[iRow][iCol] = typeOf(iPacked & 0xF);
+				}
+			}
+		}
+		boaMirror.setTiles(tilTiles);
+	}
+
+	/**
+	 * Gets the code sent for a type of tile.
+	 * @param tilType The type, or null for an empty cell.
+	 * @return The code, 0 for an empty cell.
+	 */
+	private static int typeCode(TileType tilType) {
+		return tilType == null ? 0 : tilType.ordinal() + 1;
+	}
+
+	/**
+	 * Gets the type of tile a code stands for.
+	 * @param iCode The code.
+	 * @return The type, or null for an empty cell.
+	 */
+	private static TileType typeOf(int iCode) {
+		return iCode == 0 || iCode > TileType.getTypeCount() ? null : TileType.getType(iCode - 1);
+	}
+}
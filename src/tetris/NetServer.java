@@ -0,0 +1,634 @@
+package tetris;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * NetServer
+ *
+ * Hosts many two player battles at once. A single selector thread accepts
+ * the players, reads their inputs into the queue of their match and writes
+ * out whatever the matches sent them, so no thread ever blocks on a socket.
+ * The matches themselves are spread over one worker thread per core, each
+ * of which ticks every one of its matches once per frame. The time every
+ * match takes to tick is recorded so the number of matches a core can hold
+ * while staying inside the frame can be read from the report.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class NetServer {
+
+	/**
+	 * The length of a frame, the same as the one of the window.
+	 */
+	private static final long lFRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(20L);
+
+	/**
+	 * The size of the buffer of the packets read from each player.
+	 */
+	private static final int iINBOUND_BYTES = 1024;
+
+	/**
+	 * The size of the buffer of the packets waiting to be written to each
+	 * player. A player that falls this far behind is dropped.
+	 */
+	private static final int iOUTBOUND_BYTES = 64 * 1024;
+
+	/**
+	 * The number of players that can be waiting to be accepted.
+	 */
+	private static final int iBACKLOG = 1024;
+
+	/**
+	 * The number of players of every match.
+	 */
+	private static final int iMATCH_PLAYERS = 2;
+
+	/**
+	 * The time every match takes to tick.
+	 */
+	public static final LatencyRecorder latMATCH_TICK = new LatencyRecorder("matchTick");
+
+	/**
+	 * A player connected to the server. Its outbound buffer is written by
+	 * the worker of its match and drained by the selector thread, so both
+	 * sides lock on the connection while they touch it.
+	 */
+	public static final class Connection {
+
+		/**
+		 * The socket of the player.
+		 */
+		private final SocketChannel socChannel;
+
+		/**
+		 * The packets read but not yet handled. Only the selector thread
+		 * touches it.
+		 */
+		private final ByteBuffer bufIn;
+
+		/**
+		 * The packets waiting to be written, ready to be written to.
+		 */
+		private final ByteBuffer bufOut;
+
+		/**
+		 * Whether or not the connection is already waiting to be flushed.
+		 */
+		private final AtomicBoolean atoQueued;
+
+		/**
+		 * The server of the connection.
+		 */
+		private final NetServer serServer;
+
+		/**
+		 * The match the player is in, or null.
+		 */
+		private volatile NetMatch matMatch;
+
+		/**
+		 * The index of the player within its match.
+		 */
+		private volatile int iPlayer;
+
+		/**
+		 * Whether or not the connection was closed.
+		 */
+		private volatile boolean bClosed;
+
+		/**
+		 * Creates a new connection.
+		 * @param socChannel The socket of the player.
+		 * @param serServer The server of the connection.
+		 */
+		private Connection(SocketChannel socChannel, NetServer serServer) {
+			this.socChannel = socChannel;
+			this.serServer = serServer;
+			this.bufIn = ByteBuffer.allocate(iINBOUND_BYTES);
+			this.bufOut = ByteBuffer.allocate(iOUTBOUND_BYTES);
+			this.atoQueued = new AtomicBoolean();
+		}
+
+		/**
+		 * Queues packets to be written to the player. Can be called from any
+		 * thread. A player whose buffer is full is dropped.
+		 * @param bufPackets The packets, which are left unread.
+		 */
+		public void send(ByteBuffer bufPackets) {
+			if(bClosed) {
+				return;
+			}
+			boolean bOverflow;
+			synchronized(this) {
+				bOverflow = bufOut.remaining() < bufPackets.remaining();
+				if(!bOverflow) {
+					bufOut.put(bufPackets.duplicate());
+				}
+			}
+			if(bOverflow) {
+				bClosed = true;
+			}
+			if(atoQueued.compareAndSet(false, true)) {
+				serServer.queDirty.offer(this);
+			}
+		}
+
+		/**
+		 * Writes as much of the queued packets as the socket takes.
+		 * @return Whether or not everything was written.
+		 * @throws IOException If the socket failed.
+		 */
+		private boolean flush() throws IOException {
+			synchronized(this) {
+				bufOut.flip();
+				try {
+					socChannel.write(bufOut);
+					return !bufOut.hasRemaining();
+				} finally {
+					bufOut.compact();
+				}
+			}
+		}
+
+		/**
+		 * Sets the match of the player.
+		 * @param matMatch The match, or null when it is over.
+		 * @param iPlayer The index of the player within the match.
+		 */
+		public void setMatch(NetMatch matMatch, int iPlayer) {
+			this.iPlayer = iPlayer;
+			this.matMatch = matMatch;
+		}
+
+		/**
+		 * Checks whether or not the connection was closed.
+		 * @return Whether or not the connection was closed.
+		 */
+		public boolean isClosed() {
+			return bClosed;
+		}
+	}
+
+	/**
+	 * Ticks its share of the matches once per frame.
+	 */
+	private final class Worker implements Runnable {
+
+		/**
+		 * The matches given to this worker that it hasn't started yet.
+		 */
+		private final ConcurrentLinkedQueue<NetMatch> queNew = new ConcurrentLinkedQueue<>();
+
+		/**
+		 * The matches this worker ticks. Only the worker touches it.
+		 */
+		private final List<NetMatch> lisMatches = new ArrayList<>();
+
+		/**
+		 * The number of matches given to this worker that aren't over.
+		 */
+		private final AtomicInteger atoLive = new AtomicInteger();
+
+		/**
+		 * The time spent ticking matches.
+		 */
+		private final AtomicLong atoBusyNanos = new AtomicLong();
+
+		@Override
+		public void run() {
+			long lNextFrame = System.nanoTime();
+			while(bRunning) {
+				long lStart = System.nanoTime();
+				NetMatch matNew;
+				while((matNew = queNew.poll()) != null) {
+					matNew.start();
+					lisMatches.add(matNew);
+				}
+				for(int iMatch = lisMatches.size() - 1; iMatch >= 0; iMatch--) {
+					NetMatch matMatch = lisMatches.get(iMatch);
+					long lTickStart = System.nanoTime();
+					matMatch.tick(lTickStart);
+					latMATCH_TICK.recordSince(lTickStart);
+					if(matMatch.isFinished()) {
+						//Swap the last match in to remove this one cheaply.
+						NetMatch matLast = lisMatches.remove(lisMatches.size() - 1);
+						if(matLast != matMatch) {
+							lisMatches.set(iMatch, matLast);
+						}
+						atoLive.decrementAndGet();
+						atoMatchesPlayed.incrementAndGet();
+					}
+				}
+				long lEnd = System.nanoTime();
+				atoBusyNanos.addAndGet(lEnd - lStart);
+				atoTicks.incrementAndGet();
+				if(!queDirty.isEmpty()) {
+					selSelector.wakeup();
+				}
+
+				/*
+				 * Wait for the next frame. A worker that fell behind starts the
+				 * next frame right away rather than trying to catch up.
+				 */
+				lNextFrame += lFRAME_NANOS;
+				if(lNextFrame < lEnd) {
+					lNextFrame = lEnd;
+				}
+				LockSupport.parkNanos(lNextFrame - lEnd);
+			}
+		}
+	}
+
+	/**
+	 * The socket players connect to.
+	 */
+	private final ServerSocketChannel sscServer;
+
+	/**
+	 * The selector of every socket.
+	 */
+	private final Selector selSelector;
+
+	/**
+	 * The workers that tick the matches.
+	 */
+	private final Worker[] worWorkers;
+
+	/**
+	 * The connections with packets waiting to be flushed.
+	 */
+	private final ConcurrentLinkedQueue<Connection> queDirty;
+
+	/**
+	 * The rotation system of every match.
+	 */
+	private final RotationSystem rotRotation;
+
+	/**
+	 * The seeds of the matches.
+	 */
+	private final Random rRandom;
+
+	/**
+	 * The players waiting for a match. Only the selector thread touches it.
+	 */
+	private final List<Connection> lisLobby;
+
+	/**
+	 * The number of matches that are over.
+	 */
+	private final AtomicLong atoMatchesPlayed;
+
+	/**
+	 * The number of frames run by all the workers.
+	 */
+	private final AtomicLong atoTicks;
+
+	/**
+	 * The worker the next match goes to.
+	 */
+	private int iNextWorker;
+
+	/**
+	 * When the statistics were last reset.
+	 */
+	private long lStatsStart;
+
+	/**
+	 * Whether or not the server is running.
+	 */
+	private volatile boolean bRunning;
+
+	/**
+	 * Creates a new server, listening but not yet running.
+	 * @param iPort The port to listen on, or 0 for any free port.
+	 * @param iWorkers The number of worker threads.
+	 * @throws IOException If the port couldn't be opened.
+	 */
+	public NetServer(int iPort, int iWorkers) throws IOException {
+		this.selSelector = Selector.open();
+		this.sscServer = ServerSocketChannel.open();
+		sscServer.bind(new InetSocketAddress(iPort), iBACKLOG);
+		sscServer.configureBlocking(false);
+		sscServer.register(selSelector, SelectionKey.OP_ACCEPT);
+		this.worWorkers = new Worker[Math.max(1, iWorkers)];
+		for(int iWorker = 0; iWorker < worWorkers.length; iWorker++) {
+			worWorkers[iWorker] = new Worker();
+		}
+		this.queDirty = new ConcurrentLinkedQueue<>();
+		this.rotRotation = RotationSystem.fromSystemProperties();
+		this.rRandom = new Random();
+		this.lisLobby = new ArrayList<>();
+		this.atoMatchesPlayed = new AtomicLong();
+		this.atoTicks = new AtomicLong();
+	}
+
+	/**
+	 * Starts the selector and worker threads.
+	 */
+	public void start() {
+		bRunning = true;
+		resetStats();
+		Thread thrSelector = new Thread(this::runSelector, "tetris-net-selector");
+		thrSelector.setDaemon(true);
+		thrSelector.start();
+		for(int iWorker = 0; iWorker < worWorkers.length; iWorker++) {
+			Thread thrWorker = new Thread(worWorkers[iWorker], "tetris-net-worker-" + iWorker);
+			thrWorker.setDaemon(true);
+			thrWorker.start();
+		}
+	}
+
+	/**
+	 * Stops every thread and closes every socket.
+	 */
+	public void stop() {
+		bRunning = false;
+		selSelector.wakeup();
+	}
+
+	/**
+	 * Gets the port the server listens on.
+	 * @return The port.
+	 * @throws IOException If the socket was closed.
+	 */
+	public int getPort() throws IOException {
+		return ((InetSocketAddress) sscServer.getLocalAddress()).getPort();
+	}
+
+	/**
+	 * Accepts players, reads their inputs and flushes their packets until
+	 * the server is stopped.
+	 */
+	private void runSelector() {
+		try {
+			while(bRunning) {
+				selSelector.select(lFRAME_NANOS / 1000000L);
+				Iterator<SelectionKey> iteKeys = selSelector.selectedKeys().iterator();
+				while(iteKeys.hasNext()) {
+					SelectionKey selKey = iteKeys.next();
+					iteKeys.remove();
+					try {
+						if(!selKey.isValid()) {
+							continue;
+						}
+						if(selKey.isAcceptable()) {
+							accept();
+						}
+						if(selKey.isValid() && selKey.isReadable()) {
+							read(selKey);
+						}
+						if(selKey.isValid() && selKey.isWritable()) {
+							write(selKey);
+						}
+					} catch(IOException ioeException) {
+						close(selKey);
+					}
+				}
+				flushDirty();
+			}
+		} catch(IOException | ClosedSelectorException excException) {
+			System.err.println("Network server stopped: " + excException);
+		} finally {
+			for(SelectionKey selKey : selSelector.keys()) {
+				close(selKey);
+			}
+			try {
+				selSelector.close();
+			} catch(IOException ioeException) {
+				// Nothing left to do with it
+			}
+		}
+	}
+
+	/**
+	 * Accepts a new player.
+	 * @throws IOException If the socket failed.
+	 */
+	private void accept() throws IOException {
+		SocketChannel socChannel = sscServer.accept();
+		if(socChannel == null) {
+			return;
+		}
+		socChannel.configureBlocking(false);
+		socChannel.socket().setTcpNoDelay(true);
+		socChannel.register(selSelector, SelectionKey.OP_READ, new Connection(socChannel, this));
+	}
+
+	/**
+	 * Reads and handles the packets of a player.
+	 * @param selKey The key of the player.
+	 * @throws IOException If the socket failed or was closed.
+	 */
+	private void read(SelectionKey selKey) throws IOException {
+		Connection conPlayer = (Connection) selKey.attachment();
+		if(conPlayer.socChannel.read(conPlayer.bufIn) < 0) {
+			throw new IOException("Closed by the player");
+		}
+		ByteBuffer bufIn = conPlayer.bufIn;
+		bufIn.flip();
+		while(NetProtocol.hasPacket(bufIn)) {
+			int iType = bufIn.get() & 0xFF;
+			int iLength = bufIn.get() & 0xFF;
+			int iEnd = bufIn.position() + iLength;
+			NetMatch matMatch = conPlayer.matMatch;
+			if(iType == NetProtocol.iJOIN && matMatch == null && !lisLobby.contains(conPlayer)) {
+				join(conPlayer);
+			} else if(iType == NetProtocol.iINPUT && iLength == 1 && matMatch != null) {
+				matMatch.offerInput(conPlayer.iPlayer, bufIn.get() & 0xFF);
+			}
+			bufIn.position(iEnd);
+		}
+		bufIn.compact();
+	}
+
+	/**
+	 * Puts a player in the lobby, and starts a match once there are enough
+	 * players waiting.
+	 * @param conPlayer The player.
+	 */
+	private void join(Connection conPlayer) {
+		lisLobby.add(conPlayer);
+		if(lisLobby.size() < iMATCH_PLAYERS) {
+			return;
+		}
+		Connection[] conPlayers = lisLobby.toArray(new Connection[iMATCH_PLAYERS]);
+		lisLobby.clear();
+		NetMatch matMatch = new NetMatch(conPlayers, rotRotation, rRandom.nextLong());
+		for(int iPlayer = 0; iPlayer < conPlayers.length; iPlayer++) {
+			conPlayers[iPlayer].setMatch(matMatch, iPlayer);
+		}
+
+		/*
+		 * Hand the match to the workers in turn so they all get the same
+		 * number of them.
+		 */
+		Worker worWorker = worWorkers[iNextWorker];
+		iNextWorker = (iNextWorker + 1) % worWorkers.length;
+		worWorker.atoLive.incrementAndGet();
+		worWorker.queNew.offer(matMatch);
+	}
+
+	/**
+	 * Writes the packets of a player that were left over from last time.
+	 * @param selKey The key of the player.
+	 * @throws IOException If the socket failed.
+	 */
+	private void write(SelectionKey selKey) throws IOException {
+		Connection conPlayer = (Connection) selKey.attachment();
+		if(conPlayer.flush()) {
+			selKey.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+	 * Writes the packets the matches queued since the last time, and waits
+	 * for the socket to take the rest of what it couldn't take right away.
+	 */
+	private void flushDirty() {
+		Connection conPlayer;
+		while((conPlayer = queDirty.poll()) != null) {
+			conPlayer.atoQueued.set(false);
+			SelectionKey selKey = conPlayer.socChannel.keyFor(selSelector);
+			if(selKey == null || !selKey.isValid()) {
+				continue;
+			}
+			if(conPlayer.bClosed) {
+				close(selKey);
+				continue;
+			}
+			try {
+				if(!conPlayer.flush()) {
+					selKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				}
+			} catch(IOException ioeException) {
+				close(selKey);
+			}
+		}
+	}
+
+	/**
+	 * Closes the socket of a key. Its match sees it as a top out.
+	 * @param selKey The key.
+	 */
+	private void close(SelectionKey selKey) {
+		Object objAttachment = selKey.attachment();
+		if(objAttachment instanceof Connection) {
+			Connection conPlayer = (Connection) objAttachment;
+			conPlayer.bClosed = true;
+			lisLobby.remove(conPlayer);
+		}
+		selKey.cancel();
+		try {
+			selKey.channel().close();
+		} catch(IOException ioeException) {
+			// Already closed
+		}
+	}
+
+	/**
+	 * Starts measuring the statistics again.
+	 */
+	public void resetStats() {
+		latMATCH_TICK.reset();
+		atoTicks.set(0L);
+		for(Worker worWorker : worWorkers) {
+			worWorker.atoBusyNanos.set(0L);
+		}
+		lStatsStart = System.nanoTime();
+	}
+
+	/**
+	 * Gets the number of matches being played.
+	 * @return The number of matches.
+	 */
+	public int getLiveMatches() {
+		int iLive = 0;
+		for(Worker worWorker : worWorkers) {
+			iLive += worWorker.atoLive.get();
+		}
+		return iLive;
+	}
+
+	/**
+	 * Gets the number of matches that are over.
+	 * @return The number of matches.
+	 */
+	public long getMatchesPlayed() {
+		return atoMatchesPlayed.get();
+	}
+
+	/**
+	 * Gets the fraction of the time the workers spent ticking matches since
+	 * the statistics were reset.
+	 * @return The fraction, between 0 and 1.
+	 */
+	public double getBusyFraction() {
+		long lElapsed = Math.max(1L, System.nanoTime() - lStatsStart) * worWorkers.length;
+		long lBusy = 0;
+		for(Worker worWorker : worWorkers) {
+			lBusy += worWorker.atoBusyNanos.get();
+		}
+		return (double) lBusy / lElapsed;
+	}
+
+	/**
+	 * Describes how the server has been doing since the statistics were
+	 * reset, including how many matches a single core could hold before its
+	 * frames start running late.
+	 * @return The report.
+	 */
+	public String report() {
+		double dSeconds = (System.nanoTime() - lStatsStart) / 1e9;
+		int iLive = getLiveMatches();
+		double dBusy = getBusyFraction();
+		double dMeanMicros = latMATCH_TICK.getMeanMicros();
+		long lCapacity = dMeanMicros > 0 ? (long) (lFRAME_NANOS / 1000.0 / dMeanMicros) : 0L;
+		return String.format("matches live=%d played=%d workers=%d%n"
+				+ "match tick us p50=%.1f p99=%.1f p99.9=%.1f max=%.1f%n"
+				+ "worker frames/s=%.0f busy=%.1f%% matches/core=%.1f (capacity ~%d)",
+				iLive, getMatchesPlayed(), worWorkers.length,
+				latMATCH_TICK.getP50Micros(), latMATCH_TICK.getP99Micros(),
+				latMATCH_TICK.getP999Micros(), latMATCH_TICK.getMaxMicros(),
+				atoTicks.get() / dSeconds, dBusy * 100.0,
+				(double) iLive / worWorkers.length, lCapacity);
+	}
+
+	/**
+	 * Runs a server until it is killed, printing a report every few seconds.
+	 * @param args The port, and the number of workers, one per core by default.
+	 * @throws Exception If the server couldn't be started.
+	 */
+	public static void main(String[] args) throws Exception {
+		int iPort = args.length > 0 ? Integer.parseInt(args[0]) : NetProtocol.iDEFAULT_PORT;
+		int iWorkers = args.length > 1 ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		NetServer serServer = new NetServer(iPort, iWorkers);
+		serServer.start();
+		System.out.println("Listening on port " + serServer.getPort());
+		while(true) {
+			Thread.sleep(5000L);
+			System.out.println(serServer.report());
+			serServer.resetStats();
+		}
+	}
+}
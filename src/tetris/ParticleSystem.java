@@ -0,0 +1,468 @@
+package tetris;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+
+import static tetris.Board.iHIDDEN_ROW_COUNT;
+
+/**
+ * ParticleSystem
+ *
+ * Bursts of sparks thrown off by hard drops and cleared lines. Every
+ * particle is a slot in a handful of primitive arrays (position, velocity,
+ * frames left to live and color) that are made once at a fixed capacity, so
+ * no particle is ever an object. A particle that dies is replaced by the
+ * last one, which keeps the live particles packed at the front and lets
+ * {@code update} run down the arrays in a straight line. When the arrays
+ * are full, new particles are dropped.
+ *
+ * Positions are in tiles from the top left corner of the visible board, so
+ * the particles follow the board at any size. They are not drawn one
+ * {@code drawImage} at a time: each one copies the pixels of a small cached
+ * sprite into a single layer the size of the board, which is then drawn in
+ * one go, so tens of thousands of particles cost one copy of the board and
+ * allocate nothing.
+ *
+ * Like {@code ShakeFrame}, the particles are moved on the game loop and
+ * drawn on the event thread without a lock; a particle drawn while it is
+ * being moved is at worst drawn one frame off.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class ParticleSystem {
+
+	/**
+	 * The default number of particles that can be alive at once.
+	 */
+	public static final int iDEFAULT_CAPACITY = 1 << 15;
+
+	/**
+	 * How fast particles speed up downwards, in tiles per frame per frame.
+	 */
+	private static final float fGRAVITY = 0.015f;
+
+	/**
+	 * The number of frames a particle lives at least.
+	 */
+	private static final int iMIN_LIFE = 20;
+
+	/**
+	 * The number of extra frames a particle may live, picked at random.
+	 */
+	private static final int iLIFE_SPREAD = 24;
+
+	/**
+	 * The number of frames over which a particle fades out before it dies.
+	 */
+	private static final int iFADE_FRAMES = 12;
+
+	/**
+	 * The number of steps a particle fades out in, each with its own sprite.
+	 */
+	private static final int iFADE_LEVELS = 4;
+
+	/**
+	 * The number of particles thrown off by each tile of a hard dropped
+	 * piece.
+	 */
+	private static final int iDROP_PARTICLES = 4;
+
+	/**
+	 * The number of particles thrown off by each tile of a cleared row.
+	 */
+	private static final int iCLEAR_PARTICLES = 10;
+
+	/**
+	 * The horizontal position of each particle, in tiles.
+	 */
+	private final float[] fX;
+
+	/**
+	 * The vertical position of each particle, in tiles.
+	 */
+	private final float[] fY;
+
+	/**
+	 * The horizontal speed of each particle, in tiles per frame.
+	 */
+	private final float[] fVX;
+
+	/**
+	 * The vertical speed of each particle, in tiles per frame.
+	 */
+	private final float[] fVY;
+
+	/**
+	 * The number of frames each particle has left to live.
+	 */
+	private final int[] iLife;
+
+	/**
+	 * The color of each particle, as the ordinal of a type of tile.
+	 */
+	private final byte[] byColor;
+
+	/**
+	 * The number of live particles, which are the first ones of the arrays.
+	 */
+	private volatile int iCount;
+
+	/**
+	 * The state of the generator that scatters the particles.
+	 */
+	private int iSeed;
+
+	/**
+	 * The tile size the sprites were drawn for, 0 before they are drawn.
+	 */
+	private int iSpriteTile;
+
+	/**
+	 * The width and height of each sprite, in pixels.
+	 */
+	private int iSpriteSize;
+
+	/**
+	 * The pixels of the sprite of each color at each step of fading out,
+	 * premultiplied ARGB, indexed by {@code color * iFADE_LEVELS + level}.
+	 */
+	private int[][] iSprites;
+
+	/**
+	 * The layer the particles are drawn into, the size of the board.
+	 */
+	private BufferedImage bufLayer;
+
+	/**
+	 * The pixels of the layer.
+	 */
+	private int[] iLayer;
+
+	/**
+	 * The first row of pixels of the layer that was drawn into last time.
+	 */
+	private int iDirtyTop;
+
+	/**
+	 * The row of pixels after the last one of the layer that was drawn into
+	 * last time, or 0 if nothing was drawn.
+	 */
+	private int iDirtyBottom;
+
+	/**
+	 * Creates a particle system that holds the default number of particles.
+	 */
+	public ParticleSystem() {
+		this(iDEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a particle system.
+	 * @param iCapacity The number of particles that can be alive at once.
+	 */
+	public ParticleSystem(int iCapacity) {
+		this.fX = new float[iCapacity];
+		this.fY = new float[iCapacity];
+		this.fVX = new float[iCapacity];
+		this.fVY = new float[iCapacity];
+		this.iLife = new int[iCapacity];
+		this.byColor = new byte[iCapacity];
+		this.iSeed = 0x2545F491;
+	}
+
+	/**
+	 * Gets the number of live particles.
+	 * @return The number of particles.
+	 */
+	public int getCount() {
+		return iCount;
+	}
+
+	/**
+	 * Gets the number of particles that can be alive at once.
+	 * @return The number of particles.
+	 */
+	public int getCapacity() {
+		return fX.length;
+	}
+
+	/**
+	 * Kills every particle.
+	 */
+	public void clear() {
+		iCount = 0;
+	}
+
+	/**
+	 * Adds a particle, unless the system is full.
+	 * @param fPosX The horizontal position, in tiles.
+	 * @param fPosY The vertical position, in tiles.
+	 * @param fSpeedX The horizontal speed, in tiles per frame.
+	 * @param fSpeedY The vertical speed, in tiles per frame.
+	 * @param iFrames The number of frames it lives.
+	 * @param tilColor The type of tile it takes its color from.
+	 */
+	public void emit(float fPosX, float fPosY, float fSpeedX, float fSpeedY, int iFrames,
+					 TileType tilColor) {
+		int iIndex = iCount;
+		if(iIndex == fX.length || iFrames <= 0) {
+			return;
+		}
+		fX[iIndex] = fPosX;
+		fY[iIndex] = fPosY;
+		fVX[iIndex] = fSpeedX;
+		fVY[iIndex] = fSpeedY;
+		iLife[iIndex] = iFrames;
+		byColor[iIndex] = (byte) tilColor.ordinal();
+		iCount = iIndex + 1;
+	}
+
+	/**
+	 * Throws particles out of a point in every direction.
+	 * @param fPosX The horizontal position, in tiles.
+	 * @param fPosY The vertical position, in tiles.
+	 * @param iParticles The number of particles.
+	 * @param fSpeed The highest speed of a particle, in tiles per frame.
+	 * @param fLift The speed added upwards to every particle.
+	 * @param tilColor The type of tile they take their color from.
+	 */
+	public void burst(float fPosX, float fPosY, int iParticles, float fSpeed, float fLift,
+					  TileType tilColor) {
+		for(int iParticle = 0; iParticle < iParticles; iParticle++) {
+			emit(fPosX, fPosY, nextSigned() * fSpeed, nextSigned() * fSpeed - fLift,
+				 iMIN_LIFE + (int) ((nextSigned() + 1) * iLIFE_SPREAD / 2), tilColor);
+		}
+	}
+
+	/**
+	 * Throws sparks off the bottom of each tile of a piece that was just
+	 * hard dropped.
+	 * @param tilType The type of the piece.
+	 * @param iCol The column of the piece.
+	 * @param iRow The row of the piece, on the board.
+	 * @param iRotation The rotation of the piece.
+	 */
+	public void emitDrop(TileType tilType, int iCol, int iRow, int iRotation) {
+		for(int iY = 0; iY < tilType.getDimension(); iY++) {
+			for(int iX = 0; iX < tilType.getDimension(); iX++) {
+				if(tilType.isTile(iX, iY, iRotation) && iRow + iY >= iHIDDEN_ROW_COUNT) {
+					burst(iCol + iX + 0.5f, iRow + iY - iHIDDEN_ROW_COUNT + 1,
+						  iDROP_PARTICLES, 0.12f, 0.06f, tilType);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Blows up every tile of the rows a board has just cleared.
+	 * @param boaBoard The board, right after {@code checkLines}.
+	 */
+	public void emitClear(Board boaBoard) {
+		for(int iIndex = 0; iIndex < boaBoard.getClearedCount(); iIndex++) {
+			int iRow = boaBoard.getClearedRow(iIndex) - iHIDDEN_ROW_COUNT;
+			if(iRow < 0) {
+				continue;
+			}
+			for(int iCol = 0; iCol < boaBoard.getColCount(); iCol++) {
+				burst(iCol + 0.5f, iRow + 0.5f, iCLEAR_PARTICLES, 0.2f, 0.1f,
+					  boaBoard.getClearedTile(iIndex, iCol));
+			}
+		}
+	}
+
+	/**
+	 * Moves every particle one frame on, and kills the ones that ran out of
+	 * life or fell off the bottom of a board.
+	 * @param iRows The number of visible rows of the board.
+	 */
+	public void update(int iRows) {
+		int iLast = iCount;
+		float fBottom = iRows + 1;
+		for(int iIndex = 0; iIndex < iLast;) {
+			float fPosY = fY[iIndex] + fVY[iIndex];
+			if(--iLife[iIndex] <= 0 || fPosY > fBottom) {
+				/*
+				 * Move the last particle into the slot of the dead one, and
+				 * look at the same slot again.
+				 */
+				iLast--;
+				fX[iIndex] = fX[iLast];
+				fY[iIndex] = fY[iLast];
+				fVX[iIndex] = fVX[iLast];
+				fVY[iIndex] = fVY[iLast];
+				iLife[iIndex] = iLife[iLast];
+				byColor[iIndex] = byColor[iLast];
+				continue;
+			}
+			fY[iIndex] = fPosY;
+			fX[iIndex] += fVX[iIndex];
+			fVY[iIndex] += fGRAVITY;
+			iIndex++;
+		}
+		iCount = iLast;
+	}
+
+	/**
+	 * Draws the particles over a board, with the top left corner of the
+	 * board at the origin.
+	 * @param graGraphics The graphics object.
+	 * @param iTileSize The number of pixels that a tile takes up.
+	 * @param iWidth The width of the board, in pixels.
+	 * @param iHeight The height of the board, in pixels.
+	 */
+	public void paint(Graphics graGraphics, int iTileSize, int iWidth, int iHeight) {
+		int iLast = iCount;
+		if(iLast == 0 && iDirtyBottom == 0) {
+			return;
+		}
+		if(bufLayer == null || bufLayer.getWidth() != iWidth || bufLayer.getHeight() != iHeight) {
+			bufLayer = new BufferedImage(iWidth, iHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+			iLayer = ((DataBufferInt) bufLayer.getRaster().getDataBuffer()).getData();
+			iDirtyBottom = 0;
+		}
+		if(iTileSize != iSpriteTile) {
+			createSprites(iTileSize);
+		}
+
+		/*
+		 * Wipe only the rows that were drawn into last time.
+		 */
+		if(iDirtyBottom > 0) {
+			Arrays.fill(iLayer, iDirtyTop * iWidth, iDirtyBottom * iWidth, 0);
+		}
+		int iTop = iHeight;
+		int iBottom = 0;
+		int iSize = iSpriteSize;
+		int iHalf = iSize / 2;
+		for(int iIndex = 0; iIndex < iLast; iIndex++) {
+			int iLeft = (int) (fX[iIndex] * iTileSize) - iHalf;
+			int iUp = (int) (fY[iIndex] * iTileSize) - iHalf;
+			if(iLeft < 0 || iUp < 0 || iLeft + iSize > iWidth || iUp + iSize > iHeight) {
+				continue;
+			}
+			int iLevel = Math.min(iFADE_LEVELS - 1, iLife[iIndex] * iFADE_LEVELS / iFADE_FRAMES);
+			int[] iSprite = iSprites[byColor[iIndex] * iFADE_LEVELS + iLevel];
+			for(int iY = 0, iTo = iUp * iWidth + iLeft; iY < iSize; iY++, iTo += iWidth) {
+				System.arraycopy(iSprite, iY * iSize, iLayer, iTo, iSize);
+			}
+			iTop = Math.min(iTop, iUp);
+			iBottom = Math.max(iBottom, iUp + iSize);
+		}
+		iDirtyTop = iTop;
+		iDirtyBottom = iBottom;
+		if(iBottom > 0) {
+			graGraphics.drawImage(bufLayer, 0, 0, null);
+		}
+	}
+
+	/**
+	 * Draws the sprite of every color at every step of fading out for a
+	 * size of tiles. A sprite is a small square, lighter in the middle.
+	 * @param iTileSize The number of pixels that a tile takes up.
+	 */
+	private void createSprites(int iTileSize) {
+		int iSize = Math.max(2, iTileSize / 6);
+		int iColors = TileType.getTypeCount();
+		int[][] iNewSprites = new int[iColors * iFADE_LEVELS][iSize * iSize];
+		for(int iColor = 0; iColor < iColors; iColor++) {
+			TileType tilType = TileType.getType(iColor);
+			for(int iLevel = 0; iLevel < iFADE_LEVELS; iLevel++) {
+				int iAlpha = 255 * (iLevel + 1) / iFADE_LEVELS;
+				int[] iSprite = iNewSprites[iColor * iFADE_LEVELS + iLevel];
+				for(int iY = 0; iY < iSize; iY++) {
+					for(int iX = 0; iX < iSize; iX++) {
+						boolean bEdge = iX == 0 || iY == 0 || iX == iSize - 1 || iY == iSize - 1;
+						iSprite[iY * iSize + iX] = premultiply(bEdge ? tilType.getBaseColor()
+																   : tilType.getLightColor(), iAlpha);
+					}
+				}
+			}
+		}
+		this.iSprites = iNewSprites;
+		this.iSpriteSize = iSize;
+		this.iSpriteTile = iTileSize;
+	}
+
+	/**
+	 * Packs a color with an alpha into a premultiplied ARGB pixel.
+	 * @param colColor The color.
+	 * @param iAlpha The alpha, from 0 to 255.
+	 * @return The pixel.
+	 */
+	private static int premultiply(Color colColor, int iAlpha) {
+		return iAlpha << 24
+				| (colColor.getRed() * iAlpha / 255) << 16
+				| (colColor.getGreen() * iAlpha / 255) << 8
+				| colColor.getBlue() * iAlpha / 255;
+	}
+
+	/**
+	 * Gets a random number from -1 to 1 from a xorshift generator, which
+	 * needs no objects.
+	 * @return The number.
+	 */
+	private float nextSigned() {
+		iSeed ^= iSeed << 13;
+		iSeed ^= iSeed >>> 17;
+		iSeed ^= iSeed << 5;
+		return iSeed * (1f / Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Keeps a system full of particles and times moving and drawing them,
+	 * and how much memory that allocates.
+	 * @param args The number of particles and the number of frames.
+	 */
+	public static void main(String[] args) {
+		int iParticles = args.length > 0 ? Integer.parseInt(args[0]) : 30000;
+		int iFrames = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+		ParticleSystem parParticles = new ParticleSystem(iParticles);
+		int iTileSize = BoardPanel.iTILE_SIZE;
+		int iWidth = Board.iCOL_COUNT * iTileSize;
+		int iHeight = Board.iVISIBLE_ROW_COUNT * iTileSize;
+		BufferedImage bufScreen = new BufferedImage(iWidth, iHeight, BufferedImage.TYPE_INT_RGB);
+		Graphics graScreen = bufScreen.getGraphics();
+		TileType tilType = TileType.getPiece(0);
+		MemoryMXBean memMemory = ManagementFactory.getMemoryMXBean();
+		long lUpdateNanos = 0;
+		long lPaintNanos = 0;
+		long lHeapBefore = 0;
+		int iMeasured = 0;
+		for(int iFrame = 0; iFrame < iFrames * 2; iFrame++) {
+			/*
+			 * Top the system up every frame, so that it stays full.
+			 */
+			while(parParticles.getCount() < iParticles) {
+				parParticles.burst(parParticles.nextSigned() * Board.iCOL_COUNT / 2 + Board.iCOL_COUNT / 2f,
+								   Board.iVISIBLE_ROW_COUNT / 2f, 16, 0.2f, 0.1f, tilType);
+			}
+			if(iFrame == iFrames) {
+				// The first half warms up the compiler
+				System.gc();
+				lHeapBefore = memMemory.getHeapMemoryUsage().getUsed();
+			}
+			long lStart = System.nanoTime();
+			parParticles.update(Board.iVISIBLE_ROW_COUNT);
+			long lMiddle = System.nanoTime();
+			parParticles.paint(graScreen, iTileSize, iWidth, iHeight);
+			long lEnd = System.nanoTime();
+			if(iFrame >= iFrames) {
+				lUpdateNanos += lMiddle - lStart;
+				lPaintNanos += lEnd - lMiddle;
+				iMeasured++;
+			}
+		}
+		long lHeapGrowth = memMemory.getHeapMemoryUsage().getUsed() - lHeapBefore;
+		graScreen.dispose();
+		System.out.printf("%d particles: update %.3f ms, paint %.3f ms per frame, heap grew %d KB over %d frames%n",
+						  iParticles, lUpdateNanos / 1e6 / iMeasured, lPaintNanos / 1e6 / iMeasured,
+						  lHeapGrowth / 1024, iMeasured);
+	}
+}
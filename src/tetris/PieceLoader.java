@@ -0,0 +1,324 @@
+package tetris;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PieceLoader
+ *
+ * Reads sets of pieces written as text, so that new pieces can be played
+ * without recompiling. The standard pieces are written the same way. A set
+ * is a list of definitions like this one:
+ *
+ * <pre>
+ * # A comment
+ * include standard
+ * piece PentP #DC23DC jlstz
+ * ##.
+ * ##.
+ * #..
+ * </pre>
+ *
+ * {@code piece} starts a piece that can be spawned, and {@code tile} a type
+ * of tile that is only placed by the game, like garbage. After it come the
+ * name, the base color and the kicks the Super Rotation System tries for it
+ * ({@code jlstz}, {@code i} or {@code none}). The lines after it are the
+ * piece in its spawn rotation, {@code #} for a tile and {@code .} for an
+ * empty cell, in a square as wide as it is tall. The other rotations are
+ * worked out by turning the square clockwise. {@code include standard}
+ * spawns the standard pieces along with the ones of the set.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public final class PieceLoader {
+
+	/**
+	 * The widest a piece can be.
+	 */
+	public static final int iMAX_DIMENSION = 8;
+
+	/**
+	 * A type of tile as it was read, before it is compiled into a
+	 * {@code TileType}.
+	 */
+	public static final class Definition {
+
+		/**
+		 * The name of the type.
+		 */
+		private final String sName;
+
+		/**
+		 * The base color of the tiles.
+		 */
+		private final Color colColor;
+
+		/**
+		 * The kicks the Super Rotation System tries, one of the
+		 * {@code iKICKS_} constants of {@code TileType}.
+		 */
+		private final int iKicks;
+
+		/**
+		 * Whether or not the type can be spawned as a piece.
+		 */
+		private final boolean bSpawnable;
+
+		/**
+		 * The width and height of the shape.
+		 */
+		private final int iDimension;
+
+		/**
+		 * The tiles of the spawn rotation, row by row.
+		 */
+		private final boolean[] bShape;
+
+		/**
+		 * Creates a new definition.
+		 * @param sName The name of the type.
+		 * @param colColor The base color of the tiles.
+		 * @param iKicks The kicks the Super Rotation System tries.
+		 * @param bSpawnable Whether or not the type can be spawned.
+		 * @param iDimension The width and height of the shape.
+		 * @param bShape The tiles of the spawn rotation, row by row.
+		 */
+		private Definition(String sName, Color colColor, int iKicks, boolean bSpawnable,
+						   int iDimension, boolean[] bShape) {
+			this.sName = sName;
+			this.colColor = colColor;
+			this.iKicks = iKicks;
+			this.bSpawnable = bSpawnable;
+			this.iDimension = iDimension;
+			this.bShape = bShape;
+		}
+
+		/**
+		 * Gets the name of the type.
+		 * @return The name.
+		 */
+		public String getName() {
+			return sName;
+		}
+
+		/**
+		 * Gets the base color of the tiles.
+		 * @return The color.
+		 */
+		public Color getColor() {
+			return colColor;
+		}
+
+		/**
+		 * Gets the kicks the Super Rotation System tries.
+		 * @return One of the {@code iKICKS_} constants of {@code TileType}.
+		 */
+		public int getKicks() {
+			return iKicks;
+		}
+
+		/**
+		 * Checks whether or not the type can be spawned as a piece.
+		 * @return Whether or not it is a piece.
+		 */
+		public boolean isSpawnable() {
+			return bSpawnable;
+		}
+
+		/**
+		 * Gets the width and height of the shape.
+		 * @return The dimension.
+		 */
+		public int getDimension() {
+			return iDimension;
+		}
+
+		/**
+		 * Gets the tiles of the spawn rotation.
+		 * @return The tiles, row by row. Must not be modified.
+		 */
+		public boolean[] getShape() {
+			return bShape;
+		}
+	}
+
+	/**
+	 * The definitions, in the order they were read.
+	 */
+	private final List<Definition> lisDefinitions;
+
+	/**
+	 * Whether or not the standard pieces are spawned along with the set.
+	 */
+	private boolean bStandardIncluded;
+
+	/**
+	 * Creates an empty set.
+	 */
+	private PieceLoader() {
+		this.lisDefinitions = new ArrayList<>();
+	}
+
+	/**
+	 * Reads a set of pieces from a file, or from a resource next to this
+	 * class when there is no such file.
+	 * @param sPath The path of the file or the name of the resource.
+	 * @return The set.
+	 * @throws IOException If the set couldn't be read.
+	 * @throws IllegalArgumentException If the set isn't written correctly.
+	 */
+	public static PieceLoader load(String sPath) throws IOException {
+		File filPieces = new File(sPath);
+		InputStream insPieces = filPieces.isFile() ? new FileInputStream(filPieces)
+				: PieceLoader.class.getResourceAsStream(sPath);
+		if(insPieces == null) {
+			throw new IOException("There is no piece set called " + sPath);
+		}
+		try(Reader reaPieces = new InputStreamReader(insPieces, StandardCharsets.UTF_8)) {
+			return parse(reaPieces, sPath);
+		}
+	}
+
+	/**
+	 * Reads a set of pieces.
+	 * @param reaPieces The text of the set.
+	 * @param sSource Where the text comes from, for the error messages.
+	 * @return The set.
+	 * @throws IOException If the text couldn't be read.
+	 * @throws IllegalArgumentException If the set isn't written correctly.
+	 */
+	public static PieceLoader parse(Reader reaPieces, String sSource) throws IOException {
+		PieceLoader pieSet = new PieceLoader();
+		BufferedReader bufLines = new BufferedReader(reaPieces);
+		String[] sHeader = null;
+		int iHeaderLine = 0;
+		List<String> lisRows = new ArrayList<>();
+		int iLine = 0;
+		for(String sLine = bufLines.readLine(); ; sLine = bufLines.readLine()) {
+			iLine++;
+			String sTrimmed = sLine == null ? "" : sLine.trim();
+			boolean bShapeRow = !sTrimmed.isEmpty() && sTrimmed.matches("[#.]+");
+			if(sHeader != null && !bShapeRow && !sTrimmed.startsWith("#")) {
+				pieSet.lisDefinitions.add(define(sHeader, lisRows, sSource, iHeaderLine));
+				sHeader = null;
+				lisRows.clear();
+			}
+			if(sLine == null) {
+				break;
+			}
+			if(bShapeRow) {
+				if(sHeader == null) {
+					throw error(sSource, iLine, "a shape must come after a piece or tile line");
+				}
+				lisRows.add(sTrimmed);
+			} else if(sTrimmed.isEmpty() || sTrimmed.startsWith("#")) {
+				continue;
+			} else if(sTrimmed.equals("include standard")) {
+				pieSet.bStandardIncluded = true;
+			} else if(sTrimmed.startsWith("piece ") || sTrimmed.startsWith("tile ")) {
+				sHeader = sTrimmed.split("\\s+");
+				iHeaderLine = iLine;
+			} else {
+				throw error(sSource, iLine, "unknown line \"" + sTrimmed + "\"");
+			}
+		}
+		return pieSet;
+	}
+
+	/**
+	 * Builds a definition from its header and shape.
+	 * @param sHeader The words of the header line.
+	 * @param lisRows The rows of the shape.
+	 * @param sSource Where the text comes from.
+	 * @param iLine The line of the header.
+	 * @return The definition.
+	 */
+	private static Definition define(String[] sHeader, List<String> lisRows, String sSource,
+									 int iLine) {
+		if(sHeader.length != 4) {
+			throw error(sSource, iLine, "expected \"" + sHeader[0] + " <name> <#rrggbb> <kicks>\"");
+		}
+		Color colColor;
+		try {
+			colColor = Color.decode(sHeader[2]);
+		} catch(NumberFormatException nfeException) {
+			throw error(sSource, iLine, "bad color " + sHeader[2]);
+		}
+		int iKicks;
+		switch(sHeader[3]) {
+			case "jlstz":
+				iKicks = TileType.iKICKS_JLSTZ;
+				break;
+			case "i":
+				iKicks = TileType.iKICKS_I;
+				break;
+			case "none":
+				iKicks = TileType.iKICKS_NONE;
+				break;
+			default:
+				throw error(sSource, iLine, "unknown kicks " + sHeader[3]);
+		}
+
+		int iDimension = lisRows.size();
+		if(iDimension == 0 || iDimension > iMAX_DIMENSION) {
+			throw error(sSource, iLine, "a shape must have 1 to " + iMAX_DIMENSION + " rows");
+		}
+		boolean[] bShape = new boolean[iDimension * iDimension];
+		boolean bAnyTile = false;
+		for(int iRow = 0; iRow < iDimension; iRow++) {
+			String sRow = lisRows.get(iRow);
+			if(sRow.length() != iDimension) {
+				throw error(sSource, iLine + 1 + iRow, "a shape must be as wide as it is tall");
+			}
+			for(int iCol = 0; iCol < iDimension; iCol++) {
+				bShape[iRow * iDimension + iCol] = sRow.charAt(iCol) == '#';
+				bAnyTile |= bShape[iRow * iDimension + iCol];
+			}
+		}
+		if(!bAnyTile) {
+			throw error(sSource, iLine, "a shape must have a tile");
+		}
+		return new Definition(sHeader[1], colColor, iKicks, sHeader[0].equals("piece"),
+							  iDimension, bShape);
+	}
+
+	/**
+	 * Creates the exception thrown for a mistake in a set.
+	 * @param sSource Where the text comes from.
+	 * @param iLine The line of the mistake.
+	 * @param sMessage What is wrong.
+	 * @return The exception.
+	 */
+	private static IllegalArgumentException error(String sSource, int iLine, String sMessage) {
+		return new IllegalArgumentException(sSource + ":" + iLine + ": " + sMessage);
+	}
+
+	/**
+	 * Gets the definitions of the set.
+	 * @return The definitions, in the order they were read.
+	 */
+	public List<Definition> getDefinitions() {
+		return Collections.unmodifiableList(lisDefinitions);
+	}
+
+	/**
+	 * Checks whether or not the standard pieces are spawned along with the
+	 * pieces of the set.
+	 * @return Whether or not the set includes the standard pieces.
+	 */
+	public boolean isStandardIncluded() {
+		return bStandardIncluded;
+	}
+}
@@ -0,0 +1,458 @@
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ * PlacementFinder
+ *
+ * Finds every place a piece can be locked in with real moves, for bots. A
+ * piece is searched breadth first from where it spawns, moving it left,
+ * right, down and rotating it by the same rules the game uses, so slides,
+ * tucks and kicks are all found and places that can only be reached by
+ * passing through other tiles are not. Positions are marked as seen in a
+ * bit set, and every position remembers the one it was reached from, so
+ * the shortest list of inputs to each place can be given back. Before the
+ * search, the positions the piece fits in are worked out a row at a time
+ * from the row masks of the board and kept in a bit set too, so moving the
+ * piece only has to test a bit. The kicks of the Super Rotation System are
+ * tested the same way, in the order it tries them; other rotation systems
+ * are asked to rotate the piece on the board.
+ *
+ * Rotations that cover the same cells, like those of the O piece, lock in
+ * the same place, so each place is only given once. A finder reuses its
+ * arrays between searches, so it must only be used by one thread.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class PlacementFinder {
+
+	/**
+	 * How far past the edges of the board a position can be tested, since
+	 * the empty edges of a piece can hang over them and a kick can move it
+	 * two more cells.
+	 */
+	private static final int iMARGIN = PieceLoader.iMAX_DIMENSION + 2;
+
+	/**
+	 * Decides where a piece ends up when it is rotated.
+	 */
+	private final RotationSystem rotRotation;
+
+	/**
+	 * Whether or not the rotation system is the Super Rotation System, whose
+	 * kicks can be tested against the bit set.
+	 */
+	private final boolean bSrs;
+
+	/**
+	 * The number of columns positions can be in.
+	 */
+	private int iWidth;
+
+	/**
+	 * The number of rows positions can be in.
+	 */
+	private int iHeight;
+
+	/**
+	 * The positions the piece fits in, one bit each.
+	 */
+	private long[] lFree;
+
+	/**
+	 * The positions that were reached, one bit each.
+	 */
+	private long[] lSeen;
+
+	/**
+	 * The places that were found, one bit each, by the position of the
+	 * first rotation that covers the same cells.
+	 */
+	private long[] lPlaced;
+
+	/**
+	 * The positions to search from, in the order they were reached.
+	 */
+	private int[] iQueue;
+
+	/**
+	 * The position each position was first reached from.
+	 */
+	private int[] iParents;
+
+	/**
+	 * The move each position was first reached with.
+	 */
+	private byte[] byMoves;
+
+	/**
+	 * The positions of the places found.
+	 */
+	private int[] iPlacements;
+
+	/**
+	 * The number of places found.
+	 */
+	private int iPlacementCount;
+
+	/**
+	 * For each rotation, the first rotation that covers the same cells.
+	 */
+	private final int[] iSameAs;
+
+	/**
+	 * Creates a new finder.
+	 * @param rotRotation The rotation system of the game.
+	 */
+	public PlacementFinder(RotationSystem rotRotation) {
+		this.rotRotation = rotRotation;
+		this.bSrs = rotRotation instanceof SrsRotationSystem;
+		this.iSameAs = new int[4];
+	}
+
+	/**
+	 * Finds every place a piece can be locked in from where it spawns.
+	 * @param boaBoard The board.
+	 * @param tilType The type of the piece.
+	 * @return The number of places found.
+	 */
+	public int find(Board boaBoard, TileType tilType) {
+		return find(boaBoard, tilType, tilType.getSpawnColumn(boaBoard.getColCount()),
+					tilType.getSpawnRow(), 0);
+	}
+
+	/**
+	 * Finds every place a piece can be locked in from where it is.
+	 * @param boaBoard The board.
+	 * @param tilType The type of the piece.
+	 * @param iCol The column of the piece.
+	 * @param iRow The row of the piece.
+	 * @param iRotation The rotation of the piece.
+	 * @return The number of places found, none if the piece doesn't fit
+	 *         where it is.
+	 */
+	public int find(Board boaBoard, TileType tilType, int iCol, int iRow, int iRotation) {
+		prepare(boaBoard, tilType);
+		iPlacementCount = 0;
+		if(iCol < -iMARGIN || iCol >= iWidth - iMARGIN || iRow < -iMARGIN
+				|| iRow >= iHeight - iMARGIN || !isMarked(lFree, position(iCol, iRow, iRotation))) {
+			return 0;
+		}
+
+		/*
+		 * The margins are never free, so moving sideways off the edge of a
+		 * row of positions can't wrap around into the next one.
+		 */
+		int iStart = position(iCol, iRow, iRotation);
+		mark(lSeen, iStart);
+		iQueue[0] = iStart;
+		iParents[iStart] = -1;
+		int iHead = 0;
+		int iTail = 1;
+		while(iHead < iTail) {
+			int iPosition = iQueue[iHead++];
+			iTail = visit(iPosition, iPosition - 1, GameEngine.iACTION_LEFT, iTail);
+			iTail = visit(iPosition, iPosition + 1, GameEngine.iACTION_RIGHT, iTail);
+			if(isMarked(lFree, iPosition + iWidth)) {
+				iTail = visit(iPosition, iPosition + iWidth, GameEngine.iACTION_SOFT_DROP, iTail);
+			} else {
+				place(tilType, iPosition);
+			}
+			int iFromCol = colOf(iPosition);
+			int iFromRow = rowOf(iPosition);
+			int iFromRotation = rotationOf(iPosition);
+			for(int iTurn = 1; iTurn <= 3; iTurn += 2) {
+				int iToRotation = (iFromRotation + iTurn) & 3;
+				int iKick = bSrs ? kick(tilType, iFromCol, iFromRow, iFromRotation, iToRotation)
+						: rotRotation.rotate(boaBoard, tilType, iFromCol, iFromRow,
+											 iFromRotation, iToRotation);
+				if(iKick != RotationSystem.iNO_KICK) {
+					iTail = visit(iPosition, position(iFromCol + RotationSystem.unpackX(iKick),
+													  iFromRow + RotationSystem.unpackY(iKick),
+													  iToRotation),
+								  iTurn == 1 ? GameEngine.iACTION_ROTATE_CLOCKWISE
+								  : GameEngine.iACTION_ROTATE_ANTICLOCKWISE, iTail);
+				}
+			}
+		}
+		return iPlacementCount;
+	}
+
+	/**
+	 * Finds the kick the Super Rotation System takes, like
+	 * {@code SrsRotationSystem.rotate} but testing the bit set instead of
+	 * the board.
+	 * @param tilType The type of the piece.
+	 * @param iCol The column of the piece.
+	 * @param iRow The row of the piece.
+	 * @param iFrom The current rotation.
+	 * @param iTo The new rotation.
+	 * @return The packed kick, or {@code RotationSystem.iNO_KICK}.
+	 */
+	private int kick(TileType tilType, int iCol, int iRow, int iFrom, int iTo) {
+		for(int iKick : SrsRotationSystem.getKicks(tilType, iFrom, iTo)) {
+			if(isMarked(lFree, position(iCol + RotationSystem.unpackX(iKick),
+										iRow + RotationSystem.unpackY(iKick), iTo))) {
+				return iKick;
+			}
+		}
+		return RotationSystem.iNO_KICK;
+	}
+
+	/**
+	 * Queues a position the piece can move to, unless it doesn't fit there
+	 * or was already reached.
+	 * @param iFrom The position the piece moves from.
+	 * @param iTo The position the piece moves to.
+	 * @param iMove The {@code GameEngine} action that moves it.
+	 * @param iTail The end of the queue.
+	 * @return The new end of the queue.
+	 */
+	private int visit(int iFrom, int iTo, int iMove, int iTail) {
+		if(isMarked(lFree, iTo) && !isMarked(lSeen, iTo)) {
+			mark(lSeen, iTo);
+			iParents[iTo] = iFrom;
+			byMoves[iTo] = (byte) iMove;
+			iQueue[iTail++] = iTo;
+		}
+		return iTail;
+	}
+
+	/**
+	 * Sizes and clears the arrays for a search.
+	 * @param boaBoard The board.
+	 * @param tilType The type of the piece.
+	 */
+	private void prepare(Board boaBoard, TileType tilType) {
+		int iNewWidth = boaBoard.getColCount() + iMARGIN * 2;
+		int iNewHeight = boaBoard.getRowCount() + iMARGIN * 2;
+		int iPositions = iNewWidth * iNewHeight * 4;
+		if(iNewWidth != iWidth || iNewHeight != iHeight) {
+			iWidth = iNewWidth;
+			iHeight = iNewHeight;
+			lSeen = new long[(iPositions + 63) / 64];
+			lPlaced = new long[lSeen.length];
+			lFree = new long[lSeen.length];
+			iQueue = new int[iPositions];
+			iParents = new int[iPositions];
+			byMoves = new byte[iPositions];
+			iPlacements = new int[iPositions];
+		} else {
+			Arrays.fill(lSeen, 0L);
+			Arrays.fill(lPlaced, 0L);
+			Arrays.fill(lFree, 0L);
+		}
+
+		for(int iRotation = 0; iRotation < 4; iRotation++) {
+			findFits(boaBoard, tilType, iRotation);
+		}
+
+		for(int iRotation = 0; iRotation < 4; iRotation++) {
+			iSameAs[iRotation] = iRotation;
+			for(int iEarlier = 0; iEarlier < iRotation; iEarlier++) {
+				if(isSameShape(tilType, iEarlier, iRotation)) {
+					iSameAs[iRotation] = iEarlier;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Works out the columns a rotation of the piece fits in, in every row.
+	 * The piece collides in a column when any of its rows, shifted to that
+	 * column, overlaps the row of the board below it, so the collisions of
+	 * every column at once are the rows of the board shifted right by each
+	 * tile of the piece.
+	 * @param boaBoard The board.
+	 * @param tilType The type of the piece.
+	 * @param iRotation The rotation.
+	 */
+	private void findFits(Board boaBoard, TileType tilType, int iRotation) {
+		int iLeft = tilType.getLeftInset(iRotation);
+		int iTop = tilType.getTopInset(iRotation);
+		int iLastRow = tilType.getDimension() - tilType.getBottomInset(iRotation);
+		int iColumns = boaBoard.getColCount()
+				- (tilType.getDimension() - tilType.getRightInset(iRotation) - iLeft);
+		if(iColumns <= 0) {
+			return;
+		}
+		long lColumns = iColumns == Long.SIZE ? -1L : (1L << iColumns) - 1;
+		int[] iMasks = tilType.getRowMasks(iRotation);
+		for(int iY = -iTop; iY + iLastRow < boaBoard.getRowCount(); iY++) {
+			long lCollisions = 0;
+			for(int iRow = iTop; iRow <= iLastRow; iRow++) {
+				long lBoardRow = boaBoard.getRowBits(iY + iRow);
+				for(int iMask = iMasks[iRow] >>> iLeft; iMask != 0; iMask &= iMask - 1) {
+					lCollisions |= lBoardRow >>> Integer.numberOfTrailingZeros(iMask);
+				}
+			}
+			long lFits = ~lCollisions & lColumns;
+			int iFirst = position(-iLeft, iY, iRotation);
+			lFree[iFirst >>> 6] |= lFits << iFirst;
+			if((iFirst & 63) != 0) {
+				lFree[(iFirst >>> 6) + 1] |= lFits >>> -iFirst;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether or not two rotations of a piece have the same tiles
+	 * once their empty edges are taken off.
+	 * @param tilType The type of the piece.
+	 * @param iFirst One rotation.
+	 * @param iSecond The other rotation.
+	 * @return Whether or not the shapes are the same.
+	 */
+	private static boolean isSameShape(TileType tilType, int iFirst, int iSecond) {
+		int iRows = tilType.getDimension() - tilType.getBottomInset(iFirst) - tilType.getTopInset(iFirst);
+		if(iRows != tilType.getDimension() - tilType.getBottomInset(iSecond)
+				- tilType.getTopInset(iSecond)) {
+			return false;
+		}
+		int[] iFirstMasks = tilType.getRowMasks(iFirst);
+		int[] iSecondMasks = tilType.getRowMasks(iSecond);
+		for(int iRow = 0; iRow <= iRows; iRow++) {
+			if(iFirstMasks[tilType.getTopInset(iFirst) + iRow] >>> tilType.getLeftInset(iFirst)
+					!= iSecondMasks[tilType.getTopInset(iSecond) + iRow] >>> tilType.getLeftInset(iSecond)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Records a position the piece locks in, unless a rotation covering the
+	 * same cells already locked there.
+	 * @param tilType The type of the piece.
+	 * @param iPosition The position.
+	 */
+	private void place(TileType tilType, int iPosition) {
+		int iCol = colOf(iPosition);
+		int iRow = rowOf(iPosition);
+		int iRotation = rotationOf(iPosition);
+		int iSame = iSameAs[iRotation];
+		int iKey = position(iCol + tilType.getLeftInset(iRotation) - tilType.getLeftInset(iSame),
+							iRow + tilType.getTopInset(iRotation) - tilType.getTopInset(iSame), iSame);
+		if(!isMarked(lPlaced, iKey)) {
+			mark(lPlaced, iKey);
+			iPlacements[iPlacementCount++] = iPosition;
+		}
+	}
+
+	/**
+	 * Numbers a position.
+	 * @param iCol The column.
+	 * @param iRow The row.
+	 * @param iRotation The rotation.
+	 * @return The number of the position.
+	 */
+	private int position(int iCol, int iRow, int iRotation) {
+		return (iRotation * iHeight + iRow + iMARGIN) * iWidth + iCol + iMARGIN;
+	}
+
+	/**
+	 * Gets the column of a numbered position.
+	 * @param iPosition The number of the position.
+	 * @return The column.
+	 */
+	private int colOf(int iPosition) {
+		return iPosition % iWidth - iMARGIN;
+	}
+
+	/**
+	 * Gets the row of a numbered position.
+	 * @param iPosition The number of the position.
+	 * @return The row.
+	 */
+	private int rowOf(int iPosition) {
+		return iPosition / iWidth % iHeight - iMARGIN;
+	}
+
+	/**
+	 * Gets the rotation of a numbered position.
+	 * @param iPosition The number of the position.
+	 * @return The rotation.
+	 */
+	private int rotationOf(int iPosition) {
+		return iPosition / (iWidth * iHeight);
+	}
+
+	/**
+	 * Sets the bit of a position.
+	 * @param lBits The bit set.
+	 * @param iPosition The number of the position.
+	 */
+	private static void mark(long[] lBits, int iPosition) {
+		lBits[iPosition >>> 6] |= 1L << iPosition;
+	}
+
+	/**
+	 * Checks the bit of a position.
+	 * @param lBits The bit set.
+	 * @param iPosition The number of the position.
+	 * @return Whether or not the bit is set.
+	 */
+	private static boolean isMarked(long[] lBits, int iPosition) {
+		return (lBits[iPosition >>> 6] & 1L << iPosition) != 0;
+	}
+
+	/**
+	 * Gets the number of places found by the last search.
+	 * @return The number of places.
+	 */
+	public int getPlacementCount() {
+		return iPlacementCount;
+	}
+
+	/**
+	 * Gets the column of a place found by the last search.
+	 * @param iPlacement The index of the place.
+	 * @return The column of the piece.
+	 */
+	public int getCol(int iPlacement) {
+		return colOf(iPlacements[iPlacement]);
+	}
+
+	/**
+	 * Gets the row of a place found by the last search.
+	 * @param iPlacement The index of the place.
+	 * @return The row of the piece.
+	 */
+	public int getRow(int iPlacement) {
+		return rowOf(iPlacements[iPlacement]);
+	}
+
+	/**
+	 * Gets the rotation of a place found by the last search.
+	 * @param iPlacement The index of the place.
+	 * @return The rotation of the piece.
+	 */
+	public int getRotation(int iPlacement) {
+		return rotationOf(iPlacements[iPlacement]);
+	}
+
+	/**
+	 * Gets the shortest list of inputs that locks the piece in a place found
+	 * by the last search. A soft drop stands for moving down a single row,
+	 * and the list ends with a hard drop that locks the piece.
+	 * @param iPlacement The index of the place.
+	 * @return The {@code GameEngine} actions, in order.
+	 */
+	public int[] getPath(int iPlacement) {
+		int iLength = 1;
+		for(int iPosition = iPlacements[iPlacement]; iParents[iPosition] != -1;
+				iPosition = iParents[iPosition]) {
+			iLength++;
+		}
+		int[] iPath = new int[iLength];
+		iPath[--iLength] = GameEngine.iACTION_HARD_DROP;
+		for(int iPosition = iPlacements[iPlacement]; iParents[iPosition] != -1;
+				iPosition = iParents[iPosition]) {
+			iPath[--iLength] = byMoves[iPosition];
+		}
+		return iPath;
+	}
+}
@@ -0,0 +1,463 @@
+package tetris;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * ReplayAnalytics
+ *
+ * Plays recorded games again with no window, on every core at once, and
+ * sums up how they went: lines per minute, how long players last, which
+ * pieces they got and what the board looked like when they topped out.
+ * Every game is played by a fresh {@code GameEngine} fed the recorded frames
+ * and keys, so the numbers are the ones the players saw. Games are reduced
+ * into per-thread summaries that are merged at the end, so nothing is
+ * shared while the games run.
+ *
+ * Usage: {@code ReplayAnalytics [--csv games.csv] [--json summary.json]
+ * directory-or-file...}
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class ReplayAnalytics {
+
+	/**
+	 * The results of one game.
+	 */
+	private static final class Game implements GameEngine.Listener {
+
+		/**
+		 * The number of each type of piece that was locked.
+		 */
+		private final int[] iPieces = new int[TileType.getTypeCount()];
+
+		/**
+		 * The replay.
+		 */
+		private String sName;
+
+		/**
+		 * The seed of the pieces.
+		 */
+		private long lSeed;
+
+		/**
+		 * How long the game was played for, in nanoseconds, leaving out the
+		 * time it spent paused.
+		 */
+		private long lDurationNanos;
+
+		/**
+		 * The final score.
+		 */
+		private int iScore;
+
+		/**
+		 * The final level.
+		 */
+		private int iLevel;
+
+		/**
+		 * The number of lines cleared.
+		 */
+		private int iLines;
+
+		/**
+		 * Whether or not the game ended by topping out, rather than the
+		 * replay just stopping.
+		 */
+		private boolean bToppedOut;
+
+		/**
+		 * The occupied cells when the game ended, one row mask per row.
+		 */
+		private long[] lDeathRows;
+
+		/**
+		 * Whether or not the game was played on a standard board.
+		 */
+		private boolean bStandard;
+
+		@Override
+		public void pieceLocked(GameEngine engGame) {
+			iPieces[engGame.getPieceType().ordinal()]++;
+		}
+
+		@Override
+		public void linesCleared(GameEngine engGame, int iLines, int iGarbage) {
+		}
+
+		@Override
+		public void gameOver(GameEngine engGame) {
+			bToppedOut = true;
+		}
+
+		/**
+		 * Gets the height of the stack when the game ended.
+		 * @return The number of rows from the bottom to the highest tile.
+		 */
+		private int getStackHeight() {
+			for(int iRow = 0; iRow < lDeathRows.length; iRow++) {
+				if(lDeathRows[iRow] != 0) {
+					return lDeathRows.length - iRow;
+				}
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * The sum of the results of many games. Summaries of different threads
+	 * are merged once they are done.
+	 */
+	private static final class Summary {
+
+		/**
+		 * The number of games.
+		 */
+		private long lGames;
+
+		/**
+		 * The number of games that ended by topping out.
+		 */
+		private long lToppedOut;
+
+		/**
+		 * The number of replays that couldn't be read.
+		 */
+		private long lFailed;
+
+		/**
+		 * The time played, in nanoseconds.
+		 */
+		private long lNanos;
+
+		/**
+		 * The time played in games that ended by topping out.
+		 */
+		private long lToppedOutNanos;
+
+		/**
+		 * The number of lines cleared.
+		 */
+		private long lLines;
+
+		/**
+		 * The total score.
+		 */
+		private long lScore;
+
+		/**
+		 * The number of each type of piece that was locked.
+		 */
+		private final long[] lPieces = new long[TileType.getTypeCount()];
+
+		/**
+		 * How many games topped out with each cell occupied.
+		 */
+		private final long[][] lDeathCells = new long[Board.iROW_COUNT][Board.iCOL_COUNT];
+
+		/**
+		 * How many games topped out at each stack height.
+		 */
+		private final long[] lDeathHeights = new long[Board.iROW_COUNT + 1];
+
+		/**
+		 * Adds a game.
+		 * @param gamGame The game, or null if its replay couldn't be read.
+		 */
+		private void add(Game gamGame) {
+			if(gamGame == null) {
+				lFailed++;
+				return;
+			}
+			lGames++;
+			lNanos += gamGame.lDurationNanos;
+			lLines += gamGame.iLines;
+			lScore += gamGame.iScore;
+			for(int iType = 0; iType < lPieces.length; iType++) {
+				lPieces[iType] += gamGame.iPieces[iType];
+			}
+			if(gamGame.bToppedOut) {
+				lToppedOut++;
+				lToppedOutNanos += gamGame.lDurationNanos;
+			}
+			// Only the boards of the standard size fit the heatmap
+			if(gamGame.bToppedOut && gamGame.bStandard) {
+				for(int iRow = 0; iRow < Board.iROW_COUNT; iRow++) {
+					for(long lBits = gamGame.lDeathRows[iRow]; lBits != 0; lBits &= lBits - 1) {
+						lDeathCells[iRow][Long.numberOfTrailingZeros(lBits)]++;
+					}
+				}
+				lDeathHeights[gamGame.getStackHeight()]++;
+			}
+		}
+
+		/**
+		 * Adds the games of another summary.
+		 * @param sumOther The other summary.
+		 */
+		private void merge(Summary sumOther) {
+			lGames += sumOther.lGames;
+			lToppedOut += sumOther.lToppedOut;
+			lFailed += sumOther.lFailed;
+			lNanos += sumOther.lNanos;
+			lToppedOutNanos += sumOther.lToppedOutNanos;
+			lLines += sumOther.lLines;
+			lScore += sumOther.lScore;
+			for(int iType = 0; iType < lPieces.length; iType++) {
+				lPieces[iType] += sumOther.lPieces[iType];
+			}
+			for(int iRow = 0; iRow < Board.iROW_COUNT; iRow++) {
+				for(int iCol = 0; iCol < Board.iCOL_COUNT; iCol++) {
+					lDeathCells[iRow][iCol] += sumOther.lDeathCells[iRow][iCol];
+				}
+			}
+			for(int iHeight = 0; iHeight < lDeathHeights.length; iHeight++) {
+				lDeathHeights[iHeight] += sumOther.lDeathHeights[iHeight];
+			}
+		}
+
+		/**
+		 * Writes the summary as JSON.
+		 * @param priOut Where to write it.
+		 * @param dSeconds How long the analysis took.
+		 */
+		private void writeJson(PrintWriter priOut, double dSeconds) {
+			double dMinutes = lNanos / 60e9;
+			priOut.println("{");
+			priOut.printf(Locale.ROOT, "  \"games\": %d,%n", lGames);
+			priOut.printf(Locale.ROOT, "  \"failedReplays\": %d,%n", lFailed);
+			priOut.printf(Locale.ROOT, "  \"analysisSeconds\": %.3f,%n", dSeconds);
+			priOut.printf(Locale.ROOT, "  \"gamesPerSecond\": %.1f,%n", lGames / Math.max(dSeconds, 1e-9));
+			priOut.printf(Locale.ROOT, "  \"minutesPlayed\": %.2f,%n", dMinutes);
+			priOut.printf(Locale.ROOT, "  \"linesPerMinute\": %.3f,%n", dMinutes > 0 ? lLines / dMinutes : 0.0);
+			priOut.printf(Locale.ROOT, "  \"meanScore\": %.1f,%n", lGames > 0 ? (double) lScore / lGames : 0.0);
+			priOut.printf(Locale.ROOT, "  \"toppedOut\": %d,%n", lToppedOut);
+			priOut.printf(Locale.ROOT, "  \"meanSecondsToTopOut\": %.3f,%n",
+					lToppedOut > 0 ? lToppedOutNanos / 1e9 / lToppedOut : 0.0);
+			priOut.print("  \"pieces\": {");
+			for(int iPiece = 0; iPiece < TileType.iPIECE_COUNT; iPiece++) {
+				TileType tilPiece = TileType.getPiece(iPiece);
+				priOut.printf("%s\"%s\": %d", iPiece > 0 ? ", " : "",
+						tilPiece.name(), lPieces[tilPiece.ordinal()]);
+			}
+			priOut.println("},");
+			priOut.print("  \"deathStackHeights\": [");
+			for(int iHeight = 0; iHeight < lDeathHeights.length; iHeight++) {
+				priOut.print((iHeight > 0 ? ", " : "") + lDeathHeights[iHeight]);
+			}
+			priOut.println("],");
+			priOut.println("  \"deathCells\": [");
+			for(int iRow = 0; iRow < Board.iROW_COUNT; iRow++) {
+				priOut.print("    [");
+				for(int iCol = 0; iCol < Board.iCOL_COUNT; iCol++) {
+					priOut.print((iCol > 0 ? ", " : "") + lDeathCells[iRow][iCol]);
+				}
+				priOut.println(iRow + 1 < Board.iROW_COUNT ? "]," : "]");
+			}
+			priOut.println("  ]");
+			priOut.println("}");
+			priOut.flush();
+		}
+	}
+
+	/**
+	 * Not meant to be instantiated.
+	 */
+	private ReplayAnalytics() {
+	}
+
+	/**
+	 * Plays a replay again.
+	 * @param patReplay The replay.
+	 * @return The results, or null if the replay couldn't be read.
+	 */
+	static Game simulate(Path patReplay) {
+		try(DataInputStream datIn = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(patReplay.toFile()), 8192)))) {
+			if(datIn.readInt() != ReplayRecorder.iMAGIC) {
+				return null;
+			}
+			Game gamGame = new Game();
+			gamGame.sName = patReplay.getFileName().toString();
+			datIn.readLong();
+			gamGame.lSeed = datIn.readLong();
+			long lStart = datIn.readLong();
+			RotationSystem rotRotation = datIn.readBoolean()
+					? new ClassicRotationSystem() : new SrsRotationSystem();
+			InputState insKeys = new InputState(datIn.readLong(), datIn.readLong(), datIn.readFloat());
+			Board boaBoard = new Board(datIn.readUnsignedByte(), datIn.readUnsignedShort());
+			if(datIn.readInt() != TileType.getSetHash()) {
+				// Played with other pieces than the ones loaded now
+				return null;
+			}
+
+			GameEngine engGame = new GameEngine(rotRotation, insKeys, boaBoard);
+			engGame.setInstrumented(false);
+			engGame.setListener(gamGame);
+			engGame.reset(gamGame.lSeed, lStart);
+
+			/*
+			 * Feed the engine the events in the order they were recorded.
+			 */
+			long lTime = lStart;
+			long lPausedAt = -1;
+			long lPausedNanos = 0;
+			boolean bEnded = false;
+			while(!bEnded && !engGame.isGameOver()) {
+				long lEvent;
+				try {
+					lEvent = ReplayRecorder.readEvent(datIn);
+				} catch(EOFException eofException) {
+					break;
+				}
+				int iKind = (int) (lEvent & ((1 << ReplayRecorder.iKIND_BITS) - 1));
+				lTime += lEvent >> ReplayRecorder.iKIND_BITS;
+				if(iKind == ReplayRecorder.iEVENT_FRAME) {
+					engGame.update(lTime);
+				} else if(iKind < ReplayRecorder.iEVENT_RELEASE) {
+					engGame.pressAction(iKind - ReplayRecorder.iEVENT_PRESS, lTime);
+				} else if(iKind < ReplayRecorder.iEVENT_PAUSE) {
+					engGame.releaseAction(iKind - ReplayRecorder.iEVENT_RELEASE, lTime);
+				} else if(iKind == ReplayRecorder.iEVENT_PAUSE) {
+					engGame.setPaused(true);
+					if(lPausedAt < 0) {
+						lPausedAt = lTime;
+					}
+				} else if(iKind == ReplayRecorder.iEVENT_RESUME) {
+					engGame.setPaused(false);
+					if(lPausedAt >= 0) {
+						lPausedNanos += lTime - lPausedAt;
+						lPausedAt = -1;
+					}
+				} else {
+					bEnded = true;
+				}
+			}
+
+			if(lPausedAt >= 0) {
+				// Ended while paused
+				lPausedNanos += lTime - lPausedAt;
+			}
+			gamGame.lDurationNanos = lTime - lStart - lPausedNanos;
+			gamGame.iScore = engGame.getScore();
+			gamGame.iLevel = engGame.getLevel();
+			gamGame.iLines = engGame.getLines();
+			gamGame.bStandard = boaBoard.isStandard();
+			gamGame.lDeathRows = new long[boaBoard.getRowCount()];
+			for(int iRow = 0; iRow < boaBoard.getRowCount(); iRow++) {
+				gamGame.lDeathRows[iRow] = boaBoard.getRowBits(iRow);
+			}
+			return gamGame;
+		} catch(IOException | IllegalArgumentException excException) {
+			return null;
+		}
+	}
+
+	/**
+	 * Finds every replay under some paths.
+	 * @param sPaths Directories to search and replays.
+	 * @return The replays.
+	 * @throws IOException If a directory couldn't be searched.
+	 */
+	private static List<Path> findReplays(List<String> sPaths) throws IOException {
+		List<Path> lisReplays = new ArrayList<>();
+		for(String sPath : sPaths) {
+			try(Stream<Path> strPaths = Files.walk(Paths.get(sPath))) {
+				lisReplays.addAll(strPaths
+						.filter(patPath -> patPath.toString().endsWith(ReplayRecorder.sEXTENSION))
+						.collect(Collectors.toList()));
+			}
+		}
+		return lisReplays;
+	}
+
+	/**
+	 * Analyzes replays and prints the summary.
+	 * @param args The options and the replays.
+	 * @throws IOException If the replays couldn't be found or the report
+	 *                     couldn't be written.
+	 */
+	public static void main(String[] args) throws IOException {
+		String sCsv = null;
+		String sJson = null;
+		List<String> lisPaths = new ArrayList<>();
+		for(int iArg = 0; iArg < args.length; iArg++) {
+			if("--csv".equals(args[iArg]) && iArg + 1 < args.length) {
+				sCsv = args[++iArg];
+			} else if("--json".equals(args[iArg]) && iArg + 1 < args.length) {
+				sJson = args[++iArg];
+			} else {
+				lisPaths.add(args[iArg]);
+			}
+		}
+		if(lisPaths.isEmpty()) {
+			lisPaths.add("replays");
+		}
+
+		long lStart = System.nanoTime();
+		List<Path> lisReplays = findReplays(lisPaths);
+		PrintWriter priCsv = sCsv == null ? null : new PrintWriter(new FileWriter(sCsv));
+		if(priCsv != null) {
+			priCsv.println("replay,seed,seconds,score,level,lines,linesPerMinute,toppedOut,stackHeight");
+		}
+
+		/*
+		 * Each thread of the pool folds its games into its own summary, and
+		 * the summaries are merged when the threads are done.
+		 */
+		Summary sumTotal = lisReplays.parallelStream()
+				.map(ReplayAnalytics::simulate)
+				.peek(gamGame -> writeCsv(priCsv, gamGame))
+				.collect(Summary::new, Summary::add, Summary::merge);
+		if(priCsv != null) {
+			priCsv.close();
+		}
+		double dSeconds = (System.nanoTime() - lStart) / 1e9;
+
+		PrintWriter priJson = sJson == null ? new PrintWriter(System.out)
+				: new PrintWriter(new FileWriter(sJson));
+		sumTotal.writeJson(priJson, dSeconds);
+		if(sJson != null) {
+			priJson.close();
+		}
+	}
+
+	/**
+	 * Writes the line of a game to the CSV report.
+	 * @param priCsv The report, or null if there is none.
+	 * @param gamGame The game, or null if its replay couldn't be read.
+	 */
+	private static void writeCsv(PrintWriter priCsv, Game gamGame) {
+		if(priCsv == null || Objects.isNull(gamGame)) {
+			return;
+		}
+		double dMinutes = gamGame.lDurationNanos / 60e9;
+		String sLine = String.format(Locale.ROOT, "%s,%d,%.3f,%d,%d,%d,%.3f,%b,%d",
+				gamGame.sName, gamGame.lSeed, gamGame.lDurationNanos / 1e9,
+				gamGame.iScore, gamGame.iLevel, gamGame.iLines,
+				dMinutes > 0 ? gamGame.iLines / dMinutes : 0.0,
+				gamGame.bToppedOut, gamGame.getStackHeight());
+		synchronized(priCsv) {
+			priCsv.println(sLine);
+		}
+	}
+}
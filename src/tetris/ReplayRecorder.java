@@ -0,0 +1,250 @@
+package tetris;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ReplayRecorder
+ *
+ * Records everything a game needs to be played again exactly: the seed, the
+ * settings of the keys, the rotation system, the size of the board and the
+ * set of pieces, and then the time of every frame and every key given to the engine. Times are
+ * written as the difference from the previous event, in as few bytes as the
+ * difference needs, and the whole replay is compressed when the game ends,
+ * so a game takes a few kilobytes. Replays only hold input, so they are played back
+ * through the same {@code GameEngine} that recorded them.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class ReplayRecorder {
+
+	/**
+	 * The first bytes of a replay.
+	 */
+	public static final int iMAGIC = 0x54525034;
+
+	/**
+	 * The extension of replay files.
+	 */
+	public static final String sEXTENSION = ".trp";
+
+	/**
+	 * Event: a frame ran.
+	 */
+	public static final int iEVENT_FRAME = 0;
+
+	/**
+	 * Event: the key bound to an action was pressed, plus the action.
+	 */
+	public static final int iEVENT_PRESS = 1;
+
+	/**
+	 * Event: the key bound to an action was released, plus the action.
+	 */
+	public static final int iEVENT_RELEASE = iEVENT_PRESS + GameEngine.iACTION_COUNT;
+
+	/**
+	 * Event: the game was paused.
+	 */
+	public static final int iEVENT_PAUSE = iEVENT_RELEASE + GameEngine.iACTION_COUNT;
+
+	/**
+	 * Event: the game was resumed.
+	 */
+	public static final int iEVENT_RESUME = iEVENT_PAUSE + 1;
+
+	/**
+	 * Event: the game was lost. Always the last event.
+	 */
+	public static final int iEVENT_END = iEVENT_RESUME + 1;
+
+	/**
+	 * The number of low bits of an event that hold its kind.
+	 */
+	public static final int iKIND_BITS = 4;
+
+	/**
+	 * The directory replays are saved in.
+	 */
+	private final File filDirectory;
+
+	/**
+	 * The replay being recorded.
+	 */
+	private final ByteArrayOutputStream bytEvents;
+
+	/**
+	 * Writes the header of the replay.
+	 */
+	private final DataOutputStream datEvents;
+
+	/**
+	 * The time of the last event.
+	 */
+	private long lLastTime;
+
+	/**
+	 * The name the replay is saved under.
+	 */
+	private String sName;
+
+	/**
+	 * Whether or not a game is being recorded.
+	 */
+	private boolean bRecording;
+
+	/**
+	 * Creates a new recorder.
+	 * @param filDirectory The directory replays are saved in. It is created
+	 *                     if needed.
+	 */
+	public ReplayRecorder(File filDirectory) {
+		this.filDirectory = filDirectory;
+		this.bytEvents = new ByteArrayOutputStream(16 * 1024);
+		this.datEvents = new DataOutputStream(bytEvents);
+	}
+
+	/**
+	 * Starts recording a game that was just reset. Called by the engine.
+	 * @param engGame The game.
+	 * @param lNow The time the game was reset at.
+	 */
+	void start(GameEngine engGame, long lNow) {
+		bytEvents.reset();
+		try {
+			datEvents.writeInt(iMAGIC);
+			datEvents.writeLong(System.currentTimeMillis());
+			datEvents.writeLong(engGame.getSeed());
+			datEvents.writeLong(lNow);
+			datEvents.writeBoolean(engGame.getRotationSystem() instanceof ClassicRotationSystem);
+			datEvents.writeLong(engGame.getKeys().getDas());
+			datEvents.writeLong(engGame.getKeys().getArr());
+			datEvents.writeFloat(engGame.getKeys().getSoftDropFactor());
+			datEvents.writeByte(engGame.getBoard().getColCount());
+			datEvents.writeShort(engGame.getBoard().getVisibleRowCount());
+			datEvents.writeInt(TileType.getSetHash());
+		} catch(IOException ioeException) {
+			// Can't happen with an in-memory stream
+		}
+		this.sName = System.currentTimeMillis() + "-" + Long.toHexString(engGame.getSeed()) + sEXTENSION;
+		this.lLastTime = lNow;
+		this.bRecording = true;
+	}
+
+	/**
+	 * Records a frame. Called by the engine.
+	 * @param lNow The time of the frame.
+	 */
+	void frame(long lNow) {
+		event(iEVENT_FRAME, lNow);
+	}
+
+	/**
+	 * Records a key press. Called by the engine.
+	 * @param iAction The action of the key.
+	 * @param lTime When the key was pressed.
+	 */
+	void press(int iAction, long lTime) {
+		event(iEVENT_PRESS + iAction, lTime);
+	}
+
+	/**
+	 * Records a key release. Called by the engine.
+	 * @param iAction The action of the key.
+	 * @param lTime When the key was released.
+	 */
+	void release(int iAction, long lTime) {
+		event(iEVENT_RELEASE + iAction, lTime);
+	}
+
+	/**
+	 * Records the game being paused or resumed. Called by the engine.
+	 * @param bPaused Whether the game was paused rather than resumed.
+	 * @param lNow The time of the current frame.
+	 */
+	void pause(boolean bPaused, long lNow) {
+		event(bPaused ? iEVENT_PAUSE : iEVENT_RESUME, lNow);
+	}
+
+	/**
+	 * Records the end of the game and saves the replay. Called by the engine.
+	 * @param lNow The time of the current frame.
+	 */
+	void end(long lNow) {
+		if(!bRecording) {
+			return;
+		}
+		event(iEVENT_END, lNow);
+		bRecording = false;
+		filDirectory.mkdirs();
+		try(OutputStream outReplay = new GZIPOutputStream(
+				new FileOutputStream(new File(filDirectory, sName)))) {
+			bytEvents.writeTo(outReplay);
+		} catch(IOException ioeException) {
+			System.err.println("Could not save the replay: " + ioeException);
+		}
+	}
+
+	/**
+	 * Stops recording the current game without saving it, for when it can
+	 * no longer be played again, such as after a saved game is loaded.
+	 */
+	public void discard() {
+		bRecording = false;
+	}
+
+	/**
+	 * Adds an event to the replay.
+	 * @param iKind The kind of event.
+	 * @param lTime The time of the event.
+	 */
+	private void event(int iKind, long lTime) {
+		if(!bRecording) {
+			return;
+		}
+		/*
+		 * Keys can be stamped slightly before the frame that applies them,
+		 * so the difference is zigzag encoded to keep small negative values
+		 * small.
+		 */
+		long lDelta = lTime - lLastTime;
+		lLastTime = lTime;
+		long lEncoded = ((lDelta << 1) ^ (lDelta >> 63)) << iKIND_BITS | iKind;
+		while((lEncoded & ~0x7FL) != 0) {
+			bytEvents.write((int) (lEncoded & 0x7F) | 0x80);
+			lEncoded >>>= 7;
+		}
+		bytEvents.write((int) lEncoded);
+	}
+
+	/**
+	 * Reads an event written by {@code event}.
+	 * @param datIn The replay, after the header.
+	 * @return The difference in time since the previous event, shifted left
+	 *         by {@code iKIND_BITS}, plus the kind of event. The difference
+	 *         can be negative, so it is shifted back with {@code >>}.
+	 * @throws IOException If the replay ended or couldn't be read.
+	 */
+	public static long readEvent(DataInputStream datIn) throws IOException {
+		long lEncoded = 0;
+		for(int iShift = 0; ; iShift += 7) {
+			int iByte = datIn.readUnsignedByte();
+			lEncoded |= (long) (iByte & 0x7F) << iShift;
+			if((iByte & 0x80) == 0) {
+				break;
+			}
+		}
+		int iKind = (int) (lEncoded & ((1 << iKIND_BITS) - 1));
+		long lZigzag = lEncoded >>> iKIND_BITS;
+		long lDelta = (lZigzag >>> 1) ^ -(lZigzag & 1);
+		return lDelta << iKIND_BITS | iKind;
+	}
+}
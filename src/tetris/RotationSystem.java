@@ -0,0 +1,73 @@
+package tetris;
+
+/**
+ * RotationSystem
+ *
+ * Decides where a piece ends up when it is rotated. A rotation system tries
+ * a list of offsets ("kicks") for the rotated piece against the board and
+ * takes the first one that fits.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public interface RotationSystem {
+
+	/**
+	 * The value returned by {@code rotate} when no kick fits.
+	 */
+	int iNO_KICK = Integer.MIN_VALUE;
+
+	/**
+	 * Finds the offset a piece has to be moved by to rotate.
+	 * @param boaBoard The board to test against.
+	 * @param tilType The type of the piece.
+	 * @param iCol The column of the piece.
+	 * @param iRow The row of the piece.
+	 * @param iFrom The current rotation.
+	 * @param iTo The new rotation.
+	 * @return The offset packed with {@code pack}, or {@code iNO_KICK} if the
+	 *         piece can't rotate.
+	 */
+	int rotate(Board boaBoard, TileType tilType, int iCol, int iRow, int iFrom, int iTo);
+
+	/**
+	 * Packs a column and row offset into a single int.
+	 * @param iX The column offset.
+	 * @param iY The row offset.
+	 * @return The packed offset.
+	 */
+	static int pack(int iX, int iY) {
+		return (iX << 16) | (iY & 0xFFFF);
+	}
+
+	/**
+	 * Gets the column offset of a packed offset.
+	 * @param iPacked The packed offset.
+	 * @return The column offset.
+	 */
+	static int unpackX(int iPacked) {
+		return iPacked >> 16;
+	}
+
+	/**
+	 * Gets the row offset of a packed offset.
+	 * @param iPacked The packed offset.
+	 * @return The row offset.
+	 */
+	static int unpackY(int iPacked) {
+		return (short) iPacked;
+	}
+
+	/**
+	 * Gets the rotation system named by the {@code tetris.rotation} system
+	 * property, {@code srs} (the default) or {@code classic}.
+	 * @return The rotation system.
+	 */
+	static RotationSystem fromSystemProperties() {
+		if("classic".equalsIgnoreCase(System.getProperty("tetris.rotation"))) {
+			return new ClassicRotationSystem();
+		}
+		return new SrsRotationSystem();
+	}
+}
@@ -0,0 +1,265 @@
+package tetris;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * ScrollingBackground
+ *
+ * Draws one or more images behind the board, each scrolling up at its own
+ * speed so that they can be stacked into parallax layers. Scaling a big
+ * image onto the screen every frame is the most expensive thing a frame
+ * draws, so each layer is scaled only once for the current size: the part
+ * of the image as wide as the panel goes into a strip, followed by the same
+ * part upside down so that the strip wraps around without a seam. The
+ * strip is kept in a {@code VolatileImage}, which stays in video memory,
+ * and every frame copies only the window of it that shows, unscaled, in
+ * one or two pieces where it wraps.
+ *
+ * The images are waited for without blocking; a layer is drawn from the
+ * first frame its image has finished loading.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class ScrollingBackground {
+
+	/**
+	 * Layer
+	 *
+	 * One image of the background and the strip it is drawn from.
+	 */
+	private static class Layer {
+
+		/**
+		 * The image, while it is still being loaded.
+		 */
+		private final Future<BufferedImage> futImage;
+
+		/**
+		 * The number of pixels of the image the layer scrolls by each frame.
+		 */
+		private final float fSpeed;
+
+		/**
+		 * How far the layer has scrolled, in pixels of the image, less than
+		 * twice the height of the image once it has loaded.
+		 */
+		private float fOffset;
+
+		/**
+		 * The image, once it has been loaded.
+		 */
+		private BufferedImage bufImage;
+
+		/**
+		 * The scaled strip, the copy the video memory one is restored from.
+		 */
+		private BufferedImage bufStrip;
+
+		/**
+		 * The scaled strip in video memory, or null when there is no screen
+		 * to put it on.
+		 */
+		private VolatileImage volStrip;
+
+		/**
+		 * The width the strip was made for, in screen pixels.
+		 */
+		private int iStripWidth;
+
+		/**
+		 * The zoom the strip was made for.
+		 */
+		private double dStripZoom;
+
+		/**
+		 * Creates a layer.
+		 * @param futImage The image, which may still be loading.
+		 * @param fSpeed The number of pixels of the image to scroll by each
+		 *               frame.
+		 */
+		private Layer(Future<BufferedImage> futImage, float fSpeed) {
+			this.futImage = futImage;
+			this.fSpeed = fSpeed;
+		}
+	}
+
+	/**
+	 * The layers, from the back to the front.
+	 */
+	private final List<Layer> lisLayers;
+
+	/**
+	 * Creates a background with no layers.
+	 */
+	public ScrollingBackground() {
+		this.lisLayers = new ArrayList<>();
+	}
+
+	/**
+	 * Adds a layer in front of the others.
+	 * @param futImage The image, which may still be loading. A layer whose
+	 *                 image can't be loaded is never drawn.
+	 * @param fSpeed The number of pixels of the image to scroll by each
+	 *               frame. Layers further back usually scroll slower.
+	 */
+	public void addLayer(Future<BufferedImage> futImage, float fSpeed) {
+		lisLayers.add(new Layer(futImage, fSpeed));
+	}
+
+	/**
+	 * Moves every layer on by one frame.
+	 */
+	public void scroll() {
+		for(int iLayer = 0; iLayer < lisLayers.size(); iLayer++) {
+			Layer layLayer = lisLayers.get(iLayer);
+			layLayer.fOffset += layLayer.fSpeed;
+
+			/*
+			 * Keep the offset within one period of the image and its upside
+			 * down copy, or a float this big would stop adding the speed
+			 * after a few days of scrolling.
+			 */
+			if(layLayer.bufImage != null) {
+				layLayer.fOffset %= layLayer.bufImage.getHeight() * 2;
+			}
+		}
+	}
+
+	/**
+	 * Draws every layer that has loaded, covering an area from the origin.
+	 * @param graGraphics The graphics object, in screen pixels.
+	 * @param gcoScreen The screen the panel is on, or null if it isn't on
+	 *                  one yet.
+	 * @param iWidth The width of the area, in screen pixels.
+	 * @param iHeight The height of the area, in screen pixels.
+	 * @param dZoom The number of screen pixels per pixel of the images.
+	 */
+	public void paint(Graphics graGraphics, GraphicsConfiguration gcoScreen, int iWidth,
+					  int iHeight, double dZoom) {
+		for(int iLayer = 0; iLayer < lisLayers.size(); iLayer++) {
+			Layer layLayer = lisLayers.get(iLayer);
+			Image imgStrip = getStrip(layLayer, gcoScreen, iWidth, dZoom);
+			if(imgStrip == null) {
+				continue;
+			}
+
+			/*
+			 * Copy the window that shows, starting over at the top of the
+			 * strip where it runs out.
+			 */
+			int iPeriod = layLayer.bufStrip.getHeight();
+			int iSource = Math.floorMod((int) (layLayer.fOffset * dZoom), iPeriod);
+			for(int iY = 0; iY < iHeight;) {
+				int iRows = Math.min(iHeight - iY, iPeriod - iSource);
+				graGraphics.drawImage(imgStrip, 0, iY, iWidth, iY + iRows,
+									  0, iSource, iWidth, iSource + iRows, null);
+				iY += iRows;
+				iSource = 0;
+			}
+		}
+	}
+
+	/**
+	 * Gets the strip of a layer for the current size, making it again only
+	 * if the size changed or the video memory copy was lost.
+	 * @param layLayer The layer.
+	 * @param gcoScreen The screen the panel is on, or null.
+	 * @param iWidth The width of the strip, in screen pixels.
+	 * @param dZoom The number of screen pixels per pixel of the image.
+	 * @return The strip, or null if the image isn't ready.
+	 */
+	private Image getStrip(Layer layLayer, GraphicsConfiguration gcoScreen, int iWidth,
+						   double dZoom) {
+		if(layLayer.bufImage == null) {
+			if(!layLayer.futImage.isDone()) {
+				return null;
+			}
+			try {
+				layLayer.bufImage = layLayer.futImage.get();
+			} catch(InterruptedException | ExecutionException excException) {
+				return null;
+			}
+			if(layLayer.bufImage == null) {
+				return null;
+			}
+		}
+		if(layLayer.bufStrip == null || layLayer.iStripWidth != iWidth
+				|| layLayer.dStripZoom != dZoom) {
+			layLayer.bufStrip = createStrip(layLayer.bufImage, iWidth, dZoom);
+			layLayer.iStripWidth = iWidth;
+			layLayer.dStripZoom = dZoom;
+			if(layLayer.volStrip != null) {
+				layLayer.volStrip.flush();
+				layLayer.volStrip = null;
+			}
+		}
+		if(gcoScreen == null) {
+			return layLayer.bufStrip;
+		}
+
+		/*
+		 * The copy in video memory can be lost at any time, for example
+		 * when the screen mode changes, and is then restored from the one
+		 * in memory.
+		 */
+		VolatileImage volStrip = layLayer.volStrip;
+		int iState = volStrip == null ? VolatileImage.IMAGE_INCOMPATIBLE : volStrip.validate(gcoScreen);
+		if(iState == VolatileImage.IMAGE_INCOMPATIBLE) {
+			if(volStrip != null) {
+				volStrip.flush();
+			}
+			volStrip = gcoScreen.createCompatibleVolatileImage(layLayer.bufStrip.getWidth(),
+															   layLayer.bufStrip.getHeight(),
+															   layLayer.bufImage.getTransparency());
+			layLayer.volStrip = volStrip;
+			iState = VolatileImage.IMAGE_RESTORED;
+		}
+		if(iState == VolatileImage.IMAGE_RESTORED) {
+			Graphics2D g2dStrip = volStrip.createGraphics();
+			g2dStrip.setComposite(AlphaComposite.Src);
+			g2dStrip.drawImage(layLayer.bufStrip, 0, 0, null);
+			g2dStrip.dispose();
+		}
+		return volStrip.contentsLost() ? layLayer.bufStrip : volStrip;
+	}
+
+	/**
+	 * Scales the part of an image as wide as the panel once, followed by the
+	 * same part upside down.
+	 * @param bufImage The image.
+	 * @param iWidth The width of the strip, in screen pixels.
+	 * @param dZoom The number of screen pixels per pixel of the image.
+	 * @return The strip.
+	 */
+	private static BufferedImage createStrip(BufferedImage bufImage, int iWidth, double dZoom) {
+		int iHeight = Math.max(1, (int) Math.round(bufImage.getHeight() * dZoom));
+		int iSourceWidth = Math.min(bufImage.getWidth(), (int) Math.ceil(iWidth / dZoom));
+		int iScaledWidth = (int) Math.round(iSourceWidth * dZoom);
+		BufferedImage bufStrip = new BufferedImage(Math.max(1, iWidth), iHeight * 2,
+				bufImage.getTransparency() == Transparency.OPAQUE
+						? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g2dStrip = bufStrip.createGraphics();
+		g2dStrip.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+								  RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2dStrip.drawImage(bufImage, 0, 0, iScaledWidth, iHeight,
+						   0, 0, iSourceWidth, bufImage.getHeight(), null);
+		g2dStrip.drawImage(bufImage, 0, iHeight * 2, iScaledWidth, iHeight,
+						   0, 0, iSourceWidth, bufImage.getHeight(), null);
+		g2dStrip.dispose();
+		return bufStrip;
+	}
+}
@@ -1,155 +1,122 @@
 package tetris;
 
-import javax.swing.*;
-import java.awt.*;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.util.Random;
-
 /**
  * ShakeFrame
  *
- * Helper class that shakes the entire Game by a set interval and amount
+ * Helper class that shakes the contents of the game for a set number of
+ * frames. Instead of moving the window around, it computes an offset once
+ * per frame of the game loop that the panels translate by when they paint.
+ * The offset comes from a deterministic noise function that decays over the
+ * duration of the shake, so shaking needs no timers and allocates nothing.
  *
  * @author Irvel
  * @author Jorge
- * @version 0.1
+ * @version 0.2
  */
 public class ShakeFrame {
     /**
-     * The Tetris instance that will be shaked
+     * The number of frames the shaking event lasts.
      */
-    private Tetris tetTetris;
+    public static final int iDURATION = 8;
 
     /**
-     * The time that passes between the update of the Frame position
+     * How much the contents will be displaced from their position at the
+     * start of the shake.
      */
-    public static final int iUPDATE_TIME = 5;
+    public static final int iSHAKE_FACTOR = 10;
 
     /**
-     * The duration of the shaking event
+     * The number of frames left in the current shake.
      */
-    public static final int iDURATION = 100;
+    private int iFramesLeft;
 
     /**
-     * How much will the Frame be displaced from its initial position
+     * The number of frames shaken since the game started. Used as the input
+     * of the noise so that consecutive shakes don't repeat.
      */
-    public static final int iSHAKE_FACTOR = 10;
+    private int iFrame;
 
     /**
-     * The initial position of the Frame before the shake
+     * The current offset in the X direction.
      */
-    private Point poiInitPos;
+    private volatile int iXOffset;
 
     /**
-     * The start time
+     * The current offset in the Y direction.
      */
-    private long lStartTime;
+    private volatile int iYOffset;
 
     /**
-     * A time that measures the amount of time that has passed since the start
+     * Starts (or restarts) the shaking.
      */
-    private Timer timTime;
+    public void startShaking() {
+        iFramesLeft = iDURATION;
+    }
 
     /**
-     * Creates an instance of ActionTime that tracks the time that has passed
-     * since the call to startShaking.
+     * Computes the offset for the next frame. Must be called once per frame
+     * of the game loop.
      */
-    private ActionTime timeListener;
-
+    public void update() {
+        if (iFramesLeft == 0) {
+            iXOffset = 0;
+            iYOffset = 0;
+            return;
+        }
+        /*
+         * Scale the noise so that the displacement fades out linearly
+         * towards the end of the shake.
+         */
+        float fAmplitude = iSHAKE_FACTOR * (float) iFramesLeft / iDURATION;
+        iXOffset = (int) (noise(iFrame << 1) * fAmplitude);
+        iYOffset = (int) (noise((iFrame << 1) + 1) * fAmplitude);
+        iFrame++;
+        iFramesLeft--;
+    }
 
     /**
-     * Creates a new ShakeFrame instance
-     * @param tetInstance The Tetris instance to shake.
+     * Stops the shaking and puts the contents back to their original place.
      */
-    public ShakeFrame(Tetris tetInstance) {
-        this.tetTetris = tetInstance;
-        timeListener = new ActionTime();
+    public void stopShake() {
+        iFramesLeft = 0;
+        iXOffset = 0;
+        iYOffset = 0;
     }
 
     /**
-     * Saves the initial time and starts the timer that will shake the Frame
-     * in a predefinite duration.
+     * Checks whether or not a shake is in progress.
+     * @return Whether or not the contents are shaking.
      */
-    public void startShaking() {
-        /*
-	     * Save the original position of the Frame
-		 */
-        poiInitPos = tetTetris.getLocation();
-        lStartTime = System.currentTimeMillis();
-        timTime = new Timer(iUPDATE_TIME, timeListener);
-        timTime.start();
+    public boolean isShaking() {
+        return iFramesLeft > 0;
     }
 
     /**
-     * Stops the shaking and puts the frame back to its original location.
+     * Gets the offset in the X direction to paint with.
+     * @return The X offset.
      */
-    public void stopShake(){
-        timTime.stop();
-        tetTetris.setLocation(poiInitPos);
-        tetTetris.repaint();
+    public int getXOffset() {
+        return iXOffset;
     }
 
     /**
-     * ActionTime
-     *
-     * Helper class that tracks the amount of time that passes and moves the
-     * frame by the set duration and shake factor.
-     *
-     * @author Irvel
-     * @author Jorge
-     * @version 0.1
+     * Gets the offset in the Y direction to paint with.
+     * @return The Y offset.
      */
-    private class ActionTime implements ActionListener {
-        /**
-         * The offset in the X direction that the frame will be moved
-         */
-        private int iXOffset;
-
-        /**
-         * The offset in the Y direction that the frame will be moved
-         */
-        private int iYOffset;
-
-        @Override
-        public void actionPerformed(ActionEvent e){
-            int iDirection = 1;
-            /*
-             * Retrieve the elapsed time since the start of the shaking
-             */
-            long lElapsedTime = System.currentTimeMillis() - lStartTime;
-            /*
-             * Create a new random number generator
-             */
-            Random ranNumGenerator = new Random();
-
-            /*
-             * Randomly choose if the frame will be down right or up left
-             */
-            if (ranNumGenerator.nextInt(5) > 2) {
-                iDirection *= -1;
-            }
-            /*
-             * Get a random offset from the initial position with the Shake
-             * factor as an upper limit
-             */
-            iXOffset = poiInitPos.x +
-                       iDirection * (ranNumGenerator.nextInt(iSHAKE_FACTOR));
-            iYOffset = poiInitPos.y +
-                       iDirection * (ranNumGenerator.nextInt(iSHAKE_FACTOR));
-
-            /*
-             * Move and repaint the frame
-             */
-            tetTetris.setLocation(iXOffset, iYOffset);
-            tetTetris.repaint();
+    public int getYOffset() {
+        return iYOffset;
+    }
 
-            /*
-             * Stop shaking if the elapsed time exeeds the duration
-             */
-            if(lElapsedTime > iDURATION) {
-                stopShake();
-            }
-        }
+    /**
+     * Integer hash noise. The same input always gives the same value.
+     * @param iInput The input.
+     * @return A value between -1 and 1.
+     */
+    private static float noise(int iInput) {
+        int iHash = iInput * 0x9E3779B9;
+        iHash ^= iHash >>> 16;
+        iHash *= 0x85EBCA6B;
+        iHash ^= iHash >>> 13;
+        return (iHash & 0xFFFF) / 32767.5f - 1.0f;
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,8 @@ package tetris;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 
 /**
  * The {@code SidePanel} class is responsible for displaying various information
@@ -21,11 +23,6 @@ public class SidePanel extends JPanel {
 	 */
 	private static final int iTILE_SIZE = BoardPanel.iTILE_SIZE >> 1;
 	
-	/**
-	 * The width of the shading on each tile on the next piece preview.
-	 */
-	private static final int iSHADE_WIDTH = BoardPanel.iSHADE_WIDTH >> 1;
-	
 	/**
 	 * The number of rows and columns in the preview window. Set to
 	 * 5 because we can show any piece with some sort of padding.
@@ -65,13 +62,19 @@ public class SidePanel extends JPanel {
 	/**
 	 * The y coordinate of the controls category.
 	 */
-	private static final int iCONTROLS_INSET = 240;
+	private static final int iCONTROLS_INSET = 225;
 	
 	/**
 	 * The number of pixels to offset between each string.
 	 */
 	private static final int iTEXT_STRIDE = 25;
 	
+	/**
+	 * The number of pixels to offset between each line of the performance
+	 * stats, which need more lines than the controls.
+	 */
+	private static final int iMETRICS_STRIDE = 20;
+
 	/**
 	 * The small font.
 	 */
@@ -89,18 +92,77 @@ public class SidePanel extends JPanel {
 	 */
 	private static final Color colDRAW_COLOR = new Color(173, 255, 255);
 	
+	/**
+	 * The value shown before the first stats are drawn, which no stat has.
+	 */
+	private static final int iNOT_SHOWN = Integer.MIN_VALUE;
+
 	/**
 	 * The Tetris instance.
 	 */
 	private Tetris tetTetris;
 
-	
+	/**
+	 * Draws the tiles of the next piece preview from its cached sprites.
+	 */
+	private BoardRenderer renRenderer;
+
+	/**
+	 * Everything on the panel that never changes (the categories, the
+	 * labels, the controls and the preview box) drawn once, in screen
+	 * pixels.
+	 */
+	private BufferedImage bufStatic;
+
+	/**
+	 * The numbers of the stats, drawn again only when one of them changes.
+	 */
+	private BufferedImage bufStats;
+
+	/**
+	 * The number of screen pixels per pixel of the panel the layers were
+	 * drawn for.
+	 */
+	private double dLayerScale;
+
+	/**
+	 * Whether or not the static layer was drawn with the performance stats
+	 * in place of the controls.
+	 */
+	private boolean bLayerMetrics;
+
+	/**
+	 * Where the level is drawn, after its label.
+	 */
+	private int iLevelX;
+
+	/**
+	 * Where the score is drawn, after its label.
+	 */
+	private int iScoreX;
+
+	/**
+	 * The level the stats layer shows.
+	 */
+	private int iShownLevel;
+
+	/**
+	 * The score the stats layer shows.
+	 */
+	private int iShownScore;
+
+	/**
+	 * The best score the stats layer shows.
+	 */
+	private int iShownBest;
+
 	/**
 	 * Creates a new SidePanel and sets it's display properties.
 	 * @param tetTetris The Tetris instance to use.
 	 */
 	public SidePanel(Tetris tetTetris) {
 		this.tetTetris = tetTetris;
+		this.renRenderer = new BoardRenderer();
 		
 		setPreferredSize(new Dimension(200, BoardPanel.iPANEL_HEIGHT));
 		setBackground(Color.BLACK);
@@ -108,30 +170,140 @@ public class SidePanel extends JPanel {
 
 	@Override
 	public void paintComponent(Graphics graGraphics) {
-		super.paintComponent(graGraphics);
-		//Set the color for drawing.
-		graGraphics.setColor(colDRAW_COLOR);
+		/*
+		 * The static layer covers the whole panel, so the background only
+		 * has to be cleared where the shake uncovers it.
+		 */
+		ShakeFrame shaShaker = tetTetris.getShaker();
+		if(bufStatic == null || shaShaker.getXOffset() != 0 || shaShaker.getYOffset() != 0) {
+			super.paintComponent(graGraphics);
+		}
+
+		/*
+		 * The layers are drawn in screen pixels, like the board, so that the
+		 * text stays sharp on HiDPI screens and is copied without being
+		 * resampled.
+		 */
+		Graphics2D g2d = (Graphics2D) graGraphics;
+		AffineTransform atrSaved = g2d.getTransform();
+		double dScale = atrSaved.getScaleX();
+		g2d.setTransform(AffineTransform.getTranslateInstance(atrSaved.getTranslateX(),
+															  atrSaved.getTranslateY()));
+		boolean bMetrics = Metrics.getInstance().isOverlayVisible();
+		int iWidth = (int) Math.ceil(getWidth() * dScale);
+		int iHeight = (int) Math.ceil(getHeight() * dScale);
+		if(bufStatic == null || dScale != dLayerScale || bMetrics != bLayerMetrics
+				|| bufStatic.getWidth() != iWidth || bufStatic.getHeight() != iHeight) {
+			createLayers(iWidth, iHeight, dScale, bMetrics);
+		}
+
+		//Move everything by the current screen shake offset.
+		g2d.translate((int) (shaShaker.getXOffset() * dScale), (int) (shaShaker.getYOffset() * dScale));
 
 		/*
      	 * Draw the information of the side panel
      	 */
-		drawStats(graGraphics);
-		drawControls(graGraphics);
-		drawPreviewPiece(graGraphics);
+		g2d.drawImage(bufStatic, 0, 0, null);
+		drawStats(g2d);
+		drawPreviewPiece(g2d, dScale);
+		if(bMetrics) {
+			/*
+			 * The performance stats change every frame, so they are the one
+			 * thing still drawn as text.
+			 */
+			g2d.scale(dScale, dScale);
+			g2d.setColor(colDRAW_COLOR);
+			drawMetrics(g2d);
+		}
+		g2d.setTransform(atrSaved);
 	}
 
 	/**
-	 * Draws the next piece preview at the top of the side panel
+	 * Draws the static layer, and makes the stats layer to be drawn on the
+	 * next frame.
+	 * @param iWidth The width of the panel, in screen pixels.
+	 * @param iHeight The height of the panel, in screen pixels.
+	 * @param dScale The number of screen pixels per pixel of the panel.
+	 * @param bMetrics Whether or not the performance stats are shown in
+	 *                 place of the controls.
+	 */
+	private void createLayers(int iWidth, int iHeight, double dScale, boolean bMetrics) {
+		this.dLayerScale = dScale;
+		bufStatic = new BufferedImage(Math.max(1, iWidth), Math.max(1, iHeight),
+									  BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2dStatic = bufStatic.createGraphics();
+		g2dStatic.setColor(Color.BLACK);
+		g2dStatic.fillRect(0, 0, bufStatic.getWidth(), bufStatic.getHeight());
+		g2dStatic.scale(dScale, dScale);
+		//Set the color for drawing.
+		g2dStatic.setColor(colDRAW_COLOR);
+		drawStatsLabels(g2dStatic);
+		if(!bMetrics) {
+			drawControls(g2dStatic);
+		}
+		drawPreviewBox(g2dStatic);
+		g2dStatic.dispose();
+
+		/*
+		 * The numbers go in an opaque strip across the stats category, to
+		 * the right of the labels, so that it is copied rather than blended.
+		 */
+		bufStats = new BufferedImage(Math.max(1, iWidth - getStatsX()),
+									 (int) Math.ceil(iTEXT_STRIDE * 3 * dScale),
+									 BufferedImage.TYPE_INT_RGB);
+		renRenderer.setTileSize((int) Math.round(iTILE_SIZE * dScale));
+		this.bLayerMetrics = bMetrics;
+		this.iShownLevel = iNOT_SHOWN;
+		this.iShownScore = iNOT_SHOWN;
+		this.iShownBest = iNOT_SHOWN;
+	}
+
+	/**
+	 * Draws the performance stats in place of the controls
+	 * @param graGraphics The Graphics object to draw the string to.
+	 */
+	private void drawMetrics(Graphics graGraphics) {
+		Metrics metMetrics = Metrics.getInstance();
+		int iOffset;
+		graGraphics.setFont(fonLARGE_FONT);
+		graGraphics.drawString("Timing (p50/p99/max us)",
+							   iSMALL_INSET, iOffset = iCONTROLS_INSET);
+		graGraphics.setFont(fonSMALL_FONT);
+		for(LatencyRecorder latRecorder : metMetrics.getRecorders()) {
+			graGraphics.drawString(String.format("%s: %.0f/%.0f/%.0f",
+												 latRecorder.getName(),
+												 latRecorder.getP50Micros(),
+												 latRecorder.getP99Micros(),
+												 latRecorder.getMaxMicros()),
+								   iSMALL_INSET, iOffset += iMETRICS_STRIDE);
+		}
+		graGraphics.drawString("Frames: " + metMetrics.getFrames(),
+							   iSMALL_INSET, iOffset += iMETRICS_STRIDE);
+		graGraphics.drawString("Dropped: " + metMetrics.getDroppedFrames()
+							   + "  GC: " + metMetrics.getGcFrames(),
+							   iSMALL_INSET, iOffset += iMETRICS_STRIDE);
+	}
+
+	/**
+	 * Draws the box of the next piece preview at the top of the side panel
 	 * @param graGraphics The Graphics object to be drawn to.
 	 */
-	private void drawPreviewPiece(Graphics graGraphics) {
+	private void drawPreviewBox(Graphics graGraphics) {
     	/*
      	 * Draw the next piece preview box.
      	 */
 		graGraphics.setFont(fonLARGE_FONT);
 		graGraphics.drawString("Next Piece:", iSMALL_INSET, 70);
 		graGraphics.drawRect(iSQUARE_CENTER_X - iSQUARE_SIZE, iSQUARE_CENTER_Y - iSQUARE_SIZE, iSQUARE_SIZE * 2, iSQUARE_SIZE * 2);
+	}
 
+	/**
+	 * Draws the next piece into the preview box
+	 * @param graGraphics The Graphics object to be drawn to, in screen
+	 *                    pixels.
+	 * @param dScale The number of screen pixels per pixel of the panel.
+	 */
+	private void drawPreviewPiece(Graphics graGraphics, double dScale) {
 		/*
 		 * Draw a preview of the next piece that will be spawned. The code is pretty much
 		 * identical to the drawing code on the board, just smaller and centered, rather
@@ -145,12 +317,13 @@ public class SidePanel extends JPanel {
 			int iCols = type.getCols();
 			int iRows = type.getRows();
 			int iDimension = type.getDimension();
+			int iTileSize = renRenderer.getTileSize();
 
 			/*
 			 * Calculate the top left corner (origin) of the piece.
 			 */
-			int iStartX = (iSQUARE_CENTER_X - (iCols * iTILE_SIZE / 2));
-			int iStartY = (iSQUARE_CENTER_Y - (iRows * iTILE_SIZE / 2));
+			int iStartX = (int) Math.round((iSQUARE_CENTER_X - (iCols * iTILE_SIZE / 2)) * dScale);
+			int iStartY = (int) Math.round((iSQUARE_CENTER_Y - (iRows * iTILE_SIZE / 2)) * dScale);
 
 			/*
 			 * Get the insets for the preview. The default
@@ -160,15 +333,16 @@ public class SidePanel extends JPanel {
 			int iLeft = type.getLeftInset(0);
 
 			/*
-			 * Loop through the piece and draw it's tiles onto the preview.
+			 * Loop through the piece and draw it's tiles onto the preview,
+			 * each one a copy of the sprite of its type.
 			 */
 			for(int iRow = 0; iRow < iDimension; iRow++) {
 				for(int iCol = 0; iCol < iDimension; iCol++) {
 					if(type.isTile(iCol, iRow, 0)) {
-						drawTile(type,
-								 iStartX + ((iCol - iLeft) * iTILE_SIZE),
-								 iStartY + ((iRow - iTop) * iTILE_SIZE),
-								 graGraphics);
+						renRenderer.drawTile(type,
+											 iStartX + ((iCol - iLeft) * iTileSize),
+											 iStartY + ((iRow - iTop) * iTileSize),
+											 graGraphics);
 					}
 				}
 			}
@@ -204,6 +378,8 @@ public class SidePanel extends JPanel {
 							   iLARGE_INSET, iOffset += iTEXT_STRIDE);
 		graGraphics.drawString("S - Drop",
 							   iLARGE_INSET, iOffset += iTEXT_STRIDE);
+		graGraphics.drawString("W - Hard Drop",
+							   iLARGE_INSET, iOffset += iTEXT_STRIDE);
 		graGraphics.drawString("P - Pause Game",
 							   iLARGE_INSET, iOffset += iTEXT_STRIDE);
 		graGraphics.drawString("G - Save Game",
@@ -215,10 +391,11 @@ public class SidePanel extends JPanel {
 	}
 
 	/**
-	 * Draws the current stats on the side panel
+	 * Draws the category and the labels of the stats on the side panel, and
+	 * works out where their numbers go
 	 * @param graGraphics The Graphics object to draw the string to.
 	 */
-	private void drawStats(Graphics graGraphics) {
+	private void drawStatsLabels(Graphics graGraphics) {
 		/*
 		 * This variable stores the current y coordinate of the string.
 		 * This way we can re-order, add, or remove new strings if necessary
@@ -231,45 +408,49 @@ public class SidePanel extends JPanel {
 		graGraphics.setFont(fonLARGE_FONT);
 		graGraphics.drawString("Stats", iSMALL_INSET, iOffset = iSTATS_INSET);
 		graGraphics.setFont(fonSMALL_FONT);
-		graGraphics.drawString("Level: " + tetTetris.getLevel(),
-							   iLARGE_INSET, iOffset += iTEXT_STRIDE);
-		graGraphics.drawString("Score: " + tetTetris.getScore(),
-							   iLARGE_INSET, iOffset += iTEXT_STRIDE);
+		FontMetrics fomMetrics = graGraphics.getFontMetrics();
+		graGraphics.drawString("Level: ", iLARGE_INSET, iOffset += iTEXT_STRIDE);
+		iLevelX = iLARGE_INSET + fomMetrics.stringWidth("Level: ");
+		graGraphics.drawString("Score: ", iLARGE_INSET, iOffset += iTEXT_STRIDE);
+		iScoreX = iLARGE_INSET + fomMetrics.stringWidth("Score: ");
 	}
 
 	/**
-	 * Draws a tile onto the preview window.
-	 * @param tilType The type of tile to draw.
-	 * @param iX The X coordinate of the tile.
-	 * @param iY The Y coordinate of the tile.
-	 * @param graGraphics The graphics object.
+	 * Draws the numbers of the stats on the side panel, drawing them into
+	 * their layer first if any of them changed
+	 * @param graGraphics The Graphics object to draw to, in screen pixels.
 	 */
-	private void drawTile(TileType tilType, int iX, int iY, Graphics graGraphics) {
-		/*
-		 * Fill the entire tile with the base color.
-		 */
-		graGraphics.setColor(tilType.getBaseColor());
-		graGraphics.fillRect(iX, iY, iTILE_SIZE, iTILE_SIZE);
-		
-		/*
-		 * Fill the bottom and right edges of the tile with the dark shading color.
-		 */
-		graGraphics.setColor(tilType.getDarkColor());
-		graGraphics.fillRect(iX, iY + iTILE_SIZE - iSHADE_WIDTH,
-							 iTILE_SIZE, iSHADE_WIDTH);
-		graGraphics.fillRect(iX + iTILE_SIZE - iSHADE_WIDTH, iY, iSHADE_WIDTH,
-							 iTILE_SIZE);
-		
-		/*
-		 * Fill the top and left edges with the light shading. We draw a single line
-		 * for each row or column rather than a rectangle so that we can draw a nice
-		 * looking diagonal where the light and dark shading meet.
-		 */
-		graGraphics.setColor(tilType.getLightColor());
-		for(int i = 0; i < iSHADE_WIDTH; i++) {
-			graGraphics.drawLine(iX, iY + i, iX + iTILE_SIZE - i - 1, iY + i);
-			graGraphics.drawLine(iX + i, iY, iX + i, iY + iTILE_SIZE - i - 1);
+	private void drawStats(Graphics graGraphics) {
+		int iLevel = tetTetris.getLevel();
+		int iScore = tetTetris.getScore();
+		int iBest = tetTetris.getBestScore();
+		if(iLevel != iShownLevel || iScore != iShownScore || iBest != iShownBest) {
+			Graphics2D g2dStats = bufStats.createGraphics();
+			g2dStats.setColor(Color.BLACK);
+			g2dStats.fillRect(0, 0, bufStats.getWidth(), bufStats.getHeight());
+			g2dStats.translate(-getStatsX(), 0);
+			g2dStats.scale(dLayerScale, dLayerScale);
+			g2dStats.translate(0, -iSTATS_INSET);
+			g2dStats.setColor(colDRAW_COLOR);
+			g2dStats.setFont(fonSMALL_FONT);
+			g2dStats.drawString(Integer.toString(iLevel),
+								iLevelX, iSTATS_INSET + iTEXT_STRIDE);
+			g2dStats.drawString(iScore + "  Best: " + iBest,
+								iScoreX, iSTATS_INSET + iTEXT_STRIDE * 2);
+			g2dStats.dispose();
+			this.iShownLevel = iLevel;
+			this.iShownScore = iScore;
+			this.iShownBest = iBest;
 		}
+		graGraphics.drawImage(bufStats, getStatsX(), (int) Math.round(iSTATS_INSET * dLayerScale), null);
+	}
+
+	/**
+	 * Gets where the layer of the numbers of the stats starts.
+	 * @return The x coordinate, in screen pixels.
+	 */
+	private int getStatsX() {
+		return (int) (Math.min(iLevelX, iScoreX) * dLayerScale);
 	}
 
 }
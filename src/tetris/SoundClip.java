@@ -6,9 +6,6 @@
 package tetris;
 
 import javax.sound.sampled.UnsupportedAudioFileException;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.Clip;
 import javax.sound.sampled.AudioSystem;
 import java.io.IOException;
 import java.net.URL;
@@ -16,32 +13,29 @@ import java.net.URL;
 /**
  * SoundClip
  *
- * Clase utilizada para almacenar y reproducir archivos de sonido
+ * Clase utilizada para almacenar y reproducir archivos de sonido. Las
+ * muestras se decodifican una sola vez y se reproducen a traves del
+ * AudioMixer, por lo que ningun clip abre su propia linea de audio.
  *
  * @author Irvel
  * @author Jorge
- * @version 0.2
+ * @version 0.3
  */
 
 public class SoundClip {
-    private AudioInputStream auiSample;
-    private Clip cClip;
+    private volatile short[] sSamples;
     private boolean bLooping = false;
     private int repeat = 0;
+    private float fGain = 1.0f;
     private String filename = "";
     
     /**
      * 
      * Constructor default
      * 
-     * Crea el objeto Soundclip con el buffer del sonido
+     * Crea el objeto Soundclip sin ningun sonido cargado
      */
     public SoundClip(){
-        try{
-            cClip = AudioSystem.getClip();
-        }catch (LineUnavailableException e){
-            System.out.println("Error en " + e.toString());
-        }
     }
     /**
      * Soundclip(String filename)
@@ -92,14 +86,27 @@ public class SoundClip {
     }
     /**
      * 
-     * getClip()
+     * setGain(float fGain)
      * 
-     * Función que regresa el clip de audio cargado
+     * Función que especifica el volumen con el que se reproduce el sonido,
+     * incluso si ya se esta reproduciendo
      * 
-     * @return clip
+     * @param fGain 
      */
-    public Clip getClip(){
-        return cClip;
+    public void setGain(float fGain){
+        this.fGain = fGain;
+        AudioMixer.getInstance().setGain(this, fGain);
+    }
+    /**
+     * 
+     * getGain()
+     * 
+     * Función que regresa el volumen con el que se reproduce el sonido
+     * 
+     * @return fGain
+     */
+    public float getGain(){
+        return fGain;
     }
     /**
      * 
@@ -165,7 +172,7 @@ public class SoundClip {
      * @return boolean
      */
     public boolean isLoaded(){
-        return (boolean)(auiSample != null);
+        return (boolean)(sSamples != null);
     }
     /**
      * 
@@ -180,8 +187,10 @@ public class SoundClip {
     public boolean load(String audiofile){
         try{
             setFilename(audiofile);
-            auiSample = AudioSystem.getAudioInputStream(getURL(filename));
-            cClip.open(auiSample);
+            URL url = getURL(filename);
+            if (url == null)
+                throw new IOException("No se encontro " + filename);
+            sSamples = AudioMixer.decode(AudioSystem.getAudioInputStream(url));
             return true;
         }catch (IOException e){
             System.out.println("Error en " + e.toString());
@@ -189,9 +198,6 @@ public class SoundClip {
         }catch (UnsupportedAudioFileException e){
             System.out.println("Error en " + e.toString());
             return false;
-        }catch (LineUnavailableException e){
-            System.out.println("Error en " + e.toString());
-            return false;
         }
         
     }
@@ -200,17 +206,19 @@ public class SoundClip {
      * play()
      * 
      * Función que se encarga primero de verificar si el archivo esta cargado
-     * además de reproducir el archivo de forma continua o no
+     * además de reproducir el archivo de forma continua o no. Si el sonido
+     * ya se estaba reproduciendo vuelve a empezar desde el inicio
      * 
      */
     public void play(){
         if (!isLoaded())
             return;
-        cClip.setFramePosition(0);
+        GameEvents.soundTriggered(filename);
         if (bLooping)
-            cClip.loop(Clip.LOOP_CONTINUOUSLY);
+            AudioMixer.getInstance().play(this, sSamples, fGain,
+                                          AudioMixer.iLOOP_CONTINUOUSLY);
         else
-            cClip.loop(repeat);
+            AudioMixer.getInstance().play(this, sSamples, fGain, repeat);
     }
     /**
      * 
@@ -220,7 +228,7 @@ public class SoundClip {
      * 
      */
     public void stop(){
-        cClip.stop();
+        AudioMixer.getInstance().stop(this);
     }
     
 }
@@ -0,0 +1,411 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * SpectatorFeed
+ *
+ * Lets any number of spectators follow the games of the window without
+ * ever copying a board for them. The game loop writes a keyframe every few
+ * seconds and, in between, only what happened: pieces moving, pieces
+ * locking, rows clearing and garbage rising, in the records of
+ * {@code NetProtocol}. The records go into a single ring of bytes that
+ * every subscriber reads in place with its own cursor, so adding a
+ * spectator costs nothing on the game loop. A subscriber that falls a whole
+ * ring behind skips ahead to the latest keyframe.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class SpectatorFeed implements GameEngine.Listener {
+
+	/**
+	 * The size of the ring. Must be a power of two, and hold several
+	 * seconds of records.
+	 */
+	private static final int iCAPACITY = 64 * 1024;
+
+	/**
+	 * Mask that turns a position into an index within the ring.
+	 */
+	private static final int iMASK = iCAPACITY - 1;
+
+	/**
+	 * The record type that tells readers to go on from the start of the
+	 * ring, written when a record doesn't fit before its end.
+	 */
+	private static final int iWRAP = 0;
+
+	/**
+	 * The number of frames between keyframes.
+	 */
+	private static final int iKEYFRAME_FRAMES = 100;
+
+	/**
+	 * A spectator reading the feed. Each one only keeps its position within
+	 * the ring and the copies of the games it rebuilt.
+	 */
+	public static final class Subscriber {
+
+		/**
+		 * The feed being read.
+		 */
+		private final SpectatorFeed feeFeed;
+
+		/**
+		 * A view of the ring of the feed, sharing its bytes.
+		 */
+		private final ByteBuffer bufRing;
+
+		/**
+		 * The copies of the games.
+		 */
+		private final GameEngine[] engMirrors;
+
+		/**
+		 * The position of the next record to read.
+		 */
+		private long lCursor;
+
+		/**
+		 * Whether or not the subscriber has to wait for a keyframe before
+		 * its copies are right again.
+		 */
+		private boolean bLost;
+
+		/**
+		 * Creates a new subscriber that starts at the latest keyframe.
+		 * @param feeFeed The feed to read.
+		 */
+		private Subscriber(SpectatorFeed feeFeed) {
+			this.feeFeed = feeFeed;
+			this.bufRing = ByteBuffer.wrap(feeFeed.bRing);
+			RotationSystem rotRotation = RotationSystem.fromSystemProperties();
+			this.engMirrors = new GameEngine[feeFeed.engEngines.length];
+			for(int iPlayer = 0; iPlayer < engMirrors.length; iPlayer++) {
+				engMirrors[iPlayer] = new GameEngine(rotRotation, new InputState());
+			}
+			this.lCursor = feeFeed.lKeyframeAt;
+			this.bLost = true;
+		}
+
+		/**
+		 * Applies every record written since the last call to the copies of
+		 * the games. Can be called from any one thread per subscriber.
+		 * @return The number of records applied.
+		 */
+		public int poll() {
+			int iApplied = 0;
+			long lPublished = feeFeed.lPublished;
+			while(lCursor < lPublished) {
+				if(lPublished - lCursor > iCAPACITY) {
+					resync();
+					continue;
+				}
+				int iIndex = (int) (lCursor & iMASK);
+				int iType = bufRing.get(iIndex) & 0xFF;
+				if(iType == iWRAP) {
+					lCursor += iCAPACITY - iIndex;
+					continue;
+				}
+				int iLength = NetProtocol.iHEADER_BYTES + (bufRing.get(iIndex + 1) & 0xFF);
+				if(iType == NetProtocol.iKEYFRAME) {
+					bLost = false;
+				}
+				if(!bLost) {
+					bufRing.limit(iIndex + iLength).position(iIndex + NetProtocol.iHEADER_BYTES);
+					apply(iType);
+					bufRing.limit(iCAPACITY);
+				}
+
+				/*
+				 * If the writer got around the ring to the record while it
+				 * was being read, what was applied can't be trusted.
+				 */
+				if(feeFeed.lClaimed - iCAPACITY > lCursor) {
+					resync();
+					continue;
+				}
+				lCursor += iLength;
+				iApplied++;
+			}
+			return iApplied;
+		}
+
+		/**
+		 * Skips ahead to the latest keyframe.
+		 */
+		private void resync() {
+			lCursor = feeFeed.lKeyframeAt;
+			if(feeFeed.lClaimed - iCAPACITY > lCursor) {
+				// Even the keyframe is gone, so wait for the next one
+				lCursor = feeFeed.lPublished;
+			}
+			bLost = true;
+		}
+
+		/**
+		 * Applies one record, with the view of the ring on its payload.
+		 * @param iType The type of the record.
+		 */
+		private void apply(int iType) {
+			if(iType == NetProtocol.iKEYFRAME) {
+				return;
+			}
+			int iPlayer = bufRing.get() & 0xFF;
+			if(iPlayer >= engMirrors.length) {
+				return;
+			}
+			GameEngine engMirror = engMirrors[iPlayer];
+			switch(iType) {
+				case NetProtocol.iBOARD:
+					NetProtocol.readBoard(bufRing, engMirror.getBoard());
+					break;
+				case NetProtocol.iPIECE:
+					NetProtocol.readPiece(bufRing, engMirror);
+					break;
+				case NetProtocol.iLOCK:
+					NetProtocol.readLock(bufRing, engMirror.getBoard());
+					break;
+				case NetProtocol.iCLEAR:
+					NetProtocol.readClear(bufRing, engMirror.getBoard());
+					break;
+				case NetProtocol.iRISE:
+					int iRows = bufRing.get() & 0xFF;
+					engMirror.getBoard().addGarbage(iRows, bufRing.get() & 0xFF);
+					break;
+				default:
+					break;
+			}
+		}
+
+		/**
+		 * Gets the copies of the games.
+		 * @return The copies, in player order.
+		 */
+		public GameEngine[] getGames() {
+			return engMirrors;
+		}
+
+		/**
+		 * Checks whether or not the copies are waiting for a keyframe.
+		 * @return Whether or not the copies can't be shown yet.
+		 */
+		public boolean isLost() {
+			return bLost;
+		}
+	}
+
+	/**
+	 * The games being broadcast.
+	 */
+	private final GameEngine[] engEngines;
+
+	/**
+	 * The listeners the games had before the feed was attached, told about
+	 * everything the feed is.
+	 */
+	private final GameEngine.Listener[] lisForward;
+
+	/**
+	 * The records. Only the game loop writes to it.
+	 */
+	private final byte[] bRing;
+
+	/**
+	 * The record being written.
+	 */
+	private final ByteBuffer bufRecord;
+
+	/**
+	 * The piece state of each game that was last written.
+	 */
+	private final long[] lSentPiece;
+
+	/**
+	 * The position up to which records may be overwritten, moved forward
+	 * before a record is written.
+	 */
+	private volatile long lClaimed;
+
+	/**
+	 * The position up to which records can be read, moved forward after a
+	 * record is written.
+	 */
+	private volatile long lPublished;
+
+	/**
+	 * The position of the latest keyframe.
+	 */
+	private volatile long lKeyframeAt;
+
+	/**
+	 * The number of frames until the next keyframe.
+	 */
+	private int iFramesToKeyframe;
+
+	/**
+	 * Creates a feed of some games and starts listening to them. The feed
+	 * passes every event on to the listener each game had before.
+	 * @param engEngines The games.
+	 */
+	public SpectatorFeed(GameEngine[] engEngines) {
+		this.engEngines = engEngines;
+		this.lisForward = new GameEngine.Listener[engEngines.length];
+		for(int iPlayer = 0; iPlayer < engEngines.length; iPlayer++) {
+			lisForward[iPlayer] = engEngines[iPlayer].getListener();
+			engEngines[iPlayer].setListener(this);
+		}
+		this.bRing = new byte[iCAPACITY];
+		this.bufRecord = ByteBuffer.allocate(NetProtocol.iMAX_PACKET_BYTES);
+		this.lSentPiece = new long[engEngines.length];
+		writeKeyframe();
+	}
+
+	/**
+	 * Adds a spectator, which starts from the latest keyframe.
+	 * @return The new subscriber.
+	 */
+	public Subscriber subscribe() {
+		return new Subscriber(this);
+	}
+
+	/**
+	 * Writes what changed during the frame, or a keyframe when one is due.
+	 * Must be called by the game loop after every game was updated.
+	 */
+	public void capture() {
+		if(--iFramesToKeyframe <= 0) {
+			writeKeyframe();
+			return;
+		}
+		for(int iPlayer = 0; iPlayer < engEngines.length; iPlayer++) {
+			writePieceIfMoved(iPlayer);
+		}
+	}
+
+	/**
+	 * Writes the whole state of every game, for spectators that just joined
+	 * or fell behind. Also called after games are reset or loaded.
+	 */
+	public void writeKeyframe() {
+		bufRecord.clear();
+		NetProtocol.writeKeyframe(bufRecord, engEngines.length);
+		publish();
+		/*
+		 * Readers that skip ahead start at the marker, which is only made
+		 * known once the whole keyframe has been written.
+		 */
+		long lStart = lPublished - bufRecord.limit();
+		for(int iPlayer = 0; iPlayer < engEngines.length; iPlayer++) {
+			bufRecord.clear();
+			NetProtocol.writeBoard(bufRecord, iPlayer, engEngines[iPlayer].getBoard());
+			publish();
+			lSentPiece[iPlayer] = -1L;
+			writePieceIfMoved(iPlayer);
+		}
+		lKeyframeAt = lStart;
+		iFramesToKeyframe = iKEYFRAME_FRAMES;
+	}
+
+	/**
+	 * Writes the piece and stats of a game if they changed.
+	 * @param iPlayer The index of the game.
+	 */
+	private void writePieceIfMoved(int iPlayer) {
+		long lPiece = NetProtocol.pieceState(engEngines[iPlayer]);
+		if(lPiece != lSentPiece[iPlayer]) {
+			lSentPiece[iPlayer] = lPiece;
+			bufRecord.clear();
+			NetProtocol.writePiece(bufRecord, iPlayer, engEngines[iPlayer]);
+			publish();
+		}
+	}
+
+	/**
+	 * Copies the record in {@code bufRecord} into the ring and makes it
+	 * visible to the subscribers. Records never wrap around the end of the
+	 * ring; one that doesn't fit goes at the start, after a wrap marker.
+	 */
+	private void publish() {
+		bufRecord.flip();
+		int iLength = bufRecord.limit();
+		long lPosition = lPublished;
+		int iIndex = (int) (lPosition & iMASK);
+		if(iIndex + iLength > iCAPACITY) {
+			lClaimed = lPosition + (iCAPACITY - iIndex) + iLength;
+			bRing[iIndex] = (byte) iWRAP;
+			lPosition += iCAPACITY - iIndex;
+			iIndex = 0;
+		} else {
+			lClaimed = lPosition + iLength;
+		}
+		bufRecord.get(bRing, iIndex, iLength);
+		lPublished = lPosition + iLength;
+	}
+
+	/**
+	 * Gets the index of the player of a game.
+	 * @param engGame The game.
+	 * @return The index of the player.
+	 */
+	private int indexOf(GameEngine engGame) {
+		for(int iPlayer = 0; iPlayer < engEngines.length; iPlayer++) {
+			if(engEngines[iPlayer] == engGame) {
+				return iPlayer;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public void pieceLocked(GameEngine engGame) {
+		int iPlayer = indexOf(engGame);
+		bufRecord.clear();
+		NetProtocol.writeLock(bufRecord, iPlayer, engGame);
+		publish();
+		if(lisForward[iPlayer] != null) {
+			lisForward[iPlayer].pieceLocked(engGame);
+		}
+	}
+
+	@Override
+	public void hardDropped(GameEngine engGame, int iRows) {
+		int iPlayer = indexOf(engGame);
+		if(lisForward[iPlayer] != null) {
+			lisForward[iPlayer].hardDropped(engGame, iRows);
+		}
+	}
+
+	@Override
+	public void linesCleared(GameEngine engGame, int iLines, int iGarbage) {
+		int iPlayer = indexOf(engGame);
+		bufRecord.clear();
+		NetProtocol.writeClear(bufRecord, iPlayer, engGame.getBoard());
+		publish();
+		if(lisForward[iPlayer] != null) {
+			lisForward[iPlayer].linesCleared(engGame, iLines, iGarbage);
+		}
+	}
+
+	@Override
+	public void garbageAdded(GameEngine engGame, int iRows, int iHoleCol) {
+		int iPlayer = indexOf(engGame);
+		bufRecord.clear();
+		NetProtocol.writeRise(bufRecord, iPlayer, iRows, iHoleCol);
+		publish();
+		if(lisForward[iPlayer] != null) {
+			lisForward[iPlayer].garbageAdded(engGame, iRows, iHoleCol);
+		}
+	}
+
+	@Override
+	public void gameOver(GameEngine engGame) {
+		int iPlayer = indexOf(engGame);
+		writePieceIfMoved(iPlayer);
+		if(lisForward[iPlayer] != null) {
+			lisForward[iPlayer].gameOver(engGame);
+		}
+	}
+}
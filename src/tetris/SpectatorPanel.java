@@ -0,0 +1,109 @@
+package tetris;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+
+/**
+ * SpectatorPanel
+ *
+ * Shows the games of a spectator feed at half size, rebuilt from the feed
+ * each time the panel is painted. Nothing here touches the games of the
+ * window, so it can be painted on the event thread while they run.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class SpectatorPanel extends JPanel {
+
+	/**
+	 * Serial Version UID.
+	 */
+	private static final long serialVersionUID = 4312988206402611597L;
+
+	/**
+	 * The scale the boards are drawn at.
+	 */
+	private static final double dSCALE = 0.5;
+
+	/**
+	 * The width of the border around each board, before scaling.
+	 */
+	private static final int iBORDER_WIDTH = 10;
+
+	/**
+	 * The height of the stats above each board.
+	 */
+	private static final int iHEADER_HEIGHT = 20;
+
+	/**
+	 * The width taken by each player, before scaling.
+	 */
+	private static final int iSLOT_WIDTH = Board.iCOL_COUNT * BoardPanel.iTILE_SIZE + iBORDER_WIDTH * 2;
+
+	/**
+	 * The height of a board, before scaling.
+	 */
+	private static final int iBOARD_HEIGHT = Board.iVISIBLE_ROW_COUNT * BoardPanel.iTILE_SIZE;
+
+	/**
+	 * The font of the stats.
+	 */
+	private static final Font fonSMALL_FONT = new Font("Dialog", Font.BOLD, 11);
+
+	/**
+	 * The color to draw the stats in.
+	 */
+	private static final Color colDRAW_COLOR = new Color(173, 255, 255);
+
+	/**
+	 * The feed being shown.
+	 */
+	private SpectatorFeed.Subscriber subFeed;
+
+	/**
+	 * Draws every board.
+	 */
+	private BoardRenderer renRenderer;
+
+	/**
+	 * Creates a new SpectatorPanel sized for every game of the feed.
+	 * @param subFeed The subscription to the feed to show.
+	 */
+	public SpectatorPanel(SpectatorFeed.Subscriber subFeed) {
+		this.subFeed = subFeed;
+		this.renRenderer = new BoardRenderer();
+		int iPlayers = subFeed.getGames().length;
+		setPreferredSize(new Dimension((int) (iSLOT_WIDTH * iPlayers * dSCALE),
+				iHEADER_HEIGHT + (int) ((iBOARD_HEIGHT + iBORDER_WIDTH * 2) * dSCALE)));
+		setBackground(Color.BLACK);
+	}
+
+	@Override
+	public void paintComponent(Graphics graGraphics) {
+		super.paintComponent(graGraphics);
+		subFeed.poll();
+		graGraphics.setFont(fonSMALL_FONT);
+		graGraphics.setColor(colDRAW_COLOR);
+		if(subFeed.isLost()) {
+			graGraphics.drawString("Waiting for the next keyframe...", 4, iHEADER_HEIGHT - 6);
+			return;
+		}
+
+		Graphics2D g2d = (Graphics2D) graGraphics;
+		GameEngine[] engGames = subFeed.getGames();
+		for(int iPlayer = 0; iPlayer < engGames.length; iPlayer++) {
+			int iX = (int) ((iPlayer * iSLOT_WIDTH + iBORDER_WIDTH) * dSCALE);
+			g2d.setColor(colDRAW_COLOR);
+			g2d.drawString("P" + (iPlayer + 1) + " " + engGames[iPlayer].getScore(),
+						   iX, iHEADER_HEIGHT - 6);
+			AffineTransform atrSaved = g2d.getTransform();
+			g2d.translate(iX, iHEADER_HEIGHT);
+			g2d.scale(dSCALE, dSCALE);
+			renRenderer.paintBoard(g2d, engGames[iPlayer]);
+			renRenderer.paintOutline(g2d, engGames[iPlayer].getBoard());
+			g2d.setTransform(atrSaved);
+		}
+	}
+}
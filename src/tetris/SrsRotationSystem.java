@@ -0,0 +1,152 @@
+package tetris;
+
+/**
+ * SrsRotationSystem
+ *
+ * The Super Rotation System. When the rotated piece doesn't fit where it is,
+ * up to four other offsets are tried against the stack, which is what makes
+ * wall kicks, floor kicks and T-spins possible. The kick lists of every type
+ * are packed into a table once, indexed by the type, the starting rotation
+ * and the direction, so a rotation is a table lookup followed by a few
+ * collision tests that stop at the first fit.
+ *
+ * The offsets below are written the usual way, with y pointing up, and are
+ * flipped when the table is built because rows grow downwards on the board.
+ *
+ * @author Irvel
+ * @author Jorge
+ * @version 0.1
+ */
+public class SrsRotationSystem implements RotationSystem {
+
+	/**
+	 * The kicks of the J, L, S, T and Z pieces, for each starting rotation
+	 * when rotating clockwise.
+	 */
+	private static final int[][][] iJLSTZ_CLOCKWISE = {
+		{{0, 0}, {-1, 0}, {-1, 1}, {0, -2}, {-1, -2}},	// 0 -> R
+		{{0, 0}, {1, 0}, {1, -1}, {0, 2}, {1, 2}},		// R -> 2
+		{{0, 0}, {1, 0}, {1, 1}, {0, -2}, {1, -2}},		// 2 -> L
+		{{0, 0}, {-1, 0}, {-1, -1}, {0, 2}, {-1, 2}}	// L -> 0
+	};
+
+	/**
+	 * The kicks of the J, L, S, T and Z pieces, for each starting rotation
+	 * when rotating anticlockwise.
+	 */
+	private static final int[][][] iJLSTZ_ANTICLOCKWISE = {
+		{{0, 0}, {1, 0}, {1, 1}, {0, -2}, {1, -2}},		// 0 -> L
+		{{0, 0}, {1, 0}, {1, -1}, {0, 2}, {1, 2}},		// R -> 0
+		{{0, 0}, {-1, 0}, {-1, 1}, {0, -2}, {-1, -2}},	// 2 -> R
+		{{0, 0}, {-1, 0}, {-1, -1}, {0, 2}, {-1, 2}}	// L -> 2
+	};
+
+	/**
+	 * The kicks of the I piece, for each starting rotation when rotating
+	 * clockwise.
+	 */
+	private static final int[][][] iI_CLOCKWISE = {
+		{{0, 0}, {-2, 0}, {1, 0}, {-2, -1}, {1, 2}},	// 0 -> R
+		{{0, 0}, {-1, 0}, {2, 0}, {-1, 2}, {2, -1}},	// R -> 2
+		{{0, 0}, {2, 0}, {-1, 0}, {2, 1}, {-1, -2}},	// 2 -> L
+		{{0, 0}, {1, 0}, {-2, 0}, {1, -2}, {-2, 1}}		// L -> 0
+	};
+
+	/**
+	 * The kicks of the I piece, for each starting rotation when rotating
+	 * anticlockwise.
+	 */
+	private static final int[][][] iI_ANTICLOCKWISE = {
+		{{0, 0}, {-1, 0}, {2, 0}, {-1, 2}, {2, -1}},	// 0 -> L
+		{{0, 0}, {2, 0}, {-1, 0}, {2, 1}, {-1, -2}},	// R -> 0
+		{{0, 0}, {1, 0}, {-2, 0}, {1, -2}, {-2, 1}},	// 2 -> R
+		{{0, 0}, {-2, 0}, {1, 0}, {-2, -1}, {1, 2}}		// L -> 2
+	};
+
+	/**
+	 * The only kick of the O piece, which doesn't move when rotated.
+	 */
+	private static final int[][] iNO_KICKS = {{0, 0}};
+
+	/**
+	 * The packed kicks, indexed by type, starting rotation and direction
+	 * (0 for clockwise, 1 for anticlockwise).
+	 */
+	private static final int[][][][] iKICKS = buildKicks();
+
+	@Override
+	public int rotate(Board boaBoard, TileType tilType, int iCol, int iRow,
+					  int iFrom, int iTo) {
+		int[] iKicks = getKicks(tilType, iFrom, iTo);
+		for(int iKick : iKicks) {
+			int iX = RotationSystem.unpackX(iKick);
+			int iY = RotationSystem.unpackY(iKick);
+			if(boaBoard.isValidAndEmpty(tilType, iCol + iX, iRow + iY, iTo)) {
+				return iKick;
+			}
+		}
+		return RotationSystem.iNO_KICK;
+	}
+
+	/**
+	 * Gets the packed kicks tried when rotating a piece. A half turn, which
+	 * SRS doesn't define, only tries the piece where it is.
+	 * @param tilType The type of piece.
+	 * @param iFrom The current rotation.
+	 * @param iTo The new rotation.
+	 * @return The kicks, in the order they are tried. Must not be modified.
+	 */
+	public static int[] getKicks(TileType tilType, int iFrom, int iTo) {
+		int[][] iByDirection = iKICKS[tilType.ordinal()][iFrom];
+		if(iTo == ((iFrom + 1) & 3)) {
+			return iByDirection[0];
+		}
+		if(iTo == ((iFrom + 3) & 3)) {
+			return iByDirection[1];
+		}
+		return iByDirection[2];
+	}
+
+	/**
+	 * Builds the packed kick table of every type.
+	 * @return The table.
+	 */
+	private static int[][][][] buildKicks() {
+		TileType[] tilTypes = TileType.values();
+		int[][][][] iTable = new int[tilTypes.length][4][3][];
+		for(TileType tilType : tilTypes) {
+			for(int iFrom = 0; iFrom < 4; iFrom++) {
+				int[][] iClockwise;
+				int[][] iAnticlockwise;
+				if(tilType.getKicks() == TileType.iKICKS_I) {
+					iClockwise = iI_CLOCKWISE[iFrom];
+					iAnticlockwise = iI_ANTICLOCKWISE[iFrom];
+				} else if(tilType.getKicks() == TileType.iKICKS_NONE) {
+					iClockwise = iNO_KICKS;
+					iAnticlockwise = iNO_KICKS;
+				} else {
+					iClockwise = iJLSTZ_CLOCKWISE[iFrom];
+					iAnticlockwise = iJLSTZ_ANTICLOCKWISE[iFrom];
+				}
+				int[][] iEntry = iTable[tilType.ordinal()][iFrom];
+				iEntry[0] = packAll(iClockwise);
+				iEntry[1] = packAll(iAnticlockwise);
+				iEntry[2] = packAll(iNO_KICKS);
+			}
+		}
+		return iTable;
+	}
+
+	/**
+	 * Packs a list of offsets, flipping them so that y points down.
+	 * @param iOffsets The offsets, with y pointing up.
+	 * @return The packed offsets.
+	 */
+	private static int[] packAll(int[][] iOffsets) {
+		int[] iPacked = new int[iOffsets.length];
+		for(int i = 0; i < iOffsets.length; i++) {
+			iPacked[i] = RotationSystem.pack(iOffsets[i][0], -iOffsets[i][1]);
+		}
+		return iPacked;
+	}
+}
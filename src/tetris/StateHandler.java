@@ -13,11 +13,21 @@ import java.io.*;
  */
 public class StateHandler {
 
+    /**
+     * The version of the layout of a save, written before anything else.
+     * Saves of any other version are refused rather than read wrongly; the
+     * saves before this one had no version at all.
+     */
+    private static final int iSAVE_VERSION = 2;
+
     /**
      * Saves the current game member variables to a binary file.
      * @param tetGame The current instance of the game.
      */
     public static void saveGame(Tetris tetGame) {
+        GameEvents.SaveGame evtSave = new GameEvents.SaveGame();
+        evtSave.begin();
+        long lStart = System.nanoTime();
         try {
             /*
 			 * Save a serialized version of the individual member variables
@@ -31,6 +41,12 @@ public class StateHandler {
         catch (IOException e) {
             e.printStackTrace();
         }
+        Metrics.latSAVE.recordSince(lStart);
+        evtSave.end();
+        if (evtSave.shouldCommit()) {
+            evtSave.setState(tetGame.getEngine());
+            evtSave.commit();
+        }
     }
 
     /**
@@ -44,16 +60,25 @@ public class StateHandler {
 	     * a binary file, and set each member variable in the received Tetris
 	     * instance
 		 */
+        GameEvents.LoadGame evtLoad = new GameEvents.LoadGame();
+        evtLoad.begin();
+        long lStart = System.nanoTime();
         try {
             ObjectInputStream objIn = new ObjectInputStream(
                     new FileInputStream("saveGame.bin"));
             readVariables(tetGame, objIn);
             objIn.close();
         }
-        catch (IOException | ClassNotFoundException e) {
+        catch (IOException | ClassNotFoundException | ClassCastException e) {
             System.out.println("Could not load the previous game state");
             e.printStackTrace();
         }
+        Metrics.latLOAD.recordSince(lStart);
+        evtLoad.end();
+        if (evtLoad.shouldCommit()) {
+            evtLoad.setState(tetGame.getEngine());
+            evtLoad.commit();
+        }
     }
 
     /**
@@ -64,47 +89,77 @@ public class StateHandler {
      */
     private static void writeVariables(Tetris tetGame, ObjectOutputStream objOut) throws
                                                                                   IOException {
+        objOut.writeObject(iSAVE_VERSION);
         objOut.writeObject(tetGame.isNewGame());
         objOut.writeObject(tetGame.isGameOver());
         objOut.writeObject(tetGame.isPaused());
         objOut.writeObject(tetGame.getScore());
         objOut.writeObject(tetGame.getLevel());
-        objOut.writeObject(tetGame.getGameSpeed());
+        objOut.writeObject(tetGame.getLines());
         objOut.writeObject(tetGame.getPieceType());
         objOut.writeObject(tetGame.getNextPieceType());
         objOut.writeObject(tetGame.getPieceCol());
         objOut.writeObject(tetGame.getPieceRow());
         objOut.writeObject(tetGame.getPieceRotation());
-        objOut.writeObject(tetGame.getBoard().getTiles());
+        objOut.writeObject(tetGame.getEngine().getBoard().getTiles());
         objOut.writeObject(tetGame.getBoard().getAlphaAmount());
         objOut.writeObject(tetGame.getBoard().getAlphaFactor());
-        objOut.writeObject(tetGame.getDropCooldown());
+        objOut.writeObject(tetGame.getSpawnDelay());
     }
 
     /**
      * Loads the required member variables of Tetris for recovering a
-     * previous game state.
+     * previous game state. Every variable is read before any of them is
+     * set, so a save that can't be read leaves the current game as it was.
      * @param tetGame The current instance of the game.
      * @param objIn The file to read from.
      */
     private static void readVariables(Tetris tetGame, ObjectInputStream objIn) throws
                                                                                IOException,
                                                                                ClassNotFoundException {
-        tetGame.setNewGame((boolean) objIn.readObject());
-        tetGame.setGameOver((boolean)objIn.readObject());
-        tetGame.setPaused((boolean)objIn.readObject());
-        tetGame.setScore((int)objIn.readObject());
-        tetGame.setLevel((int)objIn.readObject());
-        tetGame.setGameSpeed((float)objIn.readObject());
-        tetGame.setPieceType((TileType) objIn.readObject());
-        tetGame.setNextPieceType((TileType) objIn.readObject());
-        tetGame.setPieceCol((int) objIn.readObject());
-        tetGame.setPieceRow((int) objIn.readObject());
-        tetGame.setPieceRotation((int) objIn.readObject());
-        tetGame.getBoard().setTiles ((TileType[][]) objIn.readObject());
-        tetGame.getBoard().setAlphaAmount ((float) objIn.readObject());
-        tetGame.getBoard().setAlphaFactor ((float) objIn.readObject());
-        tetGame.setDropCooldown((int) objIn.readObject());
+        Object objVersion = objIn.readObject();
+        if (!(objVersion instanceof Integer) || (int) objVersion != iSAVE_VERSION) {
+            throw new InvalidObjectException("The game was saved by another version");
+        }
+        boolean bNewGame = (boolean) objIn.readObject();
+        boolean bGameOver = (boolean) objIn.readObject();
+        boolean bPaused = (boolean) objIn.readObject();
+        int iScore = (int) objIn.readObject();
+        int iLevel = (int) objIn.readObject();
+        int iLines = (int) objIn.readObject();
+        TileType tilPiece = (TileType) objIn.readObject();
+        TileType tilNext = (TileType) objIn.readObject();
+        int iPieceCol = (int) objIn.readObject();
+        int iPieceRow = (int) objIn.readObject();
+        int iPieceRotation = (int) objIn.readObject();
+        TileType[][] tilTiles = (TileType[][]) objIn.readObject();
+        float fAlphaAmount = (float) objIn.readObject();
+        float fAlphaFactor = (float) objIn.readObject();
+        int iSpawnDelay = (int) objIn.readObject();
+        Board boaBoard = tetGame.getEngine().getBoard();
+        if (tilTiles.length != boaBoard.getRowCount()
+                || tilTiles[0].length != boaBoard.getColCount()) {
+            throw new InvalidObjectException("The game was saved on a board of another size");
+        }
+
+        /*
+         * The whole save has been read, so it can be applied.
+         */
+        tetGame.setNewGame(bNewGame);
+        tetGame.setGameOver(bGameOver);
+        tetGame.setPaused(bPaused);
+        tetGame.setScore(iScore);
+        tetGame.setLevel(iLevel);
+        tetGame.setLines(iLines);
+        tetGame.setPieceType(tilPiece);
+        tetGame.setNextPieceType(tilNext);
+        tetGame.setPieceCol(iPieceCol);
+        tetGame.setPieceRow(iPieceRow);
+        tetGame.setPieceRotation(iPieceRotation);
+        boaBoard.setTiles(tilTiles);
+        tetGame.getBoard().setAlphaAmount(fAlphaAmount);
+        tetGame.getBoard().setAlphaFactor(fAlphaFactor);
+        tetGame.setSpawnDelay(iSpawnDelay);
     }
 
-}
\ No newline at end of file
+}
@@ -4,6 +4,8 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
 import java.util.Random;
 
 import static tetris.StateHandler.loadGame;
@@ -29,10 +31,21 @@ public class Tetris extends JFrame {
 	private static final long FRAME_TIME = 1000L / 50L;
 	
 	/**
-	 * The number of pieces that exist.
+	 * The keys of each player, indexed by the {@code GameEngine} action they
+	 * are bound to: left, right, soft drop, hard drop, rotate anticlockwise
+	 * and rotate clockwise. There can be as many players as rows.
 	 */
-	private static final int TYPE_COUNT = TileType.values().length;
-		
+	private static final int[][] iPLAYER_KEYS = {
+		{KeyEvent.VK_A, KeyEvent.VK_D, KeyEvent.VK_S,
+		 KeyEvent.VK_W, KeyEvent.VK_Q, KeyEvent.VK_E},
+		{KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT, KeyEvent.VK_DOWN,
+		 KeyEvent.VK_UP, KeyEvent.VK_COMMA, KeyEvent.VK_PERIOD},
+		{KeyEvent.VK_J, KeyEvent.VK_L, KeyEvent.VK_K,
+		 KeyEvent.VK_I, KeyEvent.VK_U, KeyEvent.VK_O},
+		{KeyEvent.VK_NUMPAD4, KeyEvent.VK_NUMPAD6, KeyEvent.VK_NUMPAD5,
+		 KeyEvent.VK_NUMPAD8, KeyEvent.VK_NUMPAD7, KeyEvent.VK_NUMPAD9}
+	};
+
 	/**
 	 * The BoardPanel instance.
 	 */
@@ -42,6 +55,16 @@ public class Tetris extends JFrame {
 	 * The SidePanel instance.
 	 */
 	private SidePanel side;
+
+	/**
+	 * Draws every board side by side in battle mode.
+	 */
+	private BattlePanel batBattle;
+
+	/**
+	 * The game of each player. There is only one outside of battle mode.
+	 */
+	private GameEngine[] engEngines;
 	
 	/**
 	 * Whether or not the game is paused.
@@ -60,62 +83,11 @@ public class Tetris extends JFrame {
 	private boolean isGameOver;
 	
 	/**
-	 * The current level we're on.
-	 */
-	private int iLevel;
-	
-	/**
-	 * The current score.
-	 */
-	private int iScore;
-	
-	/**
-	 * The Random number generator. This is used to
-	 * spit out pieces randomly.
+	 * The Random number generator. This is used to pick the seed of the
+	 * pieces of each game.
 	 */
 	private Random rRandom;
 	
-	/**
-	 * The clock that handles the update logic.
-	 */
-	private Clock lLogicTimer;
-				
-	/**
-	 * The current type of tile.
-	 */
-	private TileType tilCurrentType;
-	
-	/**
-	 * The next type of tile.
-	 */
-	private TileType tilNextType;
-		
-	/**
-	 * The current column of our tile.
-	 */
-	private int iCurrentCol;
-	
-	/**
-	 * The current row of our tile.
-	 */
-	private int iCurrentRow;
-	
-	/**
-	 * The current rotation of our tile.
-	 */
-	private int iCurrentRotation;
-		
-	/**
-	 * Ensures that a certain amount of time passes after a piece is
-	 * spawned before we can drop it.
-	 */
-	private int iDropCooldown;
-	
-	/**
-	 * The speed of the game.
-	 */
-	private float fGameSpeed;
-
 	/**
 	 * The  first sound for each time a tile falls to the bottom.
 	 */
@@ -130,9 +102,9 @@ public class Tetris extends JFrame {
          */
         private SoundClip sOver;
 	/**
-	 * The sound for the game
+	 * The music for the game, streamed while it plays.
 	 */
-	private SoundClip sTrack;
+	private MusicStream sTrack;
         
 	/**
 	 * Check whether the game is paused or not
@@ -152,6 +124,62 @@ public class Tetris extends JFrame {
 	 */
 	private ShakeFrame shaShaker;
 
+	/**
+	 * The sparks thrown off the board shown in the window.
+	 */
+	private ParticleSystem parParticles;
+
+	/**
+	 * Loads the sounds and images of the game in the background.
+	 */
+	private AssetManager assAssets;
+
+	/**
+	 * The frame and tick instrumentation.
+	 */
+	private Metrics metMetrics;
+
+	/**
+	 * The key presses and releases waiting to be applied by the game loop.
+	 */
+	private InputQueue queInput;
+
+	/**
+	 * The connection to the battle server, or null when playing locally.
+	 */
+	private NetClient cliNetwork;
+
+	/**
+	 * The feed of the games for spectators, or null when nobody watches.
+	 */
+	private SpectatorFeed feeSpectators;
+
+	/**
+	 * The panels of the spectator windows.
+	 */
+	private SpectatorPanel[] speSpectators;
+
+	/**
+	 * The finished single player games, or null if they can't be kept.
+	 */
+	private Leaderboard ldbScores;
+
+	/**
+	 * When the current game started, from {@code System.nanoTime()}.
+	 */
+	private long lGameStart;
+
+	/**
+	 * Whether or not the current game was loaded from a save, which leaves
+	 * it off the leaderboard.
+	 */
+	private boolean bLoadedGame;
+
+	/**
+	 * Records the single player games, or null if they aren't recorded.
+	 */
+	private ReplayRecorder recReplays;
+
 	/**
 	 * Creates a new Tetris instance. Sets up the window's properties,
 	 * and adds a controller listener.
@@ -160,79 +188,116 @@ public class Tetris extends JFrame {
 	private void setBasicProperties(){
 		setLayout(new BorderLayout());
 		setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
-		setResizable(false);
+		// The board is drawn at whatever size fits the window
+		setResizable(true);
 	}
 
 	private void initBoardPanel(){
 		this.board = new BoardPanel(this);
 		this.side = new SidePanel(this);
+		this.batBattle = new BattlePanel(this);
 		/**
 		 * Set the background image to black
 		 **/
 		board.setImage(0);
 	}
 
-	private void addInstancestoWindow(){
-		add(board, BorderLayout.CENTER);
-		add(side, BorderLayout.EAST);
-	}
-
-	/*
-    * Drop - When pressed, we check to see that the game is not
-    * paused and that there is no drop cooldown, then set the
-    * logic timer to run at a speed of 25 cycles per second.
-    */
-	private void goDown(){
-		if(!isPaused && iDropCooldown == 0){
-			lLogicTimer.setCyclesPerSecond(25.0f);
+	/**
+	 * Opens the spectator windows asked for by the {@code tetris.spectators}
+	 * system property. They all follow one feed of the local games.
+	 */
+	private void initSpectators(){
+		int iSpectators = Integer.getInteger("tetris.spectators", 0);
+		if(iSpectators <= 0 || cliNetwork != null || !engEngines[0].getBoard().isStandard()
+				|| !TileType.isStandardSet()) {
+			this.speSpectators = new SpectatorPanel[0];
+			return;
 		}
-	}
-	/*
-    * Move Left - When pressed, we check to see that the game is
-    * not paused and that the position to the left of the current
-    * position is valid. If so, we decrement the current column by 1.
-    */
-	private void moveLeft(){
-		if(!isPaused && board.isValidAndEmpty(tilCurrentType, iCurrentCol - 1,
-											  iCurrentRow, iCurrentRotation)) {
-			iCurrentCol--;
+		this.feeSpectators = new SpectatorFeed(engEngines);
+		this.speSpectators = new SpectatorPanel[iSpectators];
+		for(int iSpectator = 0; iSpectator < iSpectators; iSpectator++) {
+			speSpectators[iSpectator] = new SpectatorPanel(feeSpectators.subscribe());
+			JFrame jfrWindow = new JFrame("Tetris - Spectator " + (iSpectator + 1));
+			jfrWindow.add(speSpectators[iSpectator]);
+			jfrWindow.setResizable(false);
+			jfrWindow.pack();
+			jfrWindow.setVisible(true);
 		}
 	}
-	/*
-    * Move Right - When pressed, we check to see that the game is
-    * not paused and that the position to the right of the current
-    * position is valid. If so, we increment the current column by 1.
-    */
-	private void moveRight(){
-		if(!isPaused && board.isValidAndEmpty(tilCurrentType, iCurrentCol + 1,
-											  iCurrentRow, iCurrentRotation)) {
-			iCurrentCol++;
+
+	private void addInstancestoWindow(){
+		if(isBattle()){
+			add(batBattle, BorderLayout.CENTER);
+		}else{
+			add(board, BorderLayout.CENTER);
+			add(side, BorderLayout.EAST);
 		}
 	}
-	/*
-    * Rotate Anticlockwise - When pressed, check to see that the game is not paused
-    * and then attempt to rotate the piece anticlockwise. Because of the size and
-    * complexity of the rotation code, as well as it's similarity to clockwise
-    * rotation, the code for rotating the piece is handled in another method.
-    */
-	private void rotateAntiClockwise(){
-		// Avoid trying to rotate when the game is being closed or paused
-		if(!isPaused && tilCurrentType != null){
-			rotatePiece((iCurrentRotation == 0) ? 3 : iCurrentRotation - 1);
+
+	/**
+	 * Creates the game of each player. The number of players comes from the
+	 * {@code tetris.players} system property, 1 by default and up to 4 in
+	 * battle mode. When the {@code tetris.server} system property names a
+	 * battle server, the games are only copies of the ones on the server.
+	 */
+	private void initEngines(){
+		int iPlayers = Math.max(1, Math.min(iPLAYER_KEYS.length,
+				Integer.getInteger("tetris.players", 1)));
+		String sServer = System.getProperty("tetris.server");
+		if(sServer != null) {
+			try {
+				this.cliNetwork = new NetClient(sServer);
+				iPlayers = 2;
+			} catch(IOException ioeException) {
+				System.err.println("Couldn't reach " + sServer + ", playing locally: "
+						+ ioeException);
+			}
 		}
-	}
-	/*
-    * Rotate Clockwise - When pressed, check to see that the game is not paused
-    * and then attempt to rotate the piece clockwise. Because of the size and
-    * complexity of the rotation code, as well as it's similarity to anticlockwise
-    * rotation, the code for rotating the piece is handled in another method.
-    */
-	private void rotateClockwise(){
-		// Avoid trying to rotate when the game is being closed or paused
-		if(!isPaused && tilCurrentType != null) {
-			rotatePiece((iCurrentRotation == 3) ? 0 : iCurrentRotation + 1);
+		RotationSystem rotRotation = RotationSystem.fromSystemProperties();
+		GameEngine.Listener lisListener = new GameEngine.Listener() {
+
+			@Override
+			public void pieceLocked(GameEngine engGame) {
+				playLockSound();
+			}
+
+			@Override
+			public void hardDropped(GameEngine engGame, int iRows) {
+				if(engGame == getEngine()) {
+					parParticles.emitDrop(engGame.getPieceType(), engGame.getPieceCol(),
+										  engGame.getPieceRow(), engGame.getPieceRotation());
+				}
+			}
+
+			@Override
+			public void linesCleared(GameEngine engGame, int iLines, int iGarbage) {
+				shaShaker.startShaking();
+				if(engGame == getEngine()) {
+					parParticles.emitClear(engGame.getBoard());
+				}
+				sendGarbage(engGame, iGarbage);
+			}
+
+			@Override
+			public void gameOver(GameEngine engGame) {
+				playerToppedOut();
+			}
+		};
+		this.engEngines = new GameEngine[iPlayers];
+		for(int iPlayer = 0; iPlayer < iPlayers; iPlayer++){
+			// Only single player games can be played on boards of other sizes
+			Board boaBoard = iPlayers == 1 ? Board.fromSystemProperties() : new Board();
+			engEngines[iPlayer] = new GameEngine(rotRotation,
+					InputState.fromSystemProperties(), boaBoard);
+			engEngines[iPlayer].setListener(lisListener);
+		}
+		String sReplays = System.getProperty("tetris.replays");
+		if(sReplays != null && iPlayers == 1) {
+			this.recReplays = new ReplayRecorder(new File(sReplays));
+			engEngines[0].setRecorder(recReplays);
 		}
 	}
+
 	/*
     * Pause Game - When pressed, check to see that we're currently
     * playing a game.
@@ -242,7 +307,10 @@ public class Tetris extends JFrame {
     * minute or so.
     */
 	private void pauseGame(){
-
+		// The server doesn't stop for anyone
+		if(cliNetwork != null) {
+			return;
+		}
 		bPaused = !bPaused;
 		if(bPaused){
 			sTrack.stop();
@@ -256,7 +324,9 @@ public class Tetris extends JFrame {
 		}
 		if(!isGameOver && !isNewGame) {
 			isPaused = !isPaused;
-			lLogicTimer.setPaused(isPaused);
+			for(GameEngine engGame : engEngines) {
+				engGame.setPaused(isPaused);
+			}
 		}
 	}
 	/*
@@ -264,29 +334,47 @@ public class Tetris extends JFrame {
      * game over or new game state. If so, reset the game.
      */
 	private void startAgain(){
+		if(cliNetwork != null) {
+			// The match starts when the server found an opponent
+			if(isGameOver || isNewGame) {
+				cliNetwork.join();
+			}
+			return;
+		}
 		if(isGameOver || isNewGame){
-
+			// Only the board images have to be ready, sounds can come later
+			assAssets.awaitCritical();
 			resetGame();
 		}
 	}
 
 	/*
      * Save Game - When pressed, check to see that we're currently
-     * playing a game. If so, save the game's current state.
+     * playing a single player game. If so, save the game's current state.
      */
 	private void save(){
-		if(!isGameOver && !isNewGame) {
+		if(!isGameOver && !isNewGame && !isBattle()) {
 			saveGame(Tetris.this);
 		}
 	}
 
 	/*
      * Load Game - When pressed, reset the game and load a
-     * previous game state.
+     * previous single player game state.
      */
 	private void load(){
-		loadGame(Tetris.this);
-		lLogicTimer.reset();
+		if(!isBattle()) {
+			loadGame(Tetris.this);
+			getEngine().resetTimer();
+			// A loaded game can't be played again from its seed
+			bLoadedGame = true;
+			if(recReplays != null) {
+				recReplays.discard();
+			}
+			if(feeSpectators != null) {
+				feeSpectators.writeKeyframe();
+			}
+		}
 	}
 
 	/**
@@ -305,29 +393,36 @@ public class Tetris extends JFrame {
 		}
 	}
 
+	/**
+	 * Applies every key press and release queued since the last frame. This
+	 * runs on the game loop thread, which makes it the only thread that
+	 * changes the state of the game.
+	 */
+	private void processInput(){
+		int iCommand;
+		while((iCommand = queInput.poll()) != InputQueue.iEMPTY){
+			if((iCommand & InputQueue.iRELEASED) != 0){
+				keyRelease(iCommand & ~InputQueue.iRELEASED,
+						   queInput.getLastTimestamp());
+			}else{
+				keyAction(iCommand, queInput.getLastTimestamp());
+			}
+			Metrics.latINPUT.recordSince(queInput.getLastTimestamp());
+		}
+	}
+
 	/**
 	 * Sets the action based on the key pressed
-	 * @param keyEvent The key pressed
+	 * @param iKeyCode The key pressed
+	 * @param lTime When the key was pressed
 	 */
-	private void keyAction(KeyEvent keyEvent){
+	private void keyAction(int iKeyCode, long lTime){
 		// Do this only if we're in running game
 		if(!this.isGameOver()) {
-			switch (keyEvent.getKeyCode()) {
-				case KeyEvent.VK_S:
-					goDown();
-					break;
-				case KeyEvent.VK_A:
-					moveLeft();
-					break;
-				case KeyEvent.VK_D:
-					moveRight();
-					break;
-				case KeyEvent.VK_Q:
-					rotateAntiClockwise();
-					break;
-				case KeyEvent.VK_E:
-					rotateClockwise();
-					break;
+			if(playerKeyAction(iKeyCode, lTime, true)) {
+				return;
+			}
+			switch (iKeyCode) {
 				case KeyEvent.VK_P:
 					pauseGame();
 					break;
@@ -335,20 +430,59 @@ public class Tetris extends JFrame {
 					stopTrack();
 					break;
 				default:
-					keyAction2(keyEvent);
+					keyAction2(iKeyCode);
 					break;
 			}
 		}
 		else {
-			keyAction2(keyEvent);
+			keyAction2(iKeyCode);
 		}
 	}
+
+	/**
+	 * Applies a key to the game of the player it is bound to.
+	 * @param iKeyCode The key pressed or released
+	 * @param lTime When the key was pressed or released
+	 * @param bPressed Whether the key was pressed or released
+	 * @return Whether or not the key is bound to a player
+	 */
+	private boolean playerKeyAction(int iKeyCode, long lTime, boolean bPressed){
+		/*
+		 * Against the server, the keys of the first player are sent to it
+		 * whichever game is ours.
+		 */
+		if(cliNetwork != null) {
+			int[] iKeys = iPLAYER_KEYS[0];
+			for(int iAction = 0; iAction < iKeys.length; iAction++) {
+				if(iKeys[iAction] == iKeyCode) {
+					cliNetwork.sendAction(iAction, bPressed);
+					return true;
+				}
+			}
+			return false;
+		}
+		for(int iPlayer = 0; iPlayer < engEngines.length; iPlayer++) {
+			int[] iKeys = iPLAYER_KEYS[iPlayer];
+			for(int iAction = 0; iAction < iKeys.length; iAction++) {
+				if(iKeys[iAction] == iKeyCode) {
+					if(bPressed) {
+						engEngines[iPlayer].pressAction(iAction, lTime);
+					} else {
+						engEngines[iPlayer].releaseAction(iAction, lTime);
+					}
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Sets the action based on the key pressed
-	 * @param keyEvent The key pressed
+	 * @param iKeyCode The key pressed
 	 */
-	private void keyAction2(KeyEvent keyEvent){
-		switch (keyEvent.getKeyCode()){
+	private void keyAction2(int iKeyCode){
+		switch (iKeyCode){
 			case KeyEvent.VK_ENTER:
 				startAgain();
 				break;
@@ -358,16 +492,39 @@ public class Tetris extends JFrame {
 			case KeyEvent.VK_C:
 				load();
 				break;
+			case KeyEvent.VK_F3:
+				metMetrics.toggleOverlay();
+				break;
 			default:
 				break;
 		}
 	}
 
+	/**
+	 * Sets the action based on the key released
+	 * @param iKeyCode The key released
+	 * @param lTime When the key was released
+	 */
+	private void keyRelease(int iKeyCode, long lTime){
+		playerKeyAction(iKeyCode, lTime, false);
+	}
+
 	/*
      * Here we resize the frame to hold the BoardPanel and SidePanel
      * instances, center the window on the screen, and show it to the user.
+     * With the tetris.fullscreen system property the window takes the whole
+     * screen in exclusive mode instead, where the screen supports it.
 	 */
 	private void resize(){
+		GraphicsDevice gdeScreen = GraphicsEnvironment.getLocalGraphicsEnvironment()
+				.getDefaultScreenDevice();
+		if(Boolean.getBoolean("tetris.fullscreen") && gdeScreen.isFullScreenSupported()) {
+			setUndecorated(true);
+			setResizable(false);
+			gdeScreen.setFullScreenWindow(this);
+			validate();
+			return;
+		}
 		pack();
 		setLocationRelativeTo(null);
 		setVisible(true);
@@ -378,6 +535,22 @@ public class Tetris extends JFrame {
 		 * Set the basic properties of the window.
 		 */
 		super("Tetris");
+		/*
+		 * Start decoding every asset right away so the title screen can be
+		 * shown while they load.
+		 */
+		this.assAssets = new AssetManager();
+		assAssets.loadAll();
+		this.shaShaker = new ShakeFrame();
+		this.parParticles = new ParticleSystem();
+		this.metMetrics = Metrics.getInstance();
+		this.queInput = new InputQueue();
+		try {
+			this.ldbScores = new Leaderboard(new File("leaderboard.log"), 100);
+		} catch(IOException ioeException) {
+			System.err.println("The leaderboard is not available: " + ioeException);
+		}
+		initEngines();
 		setBasicProperties();
 		/*
 		 * Initialize the BoardPanel and SidePanel instances.
@@ -390,34 +563,24 @@ public class Tetris extends JFrame {
 		addInstancestoWindow();
 		
 		/*
-		 * Adds a custom anonymous KeyListener to the frame.
+		 * Adds a custom anonymous KeyListener to the frame. The listener runs
+		 * on the AWT event thread, so it only queues the keys for the game
+		 * loop to apply at the start of its next frame.
 		 */
 		addKeyListener(new KeyAdapter() {
 			
 			@Override
 			public void keyPressed(KeyEvent keyEvent) {
-				keyAction(keyEvent);
+				queInput.offer(keyEvent.getKeyCode());
 			}
 			
 			@Override
 			public void keyReleased(KeyEvent keyEvent) {
-				switch(keyEvent.getKeyCode()) {
-				/*
-				 * Drop - When released, we set the speed of the logic timer
-				 * back to whatever the current game speed is and clear out
-				 * any cycles that might still be elapsed.
-				 */
-				case KeyEvent.VK_S:
-					// Do this only if we are currently inside a game
-					if(!Tetris.this.isGameOver()){
-						lLogicTimer.setCyclesPerSecond(fGameSpeed);
-						lLogicTimer.reset();
-					}
-					break;
-				}	
+				queInput.offer(keyEvent.getKeyCode() | InputQueue.iRELEASED);
 			}
 		});
 		resize();
+		initSpectators();
 	}
 
 	/**
@@ -425,48 +588,49 @@ public class Tetris extends JFrame {
 	 */
 	private void startGame() {
 		/*
-		 * Initialize our Random number generator, logic timer, and new game variables.
+		 * Initialize our Random number generator and new game variables. The
+		 * games keep their logic timers paused until the user presses enter
+		 * to start them.
 		 */
 		this.rRandom = new Random();
 		this.isNewGame = true;
-		this.fGameSpeed = 1.0f;
-		this.sBottom = new SoundClip("zap1.wav");
-                this.sBottom2 = new SoundClip("zap2.wav");
-                this.sOver = new SoundClip("over.wav");
-		this.sTrack = new SoundClip("tetris.wav");
+		this.sBottom = assAssets.getSound("zap1.wav");
+                this.sBottom2 = assAssets.getSound("zap2.wav");
+                this.sOver = assAssets.getSound("over.wav");
+		this.sTrack = new MusicStream("tetris.wav");
                 this.iAux = 1;
 		this.bPaused = false;
 		this.bCheck = true;
-		this.shaShaker = new ShakeFrame(this);
-
-		/*
-		 * Setup the timer to keep the game from running before the user presses enter
-		 * to start it.
-		 */
-		this.lLogicTimer = new Clock(fGameSpeed);
-		lLogicTimer.setPaused(true);
 		
 		while(true) {
                 
                         
 			//Get the time that the frame started.
 			long start = System.nanoTime();
-			//Update the logic timer.
-			lLogicTimer.update();
-			
+			//Apply the keys pressed since the last frame.
+			processInput();
 			/*
-			 * If a cycle has elapsed on the timer, we can update the game and
-			 * move our current piece down.
+			 * Run a frame of every game. They all run in lockstep on this
+			 * thread, so garbage sent during a frame arrives in the same one.
+			 * Against the server, the games just take what it sent instead.
 			 */
-			if(lLogicTimer.hasElapsedCycle()) {
-				updateGame();
+			if(cliNetwork != null) {
+				applyNetwork();
+			} else {
+				for(GameEngine engGame : engEngines) {
+					engGame.update(start);
+				}
 			}
-		
-			//Decrement the drop cool down if necessary.
-			if(iDropCooldown > 0) {
-				iDropCooldown--;
+			if(feeSpectators != null) {
+				feeSpectators.capture();
 			}
 			
+			//Advance the screen shake, if any.
+			shaShaker.update();
+
+			//Move the sparks, if any.
+			parParticles.update(getEngine().getBoard().getVisibleRowCount());
+
 			//Display the window to the user.
 			renderGame();
 			
@@ -476,83 +640,31 @@ public class Tetris extends JFrame {
 			long delta = (System.nanoTime() - start) / 1000000L;
 			if(delta < FRAME_TIME) {
 				try {
+					long lSleepStart = System.nanoTime();
 					Thread.sleep(FRAME_TIME - delta);
+					metMetrics.recordSleep((FRAME_TIME - delta) * 1000000L,
+										   System.nanoTime() - lSleepStart);
 				} catch(Exception e) {
 					e.printStackTrace();
 				}
 			}
+			metMetrics.endFrame(start, FRAME_TIME * 1000000L);
 		}
 	}
 	
 	/**
-	 * Updates the game and handles the bulk of it's logic.
-	 */
-	private void updateGame() {
-		/*
-		 * Check to see if the piece's position can move down to the next row.
-		 */
-		if(board.isValidAndEmpty(tilCurrentType, iCurrentCol, iCurrentRow + 1, iCurrentRotation)) {
-			//Increment the current row if it's safe to do so.
-			iCurrentRow++;
-		} else {
-			/*
-			 * We've either reached the bottom of the board, or landed on another piece, so
-			 * we need to add the piece to the board.
-			 */
-			board.addPiece(tilCurrentType, iCurrentCol, iCurrentRow, iCurrentRotation);
-			if (iAux == 1){
-				sBottom.play();
-				iAux = 0;
-			}else{
-				sBottom2.play();
-				iAux = 1;
-			}
-
-			/*
-			 * Check to see if adding the new piece resulted in any cleared lines. If so,
-			 * increase the player's score. (Up to 4 lines can be cleared in a single go;
-			 * [1 = 100pts, 2 = 200pts, 3 = 400pts, 4 = 800pts]).
-			 */
-			int cleared = board.checkLines();
-			if(cleared > 0) {
-				iScore += 50 << cleared;
-				shaShaker.startShaking();
-			}
-			
-			/*
-			 * Increase the speed slightly for the next piece and update the game's timer
-			 * to reflect the increase.
-			 */
-			fGameSpeed += 0.035f;
-			lLogicTimer.setCyclesPerSecond(fGameSpeed);
-			lLogicTimer.reset();
-			
-			/*
-			 * Set the drop cooldown so the next piece doesn't automatically come flying
-			 * in from the heavens immediately after this piece hits if we've not reacted
-			 * yet. (~0.5 second buffer).
-			 */
-			iDropCooldown = 25;
-			
-			/*
-			 * Update the difficulty level. This has no effect on the game, and is only
-			 * used in the "Level" string in the SidePanel.
-			 */
-			iLevel = (int)(fGameSpeed * 1.70f);
-			
-			/*
-			 * Spawn a new piece to control.
-			 */
-			spawnPiece();
-		}		
-	}
-	
-	/**
-	 * Forces the BoardPanel and SidePanel to repaint.
+	 * Forces the panels of the window to repaint.
 	 */
 	private void renderGame() {
-		board.repaint();
-		side.repaint();
+		if(isBattle()) {
+			batBattle.repaint();
+		} else {
+			board.repaint();
+			side.repaint();
+		}
+		for(SpectatorPanel speSpectator : speSpectators) {
+			speSpectator.repaint();
+		}
 	}
 	
 	/**
@@ -560,16 +672,21 @@ public class Tetris extends JFrame {
 	 * of a new game.
 	 */
 	private void resetGame() {
-		this.iLevel = 1;
-		this.iScore = 0;
-		this.fGameSpeed = 1.0f;
-		this.tilNextType = TileType.values()[rRandom.nextInt(TYPE_COUNT)];
 		this.isNewGame = false;
 		this.isGameOver = false;		
-		board.clear();
-		lLogicTimer.reset();
-		lLogicTimer.setCyclesPerSecond(fGameSpeed);
-		spawnPiece();
+		/*
+		 * Every player gets the same pieces in the same order.
+		 */
+		long lSeed = rRandom.nextLong();
+		for(GameEngine engGame : engEngines) {
+			engGame.reset(lSeed);
+		}
+		parParticles.clear();
+		if(feeSpectators != null) {
+			feeSpectators.writeKeyframe();
+		}
+		this.lGameStart = System.nanoTime();
+		this.bLoadedGame = false;
 		sTrack.setLooping(true);
 		sTrack.play();
 		sTrack.setLooping(true);
@@ -577,91 +694,142 @@ public class Tetris extends JFrame {
 	}
 
 	/**
-	 * Spawns a new piece and resets our piece's variables to their default
-	 * values.
+	 * Applies the packets received from the server since the last frame and
+	 * plays the sounds of what happened in them.
 	 */
-	private void spawnPiece() {
-		/*
-		 * Poll the last piece and reset our position and rotation to
-		 * their default variables, then pick the next piece to use.
-		 */
-		this.tilCurrentType = tilNextType;
-		this.iCurrentCol = tilCurrentType.getSpawnColumn();
-		this.iCurrentRow = tilCurrentType.getSpawnRow();
-		this.iCurrentRotation = 0;
-		this.tilNextType = TileType.values()[rRandom.nextInt(TYPE_COUNT)];
-		
-		/*
-		 * If the spawn point is invalid, we need to pause the game and flag that we've lost
-		 * because it means that the pieces on the board have gotten too high.
-		 */
-		if(!board.isValidAndEmpty(tilCurrentType, iCurrentCol, iCurrentRow, iCurrentRotation)) {
+	private void applyNetwork() {
+		int iEvents = cliNetwork.apply(engEngines);
+		if((iEvents & NetClient.iEVENT_START) != 0) {
+			this.isNewGame = false;
+			this.isGameOver = false;
+			sTrack.setLooping(true);
+			sTrack.play();
+			board.setImage(1);
+		}
+		if((iEvents & NetClient.iEVENT_LOCK) != 0) {
+			playLockSound();
+		}
+		if((iEvents & NetClient.iEVENT_GARBAGE) != 0) {
+			shaShaker.startShaking();
+		}
+		if((iEvents & NetClient.iEVENT_OVER) != 0 && !isGameOver) {
+			endMatch();
+		}
+	}
+
+	/**
+	 * Plays the sound of a piece reaching the bottom, alternating between
+	 * the two sounds.
+	 */
+	private void playLockSound() {
+		if (iAux == 1){
+			sBottom.play();
+			iAux = 0;
+		}else{
+			sBottom2.play();
+			iAux = 1;
+		}
+	}
+
+	/**
+	 * Sends garbage rows to the next player after the sender that is still
+	 * in the game.
+	 * @param engSender The game that cleared the lines.
+	 * @param iGarbage The number of rows to send.
+	 */
+	private void sendGarbage(GameEngine engSender, int iGarbage) {
+		if(iGarbage <= 0 || !isBattle()) {
+			return;
+		}
+		int iSender = 0;
+		while(engEngines[iSender] != engSender) {
+			iSender++;
+		}
+		for(int i = 1; i < engEngines.length; i++) {
+			GameEngine engTarget = engEngines[(iSender + i) % engEngines.length];
+			if(!engTarget.isGameOver()) {
+				engTarget.receiveGarbage(iGarbage);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Called when a player tops out. The game is over once nobody is left,
+	 * or in battle mode once a single player is left.
+	 */
+	private void playerToppedOut() {
+		int iAlive = 0;
+		for(GameEngine engGame : engEngines) {
+			if(!engGame.isGameOver()) {
+				iAlive++;
+			}
+		}
+		if(iAlive > (isBattle() ? 1 : 0)) {
+			return;
+		}
+		endMatch();
+	}
+
+	/**
+	 * Stops the music and every game once the game is over.
+	 */
+	private void endMatch() {
                         sBottom.stop();
                         sBottom2.stop();
                         sTrack.stop();
                         sOver.play();
 						this.isGameOver = true;
                         board.setImage(0);
-						lLogicTimer.setPaused(true);
-		}		
+		//Stop the winner too.
+		for(GameEngine engGame : engEngines) {
+			engGame.setPaused(true);
+		}
+		recordScore();
 	}
 
 	/**
-	 * Attempts to set the rotation of the current piece to newRotation.
-	 * @param newRotation The rotation of the new peice.
+	 * Adds the single player game that just ended to the leaderboard, unless
+	 * it was loaded from a save and so doesn't come from its seed.
 	 */
-	private void rotatePiece(int newRotation) {
-		/*
-		 * Sometimes pieces will need to be moved when rotated to avoid clipping
-		 * out of the board (the I piece is a good example of this). Here we store
-		 * a temporary row and column in case we need to move the tile as well.
-		 */
-		int newColumn = iCurrentCol;
-		int newRow = iCurrentRow;
-		
-		/*
-		 * Get the insets for each of the sides. These are used to determine how
-		 * many empty rows or columns there are on a given side.
-		 */
-		int left = tilCurrentType.getLeftInset(newRotation);
-		int right = tilCurrentType.getRightInset(newRotation);
-		int top = tilCurrentType.getTopInset(newRotation);
-		int bottom = tilCurrentType.getBottomInset(newRotation);
-		
-		/*
-		 * If the current piece is too far to the left or right, move the piece away from the edges
-		 * so that the piece doesn't clip out of the map and automatically become invalid.
-		 */
-		if(iCurrentCol < -left) {
-			newColumn -= iCurrentCol - left;
-		} else if(iCurrentCol + tilCurrentType.getDimension() - right >=
-				BoardPanel.iCOL_COUNT) {
-			newColumn -= (iCurrentCol + tilCurrentType.getDimension() -
-					right) - BoardPanel.iCOL_COUNT + 1;
+	private void recordScore() {
+		if(ldbScores == null || isBattle() || cliNetwork != null || bLoadedGame) {
+			return;
 		}
-		
-		/*
-		 * If the current piece is too far to the top or bottom, move the piece away from the edges
-		 * so that the piece doesn't clip out of the map and automatically become invalid.
-		 */
-		if(iCurrentRow < -top) {
-			newRow -= iCurrentRow - top;
-		} else if(iCurrentRow + tilCurrentType.getDimension() - bottom >=
-				BoardPanel.iROW_COUNT) {
-			newRow -= (iCurrentRow + tilCurrentType.getDimension() - bottom)
-					- BoardPanel.iROW_COUNT + 1;
-		}
-		
-		/*
-		 * Check to see if the new position is acceptable. If it is, update the rotation and
-		 * position of the piece.
-		 */
-		if(board.isValidAndEmpty(tilCurrentType, newColumn, newRow, newRotation)) {
-			iCurrentRotation = newRotation;
-			iCurrentRow = newRow;
-			iCurrentCol = newColumn;
+		GameEngine engGame = getEngine();
+		try {
+			ldbScores.record(new Leaderboard.Entry(System.currentTimeMillis(),
+					engGame.getSeed(),
+					(System.nanoTime() - lGameStart) / 1000000L,
+					engGame.getScore(), engGame.getLevel(), engGame.getLines()));
+		} catch(IOException ioeException) {
+			System.err.println("Could not record the score: " + ioeException);
 		}
 	}
+
+	/**
+	 * Checks whether or not several players are playing against each other.
+	 * @return Whether or not the game is in battle mode.
+	 */
+	public boolean isBattle() {
+		return engEngines.length > 1;
+	}
+
+	/**
+	 * Gets the game of the first player, the only one outside of battle mode.
+	 * @return The game.
+	 */
+	public GameEngine getEngine() {
+		return engEngines[0];
+	}
+
+	/**
+	 * Gets the game of every player.
+	 * @return The games, in player order. Must not be modified.
+	 */
+	public GameEngine[] getEngines() {
+		return engEngines;
+	}
         
 	
 	/**
@@ -693,23 +861,31 @@ public class Tetris extends JFrame {
 	 * @return The score.
 	 */
 	public int getScore() {
-		return iScore;
+		return getEngine().getScore();
 	}
 	
+	/**
+	 * Gets the best score on the leaderboard.
+	 * @return The best score, or 0 if there is none.
+	 */
+	public int getBestScore() {
+		return ldbScores == null ? 0 : ldbScores.getBestScore();
+	}
+
 	/**
 	 * Gets the current level.
 	 * @return The level.
 	 */
 	public int getLevel() {
-		return iLevel;
+		return getEngine().getLevel();
 	}
 
 	/**
-	 * Gets the current game speed.
-	 * @return The game speed.
+	 * Gets the number of lines cleared.
+	 * @return The number of lines.
 	 */
-	public float getGameSpeed() {
-		return fGameSpeed;
+	public int getLines() {
+		return getEngine().getLines();
 	}
 	
 	/**
@@ -717,7 +893,7 @@ public class Tetris extends JFrame {
 	 * @return The piece type.
 	 */
 	public TileType getPieceType() {
-		return tilCurrentType;
+		return getEngine().getPieceType();
 	}
 	
 	/**
@@ -725,7 +901,7 @@ public class Tetris extends JFrame {
 	 * @return The next piece type.
 	 */
 	public TileType getNextPieceType() {
-		return tilNextType;
+		return getEngine().getNextPieceType();
 	}
 	
 	/**
@@ -733,7 +909,7 @@ public class Tetris extends JFrame {
 	 * @return The column.
 	 */
 	public int getPieceCol() {
-		return iCurrentCol;
+		return getEngine().getPieceCol();
 	}
 	
 	/**
@@ -741,7 +917,7 @@ public class Tetris extends JFrame {
 	 * @return The row.
 	 */
 	public int getPieceRow() {
-		return iCurrentRow;
+		return getEngine().getPieceRow();
 	}
 	
 	/**
@@ -749,7 +925,7 @@ public class Tetris extends JFrame {
 	 * @return The rotation.
 	 */
 	public int getPieceRotation() {
-		return iCurrentRotation;
+		return getEngine().getPieceRotation();
 	}
 
 	/**
@@ -761,12 +937,35 @@ public class Tetris extends JFrame {
 	}
 
 	/**
-	 * Gets the amount of time after a piece has been spawned before it can 
-	 * be dropped
-	 * @return The drop cooldown amount.
+	 * Gets the helper that shakes the contents of the window
+	 * @return The shaker.
+	 */
+	public ShakeFrame getShaker() {
+		return shaShaker;
+	}
+
+	/**
+	 * Gets the sparks thrown off the board shown in the window.
+	 * @return The particle system.
+	 */
+	public ParticleSystem getParticles() {
+		return parParticles;
+	}
+
+	/**
+	 * Gets the asset manager of the game
+	 * @return The asset manager.
+	 */
+	public AssetManager getAssets() {
+		return assAssets;
+	}
+
+	/**
+	 * Gets the logical frames left before the next piece spawns.
+	 * @return The number of frames, 0 while a piece is falling.
 	 */
-	public int getDropCooldown() {
-		return iDropCooldown;
+	public int getSpawnDelay() {
+		return getEngine().getSpawnDelay();
 	}
 
 	/**
@@ -775,6 +974,7 @@ public class Tetris extends JFrame {
 	 */
 	public void setPaused(boolean isPaused) {
 		this.isPaused = isPaused;
+		getEngine().setPaused(isPaused);
 	}
 	
 	/**
@@ -783,6 +983,7 @@ public class Tetris extends JFrame {
 	 */
 	public void setGameOver(boolean isGameOver) {
 		this.isGameOver = isGameOver;
+		getEngine().setGameOver(isGameOver);
 	}
 	
 	/**
@@ -798,7 +999,7 @@ public class Tetris extends JFrame {
 	 * @param iScore The score.
 	 */
 	public void setScore(int iScore) {
-		this.iScore = iScore;
+		getEngine().setScore(iScore);
 	}
 	
 	/**
@@ -806,15 +1007,15 @@ public class Tetris extends JFrame {
 	 * @param iLevel The level.
 	 */
 	public void setLevel(int iLevel) {
-		this.iLevel = iLevel;
+		getEngine().setLevel(iLevel);
 	}
 
 	/**
-	 * Sets the current game speed.
-	 * @param fGameSpeed The game speed.
+	 * Sets the number of lines cleared.
+	 * @param iLines The number of lines.
 	 */
-	public void setGameSpeed(float fGameSpeed) {
-		this.fGameSpeed = fGameSpeed;
+	public void setLines(int iLines) {
+		getEngine().setLines(iLines);
 	}
 	
 	/**
@@ -822,7 +1023,7 @@ public class Tetris extends JFrame {
 	 * @param tilCurrentType  piece type.
 	 */
 	public void setPieceType(TileType tilCurrentType) {
-		this.tilCurrentType = tilCurrentType;
+		getEngine().setPieceType(tilCurrentType);
 	}
 	
 	/**
@@ -830,7 +1031,7 @@ public class Tetris extends JFrame {
 	 * @param tilNextType The next piece.
 	 */
 	public void setNextPieceType(TileType tilNextType) {
-		this.tilNextType = tilNextType;
+		getEngine().setNextPieceType(tilNextType);
 	}
 	
 	/**
@@ -838,7 +1039,7 @@ public class Tetris extends JFrame {
 	 * @param iCurrentCol The column.
 	 */
 	public void setPieceCol(int iCurrentCol) {
-		this.iCurrentCol = iCurrentCol;
+		getEngine().setPieceCol(iCurrentCol);
 	}
 	
 	/**
@@ -846,7 +1047,7 @@ public class Tetris extends JFrame {
 	 * @param iCurrentRow The row.
 	 */
 	public void setPieceRow(int iCurrentRow) {
-		this.iCurrentRow = iCurrentRow;
+		getEngine().setPieceRow(iCurrentRow);
 	}
 	
 	/**
@@ -854,16 +1055,15 @@ public class Tetris extends JFrame {
 	 * @param iCurrentRotation The rotation.
 	 */
 	public void setPieceRotation(int iCurrentRotation) {
-		this.iCurrentRotation = iCurrentRotation;
+		getEngine().setPieceRotation(iCurrentRotation);
 	}
 
 	/**
-	 * Sets the amount of time after a piece has been spawned before it can 
-	 * be dropped
-	 * @param iDropCooldown The drop cooldown amount.
+	 * Sets the logical frames left before the next piece spawns.
+	 * @param iSpawnDelay The number of frames, 0 while a piece is falling.
 	 */
-	public void setDropCooldown(int iDropCooldown) {
-		this.iDropCooldown = iDropCooldown;
+	public void setSpawnDelay(int iSpawnDelay) {
+		getEngine().setSpawnDelay(iSpawnDelay);
 	}
 
 	/**
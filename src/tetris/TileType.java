@@ -1,274 +1,465 @@
 package tetris;
 
 import java.awt.Color;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * The {@code PieceType} enum describes the properties of the various pieces that can be used in the game.
+ * The {@code TileType} class describes the properties of the various pieces that can be used in the game.
+ * The pieces are read from text by {@code PieceLoader} when the class is
+ * loaded: the standard ones below, and the set named by the
+ * {@code tetris.pieces} system property if there is one. Each type is
+ * compiled once into its rotations, collision masks and insets, so that the
+ * engine only ever reads arrays of a type. Types are numbered like the
+ * constants of an enum, standard ones first.
  * @author Brendan Jones
  *
  */
-public enum TileType {
-
-	/**
-	 * Piece TypeI
-	 * Each boolean represents a block inside a grid of 4X4. When it has a
-	 * value of true, the block is part of that specific type of Tile.
-	 */
-	TypeI(new Color(BoardPanel.iCOLOR_MIN, BoardPanel.iCOLOR_MAX, BoardPanel
-			.iCOLOR_MAX), 4, 4, 1, new boolean[][] {
-		{
-			false,	false,	false,	false,
-			true,	true,	true,	true,
-			false,	false,	false,	false,
-			false,	false,	false,	false,
-		},
-		{
-			false,	false,	true,	false,
-			false,	false,	true,	false,
-			false,	false,	true,	false,
-			false,	false,	true,	false,
-		},
-		{
-			false,	false,	false,	false,
-			false,	false,	false,	false,
-			true,	true,	true,	true,
-			false,	false,	false,	false,
-		},
-		{
-			false,	true,	false,	false,
-			false,	true,	false,	false,
-			false,	true,	false,	false,
-			false,	true,	false,	false,
-		}
-	}),
-	
+public final class TileType implements Serializable {
+
+	/**
+	 * Serial Version UID.
+	 */
+	private static final long serialVersionUID = 6812944310559178425L;
+
+	/**
+	 * Kicks of the J, L, S, T and Z pieces of the Super Rotation System.
+	 */
+	public static final int iKICKS_JLSTZ = 0;
+
+	/**
+	 * Kicks of the I piece of the Super Rotation System.
+	 */
+	public static final int iKICKS_I = 1;
+
+	/**
+	 * No kicks at all, for pieces that look the same however they are
+	 * turned.
+	 */
+	public static final int iKICKS_NONE = 2;
+
+	/**
+	 * The standard pieces, and the tiles of the garbage rows sent in battle
+	 * mode, which are never spawned as a piece.
+	 */
+	private static final String sSTANDARD =
+			"piece TypeI #23DCDC i\n....\n####\n....\n....\n"
+			+ "piece TypeJ #2323DC jlstz\n#..\n###\n...\n"
+			+ "piece TypeL #DC7F23 jlstz\n..#\n###\n...\n"
+			+ "piece TypeO #DCDC23 none\n##\n##\n"
+			+ "piece TypeS #23DC23 jlstz\n.##\n##.\n...\n"
+			+ "piece TypeT #802380 jlstz\n.#.\n###\n...\n"
+			+ "piece TypeZ #DC2323 jlstz\n##.\n.##\n...\n"
+			+ "tile TypeGarbage #808080 none\n#\n";
+
+	/**
+	 * Every type, by number.
+	 */
+	private static final TileType[] tilTYPES;
+
+	/**
+	 * The types that can be spawned as pieces.
+	 */
+	private static final TileType[] tilPIECES;
+
+	/**
+	 * Whether or not only the standard pieces are spawned.
+	 */
+	private static final boolean bSTANDARD_SET;
+
+	/**
+	 * A hash of the shapes of the pieces that can be spawned, which tells
+	 * apart games played with different sets.
+	 */
+	private static final int iSET_HASH;
+
+	/**
+	 * The number of types that can be spawned as pieces.
+	 */
+	public static final int iPIECE_COUNT;
+
+	/**
+	 * Piece TypeI.
+	 */
+	public static final TileType TypeI;
+
 	/**
 	 * Piece TypeJ.
 	 */
-	TypeJ(new Color(BoardPanel.iCOLOR_MIN, BoardPanel.iCOLOR_MIN, BoardPanel
-			.iCOLOR_MAX), 3, 3, 2, new boolean[][] {
-		{
-			true,	false,	false,
-			true,	true,	true,
-			false,	false,	false,
-		},
-		{
-			false,	true,	true,
-			false,	true,	false,
-			false,	true,	false,
-		},
-		{
-			false,	false,	false,
-			true,	true,	true,
-			false,	false,	true,
-		},
-		{
-			false,	true,	false,
-			false,	true,	false,
-			true,	true,	false,
-		}
-	}),
-	
+	public static final TileType TypeJ;
+
 	/**
 	 * Piece TypeL.
 	 */
-	TypeL(new Color(BoardPanel.iCOLOR_MAX, 127, BoardPanel.iCOLOR_MIN), 3, 3,
-		  2, new boolean[][] {
-		{
-			false,	false,	true,
-			true,	true,	true,
-			false,	false,	false,
-		},
-		{
-			false,	true,	false,
-			false,	true,	false,
-			false,	true,	true,
-		},
-		{
-			false,	false,	false,
-			true,	true,	true,
-			true,	false,	false,
-		},
-		{
-			true,	true,	false,
-			false,	true,	false,
-			false,	true,	false,
-		}
-	}),
-	
+	public static final TileType TypeL;
+
 	/**
 	 * Piece TypeO.
 	 */
-	TypeO(new Color(BoardPanel.iCOLOR_MAX, BoardPanel.iCOLOR_MAX, BoardPanel
-			.iCOLOR_MIN), 2, 2, 2, new boolean[][] {
-		{
-			true,	true,
-			true,	true,
-		},
-		{
-			true,	true,
-			true,	true,
-		},
-		{	
-			true,	true,
-			true,	true,
-		},
-		{
-			true,	true,
-			true,	true,
-		}
-	}),
-	
+	public static final TileType TypeO;
+
 	/**
 	 * Piece TypeS.
 	 */
-	TypeS(new Color(BoardPanel.iCOLOR_MIN, BoardPanel.iCOLOR_MAX, BoardPanel
-			.iCOLOR_MIN), 3, 3, 2, new boolean[][] {
-		{
-			false,	true,	true,
-			true,	true,	false,
-			false,	false,	false,
-		},
-		{
-			false,	true,	false,
-			false,	true,	true,
-			false,	false,	true,
-		},
-		{
-			false,	false,	false,
-			false,	true,	true,
-			true,	true,	false,
-		},
-		{
-			true,	false,	false,
-			true,	true,	false,
-			false,	true,	false,
-		}
-	}),
-	
+	public static final TileType TypeS;
+
 	/**
 	 * Piece TypeT.
 	 */
-	TypeT(new Color(128, BoardPanel.iCOLOR_MIN, 128), 3, 3, 2, new boolean[][] {
-		{
-			false,	true,	false,
-			true,	true,	true,
-			false,	false,	false,
-		},
-		{
-			false,	true,	false,
-			false,	true,	true,
-			false,	true,	false,
-		},
-		{
-			false,	false,	false,
-			true,	true,	true,
-			false,	true,	false,
-		},
-		{
-			false,	true,	false,
-			true,	true,	false,
-			false,	true,	false,
-		}
-	}),
-	
+	public static final TileType TypeT;
+
 	/**
 	 * Piece TypeZ.
 	 */
-	TypeZ(new Color(BoardPanel.iCOLOR_MAX, BoardPanel.iCOLOR_MIN, BoardPanel
-			.iCOLOR_MIN), 3, 3, 2, new boolean[][] {
-		{
-			true,	true,	false,
-			false,	true,	true,
-			false,	false,	false,
-		},
-		{
-			false,	false,	true,
-			false,	true,	true,
-			false,	true,	false,
-		},
-		{
-			false,	false,	false,
-			true,	true,	false,
-			false,	true,	true,
-		},
-		{
-			false,	true,	false,
-			true,	true,	false,
-			true,	false,	false,
+	public static final TileType TypeZ;
+
+	/**
+	 * The tiles of the garbage rows sent in battle mode.
+	 */
+	public static final TileType TypeGarbage;
+
+	static {
+		List<PieceLoader.Definition> lisStandard;
+		try {
+			lisStandard = PieceLoader.parse(new StringReader(sSTANDARD), "standard")
+					.getDefinitions();
+		} catch(IOException ioeException) {
+			throw new ExceptionInInitializerError(ioeException);
+		}
+
+		/*
+		 * A set that can't be read is left out rather than stopping the game.
+		 */
+		PieceLoader pieCustom = null;
+		String sPieces = System.getProperty("tetris.pieces");
+		if(sPieces != null) {
+			try {
+				pieCustom = PieceLoader.load(sPieces);
+				for(PieceLoader.Definition defPiece : pieCustom.getDefinitions()) {
+					for(PieceLoader.Definition defOther : lisStandard) {
+						if(defOther.getName().equals(defPiece.getName())) {
+							throw new IllegalArgumentException(defPiece.getName()
+									+ " is already a standard piece");
+						}
+					}
+				}
+			} catch(IOException | IllegalArgumentException excException) {
+				System.err.println("Could not load the pieces of " + sPieces
+						+ ", playing with the standard ones: " + excException.getMessage());
+				pieCustom = null;
+			}
+		}
+
+		List<PieceLoader.Definition> lisAll = new ArrayList<>(lisStandard);
+		if(pieCustom != null) {
+			lisAll.addAll(pieCustom.getDefinitions());
 		}
-	});
+		tilTYPES = new TileType[lisAll.size()];
+		List<TileType> lisPieces = new ArrayList<>();
+		for(int iType = 0; iType < tilTYPES.length; iType++) {
+			tilTYPES[iType] = new TileType(lisAll.get(iType), iType);
+			boolean bStandard = iType < lisStandard.size();
+			if(tilTYPES[iType].bSpawnable
+					&& (pieCustom == null || !bStandard || pieCustom.isStandardIncluded())) {
+				lisPieces.add(tilTYPES[iType]);
+			}
+		}
+		if(lisPieces.isEmpty()) {
+			// A set of tiles only still needs something to fall
+			for(int iType = 0; iType < lisStandard.size(); iType++) {
+				if(tilTYPES[iType].bSpawnable) {
+					lisPieces.add(tilTYPES[iType]);
+				}
+			}
+		}
+		tilPIECES = lisPieces.toArray(new TileType[0]);
+		iPIECE_COUNT = tilPIECES.length;
+		bSTANDARD_SET = pieCustom == null;
+		int iHash = 1;
+		for(TileType tilPiece : tilPIECES) {
+			iHash = 31 * iHash + tilPiece.iDimension;
+			iHash = 31 * iHash + Arrays.deepHashCode(tilPiece.iRowMasks);
+		}
+		iSET_HASH = iHash;
+
+		TypeI = tilTYPES[0];
+		TypeJ = tilTYPES[1];
+		TypeL = tilTYPES[2];
+		TypeO = tilTYPES[3];
+		TypeS = tilTYPES[4];
+		TypeT = tilTYPES[5];
+		TypeZ = tilTYPES[6];
+		TypeGarbage = tilTYPES[7];
+	}
+
+	/**
+	 * The name of this type. The only thing written when a type is
+	 * serialized.
+	 */
+	private final String sName;
+
+	/**
+	 * The number of this type.
+	 */
+	private final transient int iOrdinal;
+
+	/**
+	 * Whether or not this type can be spawned as a piece.
+	 */
+	private final transient boolean bSpawnable;
+
+	/**
+	 * The kicks the Super Rotation System tries for this type.
+	 */
+	private final transient int iKicks;
 		
 	/**
 	 * The base color of tiles of this type.
 	 */
-	private Color cBaseColor;
+	private transient Color cBaseColor;
 	
 	/**
 	 * The light shading color of tiles of this type.
 	 */
-	private Color cLightColor;
+	private transient Color cLightColor;
 	
 	/**
 	 * The dark shading color of tiles of this type.
 	 */
-	private Color cDarkColor;
-	
-	/**
-	 * The column that this type spawns in.
-	 */
-	private int iSpawnCol;
+	private transient Color cDarkColor;
 	
 	/**
 	 * The row that this type spawns in.
 	 */
-	private int iSpawnRow;
+	private transient int iSpawnRow;
 	
 	/**
 	 * The dimensions of the array for this piece.
 	 */
-	private int iDimension;
+	private transient int iDimension;
 	
 	/**
 	 * The number of rows in this piece. (Only valid when rotation is 0 or 2,
 	 * but it's fine since we're only using it for displaying the next piece
 	 * preview, which uses rotation 0).
 	 */
-	private int iRows;
+	private transient int iRows;
 	
 	/**
 	 * The number of columns in this piece. (Only valid when rotation is 0 or 2,
 	 * but it's fine since we're only using it for displaying the next piece
 	 * preview, which uses rotation 0).
 	 */
-	private int iCols;
+	private transient int iCols;
 	
 	/**
 	 * The tiles for this piece. Each piece has an array of tiles for each rotation.
 	 */
-	private boolean[][] tiles;
+	private transient boolean[][] tiles;
+
+	/**
+	 * The collision masks of this piece. For each rotation and row of the
+	 * array there is a mask with bit {@code n} set when column {@code n}
+	 * holds a tile, so a whole row can be tested against the board at once.
+	 */
+	private transient int[][] iRowMasks;
+
+	/**
+	 * The left inset of each rotation.
+	 */
+	private transient int[] iLeftInsets;
+
+	/**
+	 * The right inset of each rotation.
+	 */
+	private transient int[] iRightInsets;
+
+	/**
+	 * The top inset of each rotation.
+	 */
+	private transient int[] iTopInsets;
+
+	/**
+	 * The bottom inset of each rotation.
+	 */
+	private transient int[] iBottomInsets;
 	
 	/**
-	 * Creates a new TileType.
-	 * @param cColor The base color of the tile.
-	 * @param iDimension The dimensions of the tiles array.
-	 * @param iCols The number of columns.
-	 * @param iRows The number of rows.
-	 * @param bTiles The tiles.
-	 */
-	private TileType(Color cColor, int iDimension, int iCols, int iRows, boolean[][] bTiles) {
-		this.cBaseColor = cColor;
-		this.cLightColor = cColor.brighter();
-		this.cDarkColor = cColor.darker();
-		this.iDimension = iDimension;
-		this.tiles = bTiles;
-		this.iCols = iCols;
-		this.iRows = iRows;
+	 * Creates a new TileType by compiling its definition.
+	 * @param defType The definition.
+	 * @param iOrdinal The number of the type.
+	 */
+	private TileType(PieceLoader.Definition defType, int iOrdinal) {
+		this.sName = defType.getName();
+		this.iOrdinal = iOrdinal;
+		this.bSpawnable = defType.isSpawnable();
+		this.iKicks = defType.getKicks();
+		this.cBaseColor = defType.getColor();
+		this.cLightColor = cBaseColor.brighter();
+		this.cDarkColor = cBaseColor.darker();
+		this.iDimension = defType.getDimension();
+
+		/*
+		 * Every rotation is the one before it turned clockwise, so the
+		 * definition only holds the spawn rotation.
+		 */
+		int iRotations = 4;
+		this.tiles = new boolean[iRotations][];
+		tiles[0] = defType.getShape().clone();
+		for(int iRotation = 1; iRotation < iRotations; iRotation++) {
+			tiles[iRotation] = new boolean[iDimension * iDimension];
+			for(int iY = 0; iY < iDimension; iY++) {
+				for(int iX = 0; iX < iDimension; iX++) {
+					tiles[iRotation][iX * iDimension + (iDimension - 1 - iY)] =
+							tiles[iRotation - 1][iY * iDimension + iX];
+				}
+			}
+		}
+
+		/*
+		 * The insets and collision masks never change, so they are worked
+		 * out once here instead of every time a piece is moved.
+		 */
+		this.iRowMasks = new int[iRotations][iDimension];
+		this.iLeftInsets = new int[iRotations];
+		this.iRightInsets = new int[iRotations];
+		this.iTopInsets = new int[iRotations];
+		this.iBottomInsets = new int[iRotations];
+		for(int iRotation = 0; iRotation < iRotations; iRotation++) {
+			for(int iY = 0; iY < iDimension; iY++) {
+				for(int iX = 0; iX < iDimension; iX++) {
+					if(isTile(iX, iY, iRotation)) {
+						iRowMasks[iRotation][iY] |= 1 << iX;
+					}
+				}
+			}
+			iLeftInsets[iRotation] = computeLeftInset(iRotation);
+			iRightInsets[iRotation] = computeRightInset(iRotation);
+			iTopInsets[iRotation] = computeTopInset(iRotation);
+			iBottomInsets[iRotation] = computeBottomInset(iRotation);
+		}
 		
-		this.iSpawnCol = 5 - (this.iDimension >> 1);
-		this.iSpawnRow = getTopInset(0);
+		this.iCols = iDimension - iLeftInsets[0] - iRightInsets[0] + 1;
+		this.iRows = iDimension - iTopInsets[0] - iBottomInsets[0] + 1;
+		this.iSpawnRow = iTopInsets[0];
 	}
 	
+	/**
+	 * Gets one of the types that can be spawned as pieces.
+	 * @param iIndex The index of the type, below {@code iPIECE_COUNT}.
+	 * @return The type.
+	 */
+	public static TileType getPiece(int iIndex) {
+		return tilPIECES[iIndex];
+	}
+
+	/**
+	 * Gets a type by its number.
+	 * @param iOrdinal The number, below {@code getTypeCount}.
+	 * @return The type.
+	 */
+	public static TileType getType(int iOrdinal) {
+		return tilTYPES[iOrdinal];
+	}
+
+	/**
+	 * Gets the number of types, including the ones that are never spawned.
+	 * @return The number of types.
+	 */
+	public static int getTypeCount() {
+		return tilTYPES.length;
+	}
+
+	/**
+	 * Gets every type, like the {@code values} method of an enum.
+	 * @return A copy of the types, by number.
+	 */
+	public static TileType[] values() {
+		return tilTYPES.clone();
+	}
+
+	/**
+	 * Finds a type by its name. Not meant to be used while playing.
+	 * @param sName The name.
+	 * @return The type, or null if there is none with that name.
+	 */
+	public static TileType forName(String sName) {
+		for(TileType tilType : tilTYPES) {
+			if(tilType.sName.equals(sName)) {
+				return tilType;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks whether or not only the standard pieces are spawned, as network
+	 * matches and spectator feeds need.
+	 * @return Whether or not the standard set is used.
+	 */
+	public static boolean isStandardSet() {
+		return bSTANDARD_SET;
+	}
+
+	/**
+	 * Gets a hash of the shapes of the pieces that can be spawned.
+	 * @return The hash.
+	 */
+	public static int getSetHash() {
+		return iSET_HASH;
+	}
+
+	/**
+	 * Gets the name of this type.
+	 * @return The name.
+	 */
+	public String name() {
+		return sName;
+	}
+
+	/**
+	 * Gets the number of this type, from zero, standard types first.
+	 * @return The number.
+	 */
+	public int ordinal() {
+		return iOrdinal;
+	}
+
+	/**
+	 * Gets the kicks the Super Rotation System tries for this type.
+	 * @return One of the {@code iKICKS_} constants.
+	 */
+	public int getKicks() {
+		return iKicks;
+	}
+
+	@Override
+	public String toString() {
+		return sName;
+	}
+
+	/**
+	 * Replaces a deserialized type with the loaded type of the same name, so
+	 * that types can still be compared with {@code ==}. This only applies to
+	 * saves written since types stopped being an enum; older saves hold enum
+	 * constants, which can't be read into this class at all.
+	 * @return The loaded type.
+	 * @throws ObjectStreamException If no type has that name.
+	 */
+	private Object readResolve() throws ObjectStreamException {
+		TileType tilType = forName(sName);
+		if(tilType == null) {
+			throw new InvalidObjectException("Unknown piece " + sName);
+		}
+		return tilType;
+	}
+
 	/**
 	 * Gets the base color of this type.
 	 * @return The base color.
@@ -302,11 +493,12 @@ public enum TileType {
 	}
 	
 	/**
-	 * Gets the spawn column of this type.
+	 * Gets the spawn column of this type, centered on the board.
+	 * @param iColCount The number of columns on the board.
 	 * @return The spawn column.
 	 */
-	public int getSpawnColumn() {
-		return iSpawnCol;
+	public int getSpawnColumn(int iColCount) {
+		return (iColCount >> 1) - (this.iDimension >> 1);
 	}
 	
 	/**
@@ -346,6 +538,16 @@ public enum TileType {
 		return tiles[iRotation][iY * iDimension + iX];
 	}
 	
+	/**
+	 * Gets the collision masks of a rotation, one per row of the array. The
+	 * returned array is shared and must not be modified.
+	 * @param iRotation The rotation.
+	 * @return The row masks.
+	 */
+	public int[] getRowMasks(int iRotation) {
+		return iRowMasks[iRotation];
+	}
+
 	/**
 	 * The left inset is represented by the number of empty columns on the left
 	 * side of the array for the given rotation.
@@ -353,6 +555,45 @@ public enum TileType {
 	 * @return The left inset.
 	 */
 	public int getLeftInset(int iRotation) {
+		return iLeftInsets[iRotation];
+	}
+
+	/**
+	 * The right inset is represented by the number of empty columns on the left
+	 * side of the array for the given rotation.
+	 * @param iRotation The rotation.
+	 * @return The right inset.
+	 */
+	public int getRightInset(int iRotation) {
+		return iRightInsets[iRotation];
+	}
+
+	/**
+	 * The left inset is represented by the number of empty rows on the top
+	 * side of the array for the given rotation.
+	 * @param iRotation The rotation.
+	 * @return The top inset.
+	 */
+	public int getTopInset(int iRotation) {
+		return iTopInsets[iRotation];
+	}
+
+	/**
+	 * The botom inset is represented by the number of empty rows on the bottom
+	 * side of the array for the given rotation.
+	 * @param iRotation The rotation.
+	 * @return The bottom inset.
+	 */
+	public int getBottomInset(int iRotation) {
+		return iBottomInsets[iRotation];
+	}
+
+	/**
+	 * Works out the left inset of a rotation.
+	 * @param iRotation The rotation.
+	 * @return The left inset.
+	 */
+	private int computeLeftInset(int iRotation) {
 		/*
 		 * Loop through from left to right until we find a tile then return
 		 * the column.
@@ -368,12 +609,11 @@ public enum TileType {
 	}
 	
 	/**
-	 * The right inset is represented by the number of empty columns on the left
-	 * side of the array for the given rotation.
+	 * Works out the right inset of a rotation.
 	 * @param iRotation The rotation.
 	 * @return The right inset.
 	 */
-	public int getRightInset(int iRotation) {
+	private int computeRightInset(int iRotation) {
 		/*
 		 * Loop through from right to left until we find a tile then return
 		 * the column.
@@ -389,12 +629,11 @@ public enum TileType {
 	}
 	
 	/**
-	 * The left inset is represented by the number of empty rows on the top
-	 * side of the array for the given rotation.
+	 * Works out the top inset of a rotation.
 	 * @param iRotation The rotation.
 	 * @return The top inset.
 	 */
-	public int getTopInset(int iRotation) {
+	private int computeTopInset(int iRotation) {
 		/*
 		 * Loop through from top to bottom until we find a tile then return
 		 * the row.
@@ -410,12 +649,11 @@ public enum TileType {
 	}
 	
 	/**
-	 * The botom inset is represented by the number of empty rows on the bottom
-	 * side of the array for the given rotation.
+	 * Works out the bottom inset of a rotation.
 	 * @param iRotation The rotation.
 	 * @return The bottom inset.
 	 */
-	public int getBottomInset(int iRotation) {
+	private int computeBottomInset(int iRotation) {
 		/*
 		 * Loop through from bottom to top until we find a tile then return
 		 * the row.